@@ -97,8 +97,14 @@ public class Configure extends Thread {
     public int net_collector_tcp_connection_timeout_ms = 3000;
     @ConfigDesc("UDP Buffer Size")
     public int net_udp_packet_max_bytes = 60000;
-    @ConfigDesc("UDP Collection Interval(ms)")
+    @ConfigDesc("UDP Collection Interval(ms). max time a pack waits in the UDP send queue for more packs")
     public long net_udp_collection_interval_ms = 100;
+    @ConfigDesc("Capacity of the UDP send queue. packs are dropped when it is full.(restart required)")
+    public int net_udp_queue_size = 4096;
+    @ConfigDesc("The UDP send queue is sent without waiting net_udp_collection_interval_ms when it has this many packs")
+    public int net_udp_send_batch_count = 64;
+    @ConfigDesc("Count of reusable UDP send buffers(net_udp_packet_max_bytes each) kept by the agent")
+    public int net_udp_buffer_pool_size = 16;
 
     //Object
     @ConfigDesc("Deprecated. It's just an alias of monitoring_group_type which overrides this value.")
@@ -161,6 +167,10 @@ public class Configure extends Thread {
     public boolean profile_method_enabled = true;
     @ConfigDesc("Profile Buffer Size")
     public int profile_step_max_count = 1024;
+    @ConfigDesc("Number of idle profile buffers kept for reuse by the next transactions")
+    public int profile_step_pool_size = 32;
+    @ConfigDesc("Encode profile steps into a reusable per thread output buffer instead of a new one for each chunk")
+    public boolean profile_step_stream_enabled = false;
     @ConfigDesc("Stack profile in occurrence of service error")
     public boolean profile_fullstack_service_error_enabled = false;
     @ConfigDesc("Stack profile in occurrence of apicall error")
@@ -182,6 +192,10 @@ public class Configure extends Thread {
 
     @ConfigDesc("Escaping literal parameters for normalizing the query")
     public boolean profile_sql_escape_enabled = true;
+    @ConfigDesc("Max number of SQL statements kept with their escaped form")
+    public int profile_sql_escape_cache_size = 10000;
+    @ConfigDesc("Max memory(KB) of the escaped SQL and parameters kept in the cache")
+    public int profile_sql_escape_cache_max_kb = 4096;
     @ConfigDesc("")
     public boolean _profile_fullstack_sql_connection_enabled = false;
     @ConfigDesc("")
@@ -825,6 +839,8 @@ public class Configure extends Thread {
         this.trace_background_socket_enabled = getBoolean("trace_background_socket_enabled", true);
         this.profile_socket_open_fullstack_port = getInt("profile_socket_open_fullstack_port", 0);
         this.profile_sql_escape_enabled = getBoolean("profile_sql_escape_enabled", true);
+        this.profile_sql_escape_cache_size = getInt("profile_sql_escape_cache_size", 10000);
+        this.profile_sql_escape_cache_max_kb = getInt("profile_sql_escape_cache_max_kb", 4096);
         this.profile_sqlmap_name_enabled = getBoolean("profile_sqlmap_name_enabled", true);
         this.net_udp_packet_max_bytes = getInt("net_udp_packet_max_bytes", 60000);
         this.trace_activeserivce_yellow_time = getLong("trace_activeserivce_yellow_time", 3000);
@@ -937,6 +953,8 @@ public class Configure extends Thread {
         this.profile_step_max_count = getInt("profile_step_max_count", 1024);
         if (this.profile_step_max_count < 100)
             this.profile_step_max_count = 100;
+        this.profile_step_pool_size = getInt("profile_step_pool_size", 32);
+        this.profile_step_stream_enabled = getBoolean("profile_step_stream_enabled", false);
         this._log_background_sql = getBoolean("_log_background_sql", false);
         this.profile_fullstack_service_error_enabled = getBoolean("profile_fullstack_service_error_enabled", false);
         this.profile_fullstack_apicall_error_enabled = getBoolean("profile_fullstack_apicall_error_enabled", false);
@@ -951,6 +969,9 @@ public class Configure extends Thread {
         this.profile_fullstack_stmt_leak_enabled = getBoolean("profile_fullstack_stmt_leak_enabled", false);
 
         this.net_udp_collection_interval_ms = getInt("net_udp_collection_interval_ms", 100);
+        this.net_udp_buffer_pool_size = getInt("net_udp_buffer_pool_size", 16);
+        this.net_udp_queue_size = getInt("net_udp_queue_size", 4096);
+        this.net_udp_send_batch_count = getInt("net_udp_send_batch_count", 64);
 
         this.trace_http_client_ip_header_key = getValue("trace_http_client_ip_header_key", "");
         this.trace_interservice_enabled = getBoolean("trace_interservice_enabled", true);
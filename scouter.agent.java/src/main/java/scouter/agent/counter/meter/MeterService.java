@@ -17,192 +17,238 @@
 
 package scouter.agent.counter.meter;
 
-import scouter.lang.ref.INT;
 import scouter.lang.ref.LONG;
-import scouter.util.MeteringUtil;
-import scouter.util.MeteringUtil.Handler;
+import scouter.util.DateUtil;
+import scouter.util.LogLinearHistogram;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * per second service meter of the last 300 seconds.
+ * add() takes no lock. sums are striped by thread and merged on read,
+ * and elapsed times are counted in a log-linear histogram for percentiles.
+ */
 public class MeterService {
+	final static int BUCKET_SIZE = 301;
+
+	final static int HISTOGRAM_SUB_BITS = 6;
+	final static long HISTOGRAM_MAX_TIME = DateUtil.MILLIS_PER_HOUR;
+
+	final static int COUNT = 0;
+	final static int ERROR = 1;
+	final static int ELAPSED = 2;
+	final static int SQL_TIME = 3;
+	final static int API_TIME = 4;
+	final static int QUEUING_TIME = 5;
+	/** 8 longs of a stripe fill a cache line */
+	final static int STRIPE_WIDTH = 8;
+
+	final static int STRIPES = stripes();
+	final static int STRIPE_MASK = STRIPES - 1;
+
+	private static int stripes() {
+		int n = 2;
+		while (n < Runtime.getRuntime().availableProcessors() && n < 16) {
+			n <<= 1;
+		}
+		return n;
+	}
+
 	private static MeterService inst = new MeterService();
 
 	public static MeterService getInstance() {
 		return inst;
 	}
 
-	final static int PCT_MAX_TIME = 10000;
-	final static int PCT_UNIT_TIME = 200;
-	final static int PCT_BUCKET = PCT_MAX_TIME / PCT_UNIT_TIME;
+	final LogLinearHistogram layout = new LogLinearHistogram(HISTOGRAM_SUB_BITS, HISTOGRAM_MAX_TIME);
+
+	final class Bucket {
+		/** the second of the bucket. -second while it is cleared for the second */
+		final AtomicLong time = new AtomicLong();
+		final AtomicLongArray values = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+		final AtomicIntegerArray histogram = new AtomicIntegerArray(layout.getBucketCount());
 
-	final static class Bucket {
-		final short[] pct90 = new short[PCT_BUCKET];
-		int count;
-		long elapsedTime;
-        long sqlTimeByService;
-        long apiTmeByService;
-        long queuingTime;
+		long sum(int field) {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += values.get(i * STRIPE_WIDTH + field);
+			}
+			return sum;
+		}
 
-		int error;
+		void clear() {
+			for (int i = 0; i < values.length(); i++) {
+				values.set(i, 0);
+			}
+			for (int i = 0; i < histogram.length(); i++) {
+				histogram.set(i, 0);
+			}
+		}
 	}
 
-	private MeteringUtil<Bucket> meter = new MeteringUtil<Bucket>() {
-		protected Bucket create() {
-			return new Bucket();
-		};
+	private final Bucket[] table = new Bucket[BUCKET_SIZE];
 
-		protected void clear(Bucket o) {
-			o.count = 0;
-			o.error = 0;
-			o.elapsedTime = 0L;
-            o.sqlTimeByService = 0L;
-            o.apiTmeByService = 0L;
-            o.queuingTime = 0L;
-			for (int i = 0; i < PCT_BUCKET; i++) {
-				o.pct90[i] = 0;
+	private MeterService() {
+		for (int i = 0; i < BUCKET_SIZE; i++) {
+			table[i] = new Bucket();
+		}
+	}
+
+	private Bucket getBucket(long second) {
+		Bucket b = table[(int) (second % BUCKET_SIZE)];
+		while (true) {
+			long t = b.time.get();
+			if (t == second)
+				return b;
+			if (t == -second) {
+				Thread.yield();
+			} else if (t >= 0 && t < second) {
+				// the first thread of a new second clears the bucket of 300 seconds ago
+				if (b.time.compareAndSet(t, -second)) {
+					b.clear();
+					b.time.set(second);
+					return b;
+				}
+			} else {
+				// a thread delayed over the whole ring. counted in the newer second.
+				return b;
 			}
 		}
-	};
+	}
 
-	public synchronized void add(long elapsed, int sqlTime, int apiTime, int queuingTime, boolean err) {
+	public void add(long elapsed, int sqlTime, int apiTime, int queuingTime, boolean err) {
 		if(elapsed < 0)
 			elapsed = 0;
 
-		Bucket b = meter.getCurrentBucket();
-		b.count++;
-		b.elapsedTime += elapsed;
-        b.sqlTimeByService += sqlTime;
-        b.apiTmeByService += apiTime;
-        b.queuingTime += queuingTime;
-
+		Bucket b = getBucket(System.currentTimeMillis() / 1000);
+		int base = ((int) Thread.currentThread().getId() & STRIPE_MASK) * STRIPE_WIDTH;
+		AtomicLongArray v = b.values;
+		v.incrementAndGet(base + COUNT);
+		v.addAndGet(base + ELAPSED, elapsed);
+		v.addAndGet(base + SQL_TIME, sqlTime);
+		v.addAndGet(base + API_TIME, apiTime);
+		v.addAndGet(base + QUEUING_TIME, queuingTime);
 		if (err) {
-			b.error++;
-		}
-		if (elapsed < PCT_MAX_TIME) {
-			int x = (int) (elapsed / PCT_UNIT_TIME);
-			b.pct90[x]++;
+			v.incrementAndGet(base + ERROR);
 		}
+		b.histogram.incrementAndGet(layout.indexOf(elapsed));
+	}
 
+	private static interface Handler {
+		public void process(Bucket b);
 	}
 
-	public float getTPS(int period) {
-		final INT sum = new INT();
-		period = meter.search(period, new Handler<MeterService.Bucket>() {
+	/**
+	 * visit the buckets of the current and the previous seconds
+	 * @return the searched period
+	 */
+	private int search(int period, Handler h) {
+		if (period >= BUCKET_SIZE)
+			period = BUCKET_SIZE - 1;
+		long now = System.currentTimeMillis() / 1000;
+		for (int i = 0; i < period; i++) {
+			long second = now - i;
+			Bucket b = table[(int) (second % BUCKET_SIZE)];
+			if (b.time.get() == second) {
+				h.process(b);
+			}
+		}
+		return period;
+	}
+
+	private long sum(int period, final int field) {
+		final LONG sum = new LONG();
+		search(period, new Handler() {
 			public void process(Bucket b) {
-				sum.value += b.count;
+				sum.value += b.sum(field);
 			}
 		});
-		return (float) ((double) sum.value / period);
+		return sum.value;
 	}
 
-	public int getElapsedTime(int period) {
+	private int avg(int period, final int field) {
 		final LONG sum = new LONG();
-		final INT cnt = new INT();
-		meter.search(period, new Handler<MeterService.Bucket>() {
+		final LONG cnt = new LONG();
+		search(period, new Handler() {
 			public void process(Bucket b) {
-				sum.value += b.elapsedTime;
-				cnt.value += b.count;
-
+				sum.value += b.sum(field);
+				cnt.value += b.sum(COUNT);
 			}
 		});
 		return (int) ((cnt.value == 0) ? 0 : sum.value / cnt.value);
 	}
 
-	public int getElapsed90Pct(int period) {
-		final LONG sum = new LONG();
-		final INT cnt = new INT();
-		meter.search(period, new Handler<MeterService.Bucket>() {
+	public float getTPS(int period) {
+		long sum = sum(period, COUNT);
+		if (period >= BUCKET_SIZE)
+			period = BUCKET_SIZE - 1;
+		return (float) ((double) sum / period);
+	}
+
+	public int getElapsedTime(int period) {
+		return avg(period, ELAPSED);
+	}
+
+	/**
+	 * elapsed time histogram of the period merged from the per second histograms
+	 */
+	public LogLinearHistogram getElapsedHistogram(int period) {
+		final LogLinearHistogram h = new LogLinearHistogram(HISTOGRAM_SUB_BITS, HISTOGRAM_MAX_TIME);
+		search(period, new Handler() {
 			public void process(Bucket b) {
-				int total = (int) (b.count * 0.9);
-				if (total == 0)
-					return;
-
-				for (int timeInx = 0; timeInx < PCT_BUCKET; timeInx++) {
-					if (total >= b.pct90[timeInx]) {
-						total -= b.pct90[timeInx];
-					} else {
-						sum.value += timeInx * PCT_UNIT_TIME;
-						cnt.value++;
-						return;
+				for (int i = 0; i < b.histogram.length(); i++) {
+					int c = b.histogram.get(i);
+					if (c != 0) {
+						h.addCount(i, c);
 					}
 				}
-				sum.value += PCT_MAX_TIME;
-				cnt.value++;
 			}
 		});
-		return (int) ((cnt.value == 0) ? 0 : sum.value / cnt.value);
+		return h;
 	}
 
-    public int getSqlTime(int period) {
-        final LONG sum = new LONG();
-        final INT cnt = new INT();
+	/**
+	 * @param percentile 0 ~ 100
+	 */
+	public int getElapsedPct(int period, double percentile) {
+		return (int) getElapsedHistogram(period).getValueAtPercentile(percentile);
+	}
 
-        meter.search(period, new Handler<MeterService.Bucket>() {
-            public void process(Bucket b) {
-                sum.value += b.sqlTimeByService;
-                cnt.value += b.count;
+	public int getElapsed90Pct(int period) {
+		return getElapsedPct(period, 90);
+	}
 
-            }
-        });
-        return (int) ((cnt.value == 0) ? 0 : sum.value / cnt.value);
+    public int getSqlTime(int period) {
+        return avg(period, SQL_TIME);
     }
 
     public int getApiTime(int period) {
-        final LONG sum = new LONG();
-        final INT cnt = new INT();
-
-        meter.search(period, new Handler<MeterService.Bucket>() {
-            public void process(Bucket b) {
-                sum.value += b.apiTmeByService;
-                cnt.value += b.count;
-
-            }
-        });
-        return (int) ((cnt.value == 0) ? 0 : sum.value / cnt.value);
+        return avg(period, API_TIME);
     }
 
 	public int getQueuingTime(int period) {
-		final LONG sum = new LONG();
-		final INT cnt = new INT();
-		meter.search(period, new Handler<MeterService.Bucket>() {
-			public void process(Bucket b) {
-				sum.value += b.queuingTime;
-				cnt.value += b.count;
-
-			}
-		});
-		return (int) ((cnt.value == 0) ? 0 : sum.value / cnt.value);
+		return avg(period, QUEUING_TIME);
 	}
 
 	public float getErrorRate(int period) {
-
-		final INT cnt = new INT();
-		final INT err = new INT();
-		meter.search(period, new Handler<MeterService.Bucket>() {
+		final LONG cnt = new LONG();
+		final LONG err = new LONG();
+		search(period, new Handler() {
 			public void process(Bucket b) {
-				cnt.value += b.count;
-				err.value += b.error;
+				cnt.value += b.sum(COUNT);
+				err.value += b.sum(ERROR);
 			}
 		});
 		return (float) ((cnt.value == 0) ? 0 : (((double) err.value / cnt.value) * 100.0));
 	}
 
 	public int getServiceCount(int period) {
-
-		final INT sum = new INT();
-		meter.search(period, new Handler<MeterService.Bucket>() {
-			public void process(Bucket b) {
-				sum.value += b.count;
-			}
-		});
-		return sum.value;
+		return (int) sum(period, COUNT);
 	}
 
 	public int getServiceError(int period) {
-		final INT sum = new INT();
-		meter.search(period, new Handler<MeterService.Bucket>() {
-			public void process(Bucket b) {
-				sum.value += b.error;
-			}
-		});
-		return sum.value;
+		return (int) sum(period, ERROR);
 	}
 }
@@ -36,6 +36,7 @@ import scouter.lang.value.DecimalValue;
 import scouter.lang.value.FloatValue;
 import scouter.lang.value.ListValue;
 import scouter.util.DateUtil;
+import scouter.util.LogLinearHistogram;
 
 public class ServicePerf {
 
@@ -50,7 +51,11 @@ public class ServicePerf {
 		float tps = service.getTPS(30);
 		float errorRate = service.getErrorRate(30);
 		int count = service.getServiceCount(60);
-		int resp90pct = service.getElapsed90Pct(30);
+		LogLinearHistogram histogram = service.getElapsedHistogram(30);
+		int resp50pct = (int) histogram.getValueAtPercentile(50);
+		int resp90pct = (int) histogram.getValueAtPercentile(90);
+		int resp99pct = (int) histogram.getValueAtPercentile(99);
+		int resp999pct = (int) histogram.getValueAtPercentile(99.9);
 		int sqlTimeByService = service.getSqlTime(30);
 		int apiTimeByService = service.getApiTime(30);
 		int queuingTime = service.getQueuingTime(30);
@@ -72,6 +77,9 @@ public class ServicePerf {
 		p.put(CounterConstants.WAS_ERROR_RATE, new FloatValue(errorRate));
 		p.put(CounterConstants.WAS_ACTIVE_SERVICE, new DecimalValue(active));
 		p.put(CounterConstants.WAS_ELAPSED_90PCT, new DecimalValue(resp90pct));
+		p.put(CounterConstants.WAS_ELAPSED_50PCT, new DecimalValue(resp50pct));
+		p.put(CounterConstants.WAS_ELAPSED_99PCT, new DecimalValue(resp99pct));
+		p.put(CounterConstants.WAS_ELAPSED_999PCT, new DecimalValue(resp999pct));
 		p.put(CounterConstants.WAS_APICALL_ELAPSED_TIME_BY_SERVICE, new DecimalValue(apiTimeByService));
 		p.put(CounterConstants.WAS_SQL_ELAPSED_TIME_BY_SERVICE, new DecimalValue(sqlTimeByService));
 		p.put(CounterConstants.WAS_QUEUING_TIME, new DecimalValue(queuingTime));
@@ -90,7 +98,11 @@ public class ServicePerf {
 		elapsed = service.getElapsedTime(300);
 		errorRate = service.getErrorRate(300);
 		int activeService = (int) activeCounter.getAvg(300);
-		resp90pct = service.getElapsed90Pct(300);
+		histogram = service.getElapsedHistogram(300);
+		resp50pct = (int) histogram.getValueAtPercentile(50);
+		resp90pct = (int) histogram.getValueAtPercentile(90);
+		resp99pct = (int) histogram.getValueAtPercentile(99);
+		resp999pct = (int) histogram.getValueAtPercentile(99.9);
         sqlTimeByService = service.getSqlTime(300);
         apiTimeByService = service.getApiTime(300);
 
@@ -101,6 +113,9 @@ public class ServicePerf {
 		p.put(CounterConstants.WAS_ERROR_RATE, new FloatValue(errorRate));
 		p.put(CounterConstants.WAS_ACTIVE_SERVICE, new DecimalValue(activeService));
 		p.put(CounterConstants.WAS_ELAPSED_90PCT, new DecimalValue(resp90pct));
+		p.put(CounterConstants.WAS_ELAPSED_50PCT, new DecimalValue(resp50pct));
+		p.put(CounterConstants.WAS_ELAPSED_99PCT, new DecimalValue(resp99pct));
+		p.put(CounterConstants.WAS_ELAPSED_999PCT, new DecimalValue(resp999pct));
         p.put(CounterConstants.WAS_APICALL_ELAPSED_TIME_BY_SERVICE, new DecimalValue(apiTimeByService));
         p.put(CounterConstants.WAS_SQL_ELAPSED_TIME_BY_SERVICE, new DecimalValue(sqlTimeByService));
 		p.put(CounterConstants.WAS_QUEUING_TIME, new DecimalValue(queuingTime));
@@ -28,8 +28,8 @@ import scouter.util.HashUtil;
 import scouter.util.IntIntLinkedMap;
 import scouter.util.IntLinkedSet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 public class DataProxy {
 	private static UDPDataSendThread udpCollect = UDPDataSendThread.getInstance();
@@ -196,35 +196,54 @@ public class DataProxy {
 	}
 	static DataUdpAgent udpNet = DataUdpAgent.getInstance();
 	public static void sendDirect(Pack p) {
-		try {
-			udpNet.write(new DataOutputX().writePack(p).toByteArray());
-		} catch (IOException e) {
-		}
-	}
-	private static void sendDirect(List<byte[]> buff) {
-		switch (buff.size()) {
-		case 0:  return;
-		case 1:
-			udpNet.write(buff.get(0));
-			break;
-		default:
-			udpNet.write(buff);
-			break;
-		}
+		udpNet.write(p);
 	}
 	static DataUdpAgent udpDirect = DataUdpAgent.getInstance();
 	public static void sendProfile(Step[] p, TraceContext context) {
 		if (p == null || p.length == 0)
 			return;
+		sendProfile(p, p.length, context);
+	}
+
+	private static ThreadLocal<ByteArrayOutputStream> profileBuffer = new ThreadLocal<ByteArrayOutputStream>();
+
+	/**
+	 * sends p[0 .. length) as one profile chunk. the steps are encoded right away so the caller can reuse the array.
+	 */
+	public static void sendProfile(Step[] p, int length, TraceContext context) {
+		if (p == null || length <= 0)
+			return;
 		XLogProfilePack pk = new XLogProfilePack();
 		pk.txid = context.txid;
 		pk.objHash = conf.getObjHash();
-		pk.profile = Step.toBytes(p);
+		pk.profile = conf.profile_step_stream_enabled ? encodeProfile(p, length) : Step.toBytes(p, 0, length);
 		pk.service = context.serviceHash;
 		pk.elapsed = (int) (System.currentTimeMillis() - context.startTime);
-		context.profileCount += p.length;
+		context.profileCount += length;
 		sendDirect(pk);
 	}
+
+	private static byte[] encodeProfile(Step[] p, int length) {
+		int size = conf.profile_step_max_count * 30;
+		ByteArrayOutputStream bout = profileBuffer.get();
+		if (bout == null) {
+			bout = new ByteArrayOutputStream(size);
+			profileBuffer.set(bout);
+		}
+		try {
+			Step.write(new DataOutputX(bout), p, 0, length);
+			return bout.toByteArray();
+		} catch (IOException e) {
+			return null;
+		} finally {
+			// a buffer that grew far past the usual chunk is not kept by the thread
+			if (bout.size() > size * 4) {
+				profileBuffer.set(null);
+			}
+			bout.reset();
+		}
+	}
+
 	public static void sendProfile(List<Step> p, TraceContext x) {
 		if (p == null || p.size() == 0)
 			return;
@@ -240,25 +259,12 @@ public class DataProxy {
 	//only for counterPack & interactionCounterPack
 	public static void sendCounter(Pack[] p) {
 		// udp.add(p);
-		try {
-			List<byte[]> buff = new ArrayList<byte[]>();
-			int bytes = 0;
+		if (conf._log_udp_counter_enabled) {
 			for (int k = 0; k < p.length; k++) {
-				if (conf._log_udp_counter_enabled) {
-					Logger.println(p[k].toString());
-				}
-				byte[] b = new DataOutputX().writePack(p[k]).toByteArray();
-				if (bytes + b.length >= conf.net_udp_packet_max_bytes) {
-					sendDirect(buff); // buff.size가 0일수도 있다.
-					bytes = 0;// bytes 값 초기화..
-					buff.clear();
-				}
-				bytes += b.length;
-				buff.add(b);
+				Logger.println(p[k].toString());
 			}
-			sendDirect(buff);
-		} catch (Exception e) {
 		}
+		udpNet.write(p);
 	}
 
 	public static void sendHeartBeat(ObjectPack p) {
@@ -17,14 +17,12 @@
 
 package scouter.agent.netio.data;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import scouter.agent.Configure;
+import scouter.agent.Logger;
 import scouter.agent.netio.data.net.DataUdpAgent;
-import scouter.io.DataOutputX;
 import scouter.lang.pack.Pack;
-import scouter.util.Queue;
+import scouter.util.DateUtil;
+import scouter.util.MpscQueue;
 import scouter.util.ThreadUtil;
 
 public class UDPDataSendThread extends Thread {
@@ -44,24 +42,27 @@ public class UDPDataSendThread extends Thread {
 	protected UDPDataSendThread() {
 	}
 
-	private Queue<byte[]> queue = new Queue<byte[]>(1024);
+	private Configure conf = Configure.getInstance();
+	private MpscQueue<Pack> queue = new MpscQueue<Pack>(conf.net_udp_queue_size);
 
 	public int getQueueSize() {
 		return queue.size();
 	}
 
+	public long getDroppedCount() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * never blocks. the pack is dropped when the queue is full.
+	 * the pack is serialized later by this thread, it must not be changed after added.
+	 */
 	public boolean add(Pack p) {
-		try {
-			byte[] b = new DataOutputX().writePack(p).toByteArray();
-			Object ok = queue.push(b);
-			return ok != null;
-		} catch (Exception e) {
-		}
-		return false;
+		return queue.offer(p);
 	}
 
 	public boolean isQueueOk() {
-		return queue.size() < 1000;
+		return queue.size() < queue.getCapacity() - 24;
 	}
 
 	public void shutdown() {
@@ -70,56 +71,57 @@ public class UDPDataSendThread extends Thread {
 
 	private boolean running = true;
 
+	/**
+	 * wakes up on the first pack, then sends when net_udp_send_batch_count packs are queued
+	 * or when net_udp_collection_interval_ms has passed.
+	 */
 	public void run() {
 		DataUdpAgent udp = DataUdpAgent.getInstance();
 
 		while (running) {
-			int size = queue.size();
-			switch (size) {
-			case 0:
-				ThreadUtil.sleep(conf.net_udp_collection_interval_ms);
-				break;
-			case 1:
-				udp.write(queue.pop());
-				break;
-			default:
-				send(udp, size);
-				break;
+			try {
+				if (queue.await(1, DateUtil.MILLIS_PER_SECOND) == 0) {
+					continue;
+				}
+				queue.await(conf.net_udp_send_batch_count, conf.net_udp_collection_interval_ms);
+				send(udp);
+				checkDropped();
+			} catch (Throwable t) {
+				Logger.println("A131", "UDP send thread", t);
 			}
-
 		}
 	}
 
-	private Configure conf = Configure.getInstance();
-	private void send(DataUdpAgent udp, int size) {
-		List<byte[]> buff = new ArrayList<byte[]>();
-		int bytes = 0;
-		for (int k = 0; k < size; k++) {
-			byte[] b = queue.pop();
-			if (bytes + b.length >= conf.net_udp_packet_max_bytes) {
-				send(udp, buff); //buff.size가 0일수도 있다.
-				bytes = 0;// bytes 값 초기화..
-				buff.clear();
+	private Pack[] sendBuffer = new Pack[256];
+
+	private void send(DataUdpAgent udp) {
+		int count;
+		while ((count = queue.drainTo(sendBuffer, 0, sendBuffer.length)) > 0) {
+			if (count == 1) {
+				udp.write(sendBuffer[0]);
+			} else {
+				udp.write(sendBuffer, 0, count);
+			}
+			for (int k = 0; k < count; k++) {
+				sendBuffer[k] = null;
 			}
-			bytes += b.length;
-			buff.add(b);
 		}
-
-		send(udp, buff);
-
 	}
 
-	public void send(DataUdpAgent udp, List<byte[]> buff) {
-		switch (buff.size()) {
-		case 0:
-			break;
-		case 1:
-			udp.write(buff.get(0));
-			break;
-		default:
-			udp.write(buff);
-			break;
+	private long lastDropped;
+	private long lastDroppedLogTime;
+
+	private void checkDropped() {
+		long dropped = queue.getDroppedCount();
+		if (dropped == lastDropped) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (now - lastDroppedLogTime >= 10 * DateUtil.MILLIS_PER_SECOND) {
+			Logger.println("A135", "UDP send queue is full, dropped " + (dropped - lastDropped) + " packs (total " + dropped + ")");
+			lastDropped = dropped;
+			lastDroppedLogTime = now;
 		}
 	}
 
-}
\ No newline at end of file
+}
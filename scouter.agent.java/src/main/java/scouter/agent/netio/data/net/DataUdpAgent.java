@@ -20,21 +20,25 @@ import scouter.agent.Logger;
 import scouter.io.DataInputX;
 import scouter.io.DataOutputX;
 import scouter.lang.conf.ConfObserver;
+import scouter.lang.pack.Pack;
 import scouter.net.NetCafe;
+import scouter.net.PackBatchBuffer;
 import scouter.util.*;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 public class DataUdpAgent {
 	private static DataUdpAgent inst;
-	InetAddress server_host;
-	int server_port;
+	InetSocketAddress server_addr;
 	String local_udp_addr;
 	int local_udp_port;
-	private DatagramSocket datagram;
+	private DatagramChannel datagram;
 	private DataUdpAgent() {
 		setTarget();
 		openDatagramSocket();
@@ -50,13 +54,12 @@ public class DataUdpAgent {
 		String host = conf.net_collector_ip;
 		int port = conf.net_collector_udp_port;
 		try {
-			server_host = InetAddress.getByName(host);
-			server_port = port;
+			server_addr = new InetSocketAddress(InetAddress.getByName(host), port);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
-	protected void close(DatagramSocket d) {
+	protected void close(DatagramChannel d) {
 		if (d != null) {
 			try {
 				d.close();
@@ -73,13 +76,15 @@ public class DataUdpAgent {
 				close(datagram);
 				local_udp_addr = host;
 				local_udp_port = port;
+				DatagramChannel channel = DatagramChannel.open();
 				if (host != null) {
-					datagram = new DatagramSocket(port, InetAddress.getByName(host));
+					channel.socket().bind(new InetSocketAddress(InetAddress.getByName(host), port));
 					Logger.println("A118", "Agent UDP local.addr=" + host + " local.port=" + port);
 				} else {
-					datagram = new DatagramSocket(port);
+					channel.socket().bind(new InetSocketAddress(port));
 					Logger.println("A119", "Agent UDP local.port=" + port);
 				}
+				datagram = channel;
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -92,30 +97,119 @@ public class DataUdpAgent {
 		return inst;
 	}
 	private Configure conf = Configure.getInstance();
+
+	private final ConcurrentLinkedQueue<PackBatchBuffer> bufferPool = new ConcurrentLinkedQueue<PackBatchBuffer>();
+	private final AtomicInteger bufferPoolSize = new AtomicInteger();
+
+	private PackBatchBuffer takeBuffer() {
+		PackBatchBuffer buffer = bufferPool.poll();
+		if (buffer != null) {
+			bufferPoolSize.decrementAndGet();
+			//net_udp_packet_max_bytes may be changed
+			if (buffer.getCapacity() == conf.net_udp_packet_max_bytes) {
+				buffer.clear();
+				return buffer;
+			}
+		}
+		return new PackBatchBuffer(conf.net_udp_packet_max_bytes);
+	}
+
+	private void releaseBuffer(PackBatchBuffer buffer) {
+		if (bufferPoolSize.incrementAndGet() <= conf.net_udp_buffer_pool_size) {
+			bufferPool.offer(buffer);
+		} else {
+			bufferPoolSize.decrementAndGet();
+		}
+	}
+
+	private void send(ByteBuffer buffer) throws IOException {
+		datagram.send(buffer, server_addr);
+	}
+
+	private void send(PackBatchBuffer buffer) throws IOException {
+		if (buffer.isEmpty() == false) {
+			send(buffer.getDatagram());
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * serialize a pack straight into a pooled datagram buffer.
+	 */
+	public boolean write(Pack p) {
+		if (server_addr == null)
+			return false;
+		PackBatchBuffer buffer = takeBuffer();
+		try {
+			if (buffer.add(p)) {
+				send(buffer);
+			} else {
+				writeMTU(new DataOutputX().writePack(p).toByteArray(), conf.net_udp_packet_max_bytes);
+			}
+			return true;
+		} catch (IOException e) {
+			Logger.println("A120", "UDP", e);
+			return false;
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
+
+	/**
+	 * serialize packs into as few datagrams as possible.
+	 * a pack bigger than a datagram is split by writeMTU.
+	 */
+	public boolean write(Pack[] p, int offset, int length) {
+		if (server_addr == null)
+			return false;
+		PackBatchBuffer buffer = takeBuffer();
+		try {
+			for (int i = offset; i < offset + length; i++) {
+				if (buffer.add(p[i])) {
+					continue;
+				}
+				if (buffer.isEmpty() == false) {
+					send(buffer);
+					if (buffer.add(p[i])) {
+						continue;
+					}
+				}
+				writeMTU(new DataOutputX().writePack(p[i]).toByteArray(), conf.net_udp_packet_max_bytes);
+			}
+			send(buffer);
+			return true;
+		} catch (IOException e) {
+			Logger.println("A123", "UDP", e);
+			return false;
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
+
+	public boolean write(Pack[] p) {
+		return write(p, 0, p.length);
+	}
+
 	public boolean write(byte[] p) {
+		if (server_addr == null)
+			return false;
+		PackBatchBuffer buffer = takeBuffer();
 		try {
-			if (server_host == null)
-				return false;
-			if (p.length > conf.net_udp_packet_max_bytes) {
+			if (buffer.add(p) == false) {
 				return writeMTU(p, conf.net_udp_packet_max_bytes);
 			}
-			DataOutputX out = new DataOutputX();
-			out.write(NetCafe.CAFE);
-			out.write(p);
-			byte[] buff = out.toByteArray();
-			DatagramPacket packet = new DatagramPacket(buff, buff.length);
-			packet.setAddress(server_host);
-			packet.setPort(server_port);
-			datagram.send(packet);
+			send(buffer);
 			return true;
 		} catch (IOException e) {
 			Logger.println("A120", "UDP", e);
 			return false;
+		} finally {
+			releaseBuffer(buffer);
 		}
 	}
 	private boolean writeMTU(byte[] data, int packetSize) {
 		try {
-			if (server_host == null)
+			if (server_addr == null)
 				return false;
 			long pkid = KeyGen.next();
 			int total = data.length / packetSize;
@@ -143,57 +237,39 @@ public class DataUdpAgent {
 		out.writeShort(total);
 		out.writeShort(num);
 		out.writeBlob(data);
-		byte[] buff = out.toByteArray();
-		DatagramPacket packet = new DatagramPacket(buff, buff.length);
-		packet.setAddress(server_host);
-		packet.setPort(server_port);
-		datagram.send(packet);
+		send(ByteBuffer.wrap(out.toByteArray()));
 	}
 	public void close() {
-		if (datagram != null)
-			datagram.close();
+		close(datagram);
 		datagram = null;
 	}
 	public boolean write(List<byte[]> p) {
+		if (server_addr == null)
+			return false;
+		PackBatchBuffer buffer = takeBuffer();
 		try {
-			if (server_host == null)
-				return false;
-			DataOutputX buffer = new DataOutputX();
-			int bufferCount = 0;
 			for (int i = 0; i < p.size(); i++) {
 				byte[] b = p.get(i);
-				if (b.length > conf.net_udp_packet_max_bytes) {
-					writeMTU(b, conf.net_udp_packet_max_bytes);
-				} else if (b.length + buffer.getWriteSize() > conf.net_udp_packet_max_bytes) {
-					sendList(bufferCount, buffer.toByteArray());
-					buffer = new DataOutputX();
-					bufferCount = 1;
-					buffer.write(b);
-				} else {
-					bufferCount++;
-					buffer.write(b);
+				if (buffer.add(b)) {
+					continue;
 				}
+				if (buffer.isEmpty() == false) {
+					send(buffer);
+					if (buffer.add(b)) {
+						continue;
+					}
+				}
+				writeMTU(b, conf.net_udp_packet_max_bytes);
 			}
-			if (buffer.getWriteSize() > 0) {
-				sendList(bufferCount, buffer.toByteArray());
-			}
+			send(buffer);
 			return true;
 		} catch (IOException e) {
 			Logger.println("A123", "UDP", e);
 			return false;
+		} finally {
+			releaseBuffer(buffer);
 		}
 	}
-	private void sendList(int bufferCount, byte[] buffer) throws IOException {
-		DataOutputX outter = new DataOutputX();
-		outter.write(NetCafe.CAFE_N);
-		outter.writeShort(bufferCount);
-		outter.write(buffer);
-		byte[] buff = outter.toByteArray();
-		DatagramPacket packet = new DatagramPacket(buff, buff.length);
-		packet.setAddress(server_host);
-		packet.setPort(server_port);
-		datagram.send(packet);
-	}
 	public boolean debugWrite(String ip, int port, int length) {
 		try {
 			DataOutputX out = new DataOutputX();
@@ -201,11 +277,7 @@ public class DataUdpAgent {
 			if (length > 4) {
 				out.write(new byte[length - 4]);
 			}
-			byte[] buff = out.toByteArray();
-			DatagramPacket packet = new DatagramPacket(buff, buff.length);
-			packet.setAddress(InetAddress.getByName(ip));
-			packet.setPort(port);
-			datagram.send(packet);
+			datagram.send(ByteBuffer.wrap(out.toByteArray()), new InetSocketAddress(InetAddress.getByName(ip), port));
 			Logger.println("A124", "Sent " + length + " bytes to " + ip + ":" + port);
 			return true;
 		} catch (IOException e) {
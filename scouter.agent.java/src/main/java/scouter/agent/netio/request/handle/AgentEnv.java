@@ -29,6 +29,7 @@ import scouter.agent.JavaAgent;
 import scouter.agent.Logger;
 import scouter.agent.netio.data.DataProxy;
 import scouter.agent.netio.request.anotation.RequestHandler;
+import scouter.agent.trace.EscapeLiteralCache;
 import scouter.io.DataInputX;
 import scouter.io.DataOutputX;
 import scouter.lang.pack.MapPack;
@@ -74,6 +75,9 @@ public class AgentEnv {
 		p.put("os.name", System.getProperty("os.name"));
 		p.put("user.home", System.getProperty("user.home"));
 		p.put("work.dir", new File(".").getAbsolutePath());
+		p.put("sql.escape.cache.size", EscapeLiteralCache.size());
+		p.put("sql.escape.cache.hit", EscapeLiteralCache.getHitCount());
+		p.put("sql.escape.cache.miss", EscapeLiteralCache.getMissCount());
 		return p;
 	}
 
@@ -45,13 +45,17 @@ public class ServiceSummary {
 
 	private Configure conf = Configure.getInstance();
 
+	/** 16 linear buckets and 8 buckets for each power of two, about 6% error for percentiles by service */
+	private static final int SERVICE_HISTOGRAM_SUB_BITS = 4;
+
 	public void process(XLogPack p) {
 		if (conf.summary_enabled == false)
 			return;
 		// service summary
-		SummaryData d = getSummaryMap(serviceMaster, p.service);
+		SummaryData d = getSummaryMap(serviceMaster, p.service, true);
 		d.count++;
 		d.elapsed += p.elapsed;
+		d.elapsedHistogram.record(p.elapsed);
 		if (p.error != 0) {
 			d.error_cnt++;
 		}
@@ -95,7 +99,7 @@ public class ServiceSummary {
 	public void process(SqlStep sqlStep) {
 		if (conf.summary_enabled == false)
 			return;
-		SummaryData d = getSummaryMap(sqlMaster, sqlStep.hash);
+		SummaryData d = getSummaryMap(sqlMaster, sqlStep.hash, false);
 		d.count++;
 		d.elapsed += sqlStep.elapsed;
 		if (sqlStep.error != 0) {
@@ -106,7 +110,7 @@ public class ServiceSummary {
 	public void process(ApiCallStep apiStep) {
 		if (conf.summary_enabled == false)
 			return;
-		SummaryData d = getSummaryMap(apiMaster, apiStep.hash);
+		SummaryData d = getSummaryMap(apiMaster, apiStep.hash, false);
 		d.count++;
 		d.elapsed += apiStep.elapsed;
 		if (apiStep.error != 0) {
@@ -114,11 +118,14 @@ public class ServiceSummary {
 		}
 	}
 
-	private synchronized SummaryData getSummaryMap(IntKeyLinkedMap<SummaryData> table, int hash) {
+	private synchronized SummaryData getSummaryMap(IntKeyLinkedMap<SummaryData> table, int hash, boolean histogram) {
 		IntKeyLinkedMap<SummaryData> tempTable = table;
 		SummaryData d = tempTable.get(hash);
 		if (d == null) {
 			d = new SummaryData();
+			if (histogram) {
+				d.elapsedHistogram = new LogLinearHistogram(SERVICE_HISTOGRAM_SUB_BITS, DateUtil.MILLIS_PER_HOUR);
+			}
 			tempTable.put(hash, d);
 		}
 		return d;
@@ -181,9 +188,15 @@ public class ServiceSummary {
 
 		ListValue cpu = null;
 		ListValue mem = null;
+		ListValue p50 = null;
+		ListValue p90 = null;
+		ListValue p99 = null;
 		if (SummaryEnum.APP == type) {
 			cpu = p.table.newList("cpu");
 			mem = p.table.newList("mem");
+			p50 = p.table.newList("p50");
+			p90 = p.table.newList("p90");
+			p99 = p.table.newList("p99");
 		}
 		Enumeration<IntKeyLinkedEntry<SummaryData>> en = temp.entries();
 		for (int i = 0; i < cnt; i++) {
@@ -197,6 +210,9 @@ public class ServiceSummary {
 			if (SummaryEnum.APP == type) {
 				cpu.add(data.cpu);
 				mem.add(data.mem);
+				p50.add(data.elapsedHistogram.getValueAtPercentile(50));
+				p90.add(data.elapsedHistogram.getValueAtPercentile(90));
+				p99.add(data.elapsedHistogram.getValueAtPercentile(99));
 			}
 		}
 		return p;
@@ -16,10 +16,14 @@
  */
 package scouter.agent.summary;
 
+import scouter.util.LogLinearHistogram;
+
 public class SummaryData {
 	public int count;
 	public int error_cnt;
 	public long elapsed;
 	public long cpu;
 	public long mem;
+	/** elapsed time histogram of a service summary */
+	public LogLinearHistogram elapsedHistogram;
 }
@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.agent.trace;
+
+import scouter.agent.Configure;
+import scouter.util.EscapeLiteralSQL;
+import scouter.util.HashUtil;
+import scouter.util.LongKeyLinkedMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * escaped form of the SQL statements seen by the agent.
+ * keyed by a 64 bit hash of the statement and bounded by the number of statements
+ * and by the memory of the escaped text and parameters. the oldest statements are dropped first.
+ */
+public class EscapeLiteralCache {
+	private static Configure conf = Configure.getInstance();
+
+	public static class ParsedSql {
+		public final String sql;
+		public final String param;
+
+		ParsedSql(String sql, String param) {
+			this.sql = sql;
+			this.param = param;
+		}
+
+		int chars() {
+			return sql == null ? 0 : sql.length() + param.length();
+		}
+	}
+
+	/**
+	 * shared entry for the statements which have no literal
+	 */
+	private static final ParsedSql NO_LITERAL = new ParsedSql(null, null);
+
+	private static LongKeyLinkedMap<ParsedSql> table = new LongKeyLinkedMap<ParsedSql>();
+	private static long chars;
+
+	private static AtomicLong hit = new AtomicLong();
+	private static AtomicLong miss = new AtomicLong();
+
+	/**
+	 * @return the escaped statement, or null if it has no literal
+	 */
+	public static ParsedSql get(String sql) {
+		long key = HashUtil.hash64(sql);
+		ParsedSql psql = table.get(key);
+		if (psql != null) {
+			hit.incrementAndGet();
+			return psql == NO_LITERAL ? null : psql;
+		}
+		miss.incrementAndGet();
+
+		EscapeLiteralSQL els = new EscapeLiteralSQL(sql);
+		els.process();
+		String parsed = els.getParsedSql();
+		psql = parsed.equals(sql) ? NO_LITERAL : new ParsedSql(parsed, els.getParameter());
+		put(key, psql);
+		return psql == NO_LITERAL ? null : psql;
+	}
+
+	private static synchronized void put(long key, ParsedSql psql) {
+		long maxChars = conf.profile_sql_escape_cache_max_kb * 512L;
+		if (psql.chars() > maxChars) {
+			return;
+		}
+		ParsedSql old = table.put(key, psql);
+		if (old != null) {
+			chars -= old.chars();
+		}
+		chars += psql.chars();
+		int maxSize = conf.profile_sql_escape_cache_size;
+		while (table.size() > 0 && (table.size() > maxSize || chars > maxChars)) {
+			chars -= table.removeFirst().chars();
+		}
+	}
+
+	public static synchronized void clear() {
+		table.clear();
+		chars = 0;
+	}
+
+	public static int size() {
+		return table.size();
+	}
+
+	public static long getHitCount() {
+		return hit.get();
+	}
+
+	public static long getMissCount() {
+		return miss.get();
+	}
+}
@@ -17,17 +17,18 @@
 
 package scouter.agent.trace;
 
-import scouter.agent.Configure;
 import scouter.agent.netio.data.DataProxy;
 import scouter.lang.step.DumpStep;
 import scouter.lang.step.Step;
 import scouter.lang.step.StepSingle;
 
+import java.util.Arrays;
+
 public class ProfileCollector implements IProfileCollector {
-    private Configure conf = Configure.getInstance();
     private TraceContext context;
-    protected Step[] steps = new Step[conf.profile_step_max_count];
+    protected Step[] steps;
     protected int pos = 0;
+    private boolean closed = false;
     private boolean doingDumpStepJob = false;
 
     public int currentLevel = 0;
@@ -57,12 +58,18 @@ public class ProfileCollector implements IProfileCollector {
      */
     protected void process(StepSingle stepSingle) {
         checkDumpStep();
+        if (closed) {
+            return;
+        }
+        if (steps == null) {
+            steps = ProfileStepPool.take();
+        }
         steps[pos++] = stepSingle;
         if (pos >= steps.length) {
-            Step[] o = steps;
-            steps = new Step[conf.profile_step_max_count];
+            // the chunk is encoded before sendProfile returns, so the buffer is reused as it is
+            DataProxy.sendProfile(steps, pos, context);
+            Arrays.fill(steps, 0, pos, null);
             pos = 0;
-            DataProxy.sendProfile(o, context);
         }
     }
 
@@ -96,11 +103,19 @@ public class ProfileCollector implements IProfileCollector {
      */
     public void close(boolean ok) {
         checkDumpStep();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (steps == null) {
+            return;
+        }
         if (ok && pos > 0) {
-            StepSingle[] newSteps = new StepSingle[pos];
-            System.arraycopy(steps, 0, newSteps, 0, pos);
-            DataProxy.sendProfile(newSteps, context);
+            DataProxy.sendProfile(steps, pos, context);
         }
+        ProfileStepPool.recycle(steps, pos);
+        steps = null;
+        pos = 0;
     }
 
     private void checkDumpStep() {
@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.agent.trace;
+
+import scouter.agent.Configure;
+import scouter.lang.step.Step;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * idle profile step buffers shared by all transactions.
+ * a collector takes a buffer on its first step and gives it back when the profile is sent,
+ * so only the transactions in flight hold a Step[profile_step_max_count].
+ */
+public class ProfileStepPool {
+	private static Configure conf = Configure.getInstance();
+	private static ConcurrentLinkedQueue<Step[]> pool = new ConcurrentLinkedQueue<Step[]>();
+	private static AtomicInteger idle = new AtomicInteger();
+
+	public static Step[] take() {
+		int length = conf.profile_step_max_count;
+		Step[] steps;
+		while ((steps = pool.poll()) != null) {
+			idle.decrementAndGet();
+			// buffers made before profile_step_max_count was changed are dropped
+			if (steps.length == length) {
+				return steps;
+			}
+		}
+		return new Step[length];
+	}
+
+	/**
+	 * @param used the number of slots written since the buffer was taken or last flushed
+	 */
+	public static void recycle(Step[] steps, int used) {
+		if (steps == null || steps.length != conf.profile_step_max_count) {
+			return;
+		}
+		Arrays.fill(steps, 0, used, null);
+		if (idle.incrementAndGet() > conf.profile_step_pool_size) {
+			idle.decrementAndGet();
+			return;
+		}
+		pool.offer(steps);
+	}
+
+	public static int getIdleCount() {
+		return idle.get();
+	}
+}
@@ -19,16 +19,16 @@ package scouter.agent.trace;
 
 import scouter.agent.Configure;
 import scouter.util.KeyGen;
-import scouter.util.LongKeyMap;
+import scouter.util.StripedLongKeyMap;
 
 import java.util.Enumeration;
 
 public class TraceContextManager {
 	private static Configure conf = Configure.getInstance();
 
-	private static LongKeyMap<TraceContext> entry = new LongKeyMap<TraceContext>();
+	private static StripedLongKeyMap<TraceContext> entry = new StripedLongKeyMap<TraceContext>();
 	private static ThreadLocal<TraceContext> local = new ThreadLocal<TraceContext>();
-	private static LongKeyMap<TraceContext> deferredEntry = new LongKeyMap<TraceContext>();
+	private static StripedLongKeyMap<TraceContext> deferredEntry = new StripedLongKeyMap<TraceContext>();
 
 	//pass = 1, discard = 2, end-processing-with-path = -1, end-processing-with-path = -2
 	private static ThreadLocal<Integer> forceDiscard = new ThreadLocal<Integer>();
@@ -35,9 +35,7 @@ import scouter.lang.step.MessageStep;
 import scouter.lang.step.MethodStep;
 import scouter.lang.step.SqlStep3;
 import scouter.lang.step.SqlXType;
-import scouter.util.EscapeLiteralSQL;
 import scouter.util.IntKeyLinkedMap;
-import scouter.util.IntLinkedSet;
 import scouter.util.StringUtil;
 import scouter.util.SysJMX;
 import scouter.util.ThreadUtil;
@@ -75,9 +73,6 @@ public class TraceSQL {
     public final static String PSTMT_PARAM_FIELD = "_param_";
     private static int RESULT_SET_FETCH = 0;
 
-    private static IntLinkedSet noLiteralSql = new IntLinkedSet().setMax(10000);
-    private static IntKeyLinkedMap<ParsedSql> checkedSql = new IntKeyLinkedMap<ParsedSql>().setMax(1001);
-
     static IntKeyLinkedMap<DBURL> urlTable = new IntKeyLinkedMap<DBURL>().setMax(500);
     static DBURL unknown = new DBURL(null, null);
 
@@ -174,39 +169,16 @@ public class TraceSQL {
 	public static Object start(Object o, String sql, byte methodType) {
 		return traceSQL0.start(o, sql, methodType);
 	}
-	private static class ParsedSql {
-		public ParsedSql(String sql, String param) {
-			this.sql = sql;
-			this.param = param;
-		}
-		String sql;
-		String param;
-	}
-
     public static String escapeLiteral(String sql, SqlStep3 step) {
 		if (conf.profile_sql_escape_enabled == false)
 			return sql;
 	    try {
-		    int sqlHash = sql.hashCode();
-		    if (noLiteralSql.contains(sqlHash)) {
+		    EscapeLiteralCache.ParsedSql psql = EscapeLiteralCache.get(sql);
+		    if (psql == null) {
 			    return sql;
 		    }
-		    ParsedSql psql = checkedSql.get(sqlHash);
-		    if (psql != null) {
-			    step.param = psql.param;
-			    return psql.sql;
-		    }
-		    EscapeLiteralSQL els = new EscapeLiteralSQL(sql);
-		    els.process();
-		    String parsed = els.getParsedSql();
-		    if (parsed.hashCode() == sqlHash) {
-			    noLiteralSql.put(sqlHash);
-		    } else {
-			    psql = new ParsedSql(parsed, els.getParameter());
-			    checkedSql.put(sqlHash, psql);
-			    step.param = psql.param;
-		    }
-		    return parsed;
+		    step.param = psql.param;
+		    return psql.sql;
 	    } catch (Throwable t) {
 		    Logger.println("B102", "fail to escape literal", t);
 		    return sql;
@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream over a fixed size ByteBuffer.
+ * When the buffer is full the stream does not throw, it only drops the rest of the bytes and marks itself as overflowed,
+ * so a caller can write a whole pack and roll back to its start position when it did not fit.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+	private ByteBuffer buffer;
+	private boolean overflow;
+
+	public ByteBufferOutputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public boolean isOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * move the buffer back to the position and clear the overflow
+	 */
+	public void rollback(int position) {
+		buffer.position(position);
+		overflow = false;
+	}
+
+	public void write(int b) {
+		if (buffer.hasRemaining()) {
+			buffer.put((byte) b);
+		} else {
+			overflow = true;
+		}
+	}
+
+	public void write(byte[] b, int off, int len) {
+		if (buffer.remaining() >= len) {
+			buffer.put(b, off, len);
+		} else {
+			overflow = true;
+			buffer.position(buffer.limit());
+		}
+	}
+}
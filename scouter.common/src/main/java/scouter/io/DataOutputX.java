@@ -33,6 +33,17 @@ public class DataOutputX {
 	private int written;
 	private DataOutput inner;
 	private ByteArrayOutputStream bout;
+	private byte[] scratch;
+
+	/**
+	 * small buffer for the headers of decimal and blob values. it is copied to the stream right away.
+	 */
+	private byte[] scratch() {
+		if (scratch == null) {
+			scratch = new byte[9];
+		}
+		return scratch;
+	}
 
 	public DataOutputX(int size) {
 		this(new ByteArrayOutputStream(size));
@@ -94,14 +105,14 @@ public class DataOutputX {
 				writeByte((byte) len);
 				write(value, offset, len);
 			} else if (len <= 65535) {
-				byte[] buff = new byte[3];
+				byte[] buff = scratch();
 				buff[0] = (byte) 255;
-				write(toBytes(buff, 1, (short) len));
+				write(toBytes(buff, 1, (short) len), 0, 3);
 				write(value, offset, len);
 			} else {
-				byte[] buff = new byte[5];
+				byte[] buff = scratch();
 				buff[0] = (byte) 254;
-				write(toBytes(buff, 1, len));
+				write(toBytes(buff, 1, len), 0, 5);
 				write(value, offset, len);
 			}
 		}
@@ -117,14 +128,14 @@ public class DataOutputX {
 				writeByte((byte) len);
 				write(value);
 			} else if (len <= 65535) {
-				byte[] buff = new byte[3];
+				byte[] buff = scratch();
 				buff[0] = (byte) 255; // 255 means value's length is more than 253 bytes.
-				write(toBytes(buff, 1, (short) len));
+				write(toBytes(buff, 1, (short) len), 0, 3);
 				write(value);
 			} else {
-				byte[] buff = new byte[5];
+				byte[] buff = scratch();
 				buff[0] = (byte) 254; // 254 means value's length is more than 65535 bytes.
-				write(toBytes(buff, 1, len));
+				write(toBytes(buff, 1, len), 0, 5);
 				write(value);
 			}
 		}
@@ -162,30 +173,26 @@ public class DataOutputX {
 	public DataOutputX writeDecimal(long v) throws IOException {
 		if (v == 0) {
 			writeByte(0);
-		} else if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
-			byte[] b = new byte[2];
+			return this;
+		}
+		byte[] b = scratch();
+		if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
 			b[0] = 1;
 			b[1] = (byte) v;
-			write(b);
+			write(b, 0, 2);
 		} else if (Short.MIN_VALUE <= v && v <= Short.MAX_VALUE) {
-			byte[] b = new byte[3];
 			b[0] = 2;
-			toBytes(b, 1, (short) v);
-			write(b);
+			write(toBytes(b, 1, (short) v), 0, 3);
 		} else if (INT3_MIN_VALUE <= v && v <= INT3_MAX_VALUE) {
-			byte[] b = new byte[4];
 			b[0] = 3;
 			write(toBytes3(b, 1, (int) v), 0, 4);
 		} else if (Integer.MIN_VALUE <= v && v <= Integer.MAX_VALUE) {
-			byte[] b = new byte[5];
 			b[0] = 4;
 			write(toBytes(b, 1, (int) v), 0, 5);
 		} else if (LONG5_MIN_VALUE <= v && v <= LONG5_MAX_VALUE) {
-			byte[] b = new byte[6];
 			b[0] = 5;
 			write(toBytes5(b, 1, v), 0, 6);
-		} else if (Long.MIN_VALUE <= v && v <= Long.MAX_VALUE) {
-			byte[] b = new byte[9];
+		} else {
 			b[0] = 8;
 			write(toBytes(b, 1, v), 0, 9);
 		}
@@ -62,6 +62,9 @@ public class CounterConstants {
 	public final static String WAS_ACTIVE_SPEED = "ActiveSpeed";
 	public final static String WAS_ELAPSED_TIME = "ElapsedTime";
 	public final static String WAS_ELAPSED_90PCT = "Elapsed90%";
+	public final static String WAS_ELAPSED_50PCT = "Elapsed50%";
+	public final static String WAS_ELAPSED_99PCT = "Elapsed99%";
+	public final static String WAS_ELAPSED_999PCT = "Elapsed99.9%";
 	public final static String WAS_SERVICE_COUNT = "ServiceCount";
 	public final static String WAS_ERROR_RATE = "ErrorRate";
 	public final static String WAS_ACTIVE_SERVICE = "ActiveService";
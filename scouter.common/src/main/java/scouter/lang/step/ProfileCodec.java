@@ -0,0 +1,386 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.lang.step;
+
+import scouter.io.DataInputX;
+import scouter.io.DataOutputX;
+
+import java.io.IOException;
+
+/**
+ * compact block encoding of the profile steps for the server storage.
+ * the hashes of the method, sql and api call steps are replaced by ids of a {@link ProfileDictionary},
+ * and the index, parent, start time and start cpu of each step are stored as zigzag varint deltas from the previous step.
+ * the other step types are kept in the standard format.
+ * <p>
+ * a block starts with a header byte, {@link #RAW} for the standard format as it is or {@link #CODEC_V1}.
+ * decoding gives back exactly the bytes of {@link Step#toBytes(Step[])}.
+ */
+public class ProfileCodec {
+	public final static byte RAW = 0;
+	public final static byte CODEC_V1 = 1;
+
+	private final static byte STANDARD_STEP = 0;
+
+	/**
+	 * encodes the standard profile bytes.
+	 * new hashes are added to the dictionary, so they have to be saved before the block can be decoded.
+	 */
+	public static byte[] encode(byte[] profile, ProfileDictionary dict) {
+		if (profile == null)
+			return null;
+		try {
+			return encode(Step.toObjects(profile), dict);
+		} catch (Throwable t) {
+			return raw(profile);
+		}
+	}
+
+	public static byte[] encode(Step[] steps, ProfileDictionary dict) throws IOException {
+		Out out = new Out(steps.length * 12 + 16);
+		out.writeByte(CODEC_V1);
+		State s = new State();
+		for (int i = 0; i < steps.length; i++) {
+			Step step = steps[i];
+			switch (step.getStepType()) {
+			case StepEnum.METHOD:
+			case StepEnum.METHOD2: {
+				MethodStep m = (MethodStep) step;
+				writeSingle(out, s, m);
+				out.writeDict(dict, m.hash);
+				out.writeVarInt(m.elapsed);
+				out.writeVarInt(m.cputime);
+				if (step instanceof MethodStep2) {
+					out.writeDict(dict, ((MethodStep2) m).error);
+				}
+				break;
+			}
+			case StepEnum.SQL3: {
+				SqlStep3 sql = (SqlStep3) step;
+				writeSingle(out, s, sql);
+				out.writeDict(dict, sql.hash);
+				out.writeVarInt(sql.elapsed);
+				out.writeVarInt(sql.cputime);
+				out.writeText(sql.param);
+				out.writeDict(dict, sql.error);
+				out.writeByte(sql.xtype);
+				out.writeVarInt(sql.updated);
+				break;
+			}
+			case StepEnum.APICALL:
+			case StepEnum.APICALL2: {
+				ApiCallStep api = (ApiCallStep) step;
+				writeSingle(out, s, api);
+				out.writeVarLong(api.txid);
+				out.writeDict(dict, api.hash);
+				out.writeVarInt(api.elapsed);
+				out.writeVarInt(api.cputime);
+				out.writeDict(dict, api.error);
+				out.writeByte(api.opt);
+				if (api.opt == 1) {
+					out.writeText(api.address);
+				}
+				if (step instanceof ApiCallStep2) {
+					out.writeByte(((ApiCallStep2) api).async);
+				}
+				break;
+			}
+			default:
+				out.writeByte(STANDARD_STEP);
+				byte[] b = new DataOutputX().writeStep(step).toByteArray();
+				out.writeVarInt(b.length);
+				out.write(b, 0, b.length);
+				if (step instanceof StepSingle) {
+					s.update((StepSingle) step);
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * wraps the standard profile bytes into a block without encoding them.
+	 */
+	public static byte[] raw(byte[] profile) {
+		byte[] b = new byte[profile.length + 1];
+		b[0] = RAW;
+		System.arraycopy(profile, 0, b, 1, profile.length);
+		return b;
+	}
+
+	/**
+	 * @return the standard profile bytes of the block
+	 */
+	public static byte[] decode(byte[] block, ProfileDictionary dict) throws IOException {
+		if (block == null)
+			return null;
+		if (block.length == 0)
+			return block;
+		if (block[0] == RAW) {
+			byte[] b = new byte[block.length - 1];
+			System.arraycopy(block, 1, b, 0, b.length);
+			return b;
+		}
+		Step[] steps = decodeSteps(block, dict);
+		DataOutputX out = new DataOutputX(block.length * 3);
+		for (int i = 0; i < steps.length; i++) {
+			out.writeStep(steps[i]);
+		}
+		return out.toByteArray();
+	}
+
+	public static Step[] decodeSteps(byte[] block, ProfileDictionary dict) throws IOException {
+		if (block == null)
+			return null;
+		if (block.length == 0)
+			return new Step[0];
+		if (block[0] == RAW) {
+			byte[] b = new byte[block.length - 1];
+			System.arraycopy(block, 1, b, 0, b.length);
+			return Step.toObjects(b);
+		}
+		if (block[0] != CODEC_V1) {
+			throw new IOException("unknown profile block header : " + block[0]);
+		}
+		In in = new In(block, 1);
+		State s = new State();
+		Step[] steps = new Step[Math.max(4, block.length / 8)];
+		int count = 0;
+		while (in.pos < block.length) {
+			byte type = in.readByte();
+			Step step;
+			switch (type) {
+			case StepEnum.METHOD:
+			case StepEnum.METHOD2: {
+				MethodStep m = type == StepEnum.METHOD ? new MethodStep() : new MethodStep2();
+				readSingle(in, s, m);
+				m.hash = in.readDict(dict);
+				m.elapsed = in.readVarInt();
+				m.cputime = in.readVarInt();
+				if (type == StepEnum.METHOD2) {
+					((MethodStep2) m).error = in.readDict(dict);
+				}
+				step = m;
+				break;
+			}
+			case StepEnum.SQL3: {
+				SqlStep3 sql = new SqlStep3();
+				readSingle(in, s, sql);
+				sql.hash = in.readDict(dict);
+				sql.elapsed = in.readVarInt();
+				sql.cputime = in.readVarInt();
+				sql.param = in.readText();
+				sql.error = in.readDict(dict);
+				sql.xtype = in.readByte();
+				sql.updated = in.readVarInt();
+				step = sql;
+				break;
+			}
+			case StepEnum.APICALL:
+			case StepEnum.APICALL2: {
+				ApiCallStep api = type == StepEnum.APICALL ? new ApiCallStep() : new ApiCallStep2();
+				readSingle(in, s, api);
+				api.txid = in.readVarLong();
+				api.hash = in.readDict(dict);
+				api.elapsed = in.readVarInt();
+				api.cputime = in.readVarInt();
+				api.error = in.readDict(dict);
+				api.opt = in.readByte();
+				if (api.opt == 1) {
+					api.address = in.readText();
+				}
+				if (type == StepEnum.APICALL2) {
+					((ApiCallStep2) api).async = in.readByte();
+				}
+				step = api;
+				break;
+			}
+			case STANDARD_STEP: {
+				int len = in.readVarInt();
+				step = new DataInputX(block, in.pos).readStep();
+				in.pos += len;
+				if (step instanceof StepSingle) {
+					s.update((StepSingle) step);
+				}
+				break;
+			}
+			default:
+				throw new IOException("unknown profile step tag : " + type);
+			}
+			if (count == steps.length) {
+				Step[] n = new Step[count * 2];
+				System.arraycopy(steps, 0, n, 0, count);
+				steps = n;
+			}
+			steps[count++] = step;
+		}
+		if (count == steps.length)
+			return steps;
+		Step[] result = new Step[count];
+		System.arraycopy(steps, 0, result, 0, count);
+		return result;
+	}
+
+	private static void writeSingle(Out out, State s, StepSingle step) {
+		out.writeByte(step.getStepType());
+		out.writeVarInt(step.index - s.index - 1);
+		out.writeVarInt(step.index - step.parent);
+		out.writeVarInt(step.start_time - s.start_time);
+		out.writeVarInt(step.start_cpu - s.start_cpu);
+		s.update(step);
+	}
+
+	private static void readSingle(In in, State s, StepSingle step) throws IOException {
+		step.index = s.index + 1 + in.readVarInt();
+		step.parent = step.index - in.readVarInt();
+		step.start_time = s.start_time + in.readVarInt();
+		step.start_cpu = s.start_cpu + in.readVarInt();
+		s.update(step);
+	}
+
+	private static class State {
+		int index = -1;
+		int start_time;
+		int start_cpu;
+
+		void update(StepSingle step) {
+			index = step.index;
+			start_time = step.start_time;
+			start_cpu = step.start_cpu;
+		}
+	}
+
+	private static class Out {
+		byte[] buf;
+		int pos;
+
+		Out(int size) {
+			buf = new byte[size];
+		}
+
+		void ensure(int n) {
+			if (pos + n > buf.length) {
+				byte[] b = new byte[Math.max(buf.length * 2, pos + n)];
+				System.arraycopy(buf, 0, b, 0, pos);
+				buf = b;
+			}
+		}
+
+		void writeByte(int v) {
+			ensure(1);
+			buf[pos++] = (byte) v;
+		}
+
+		void write(byte[] b, int off, int len) {
+			ensure(len);
+			System.arraycopy(b, off, buf, pos, len);
+			pos += len;
+		}
+
+		void writeUnsigned(long v) {
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[pos++] = (byte) v;
+		}
+
+		void writeVarInt(int v) {
+			writeUnsigned(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+		}
+
+		void writeVarLong(long v) {
+			writeUnsigned((v << 1) ^ (v >> 63));
+		}
+
+		void writeDict(ProfileDictionary dict, int hash) {
+			writeUnsigned(hash == 0 ? 0 : dict.add(hash) + 1);
+		}
+
+		void writeText(String s) throws IOException {
+			if (s == null || s.length() == 0) {
+				writeUnsigned(0);
+				return;
+			}
+			byte[] b = s.getBytes("UTF8");
+			writeUnsigned(b.length);
+			write(b, 0, b.length);
+		}
+
+		byte[] toByteArray() {
+			byte[] b = new byte[pos];
+			System.arraycopy(buf, 0, b, 0, pos);
+			return b;
+		}
+	}
+
+	private static class In {
+		final byte[] buf;
+		int pos;
+
+		In(byte[] buf, int pos) {
+			this.buf = buf;
+			this.pos = pos;
+		}
+
+		byte readByte() throws IOException {
+			if (pos >= buf.length)
+				throw new IOException("truncated profile block");
+			return buf[pos++];
+		}
+
+		long readUnsigned() throws IOException {
+			long v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (shift > 63)
+					throw new IOException("malformed varint");
+				b = readByte();
+				v |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return v;
+		}
+
+		int readVarInt() throws IOException {
+			int v = (int) readUnsigned();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		long readVarLong() throws IOException {
+			long v = readUnsigned();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		int readDict(ProfileDictionary dict) throws IOException {
+			int id = (int) readUnsigned();
+			return id == 0 ? 0 : dict.getHash(id - 1);
+		}
+
+		String readText() throws IOException {
+			int len = (int) readUnsigned();
+			if (len > buf.length - pos)
+				throw new IOException("truncated profile block");
+			String s = new String(buf, pos, len, "UTF8");
+			pos += len;
+			return s;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.lang.step;
+
+import scouter.util.IntIntMap;
+
+/**
+ * hash values of the profile steps numbered in the order they were first seen.
+ * the writer appends the entries from getSize() on to its dictionary file before the data using them,
+ * so a reader can always rebuild the same numbering from the file.
+ */
+public class ProfileDictionary {
+	private final IntIntMap ids = new IntIntMap().setNullValue(-1);
+	private int[] hashes = new int[256];
+	private int size;
+
+	/**
+	 * @return the id of the hash, -1 if it is not in the dictionary
+	 */
+	public synchronized int getId(int hash) {
+		return ids.get(hash);
+	}
+
+	/**
+	 * @return the id of the hash, numbering it if it is new
+	 */
+	public synchronized int add(int hash) {
+		int id = ids.get(hash);
+		if (id >= 0) {
+			return id;
+		}
+		if (size == hashes.length) {
+			int[] n = new int[size * 2];
+			System.arraycopy(hashes, 0, n, 0, size);
+			hashes = n;
+		}
+		id = size++;
+		hashes[id] = hash;
+		ids.put(hash, id);
+		return id;
+	}
+
+	public synchronized int getHash(int id) {
+		if (id < 0 || id >= size) {
+			throw new IllegalArgumentException("unknown profile dictionary id : " + id + " size=" + size);
+		}
+		return hashes[id];
+	}
+
+	/**
+	 * @return the hashes numbered from the given id on, in id order
+	 */
+	public synchronized int[] getHashes(int from) {
+		int[] b = new int[Math.max(0, size - from)];
+		System.arraycopy(hashes, from, b, 0, b.length);
+		return b;
+	}
+
+	public synchronized int getSize() {
+		return size;
+	}
+}
@@ -47,26 +47,41 @@ abstract public class Step implements Comparable<Step> {
 	abstract public Step read(DataInputX in) throws IOException;
 
 	public static byte[] toBytes(Step[] p) {
+		if (p == null)
+			return null;
+		return toBytes(p, 0, p.length);
+	}
+
+	public static byte[] toBytes(Step[] p, int offset, int length) {
 		if (p == null)
 			return null;
 		try {
-			DataOutputX dout = new DataOutputX(p.length * 30);
-			for (int i = 0; i < p.length; i++) {
-				if (p[i] instanceof ThreadCallPossibleStep) {
-					ThreadCallPossibleStep tstep = (ThreadCallPossibleStep) p[i];
-					if (tstep.threaded != 1 && tstep.isIgnoreIfNoThreaded) {
-						//skip
-					} else {
-						dout.writeStep(p[i]);
-					}
+			DataOutputX dout = new DataOutputX(length * 30);
+			write(dout, p, offset, length);
+			return dout.toByteArray();
+		} catch (IOException e) {
+		}
+		return null;
+	}
+
+	/**
+	 * writes p[offset .. offset+length) to the given output without copying the range.
+	 * thread call steps that never went to another thread are skipped.
+	 */
+	public static void write(DataOutputX dout, Step[] p, int offset, int length) throws IOException {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (p[i] instanceof ThreadCallPossibleStep) {
+				ThreadCallPossibleStep tstep = (ThreadCallPossibleStep) p[i];
+				if (tstep.threaded != 1 && tstep.isIgnoreIfNoThreaded) {
+					//skip
 				} else {
 					dout.writeStep(p[i]);
 				}
+			} else {
+				dout.writeStep(p[i]);
 			}
-			return dout.toByteArray();
-		} catch (IOException e) {
 		}
-		return null;
 	}
 
 	public static byte[] toBytes(List<Step> p) {
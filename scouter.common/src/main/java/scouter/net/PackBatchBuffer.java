@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.net;
+
+import scouter.io.ByteBufferOutputStream;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.Pack;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable udp datagram of packs.
+ * Packs are serialized straight into the buffer behind a CAFE_N header, the count is patched in when the datagram is taken.
+ * A datagram of a single pack goes out with the CAFE header, the same as a pack sent alone.
+ */
+public class PackBatchBuffer {
+	private static final int HEADER_SIZE = NetCafe.CAFE_LENGTH + 2;
+
+	private final ByteBuffer buffer;
+	private final ByteBufferOutputStream stream;
+	private final DataOutputX out;
+	private int count;
+
+	public PackBatchBuffer(int maxBytes) {
+		this.buffer = ByteBuffer.allocate(Math.max(maxBytes, HEADER_SIZE + 1));
+		this.stream = new ByteBufferOutputStream(buffer);
+		this.out = new DataOutputX(new DataOutputStream(stream));
+		clear();
+	}
+
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public void clear() {
+		buffer.clear();
+		buffer.put(NetCafe.CAFE_N);
+		buffer.putShort((short) 0);
+		count = 0;
+	}
+
+	/**
+	 * @return false if the pack does not fit in the rest of the datagram, the buffer is left as it was
+	 */
+	public boolean add(Pack p) throws IOException {
+		int position = buffer.position();
+		out.writePack(p);
+		if (stream.isOverflow() || count == Short.MAX_VALUE) {
+			stream.rollback(position);
+			return false;
+		}
+		count++;
+		return true;
+	}
+
+	/**
+	 * @return false if the bytes do not fit in the rest of the datagram
+	 */
+	public boolean add(byte[] pack) {
+		if (buffer.remaining() < pack.length || count == Short.MAX_VALUE) {
+			return false;
+		}
+		buffer.put(pack);
+		count++;
+		return true;
+	}
+
+	/**
+	 * the datagram to send. call clear() before adding packs again.
+	 */
+	public ByteBuffer getDatagram() {
+		buffer.flip();
+		if (count == 1) {
+			buffer.position(HEADER_SIZE - NetCafe.CAFE_LENGTH);
+			buffer.mark();
+			buffer.put(NetCafe.CAFE);
+			buffer.reset();
+		} else {
+			buffer.putShort(NetCafe.CAFE_LENGTH, (short) count);
+		}
+		return buffer;
+	}
+}
@@ -115,6 +115,7 @@ public class RequestCmd {
 	public static final String TRANX_LOAD_TIME_GROUP_V2 = "TRANX_LOAD_TIME_GROUP_V2";
 	public static final String QUICKSEARCH_XLOG_LIST = "QUICKSEARCH_XLOG_LIST";
 	public static final String SEARCH_XLOG_LIST = "SEARCH_XLOG_LIST";
+	public static final String SERVICE_LATENCY_PERCENTILE = "SERVICE_LATENCY_PERCENTILE";
 
 	// /////////////////////////////////////
 	public static final String COUNTER_PAST_TIME = "COUNTER_PAST_TIME";
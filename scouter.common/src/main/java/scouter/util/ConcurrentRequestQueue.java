@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * The ring algorithm is from Dmitry Vyukov's "Bounded MPMC queue"
+ */
+package scouter.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, array-backed multi producer / multi consumer queue with the same API as {@link RequestQueue}.
+ * put and get never take a lock. A monitor is used only to park consumers while the queue is empty,
+ * and producers touch it only when a consumer is actually parked.
+ * The capacity is rounded up to a power of two.
+ */
+public class ConcurrentRequestQueue<V> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<V> buffer;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final Object lock = new Object();
+
+    public ConcurrentRequestQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive : " + capacity);
+        }
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.buffer = new AtomicReferenceArray<V>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    private boolean offer(V v) {
+        long pos = tail.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, v);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (dif < 0) {
+                return false;
+            }
+            pos = tail.get();
+        }
+    }
+
+    private V poll() {
+        long pos = head.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long dif = sequences.get(index) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    V v = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, pos + mask + 1);
+                    return v;
+                }
+            } else if (dif < 0) {
+                return null;
+            }
+            pos = head.get();
+        }
+    }
+
+    private void signal() {
+        if (waiters.get() > 0) {
+            synchronized (lock) {
+                lock.notify();
+            }
+        }
+    }
+
+    public V get() {
+        V v = poll();
+        if (v != null) {
+            return v;
+        }
+        synchronized (lock) {
+            waiters.incrementAndGet();
+            try {
+                while ((v = poll()) == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+        return v;
+    }
+
+    public V getNoWait() {
+        return poll();
+    }
+
+    public V get(long timeout) {
+        V v = poll();
+        if (v != null) {
+            return v;
+        }
+        long timeTo = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            waiters.incrementAndGet();
+            try {
+                while ((v = poll()) == null) {
+                    long time = timeTo - System.currentTimeMillis();
+                    if (time <= 0) {
+                        break;
+                    }
+                    try {
+                        lock.wait(time);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+        return v;
+    }
+
+    /**
+     * moves up to max elements into the buffer without waiting.
+     * @return the number of moved elements
+     */
+    public int drainTo(List<V> buffer, int max) {
+        int count = 0;
+        while (count < max) {
+            V v = poll();
+            if (v == null) {
+                break;
+            }
+            buffer.add(v);
+            count++;
+        }
+        return count;
+    }
+
+    public boolean putForce(V o) {
+        boolean ok = true;
+        while (offer(o) == false) {
+            poll();
+            ok = false;
+        }
+        signal();
+        return ok;
+    }
+
+    public boolean put(V o) {
+        if (offer(o)) {
+            signal();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean putNotifySingle(V o) {
+        return put(o);
+    }
+
+    public void clear() {
+        while (poll() != null) {
+        }
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return size > capacity ? capacity : (int) size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+}
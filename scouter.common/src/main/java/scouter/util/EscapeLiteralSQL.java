@@ -19,33 +19,37 @@ package scouter.util;
 
 /**
  * bugfix :  parse error for '*' by 2016.08.12 Paul S.J.Kim
+ *
+ * single pass over the char array. comments and quoted literals are copied in runs,
+ * the other characters go through a small state machine.
  */
 public class EscapeLiteralSQL {
 
-	static enum STAT {
-		NORMAL, COMMENT, ALPABET, NUMBER, QUTATION, COLON
-	};
+	private static final int NORMAL = 0;
+	private static final int COMMENT = 1;
+	private static final int ALPABET = 2;
+	private static final int NUMBER = 3;
+	private static final int QUTATION = 4;
+	private static final int COLON = 5;
 
 	private String substitute = "@";
 	private String substitute_num = "@";
 	private boolean substitute_str_mode = true;
 
-	private char[] chars;
-	private int pos;
-	private int length;
-	
+	private final char[] chars;
+	private final int length;
+
 	private int count;
 	private int comment_su;
-	
-	final StringBuffer parsedSql;
-	final StringBuffer param;
-	private STAT status;
+
+	final StringBuilder parsedSql;
+	final StringBuilder param;
 
 	public EscapeLiteralSQL(String sql) {
 		this.chars = sql.toCharArray();
 		this.length = this.chars.length;
-		this.parsedSql = new StringBuffer(this.length + 10);
-		this.param = new StringBuffer();
+		this.parsedSql = new StringBuilder(this.length + 16);
+		this.param = new StringBuilder();
 	}
 
 	public EscapeLiteralSQL setSubstitute(String chr) {
@@ -71,9 +75,44 @@ public class EscapeLiteralSQL {
 	}
 
 	public EscapeLiteralSQL process() {
-		status = STAT.NORMAL;
-		for (pos = 0; pos < chars.length; pos++) {
-			switch (chars[pos]) {
+		final char[] chars = this.chars;
+		final int length = this.length;
+		final StringBuilder sql = this.parsedSql;
+		final StringBuilder param = this.param;
+		int status = NORMAL;
+		int pos = 0;
+		while (pos < length) {
+			if (status == QUTATION) {
+				int end = indexOf(chars, '\'', pos, length);
+				param.append(chars, pos, end - pos);
+				if (end == length) {
+					break;
+				}
+				param.append('\'');
+				sql.append('\'').append(substitute).append('{').append(++count).append('}').append('\'');
+				status = NORMAL;
+				pos = end + 1;
+				continue;
+			}
+			if (status == COMMENT) {
+				int end = indexOf(chars, '*', pos, length);
+				sql.append(chars, pos, end - pos);
+				if (end == length) {
+					break;
+				}
+				sql.append('*');
+				pos = end + 1;
+				if (pos < length && chars[pos] == '/') {
+					sql.append('/');
+					pos++;
+					if (--comment_su == 0) {
+						status = NORMAL;
+					}
+				}
+				continue;
+			}
+			char c = chars[pos];
+			switch (c) {
 			case '0':
 			case '1':
 			case '2':
@@ -84,222 +123,115 @@ public class EscapeLiteralSQL {
 			case '7':
 			case '8':
 			case '9':
-				_number();
+				switch (status) {
+				case NORMAL:
+					if (param.length() > 0) {
+						param.append(',');
+					}
+					param.append(c);
+					sql.append(substitute_num).append('{').append(++count).append('}');
+					status = NUMBER;
+					break;
+				case NUMBER:
+					param.append(c);
+					break;
+				default:
+					sql.append(c);
+				}
 				break;
 			case ':':
-				_colon();
+				sql.append(c);
+				status = COLON;
 				break;
 			case '.':
-				_dot();
+				// a dot or a quote right after a colon and digits is dropped, as it always was
+				if (status == COLON) {
+					break;
+				}
+				if (status == NUMBER) {
+					param.append(c);
+				} else {
+					sql.append(c);
+					if (status == ALPABET) {
+						status = NORMAL;
+					}
+				}
 				break;
 			case '-':
-				_minus();
+				sql.append(c);
+				if (pos + 1 < length && chars[pos + 1] == '-') {
+					int end = indexOf(chars, '\n', pos + 1, length);
+					if (end < length) {
+						end++;
+					}
+					sql.append(chars, pos + 1, end - pos - 1);
+					pos = end - 1;
+				}
+				status = NORMAL;
 				break;
 			case '/':
-				_slash();
+				if (pos + 1 < length && chars[pos + 1] == '*') {
+					pos++;
+					comment_su++;
+					sql.append("/*");
+					status = COMMENT;
+				} else {
+					sql.append(c);
+					status = NORMAL;
+				}
 				break;
 			case '*':
-				_astar();
+				sql.append(c);
+				status = NORMAL;
 				break;
 			case '\'':
-				_qutation();
+				if (status == COLON) {
+					break;
+				}
+				if (status == NORMAL) {
+					if (param.length() > 0) {
+						param.append(',');
+					}
+					param.append(c);
+				} else {
+					sql.append(c);
+				}
+				status = QUTATION;
 				break;
 			default:
-				_others();
-			}
-		}
-		return this;
-	}
-
-	private void _others() {
-		// System.out.println("other=>'"+chars[pos]+"'  " +status);
-		switch (status) {
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			break;
-		case ALPABET:
-			parsedSql.append(chars[pos]);
-			if (isProgLetter(chars[pos]) == false) {
-				status = STAT.NORMAL;
-			}
-			break;
-		case NUMBER:
-			parsedSql.append(chars[pos]);
-			status = STAT.NORMAL;
-			break;
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
-		default:
-			if (isProgLetter(chars[pos])) {
-				status = STAT.ALPABET;
-			} else {
-				status = STAT.NORMAL;
-			}
-			parsedSql.append(chars[pos]);
-			break;
-		}
-	}
-
-	private boolean isProgLetter(char c) {
-		return Character.isLetter(c) || c == '_';
-	}
-
-	private void _colon() {
-		switch (status) {
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			break;
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
-		default:
-			parsedSql.append(chars[pos]);
-			status = STAT.COLON;
-			break;
-		}
-	}
-	private void _qutation() {
-		switch (status) {
-		case NORMAL:
-			if (param.length() > 0) {
-				param.append(",");
-			}
-			param.append(chars[pos]);
-			status = STAT.QUTATION;
-			break;
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			break;
-		case ALPABET:
-			parsedSql.append(chars[pos]);
-			status = STAT.QUTATION;
-			break;
-		case NUMBER:
-			parsedSql.append(chars[pos]);
-			status = STAT.QUTATION;
-			break;
-		case QUTATION:
-			param.append("'");
-			parsedSql.append('\'').append(substitute).append("{").append(++count).append("}").append('\'');
-			status = STAT.NORMAL;
-			break;
-		}
-	}
-
-	private void _astar() {
-		switch (status) {
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			if (getNext(pos) == '/') {
-				parsedSql.append('/');
-				pos++;
-				if(--comment_su == 0){
-					status = STAT.NORMAL;
-				}
-			}
-			break;
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
-		default:
-			parsedSql.append(chars[pos]);
-			status = STAT.NORMAL;
-		}
-	}
-
-	private void _slash() {
-		switch (status) {
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			break;
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
-		default:
-			if (getNext(pos) == '*') {
-				pos++;
-				comment_su++;
-				parsedSql.append("/*");
-				status = STAT.COMMENT;
-			} else {
-				parsedSql.append(chars[pos]);
-				status = STAT.NORMAL;
-			}
-		}
-	}
-
-	private void _minus() {
-		switch (status) {
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			break;
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
-		default:
-			if (getNext(pos) == '-') {
-				parsedSql.append(chars[pos]);
-				while (chars[pos] != '\n') {
-					pos++;
-					if (pos < length) {
-						parsedSql.append(chars[pos]);
-					} else {
-						break;
+				sql.append(c);
+				switch (status) {
+				case ALPABET:
+					if (isProgLetter(c) == false) {
+						status = NORMAL;
 					}
+					break;
+				case NUMBER:
+					status = NORMAL;
+					break;
+				default:
+					status = isProgLetter(c) ? ALPABET : NORMAL;
 				}
-			}else{
-				parsedSql.append(chars[pos]);
 			}
-			status = STAT.NORMAL;
-		}
-	}
-
-	private void _dot() {
-		switch (status) {
-		case NORMAL:
-			parsedSql.append(chars[pos]);
-			break;
-		case COMMENT:
-			parsedSql.append(chars[pos]);
-			break;
-		case ALPABET:
-			parsedSql.append(chars[pos]);
-			status = STAT.NORMAL;
-			break;
-		case NUMBER:
-			param.append(chars[pos]);
-			break;
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
+			pos++;
 		}
+		return this;
 	}
 
-	private void _number() {
-		switch (status) {
-		case NORMAL:
-			if(param.length() > 0){
-				param.append(",");
+	private static int indexOf(char[] chars, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (chars[i] == c) {
+				return i;
 			}
-			param.append(chars[pos]);
-			parsedSql.append(substitute_num).append("{").append(++count).append("}");
-			status = STAT.NUMBER;
-			break;
-		case COMMENT:
-		case COLON:
-		case ALPABET:
-			parsedSql.append(chars[pos]);
-			break;
-		case NUMBER:
-		case QUTATION:
-			param.append(chars[pos]);
-			break;
 		}
+		return to;
 	}
 
-	private char getNext(int x) {
-		return x < length ? chars[x + 1] : 0;
+	private static boolean isProgLetter(char c) {
+		if (c < 128) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+		}
+		return Character.isLetter(c);
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -64,6 +64,19 @@ public class HashUtil {
 		crc = crc ^ 0xffffffff;
 		return crc;
 	}
+	/**
+	 * 64 bit FNV-1a over the chars of the string.
+	 * for cache keys where a collision of the 32 bit hashes would return a wrong value.
+	 */
+	public static long hash64(String str) {
+		long h = 0xcbf29ce484222325L;
+		int len = str.length();
+		for (int i = 0; i < len; i++) {
+			h ^= str.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
 	public static long hashAddr(byte[] src) {
 		switch(src.length){
 			case 4:
@@ -0,0 +1,202 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.util;
+
+import java.io.IOException;
+
+/**
+ * LZ77 block compression in the token layout of the LZ4 block format, without the entropy stage of gzip.
+ * it is several times faster than {@link CompressUtil} in both directions at a lower ratio.
+ * <p>
+ * compressed bytes start with {@link #MAGIC} and the original length, so they can be told from gzip bytes.
+ */
+public class LZUtil {
+	public final static byte[] MAGIC = new byte[] { 'S', 'L', 'Z', 1 };
+
+	private final static int MIN_MATCH = 4;
+	private final static int LAST_LITERALS = 5;
+	private final static int MF_LIMIT = 12;
+	private final static int MAX_DISTANCE = 65535;
+	private final static int HASH_BITS = 14;
+
+	public static boolean isLZ(byte[] data) {
+		if (data == null || data.length < MAGIC.length + 4)
+			return false;
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (data[i] != MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+
+	public static byte[] compress(byte[] src) {
+		return compress(src, 0, src.length);
+	}
+
+	public static byte[] compress(byte[] src, int offset, int length) {
+		byte[] dst = new byte[MAGIC.length + 4 + length + length / 255 + 16];
+		System.arraycopy(MAGIC, 0, dst, 0, MAGIC.length);
+		writeInt(dst, MAGIC.length, length);
+		int dp = MAGIC.length + 4;
+
+		int end = offset + length;
+		int anchor = offset;
+		if (length >= MF_LIMIT + 1) {
+			int[] table = new int[1 << HASH_BITS];
+			int limit = end - MF_LIMIT;
+			int matchLimit = end - LAST_LITERALS;
+			int ip = offset + 1;
+			while (ip < limit) {
+				int seq = readInt(src, ip);
+				int h = hash(seq);
+				int ref = table[h] + offset;
+				table[h] = ip - offset;
+				if (ref >= ip || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+					ip += 1 + ((ip - anchor) >>> 6);
+					continue;
+				}
+				while (ip > anchor && ref > offset && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int len = MIN_MATCH;
+				while (ip + len < matchLimit && src[ip + len] == src[ref + len]) {
+					len++;
+				}
+				int token = dp;
+				dp = writeSequence(src, anchor, ip - anchor, dst, dp);
+				dst[dp++] = (byte) (ip - ref);
+				dst[dp++] = (byte) ((ip - ref) >>> 8);
+				dp = writeMatchLength(dst, dp, token, len - MIN_MATCH);
+				ip += len;
+				anchor = ip;
+				if (ip < limit) {
+					table[hash(readInt(src, ip - 2))] = ip - 2 - offset;
+				}
+			}
+		}
+		dp = writeSequence(src, anchor, end - anchor, dst, dp);
+		byte[] out = new byte[dp];
+		System.arraycopy(dst, 0, out, 0, dp);
+		return out;
+	}
+
+	public static byte[] decompress(byte[] data) throws IOException {
+		if (isLZ(data) == false)
+			throw new IOException("not a lz block");
+		int length = readInt(data, MAGIC.length);
+		byte[] dst = new byte[length];
+		int sp = MAGIC.length + 4;
+		int dp = 0;
+		try {
+			while (true) {
+				int token = data[sp++] & 0xff;
+				int lit = token >>> 4;
+				if (lit == 15) {
+					int b;
+					do {
+						b = data[sp++] & 0xff;
+						lit += b;
+					} while (b == 255);
+				}
+				System.arraycopy(data, sp, dst, dp, lit);
+				sp += lit;
+				dp += lit;
+				if (sp >= data.length)
+					break;
+				int distance = (data[sp] & 0xff) | ((data[sp + 1] & 0xff) << 8);
+				sp += 2;
+				int len = token & 0x0f;
+				if (len == 15) {
+					int b;
+					do {
+						b = data[sp++] & 0xff;
+						len += b;
+					} while (b == 255);
+				}
+				len += MIN_MATCH;
+				int ref = dp - distance;
+				if (distance == 0 || ref < 0)
+					throw new IOException("corrupted lz block");
+				if (distance >= len) {
+					System.arraycopy(dst, ref, dst, dp, len);
+					dp += len;
+				} else {
+					for (int i = 0; i < len; i++) {
+						dst[dp++] = dst[ref++];
+					}
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("corrupted lz block");
+		}
+		if (dp != length)
+			throw new IOException("corrupted lz block");
+		return dst;
+	}
+
+	private static int writeSequence(byte[] src, int from, int lit, byte[] dst, int dp) {
+		int token = dp++;
+		if (lit >= 15) {
+			dst[token] = (byte) (15 << 4);
+			int n = lit - 15;
+			while (n >= 255) {
+				dst[dp++] = (byte) 255;
+				n -= 255;
+			}
+			dst[dp++] = (byte) n;
+		} else {
+			dst[token] = (byte) (lit << 4);
+		}
+		System.arraycopy(src, from, dst, dp, lit);
+		return dp + lit;
+	}
+
+	/**
+	 * the match length goes to the low bits of the token written by writeSequence.
+	 */
+	private static int writeMatchLength(byte[] dst, int dp, int token, int len) {
+		if (len >= 15) {
+			dst[token] |= 15;
+			int n = len - 15;
+			while (n >= 255) {
+				dst[dp++] = (byte) 255;
+				n -= 255;
+			}
+			dst[dp++] = (byte) n;
+		} else {
+			dst[token] |= len;
+		}
+		return dp;
+	}
+
+	private static int hash(int seq) {
+		return (seq * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+	}
+
+	private static void writeInt(byte[] b, int pos, int v) {
+		b[pos] = (byte) v;
+		b[pos + 1] = (byte) (v >>> 8);
+		b[pos + 2] = (byte) (v >>> 16);
+		b[pos + 3] = (byte) (v >>> 24);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.util;
+
+import scouter.io.DataInputX;
+import scouter.io.DataOutputX;
+
+import java.io.IOException;
+
+/**
+ * Log-linear histogram of non-negative long values in the HDR histogram layout.
+ * Values below 2^subBits have their own bucket. Above that, each power of two range is split into 2^(subBits-1) buckets,
+ * so the bucket of a value is narrower than value / 2^(subBits-1).
+ * Values greater than maxValue are counted in the last bucket.
+ * It is not thread safe. Concurrent recorders can keep the counts in their own arrays using {@link #indexOf(long)}
+ * and merge them with {@link #addCount(int, long)}.
+ */
+public class LogLinearHistogram {
+	private final int subBits;
+	private final int subCount;
+	private final int halfCount;
+	private final long maxValue;
+	private final long[] counts;
+	private long totalCount;
+
+	public LogLinearHistogram(int subBits, long maxValue) {
+		if (subBits < 2 || subBits > 16) {
+			throw new IllegalArgumentException("subBits must be 2..16 : " + subBits);
+		}
+		this.subBits = subBits;
+		this.subCount = 1 << subBits;
+		this.halfCount = subCount >> 1;
+		this.maxValue = Math.max(maxValue, subCount);
+		this.counts = new long[indexOf(this.maxValue) + 1];
+	}
+
+	public static int getBucketCount(int subBits, long maxValue) {
+		return new LogLinearHistogram(subBits, maxValue).counts.length;
+	}
+
+	public int getBucketCount() {
+		return counts.length;
+	}
+
+	public int indexOf(long value) {
+		if (value < 0) {
+			value = 0;
+		} else if (value > maxValue) {
+			value = maxValue;
+		}
+		if (value < subCount) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (subBits - 1);
+		int sub = (int) (value >>> shift);
+		return subCount + (shift - 1) * halfCount + (sub - halfCount);
+	}
+
+	public long lowerBound(int index) {
+		if (index < subCount) {
+			return index;
+		}
+		int shift = (index - subCount) / halfCount + 1;
+		int sub = (index - subCount) % halfCount + halfCount;
+		return ((long) sub) << shift;
+	}
+
+	public long upperBound(int index) {
+		if (index < subCount) {
+			return index;
+		}
+		int shift = (index - subCount) / halfCount + 1;
+		return lowerBound(index) + (1L << shift) - 1;
+	}
+
+	public void record(long value) {
+		counts[indexOf(value)]++;
+		totalCount++;
+	}
+
+	public void addCount(int index, long count) {
+		counts[index] += count;
+		totalCount += count;
+	}
+
+	public void add(LogLinearHistogram other) {
+		if (other.subBits != subBits || other.counts.length != counts.length) {
+			throw new IllegalArgumentException("different histogram layout");
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @param percentile 0 ~ 100
+	 * @return the middle of the bucket which has the value at the percentile, 0 if empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(totalCount * Math.min(percentile, 100.0) / 100.0);
+		if (target < 1) {
+			target = 1;
+		}
+		long sum = 0;
+		for (int i = 0; i < counts.length; i++) {
+			sum += counts[i];
+			if (sum >= target) {
+				return (lowerBound(i) + upperBound(i)) >>> 1;
+			}
+		}
+		return maxValue;
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = 0;
+		}
+		totalCount = 0;
+	}
+
+	/**
+	 * layout and non-empty buckets as (index, count) pairs
+	 */
+	public byte[] toBytes() throws IOException {
+		DataOutputX out = new DataOutputX();
+		out.writeByte(subBits);
+		out.writeDecimal(maxValue);
+		int used = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0)
+				used++;
+		}
+		out.writeDecimal(used);
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				out.writeDecimal(i);
+				out.writeDecimal(counts[i]);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	public static LogLinearHistogram fromBytes(byte[] bytes) throws IOException {
+		DataInputX in = new DataInputX(bytes);
+		LogLinearHistogram h = new LogLinearHistogram(in.readByte(), in.readDecimal());
+		int used = (int) in.readDecimal();
+		for (int i = 0; i < used; i++) {
+			h.addCount((int) in.readDecimal(), in.readDecimal());
+		}
+		return h;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, array-backed multi producer / single consumer queue.
+ * Producers claim a slot with a CAS on the tail and never block; a full queue rejects the element and counts the drop.
+ * Only one thread may take elements. It parks in {@link #await(int, long)} and is unparked by a producer
+ * when the queue reaches the size it waits for.
+ * The capacity is rounded up to a power of two.
+ */
+public class MpscQueue<V> {
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<V> buffer;
+
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile Thread waiter;
+	private volatile int wakeupSize = 1;
+
+	public MpscQueue(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive : " + capacity);
+		}
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+		this.buffer = new AtomicReferenceArray<V>(size);
+	}
+
+	/**
+	 * @return false if the queue is full
+	 */
+	public boolean offer(V v) {
+		if (v == null) {
+			throw new NullPointerException();
+		}
+		long t;
+		do {
+			t = tail.get();
+			if (t - head.get() >= capacity) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		} while (tail.compareAndSet(t, t + 1) == false);
+		buffer.lazySet((int) t & mask, v);
+
+		Thread w = waiter;
+		if (w != null && t + 1 - head.get() >= wakeupSize) {
+			LockSupport.unpark(w);
+		}
+		return true;
+	}
+
+	/**
+	 * consumer only.
+	 * @return null if the queue is empty
+	 */
+	public V poll() {
+		long h = head.get();
+		int index = (int) h & mask;
+		V v = buffer.get(index);
+		if (v == null) {
+			if (h == tail.get()) {
+				return null;
+			}
+			//a producer claimed the slot and is about to fill it
+			while ((v = buffer.get(index)) == null) {
+				Thread.yield();
+			}
+		}
+		buffer.lazySet(index, null);
+		head.lazySet(h + 1);
+		return v;
+	}
+
+	/**
+	 * consumer only. moves up to max elements into the array from the offset.
+	 * @return the number of moved elements
+	 */
+	public int drainTo(V[] out, int offset, int max) {
+		int count = 0;
+		while (count < max) {
+			V v = poll();
+			if (v == null) {
+				break;
+			}
+			out[offset + count] = v;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * consumer only. parks until the queue has at least the size or the timeout passes.
+	 * @return the size of the queue
+	 */
+	public int await(int size, long timeoutMillis) {
+		size = Math.max(1, Math.min(size, capacity));
+		int current = size();
+		if (current >= size || timeoutMillis <= 0) {
+			return current;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		wakeupSize = size;
+		waiter = Thread.currentThread();
+		try {
+			while ((current = size()) < size) {
+				long remain = deadline - System.nanoTime();
+				if (remain <= 0) {
+					break;
+				}
+				LockSupport.parkNanos(this, remain);
+			}
+		} finally {
+			waiter = null;
+		}
+		return current;
+	}
+
+	public int size() {
+		long size = tail.get() - head.get();
+		if (size < 0) {
+			return 0;
+		}
+		return size > capacity ? capacity : (int) size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * count of the elements rejected because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
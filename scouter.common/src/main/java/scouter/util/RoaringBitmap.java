@@ -0,0 +1,310 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.util;
+
+import scouter.io.DataInputX;
+import scouter.io.DataOutputX;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap of non-negative ints in the Roaring layout.
+ * Values are grouped by the high 16 bits. A group with up to 4096 values is kept as a sorted char array,
+ * and a bigger group is kept as a 65536 bit bitmap.
+ */
+public class RoaringBitmap {
+	private static final int ARRAY_MAX = 4096;
+	private static final int BITMAP_WORDS = 1024;
+
+	private char[] keys = new char[4];
+	/** char[] with cardinality in cards, or long[BITMAP_WORDS] */
+	private Object[] containers = new Object[4];
+	private int[] cards = new int[4];
+	private int size;
+
+	public void add(int value) {
+		char high = (char) (value >>> 16);
+		char low = (char) value;
+		int i = indexOf(high);
+		if (i < 0) {
+			i = -i - 1;
+			insertAt(i, high, new char[4], 0);
+		}
+		Object c = containers[i];
+		if (c instanceof long[]) {
+			long[] bits = (long[]) c;
+			long old = bits[low >>> 6];
+			bits[low >>> 6] = old | (1L << low);
+			if (old != bits[low >>> 6]) {
+				cards[i]++;
+			}
+			return;
+		}
+		char[] array = (char[]) c;
+		int card = cards[i];
+		int p;
+		if (card > 0 && array[card - 1] < low) {
+			p = -card - 1;
+		} else {
+			p = Arrays.binarySearch(array, 0, card, low);
+		}
+		if (p >= 0) {
+			return;
+		}
+		p = -p - 1;
+		if (card == ARRAY_MAX) {
+			long[] bits = toBits(array, card);
+			bits[low >>> 6] |= 1L << low;
+			containers[i] = bits;
+			cards[i] = card + 1;
+			return;
+		}
+		if (card == array.length) {
+			array = Arrays.copyOf(array, Math.min(ARRAY_MAX, card * 2));
+			containers[i] = array;
+		}
+		System.arraycopy(array, p, array, p + 1, card - p);
+		array[p] = low;
+		cards[i] = card + 1;
+	}
+
+	public boolean contains(int value) {
+		int i = indexOf((char) (value >>> 16));
+		if (i < 0) {
+			return false;
+		}
+		char low = (char) value;
+		Object c = containers[i];
+		if (c instanceof long[]) {
+			return (((long[]) c)[low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch((char[]) c, 0, cards[i], low) >= 0;
+	}
+
+	public int getCardinality() {
+		int sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += cards[i];
+		}
+		return sum;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+		RoaringBitmap out = new RoaringBitmap();
+		int i = 0, j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.keys[i] < b.keys[j]) {
+				i++;
+			} else if (a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				long[] bits = toBits(a.containers[i], a.cards[i]);
+				long[] other = toBits(b.containers[j], b.cards[j]);
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					bits[w] &= other[w];
+				}
+				out.appendBits(a.keys[i], bits);
+				i++;
+				j++;
+			}
+		}
+		return out;
+	}
+
+	public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+		RoaringBitmap out = new RoaringBitmap();
+		int i = 0, j = 0;
+		while (i < a.size || j < b.size) {
+			if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+				out.appendBits(a.keys[i], toBits(a.containers[i], a.cards[i]));
+				i++;
+			} else if (i >= a.size || a.keys[i] > b.keys[j]) {
+				out.appendBits(b.keys[j], toBits(b.containers[j], b.cards[j]));
+				j++;
+			} else {
+				long[] bits = toBits(a.containers[i], a.cards[i]);
+				long[] other = toBits(b.containers[j], b.cards[j]);
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					bits[w] |= other[w];
+				}
+				out.appendBits(a.keys[i], bits);
+				i++;
+				j++;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * values in ascending order
+	 */
+	public IntEnumer values() {
+		return new IntEnumer() {
+			int index = 0;
+			int pos = -1;
+			int next = advance();
+
+			private int advance() {
+				while (index < size) {
+					Object c = containers[index];
+					int high = keys[index] << 16;
+					if (c instanceof long[]) {
+						long[] bits = (long[]) c;
+						for (int b = pos + 1; b < 65536; b++) {
+							if ((bits[b >>> 6] & (1L << b)) != 0) {
+								pos = b;
+								return high | b;
+							}
+						}
+					} else if (pos + 1 < cards[index]) {
+						pos++;
+						return high | ((char[]) c)[pos];
+					}
+					index++;
+					pos = -1;
+				}
+				return -1;
+			}
+
+			public boolean hasMoreElements() {
+				return index < size;
+			}
+
+			public int nextInt() {
+				int v = next;
+				next = advance();
+				return v;
+			}
+		};
+	}
+
+	public byte[] toBytes() throws IOException {
+		DataOutputX out = new DataOutputX();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeShort(keys[i]);
+			out.writeInt(cards[i]);
+			Object c = containers[i];
+			if (c instanceof long[]) {
+				long[] bits = (long[]) c;
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					out.writeLong(bits[w]);
+				}
+			} else {
+				char[] array = (char[]) c;
+				for (int v = 0; v < cards[i]; v++) {
+					out.writeShort(array[v]);
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	public static RoaringBitmap fromBytes(byte[] bytes) throws IOException {
+		DataInputX in = new DataInputX(bytes);
+		RoaringBitmap out = new RoaringBitmap();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			char key = (char) in.readShort();
+			int card = in.readInt();
+			if (card > ARRAY_MAX) {
+				long[] bits = new long[BITMAP_WORDS];
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					bits[w] = in.readLong();
+				}
+				out.insertAt(out.size, key, bits, card);
+			} else {
+				char[] array = new char[Math.max(card, 4)];
+				for (int v = 0; v < card; v++) {
+					array[v] = (char) in.readShort();
+				}
+				out.insertAt(out.size, key, array, card);
+			}
+		}
+		return out;
+	}
+
+	private int indexOf(char high) {
+		if (size > 0 && keys[size - 1] == high) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(keys, 0, size, high);
+	}
+
+	private void insertAt(int i, char key, Object container, int card) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+			cards = Arrays.copyOf(cards, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(containers, i, containers, i + 1, size - i);
+		System.arraycopy(cards, i, cards, i + 1, size - i);
+		keys[i] = key;
+		containers[i] = container;
+		cards[i] = card;
+		size++;
+	}
+
+	/**
+	 * append a container made from the bits, converting it to an array if it is small enough.
+	 */
+	private void appendBits(char key, long[] bits) {
+		int card = 0;
+		for (int w = 0; w < BITMAP_WORDS; w++) {
+			card += Long.bitCount(bits[w]);
+		}
+		if (card == 0) {
+			return;
+		}
+		if (card > ARRAY_MAX) {
+			insertAt(size, key, bits, card);
+			return;
+		}
+		char[] array = new char[card];
+		int n = 0;
+		for (int w = 0; w < BITMAP_WORDS; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				int bit = Long.numberOfTrailingZeros(word);
+				array[n++] = (char) ((w << 6) + bit);
+				word &= word - 1;
+			}
+		}
+		insertAt(size, key, array, card);
+	}
+
+	private static long[] toBits(Object container, int card) {
+		if (container instanceof long[]) {
+			return ((long[]) container).clone();
+		}
+		return toBits((char[]) container, card);
+	}
+
+	private static long[] toBits(char[] array, int card) {
+		long[] bits = new long[BITMAP_WORDS];
+		for (int v = 0; v < card; v++) {
+			bits[array[v] >>> 6] |= 1L << array[v];
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.util;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent long key map with lock striping.
+ * The keys are split over stripes by hash and each stripe has its own lock for put and remove.
+ * get never takes a lock: chains are made of entries whose key and next are final, a removal copies the entries before the removed one,
+ * and a stripe's table is replaced as a whole when it grows.
+ * values() and keys() are weakly consistent; they never throw and see each entry that is not changed during the iteration exactly once.
+ */
+public class StripedLongKeyMap<V> {
+	private static final int DEFAULT_STRIPES = 16;
+	private static final int DEFAULT_STRIPE_CAPACITY = 16;
+
+	private final Stripe<V>[] stripes;
+	private final int stripeMask;
+
+	public StripedLongKeyMap() {
+		this(DEFAULT_STRIPES, DEFAULT_STRIPE_CAPACITY);
+	}
+
+	@SuppressWarnings("unchecked")
+	public StripedLongKeyMap(int stripeCount, int stripeCapacity) {
+		int n = 1;
+		while (n < stripeCount) {
+			n <<= 1;
+		}
+		int capacity = 2;
+		while (capacity < stripeCapacity) {
+			capacity <<= 1;
+		}
+		this.stripes = new Stripe[n];
+		this.stripeMask = n - 1;
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new Stripe<V>(capacity);
+		}
+	}
+
+	/**
+	 * keys like thread ids or sequential transaction ids are spread over all bits
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key ^ (int) (key >>> 32);
+	}
+
+	private Stripe<V> stripeFor(int hash) {
+		return stripes[(hash >>> 24) & stripeMask];
+	}
+
+	public int size() {
+		long sum = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			sum += stripes[i].count;
+		}
+		return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public V get(long key) {
+		int hash = hash(key);
+		return stripeFor(hash).get(key, hash);
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @return the previous value
+	 */
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int hash = hash(key);
+		return stripeFor(hash).put(key, hash, value);
+	}
+
+	/**
+	 * @return the removed value
+	 */
+	public V remove(long key) {
+		int hash = hash(key);
+		return stripeFor(hash).remove(key, hash);
+	}
+
+	public void clear() {
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i].clear();
+		}
+	}
+
+	public Enumeration<V> values() {
+		return new Enumer();
+	}
+
+	public LongEnumer keys() {
+		return new Enumer();
+	}
+
+	private static final class Entry<V> {
+		final long key;
+		final int hash;
+		volatile V value;
+		final Entry<V> next;
+
+		Entry(long key, int hash, V value, Entry<V> next) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+			this.next = next;
+		}
+	}
+
+	private static final class Stripe<V> {
+		volatile AtomicReferenceArray<Entry<V>> table;
+		volatile int count;
+
+		Stripe(int capacity) {
+			table = new AtomicReferenceArray<Entry<V>>(capacity);
+		}
+
+		V get(long key, int hash) {
+			AtomicReferenceArray<Entry<V>> tab = table;
+			Entry<V> e = tab.get(hash & (tab.length() - 1));
+			while (e != null) {
+				if (e.key == key) {
+					return e.value;
+				}
+				e = e.next;
+			}
+			return null;
+		}
+
+		synchronized V put(long key, int hash, V value) {
+			AtomicReferenceArray<Entry<V>> tab = table;
+			int index = hash & (tab.length() - 1);
+			Entry<V> first = tab.get(index);
+			for (Entry<V> e = first; e != null; e = e.next) {
+				if (e.key == key) {
+					V old = e.value;
+					e.value = value;
+					return old;
+				}
+			}
+			int c = count + 1;
+			if (c > tab.length() - (tab.length() >>> 2)) {
+				tab = rehash(tab);
+				index = hash & (tab.length() - 1);
+				first = tab.get(index);
+			}
+			tab.set(index, new Entry<V>(key, hash, value, first));
+			count = c;
+			return null;
+		}
+
+		synchronized V remove(long key, int hash) {
+			AtomicReferenceArray<Entry<V>> tab = table;
+			int index = hash & (tab.length() - 1);
+			Entry<V> first = tab.get(index);
+			Entry<V> e = first;
+			while (e != null && e.key != key) {
+				e = e.next;
+			}
+			if (e == null) {
+				return null;
+			}
+			Entry<V> chain = e.next;
+			for (Entry<V> p = first; p != e; p = p.next) {
+				chain = new Entry<V>(p.key, p.hash, p.value, chain);
+			}
+			tab.set(index, chain);
+			count = count - 1;
+			return e.value;
+		}
+
+		synchronized void clear() {
+			table = new AtomicReferenceArray<Entry<V>>(table.length());
+			count = 0;
+		}
+
+		private AtomicReferenceArray<Entry<V>> rehash(AtomicReferenceArray<Entry<V>> old) {
+			int length = old.length() << 1;
+			AtomicReferenceArray<Entry<V>> tab = new AtomicReferenceArray<Entry<V>>(length);
+			for (int i = 0; i < old.length(); i++) {
+				for (Entry<V> e = old.get(i); e != null; e = e.next) {
+					int index = e.hash & (length - 1);
+					tab.set(index, new Entry<V>(e.key, e.hash, e.value, tab.get(index)));
+				}
+			}
+			table = tab;
+			return tab;
+		}
+	}
+
+	private class Enumer implements Enumeration<V>, LongEnumer {
+		private int stripeIndex = -1;
+		private AtomicReferenceArray<Entry<V>> tab;
+		private int bucket;
+		private Entry<V> next;
+
+		Enumer() {
+			advance();
+		}
+
+		private void advance() {
+			if (next != null) {
+				next = next.next;
+			}
+			while (next == null) {
+				if (tab != null && bucket < tab.length()) {
+					next = tab.get(bucket++);
+				} else if (stripeIndex + 1 < stripes.length) {
+					tab = stripes[++stripeIndex].table;
+					bucket = 0;
+				} else {
+					return;
+				}
+			}
+		}
+
+		public boolean hasMoreElements() {
+			return next != null;
+		}
+
+		private Entry<V> nextEntry() {
+			Entry<V> e = next;
+			if (e == null) {
+				throw new NoSuchElementException("no more elements");
+			}
+			advance();
+			return e;
+		}
+
+		public V nextElement() {
+			return nextEntry().value;
+		}
+
+		public long nextLong() {
+			return nextEntry().key;
+		}
+	}
+}
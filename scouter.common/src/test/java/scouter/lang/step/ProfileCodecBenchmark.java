@@ -0,0 +1,67 @@
+package scouter.lang.step;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * the stored profile format, standard Step bytes versus ProfileCodec blocks, over a 500 step sample profile.
+ * decodeSteps is what a reader pays to get the steps, decodeBytes what the server pays to hand standard bytes to the client.
+ * main() prints bytes/step of both formats before running.
+ */
+@State(Scope.Thread)
+public class ProfileCodecBenchmark {
+    private static final int STEPS = 500;
+
+    private byte[] standard;
+    private byte[] block;
+    private ProfileDictionary dict;
+
+    @Setup
+    public void setUp() {
+        standard = Step.toBytes(ProfileCodecTest.sample(STEPS, 7));
+        dict = new ProfileDictionary();
+        block = ProfileCodec.encode(standard, dict);
+    }
+
+    @Benchmark
+    public Step[] standardDecode() throws IOException {
+        return Step.toObjects(standard);
+    }
+
+    @Benchmark
+    public Step[] codecDecodeSteps() throws IOException {
+        return ProfileCodec.decodeSteps(block, dict);
+    }
+
+    @Benchmark
+    public byte[] codecDecodeBytes() throws IOException {
+        return ProfileCodec.decode(block, dict);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return ProfileCodec.encode(standard, dict);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ProfileCodecBenchmark b = new ProfileCodecBenchmark();
+        b.setUp();
+        System.out.printf("standard %.2f bytes/step, codec %.2f bytes/step%n",
+                (double) b.standard.length / STEPS, (double) b.block.length / STEPS);
+        Options opt = new OptionsBuilder()
+                .include(ProfileCodecBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,146 @@
+package scouter.lang.step;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileCodecTest {
+
+    /**
+     * a profile shaped like the ones the agent sends : nested method calls, repeated sql and api calls
+     * with a small set of hashes, and a few steps the codec keeps in the standard format.
+     */
+    static Step[] sample(int size, long seed) {
+        Random r = new Random(seed);
+        Step[] steps = new Step[size];
+        int time = 0;
+        int cpu = 0;
+        for (int i = 0; i < size; i++) {
+            StepSingle s;
+            switch (r.nextInt(10)) {
+            case 0:
+            case 1:
+            case 2: {
+                MethodStep m = r.nextBoolean() ? new MethodStep() : new MethodStep2();
+                m.hash = 1000 + r.nextInt(40);
+                m.elapsed = r.nextInt(50);
+                m.cputime = r.nextInt(3) == 0 ? -1 : r.nextInt(10);
+                if (m instanceof MethodStep2 && r.nextInt(20) == 0) {
+                    ((MethodStep2) m).error = -12345;
+                }
+                s = m;
+                break;
+            }
+            case 3:
+            case 4:
+            case 5: {
+                SqlStep3 sql = new SqlStep3();
+                sql.hash = 2000 + r.nextInt(20);
+                sql.elapsed = r.nextInt(300);
+                sql.cputime = r.nextInt(5);
+                sql.param = r.nextBoolean() ? "" : "'" + r.nextInt(100000) + "',한글";
+                sql.xtype = (byte) r.nextInt(3);
+                sql.updated = r.nextInt(5) - 2;
+                s = sql;
+                break;
+            }
+            case 6: {
+                ApiCallStep api = r.nextBoolean() ? new ApiCallStep() : new ApiCallStep2();
+                api.txid = r.nextLong();
+                api.hash = 3000 + r.nextInt(5);
+                api.elapsed = r.nextInt(1000);
+                api.error = r.nextInt(10) == 0 ? Integer.MIN_VALUE : 0;
+                if (r.nextBoolean()) {
+                    api.opt = 1;
+                    api.address = "10.0.0." + r.nextInt(255) + ":8080";
+                }
+                if (api instanceof ApiCallStep2) {
+                    ((ApiCallStep2) api).async = (byte) r.nextInt(2);
+                }
+                s = api;
+                break;
+            }
+            case 7: {
+                HashedMessageStep h = new HashedMessageStep();
+                h.hash = 4000 + r.nextInt(3);
+                h.time = r.nextInt(10);
+                h.value = r.nextInt(100);
+                s = h;
+                break;
+            }
+            case 8: {
+                MessageStep msg = new MessageStep();
+                msg.message = "message " + r.nextInt(10);
+                s = msg;
+                break;
+            }
+            default: {
+                SqlStep2 old = new SqlStep2();
+                old.hash = 2000 + r.nextInt(20);
+                old.param = "1";
+                s = old;
+            }
+            }
+            s.index = i;
+            s.parent = i == 0 ? -1 : r.nextInt(i);
+            time += r.nextInt(20);
+            cpu += r.nextInt(3);
+            s.start_time = time;
+            s.start_cpu = cpu;
+            steps[i] = s;
+        }
+        return steps;
+    }
+
+    @Test
+    public void decode_gives_back_the_standard_bytes() throws IOException {
+        ProfileDictionary dict = new ProfileDictionary();
+        int standardSize = 0;
+        int blockSize = 0;
+        for (int seed = 0; seed < 50; seed++) {
+            byte[] standard = Step.toBytes(sample(1 + seed * 7, seed));
+            byte[] block = ProfileCodec.encode(standard, dict);
+            assertEquals(ProfileCodec.CODEC_V1, block[0]);
+            assertArrayEquals(standard, ProfileCodec.decode(block, dict));
+            standardSize += standard.length;
+            blockSize += block.length;
+        }
+        assertTrue(blockSize < standardSize);
+    }
+
+    @Test
+    public void dictionary_rebuilt_from_saved_hashes_decodes_the_block() throws IOException {
+        ProfileDictionary writer = new ProfileDictionary();
+        ProfileCodec.encode(Step.toBytes(sample(100, 1)), writer);
+        int saved = writer.getSize();
+        byte[] standard = Step.toBytes(sample(300, 2));
+        byte[] block = ProfileCodec.encode(standard, writer);
+
+        ProfileDictionary reader = new ProfileDictionary();
+        int[] hashes = writer.getHashes(0);
+        for (int i = 0; i < hashes.length; i++) {
+            reader.add(hashes[i]);
+        }
+        assertTrue(writer.getSize() >= saved);
+        assertArrayEquals(standard, ProfileCodec.decode(block, reader));
+    }
+
+    @Test
+    public void unparsable_profile_is_kept_raw() throws IOException {
+        byte[] junk = new byte[] { (byte) 120, 1, 2, 3 };
+        byte[] block = ProfileCodec.encode(junk, new ProfileDictionary());
+        assertEquals(ProfileCodec.RAW, block[0]);
+        assertArrayEquals(junk, ProfileCodec.decode(block, new ProfileDictionary()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown_dictionary_id_fails() throws IOException {
+        byte[] block = ProfileCodec.encode(Step.toBytes(sample(20, 3)), new ProfileDictionary());
+        ProfileCodec.decode(block, new ProfileDictionary());
+    }
+}
@@ -0,0 +1,79 @@
+package scouter.net;
+
+import org.junit.Test;
+import scouter.io.DataInputX;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.TextPack;
+import scouter.lang.pack.XLogPack;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackBatchBufferTest {
+
+    private static byte[] remaining(ByteBuffer b) {
+        byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        return bytes;
+    }
+
+    private static XLogPack xlog(int i) {
+        XLogPack p = new XLogPack();
+        p.txid = i;
+        p.service = i * 31;
+        p.elapsed = i;
+        return p;
+    }
+
+    @Test
+    public void batch_has_the_same_bytes_as_serialized_packs() throws Exception {
+        PackBatchBuffer buffer = new PackBatchBuffer(60000);
+        DataOutputX expected = new DataOutputX();
+        expected.write(NetCafe.CAFE_N);
+        expected.writeShort(10);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.add(xlog(i)));
+            expected.writePack(xlog(i));
+        }
+        assertArrayEquals(expected.toByteArray(), remaining(buffer.getDatagram()));
+    }
+
+    @Test
+    public void single_pack_is_sent_as_cafe() throws Exception {
+        PackBatchBuffer buffer = new PackBatchBuffer(60000);
+        assertTrue(buffer.add(new TextPack("sql", 7, "text")));
+        byte[] datagram = remaining(buffer.getDatagram());
+        assertEquals(NetCafe.UDP_CAFE, DataInputX.toInt(datagram, 0));
+        DataInputX in = new DataInputX(datagram);
+        in.readInt();
+        TextPack p = (TextPack) in.readPack();
+        assertEquals("text", p.text);
+    }
+
+    @Test
+    public void pack_over_the_rest_is_rolled_back() throws Exception {
+        PackBatchBuffer buffer = new PackBatchBuffer(200);
+        int added = 0;
+        while (buffer.add(xlog(added))) {
+            added++;
+        }
+        assertTrue(added > 0);
+        ByteBuffer datagram = buffer.getDatagram();
+        assertTrue(datagram.remaining() <= 200);
+        DataInputX in = new DataInputX(remaining(datagram));
+        assertEquals(NetCafe.UDP_CAFE_N, in.readInt());
+        assertEquals(added, in.readShort());
+        for (int i = 0; i < added; i++) {
+            assertEquals(i, ((XLogPack) in.readPack()).txid);
+        }
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertFalse(buffer.add(new TextPack("sql", 7, new String(new char[300]))));
+        assertTrue(buffer.add(xlog(1)));
+    }
+}
@@ -0,0 +1,83 @@
+package scouter.net;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.XLogPack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a datagram of 32 xlogs, built from byte arrays of each pack as before vs serialized into a reused PackBatchBuffer.
+ * run with main() from the test classpath, add -prof gc to see the allocation rate.
+ */
+@State(Scope.Thread)
+public class PackEncodeBenchmark {
+    private static final int PACKS = 32;
+
+    private XLogPack[] packs;
+    private PackBatchBuffer batch;
+
+    @Setup
+    public void setUp() {
+        packs = new XLogPack[PACKS];
+        for (int i = 0; i < PACKS; i++) {
+            XLogPack p = new XLogPack();
+            p.endTime = System.currentTimeMillis();
+            p.objHash = 0x12345678;
+            p.service = i * 7919;
+            p.txid = i * 104729L;
+            p.elapsed = i * 13;
+            p.ipaddr = new byte[] { 10, 0, 0, (byte) i };
+            p.sqlCount = i;
+            p.sqlTime = i * 3;
+            packs[i] = p;
+        }
+        batch = new PackBatchBuffer(60000);
+    }
+
+    @Benchmark
+    public byte[] byteArrays() throws IOException {
+        List<byte[]> list = new ArrayList<byte[]>();
+        for (int i = 0; i < PACKS; i++) {
+            list.add(new DataOutputX().writePack(packs[i]).toByteArray());
+        }
+        DataOutputX buffer = new DataOutputX();
+        for (int i = 0; i < list.size(); i++) {
+            buffer.write(list.get(i));
+        }
+        DataOutputX outter = new DataOutputX();
+        outter.write(NetCafe.CAFE_N);
+        outter.writeShort(list.size());
+        outter.write(buffer.toByteArray());
+        return outter.toByteArray();
+    }
+
+    @Benchmark
+    public ByteBuffer pooledBuffer() throws IOException {
+        batch.clear();
+        for (int i = 0; i < PACKS; i++) {
+            batch.add(packs[i]);
+        }
+        return batch.getDatagram();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PackEncodeBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,63 @@
+package scouter.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * gzip versus lz on a 1MB block of xlog like records, one op = one block.
+ * main() prints the compressed size of both before running.
+ */
+@State(Scope.Thread)
+public class BlockCompressBenchmark {
+    private byte[] block;
+    private byte[] gz;
+    private byte[] lz;
+
+    @Setup
+    public void setUp() throws IOException {
+        block = LZUtilTest.records(1024 * 1024, 3);
+        gz = CompressUtil.doZip(block);
+        lz = LZUtil.compress(block);
+    }
+
+    @Benchmark
+    public byte[] gzipCompress() throws IOException {
+        return CompressUtil.doZip(block);
+    }
+
+    @Benchmark
+    public byte[] gzipDecompress() throws IOException {
+        return CompressUtil.unZip(gz);
+    }
+
+    @Benchmark
+    public byte[] lzCompress() {
+        return LZUtil.compress(block);
+    }
+
+    @Benchmark
+    public byte[] lzDecompress() throws IOException {
+        return LZUtil.decompress(lz);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BlockCompressBenchmark b = new BlockCompressBenchmark();
+        b.setUp();
+        System.out.println("block " + b.block.length + " gzip " + b.gz.length + " lz " + b.lz.length);
+        Options opt = new OptionsBuilder()
+                .include(BlockCompressBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
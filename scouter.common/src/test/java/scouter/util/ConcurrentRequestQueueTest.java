@@ -0,0 +1,93 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentRequestQueueTest {
+
+    @Test
+    public void put_is_rejected_when_full() {
+        ConcurrentRequestQueue<Integer> queue = new ConcurrentRequestQueue<Integer>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.put(i));
+        }
+        assertFalse(queue.put(4));
+        assertEquals(4, queue.size());
+        assertEquals(Integer.valueOf(0), queue.getNoWait());
+    }
+
+    @Test
+    public void putForce_drops_oldest() {
+        ConcurrentRequestQueue<Integer> queue = new ConcurrentRequestQueue<Integer>(2);
+        queue.put(1);
+        queue.put(2);
+        assertFalse(queue.putForce(3));
+        assertEquals(Integer.valueOf(2), queue.getNoWait());
+        assertEquals(Integer.valueOf(3), queue.getNoWait());
+        assertNull(queue.getNoWait());
+    }
+
+    @Test
+    public void drainTo_moves_up_to_max() {
+        ConcurrentRequestQueue<Integer> queue = new ConcurrentRequestQueue<Integer>(16);
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+        }
+        List<Integer> buffer = new ArrayList<Integer>();
+        assertEquals(8, queue.drainTo(buffer, 8));
+        assertEquals(Integer.valueOf(7), buffer.get(7));
+        assertEquals(2, queue.drainTo(buffer, 8));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void get_with_timeout_returns_null_on_empty() {
+        ConcurrentRequestQueue<Integer> queue = new ConcurrentRequestQueue<Integer>(16);
+        assertNull(queue.get(10));
+    }
+
+    @Test
+    public void every_element_is_consumed_once_under_contention() throws Exception {
+        final ConcurrentRequestQueue<Long> queue = new ConcurrentRequestQueue<Long>(1024);
+        final int producers = 4;
+        final int consumers = 4;
+        final int perProducer = 50000;
+        final AtomicLong sum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(producers * perProducer);
+
+        for (int i = 0; i < consumers; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    while (true) {
+                        sum.addAndGet(queue.get());
+                        done.countDown();
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+        for (int i = 0; i < producers; i++) {
+            new Thread() {
+                public void run() {
+                    for (long v = 1; v <= perProducer; v++) {
+                        while (queue.put(v) == false) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(producers * ((long) perProducer * (perProducer + 1) / 2), sum.get());
+    }
+}
@@ -0,0 +1,55 @@
+package scouter.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * literal escaping over the corpus of EscapeLiteralSQLTest, one op = the whole corpus.
+ * hash64 is the cost of the cache key paid by every statement, cached or not.
+ * run with main() from the test classpath.
+ */
+@State(Scope.Thread)
+public class EscapeLiteralSQLBenchmark {
+    private String[] corpus;
+
+    @Setup
+    public void setUp() {
+        corpus = new String[EscapeLiteralSQLTest.CASES.length];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = EscapeLiteralSQLTest.CASES[i][0];
+        }
+    }
+
+    @Benchmark
+    public void escape(Blackhole bh) {
+        for (int i = 0; i < corpus.length; i++) {
+            EscapeLiteralSQL els = new EscapeLiteralSQL(corpus[i]).process();
+            bh.consume(els.getParsedSql());
+            bh.consume(els.getParameter());
+        }
+    }
+
+    @Benchmark
+    public void hash64(Blackhole bh) {
+        for (int i = 0; i < corpus.length; i++) {
+            bh.consume(HashUtil.hash64(corpus[i]));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(EscapeLiteralSQLBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
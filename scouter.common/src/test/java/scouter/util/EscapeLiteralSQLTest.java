@@ -0,0 +1,120 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class EscapeLiteralSQLTest {
+
+    /**
+     * sql, escaped sql, parameters
+     */
+    static final String[][] CASES = {
+            {"select  aa_1 ,( a - b)  as b from tab",
+                    "select  aa_1 ,( a - b)  as b from tab",
+                    ""},
+            {"select 1 / 2 from dual",
+                    "select @{1} / @{2} from dual",
+                    "1,2"},
+            {"select 1/2 /* 3/4 3 / 4*/ from dual",
+                    "select @{1}/@{2} /* 3/4 3 / 4*/ from dual",
+                    "1,2"},
+            {"SELECT u.id, u.name, u.email FROM users u WHERE u.id = 42 AND u.status = 'ACTIVE'",
+                    "SELECT u.id, u.name, u.email FROM users u WHERE u.id = @{1} AND u.status = '@{2}'",
+                    "42,'ACTIVE'"},
+            {"select * from orders where order_no = 'A-2019-0001' and amount > 1500.75 and created_at >= '2019-01-01 00:00:00'",
+                    "select * from orders where order_no = '@{1}' and amount > @{2} and created_at >= '@{3}'",
+                    "'A-2019-0001',1500.75,'2019-01-01 00:00:00'"},
+            {"INSERT INTO audit_log (user_id, action, detail, created) VALUES (1024, 'LOGIN', 'ip=10.0.0.1', '2020-03-04 12:00:01')",
+                    "INSERT INTO audit_log (user_id, action, detail, created) VALUES (@{1}, '@{2}', '@{3}', '@{4}')",
+                    "1024,'LOGIN','ip=10.0.0.1','2020-03-04 12:00:01'"},
+            {"UPDATE account SET balance = balance - 300, version = version + 1 WHERE account_id = 9912 AND version = 7",
+                    "UPDATE account SET balance = balance - @{1}, version = version + @{2} WHERE account_id = @{3} AND version = @{4}",
+                    "300,1,9912,7"},
+            {"delete from cart_item where cart_id = 77 and item_id in (1, 2, 3, 4, 5, 6, 7, 8, 9, 10)",
+                    "delete from cart_item where cart_id = @{1} and item_id in (@{2}, @{3}, @{4}, @{5}, @{6}, @{7}, @{8}, @{9}, @{10}, @{11})",
+                    "77,1,2,3,4,5,6,7,8,9,10"},
+            {"select t.* from (select row_number() over (order by reg_date desc) rn, a.* from board a where a.board_type = 'NOTICE') t where rn between 11 and 20",
+                    "select t.* from (select row_number() over (order by reg_date desc) rn, a.* from board a where a.board_type = '@{1}') t where rn between @{2} and @{3}",
+                    "'NOTICE',11,20"},
+            {"select name from emp where name like '%O''Brien%' -- find irish names\n and dept = 10",
+                    "select name from emp where name like '@{1}''@{2}' -- find irish names\n and dept = @{3}",
+                    "'%O','Brien%',10"},
+            {"select /*+ INDEX(e emp_idx1) */ e.empno, e.ename from emp e where e.deptno = :deptno and e.sal > 2000",
+                    "select /*+ INDEX(e emp_idx1) */ e.empno, e.ename from emp e where e.deptno = :deptno and e.sal > @{1}",
+                    "2000"},
+            {"SELECT p.product_id, p.name, p.price FROM products p WHERE p.category_id = ? AND p.price BETWEEN ? AND ? ORDER BY p.price LIMIT 50",
+                    "SELECT p.product_id, p.name, p.price FROM products p WHERE p.category_id = ? AND p.price BETWEEN ? AND ? ORDER BY p.price LIMIT @{1}",
+                    "50"},
+            {"select col1, col2 from tab2 where col3 = 1e10 and col4 = -5 and col5 = .5",
+                    "select col1, col2 from tab2 where col3 = @{1}e@{2} and col4 = -@{3} and col5 = .@{4}",
+                    "1,10,5,5"},
+            {"select a.x1, b.y2 from t1 a join t2 b on a.id = b.t1_id where a.code in ('K01','K02','K03') and b.flag = 'Y'",
+                    "select a.x1, b.y2 from t1 a join t2 b on a.id = b.t1_id where a.code in ('@{1}','@{2}','@{3}') and b.flag = '@{4}'",
+                    "'K01','K02','K03','Y'"},
+            {"merge into stock s using (select 100 as item, 5 as qty from dual) d on (s.item = d.item) when matched then update set s.qty = s.qty - d.qty",
+                    "merge into stock s using (select @{1} as item, @{2} as qty from dual) d on (s.item = d.item) when matched then update set s.qty = s.qty - d.qty",
+                    "100,5"},
+            {"select count(*) from session_log where login_time > sysdate - 1/24 /* last hour */",
+                    "select count(*) from session_log where login_time > sysdate - @{1}/@{2} /* last hour */",
+                    "1,24"},
+            {"select '\ud55c\uae00 \uac12', \uceec\ub7fc1 from \ud14c\uc774\ube14 where \ubc88\ud638 = 3",
+                    "select '@{1}', \uceec\ub7fc1 from \ud14c\uc774\ube14 where \ubc88\ud638 = @{2}",
+                    "'\ud55c\uae00 \uac12',3"},
+            {"select id from t where a = 'x' /* nested /* comment */ still */ and b = 2",
+                    "select id from t where a = '@{1}' /* nested /* comment */ still */ and b = @{2}",
+                    "'x',2"},
+            {"SELECT * FROM events WHERE ts >= 1546300800000 AND ts < 1546387200000 AND type = 'click'",
+                    "SELECT * FROM events WHERE ts >= @{1} AND ts < @{2} AND type = '@{3}'",
+                    "1546300800000,1546387200000,'click'"},
+            {"call proc_update_stat(2019, 12, 'DAILY')",
+                    "call proc_update_stat(@{1}, @{2}, '@{3}')",
+                    "2019,12,'DAILY'"},
+            {"select 1 from dual where 1 = 1 and 'a' = 'a'",
+                    "select @{1} from dual where @{2} = @{3} and '@{4}' = '@{5}'",
+                    "1,1,1,'a','a'"},
+            {"",
+                    "",
+                    ""},
+            {"select a- b, c*d, e/f from g",
+                    "select a- b, c*d, e/f from g",
+                    ""},
+            {"select x from y where z = 'unterminated",
+                    "select x from y where z = ",
+                    "'unterminated"},
+    };
+
+    @Test
+    public void escapes_literals_of_the_corpus() {
+        for (String[] c : CASES) {
+            EscapeLiteralSQL els = new EscapeLiteralSQL(c[0]).process();
+            assertEquals(c[0], c[1], els.getParsedSql());
+            assertEquals(c[0], c[2], els.getParameter());
+        }
+    }
+
+    @Test
+    public void does_not_fail_on_a_trailing_operator() {
+        assertEquals("select @{1} -", new EscapeLiteralSQL("select 1 -").process().getParsedSql());
+        assertEquals("select a /", new EscapeLiteralSQL("select a /").process().getParsedSql());
+        assertEquals("select a /* x *", new EscapeLiteralSQL("select a /* x *").process().getParsedSql());
+        assertEquals("select a --", new EscapeLiteralSQL("select a --").process().getParsedSql());
+    }
+
+    @Test
+    public void number_substitute_follows_string_mode() {
+        EscapeLiteralSQL els = new EscapeLiteralSQL("select 1 from t where a = 'x'")
+                .setSubstitute("#").process();
+        assertEquals("select '#'{1} from t where a = '#{2}'", els.getParsedSql());
+        els = new EscapeLiteralSQL("select 1 from t").setSubstitute("#").setSubstituteStringMode(false).process();
+        assertEquals("select #{1} from t", els.getParsedSql());
+    }
+
+    @Test
+    public void hash64_separates_colliding_hash_codes() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(HashUtil.hash64("Aa"), HashUtil.hash64("BB"));
+        assertEquals(HashUtil.hash64("select 1"), HashUtil.hash64(new String("select 1")));
+    }
+}
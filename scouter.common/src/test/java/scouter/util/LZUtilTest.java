@@ -0,0 +1,75 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LZUtilTest {
+
+    /**
+     * bytes looking like a block of the compressed xlog store : records with repeated service names and small numbers.
+     */
+    static byte[] records(int size, long seed) {
+        Random r = new Random(seed);
+        byte[] b = new byte[size];
+        int pos = 0;
+        while (pos < size) {
+            String rec = "/api/v1/orders/" + r.nextInt(20) + "\u0000" + r.nextInt(1000) + "\u0001" + r.nextInt(256);
+            byte[] rb = rec.getBytes();
+            int n = Math.min(rb.length, size - pos);
+            System.arraycopy(rb, 0, b, pos, n);
+            pos += n;
+        }
+        return b;
+    }
+
+    @Test
+    public void round_trip() throws IOException {
+        Random r = new Random(1);
+        for (int t = 0; t < 2000; t++) {
+            int n = t < 64 ? t : r.nextInt(5000);
+            byte[] b = new byte[n];
+            switch (t % 3) {
+            case 0:
+                r.nextBytes(b);
+                break;
+            case 1:
+                for (int i = 0; i < n; i++) {
+                    b[i] = (byte) r.nextInt(3);
+                }
+                break;
+            default:
+                b = records(n, t);
+            }
+            byte[] c = LZUtil.compress(b);
+            assertTrue(LZUtil.isLZ(c));
+            assertArrayEquals(b, LZUtil.decompress(c));
+        }
+    }
+
+    @Test
+    public void long_runs_and_offset() throws IOException {
+        byte[] b = new byte[200000];
+        Arrays.fill(b, 1000, 150000, (byte) 7);
+        byte[] c = LZUtil.compress(b, 10, b.length - 10);
+        assertTrue(c.length < 2000);
+        assertArrayEquals(Arrays.copyOfRange(b, 10, b.length), LZUtil.decompress(c));
+    }
+
+    @Test
+    public void gzip_is_not_lz() throws IOException {
+        assertFalse(LZUtil.isLZ(CompressUtil.doZip(records(1000, 1))));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated_block_fails() throws IOException {
+        byte[] c = LZUtil.compress(records(10000, 2));
+        LZUtil.decompress(Arrays.copyOf(c, c.length / 2));
+    }
+}
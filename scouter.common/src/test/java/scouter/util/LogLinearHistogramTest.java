@@ -0,0 +1,53 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogLinearHistogramTest {
+
+    @Test
+    public void every_value_falls_in_its_bucket() {
+        LogLinearHistogram h = new LogLinearHistogram(6, 3600000);
+        for (long v = 0; v <= 3600000; v += (v < 1000 ? 1 : 37)) {
+            int index = h.indexOf(v);
+            assertTrue(h.lowerBound(index) <= v && v <= h.upperBound(index));
+            assertTrue(h.upperBound(index) - h.lowerBound(index) <= v / 32);
+        }
+        assertEquals(h.getBucketCount() - 1, h.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_are_within_bucket_error() {
+        Random random = new Random(3);
+        LogLinearHistogram a = new LogLinearHistogram(6, 3600000);
+        LogLinearHistogram b = new LogLinearHistogram(6, 3600000);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.abs(random.nextGaussian() * 300) + random.nextInt(20);
+            (i % 2 == 0 ? a : b).record(values[i]);
+        }
+        a.add(b);
+        Arrays.sort(values);
+        assertEquals(values.length, a.getTotalCount());
+        for (double pct : new double[] { 50, 90, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(values.length * pct / 100) - 1];
+            assertEquals(exact, a.getValueAtPercentile(pct), exact / 32.0 + 1);
+        }
+    }
+
+    @Test
+    public void bytes_round_trip() throws Exception {
+        LogLinearHistogram h = new LogLinearHistogram(4, 600000);
+        for (int i = 0; i < 1000; i++) {
+            h.record(i * i);
+        }
+        LogLinearHistogram copy = LogLinearHistogram.fromBytes(h.toBytes());
+        assertEquals(h.getTotalCount(), copy.getTotalCount());
+        assertEquals(h.getValueAtPercentile(90), copy.getValueAtPercentile(90));
+    }
+}
@@ -0,0 +1,88 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MpscQueueTest {
+
+    @Test
+    public void offer_is_rejected_and_counted_when_full() {
+        MpscQueue<Integer> queue = new MpscQueue<Integer>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertFalse(queue.offer(5));
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(6));
+    }
+
+    @Test
+    public void drainTo_moves_up_to_max_in_order() {
+        MpscQueue<Integer> queue = new MpscQueue<Integer>(16);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        Integer[] out = new Integer[8];
+        assertEquals(8, queue.drainTo(out, 0, 8));
+        assertEquals(Integer.valueOf(7), out[7]);
+        assertEquals(2, queue.drainTo(out, 0, 8));
+        assertEquals(Integer.valueOf(9), out[1]);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void await_returns_on_timeout_and_on_size() throws Exception {
+        final MpscQueue<Integer> queue = new MpscQueue<Integer>(16);
+        long start = System.currentTimeMillis();
+        assertEquals(0, queue.await(1, 50));
+        assertTrue(System.currentTimeMillis() - start >= 45);
+
+        new Thread() {
+            public void run() {
+                ThreadUtil.sleep(20);
+                for (int i = 0; i < 4; i++) {
+                    queue.offer(i);
+                }
+            }
+        }.start();
+        start = System.currentTimeMillis();
+        assertEquals(4, queue.await(4, 10000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void every_element_is_consumed_once_under_contention() throws Exception {
+        final MpscQueue<Long> queue = new MpscQueue<Long>(1024);
+        final int producers = 4;
+        final int perProducer = 50000;
+        for (int i = 0; i < producers; i++) {
+            new Thread() {
+                public void run() {
+                    for (long v = 1; v <= perProducer; v++) {
+                        while (queue.offer(v) == false) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }.start();
+        }
+        long sum = 0;
+        int count = 0;
+        Long[] out = new Long[64];
+        while (count < producers * perProducer) {
+            queue.await(32, 10);
+            int n = queue.drainTo(out, 0, out.length);
+            for (int k = 0; k < n; k++) {
+                sum += out[k];
+            }
+            count += n;
+        }
+        assertEquals(producers * ((long) perProducer * (perProducer + 1) / 2), sum);
+    }
+}
@@ -0,0 +1,72 @@
+package scouter.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * RequestQueue vs ConcurrentRequestQueue with 1, 4 and 16 producers against one consumer.
+ * run with main() from the test classpath.
+ */
+@State(Scope.Group)
+public class RequestQueueBenchmark {
+    private static final int CAPACITY = 8192;
+    private static final Object ITEM = new Object();
+
+    private RequestQueue<Object> lockQueue;
+    private ConcurrentRequestQueue<Object> ringQueue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        lockQueue = new RequestQueue<Object>(CAPACITY);
+        ringQueue = new ConcurrentRequestQueue<Object>(CAPACITY);
+    }
+
+    @Benchmark @Group("lock_p1") @GroupThreads(1)
+    public boolean lockPut1() { return lockQueue.put(ITEM); }
+    @Benchmark @Group("lock_p1") @GroupThreads(1)
+    public Object lockGet1() { return lockQueue.getNoWait(); }
+
+    @Benchmark @Group("lock_p4") @GroupThreads(4)
+    public boolean lockPut4() { return lockQueue.put(ITEM); }
+    @Benchmark @Group("lock_p4") @GroupThreads(1)
+    public Object lockGet4() { return lockQueue.getNoWait(); }
+
+    @Benchmark @Group("lock_p16") @GroupThreads(16)
+    public boolean lockPut16() { return lockQueue.put(ITEM); }
+    @Benchmark @Group("lock_p16") @GroupThreads(1)
+    public Object lockGet16() { return lockQueue.getNoWait(); }
+
+    @Benchmark @Group("ring_p1") @GroupThreads(1)
+    public boolean ringPut1() { return ringQueue.put(ITEM); }
+    @Benchmark @Group("ring_p1") @GroupThreads(1)
+    public Object ringGet1() { return ringQueue.getNoWait(); }
+
+    @Benchmark @Group("ring_p4") @GroupThreads(4)
+    public boolean ringPut4() { return ringQueue.put(ITEM); }
+    @Benchmark @Group("ring_p4") @GroupThreads(1)
+    public Object ringGet4() { return ringQueue.getNoWait(); }
+
+    @Benchmark @Group("ring_p16") @GroupThreads(16)
+    public boolean ringPut16() { return ringQueue.put(ITEM); }
+    @Benchmark @Group("ring_p16") @GroupThreads(1)
+    public Object ringGet16() { return ringQueue.getNoWait(); }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RequestQueueBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,78 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoaringBitmapTest {
+
+    private static RoaringBitmap of(TreeSet<Integer> values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int v : values) {
+            bitmap.add(v);
+        }
+        return bitmap;
+    }
+
+    private static TreeSet<Integer> random(Random random, int count, int bound) {
+        TreeSet<Integer> set = new TreeSet<Integer>();
+        while (set.size() < count) {
+            set.add(random.nextInt(bound));
+        }
+        return set;
+    }
+
+    private static void assertSame(TreeSet<Integer> expected, RoaringBitmap bitmap) {
+        assertEquals(expected.size(), bitmap.getCardinality());
+        IntEnumer values = bitmap.values();
+        for (int v : expected) {
+            assertTrue(values.hasMoreElements());
+            assertEquals(v, values.nextInt());
+        }
+        assertFalse(values.hasMoreElements());
+    }
+
+    @Test
+    public void add_and_contains_across_array_and_bitmap_containers() {
+        TreeSet<Integer> values = random(new Random(1), 20000, 200000);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int v : values.descendingSet()) {
+            bitmap.add(v);
+            bitmap.add(v);
+        }
+        assertSame(values, bitmap);
+        for (int i = 0; i < 200000; i += 7) {
+            assertEquals(values.contains(i), bitmap.contains(i));
+        }
+    }
+
+    @Test
+    public void and_or() {
+        Random random = new Random(2);
+        TreeSet<Integer> a = random(random, 30000, 300000);
+        TreeSet<Integer> b = random(random, 500, 300000);
+        b.addAll(a.headSet(10000));
+
+        TreeSet<Integer> and = new TreeSet<Integer>(a);
+        and.retainAll(b);
+        TreeSet<Integer> or = new TreeSet<Integer>(a);
+        or.addAll(b);
+
+        assertSame(and, RoaringBitmap.and(of(a), of(b)));
+        assertSame(or, RoaringBitmap.or(of(a), of(b)));
+        assertTrue(RoaringBitmap.and(of(a), new RoaringBitmap()).isEmpty());
+    }
+
+    @Test
+    public void serialize() throws Exception {
+        TreeSet<Integer> values = random(new Random(3), 10000, 100000);
+        values.add(Integer.MAX_VALUE);
+        assertSame(values, RoaringBitmap.fromBytes(of(values).toBytes()));
+        assertTrue(RoaringBitmap.fromBytes(new RoaringBitmap().toBytes()).isEmpty());
+    }
+}
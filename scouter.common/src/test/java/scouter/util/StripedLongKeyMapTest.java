@@ -0,0 +1,103 @@
+package scouter.util;
+
+import org.junit.Test;
+
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StripedLongKeyMapTest {
+
+    @Test
+    public void put_get_remove_across_growth() {
+        StripedLongKeyMap<String> map = new StripedLongKeyMap<String>(4, 2);
+        for (long k = 0; k < 5000; k++) {
+            assertNull(map.put(k * 7, "v" + k));
+        }
+        assertEquals(5000, map.size());
+        assertEquals("v10", map.put(70, "x"));
+        assertEquals("x", map.get(70));
+        for (long k = 0; k < 5000; k += 2) {
+            assertEquals(k == 10 ? "x" : "v" + k, map.remove(k * 7));
+        }
+        assertNull(map.remove(0));
+        assertEquals(2500, map.size());
+        assertFalse(map.containsKey(14));
+        assertTrue(map.containsKey(21));
+    }
+
+    @Test
+    public void values_and_keys_see_every_entry_once() {
+        StripedLongKeyMap<Long> map = new StripedLongKeyMap<Long>();
+        for (long k = 1; k <= 1000; k++) {
+            map.put(k, k);
+        }
+        Set<Long> seen = new HashSet<Long>();
+        Enumeration<Long> en = map.values();
+        while (en.hasMoreElements()) {
+            assertTrue(seen.add(en.nextElement()));
+        }
+        assertEquals(1000, seen.size());
+        LongEnumer keys = map.keys();
+        int count = 0;
+        while (keys.hasMoreElements()) {
+            assertTrue(seen.contains(keys.nextLong()));
+            count++;
+        }
+        assertEquals(1000, count);
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.values().hasMoreElements());
+    }
+
+    @Test
+    public void concurrent_start_end_with_iteration() throws Exception {
+        final StripedLongKeyMap<Long> map = new StripedLongKeyMap<Long>();
+        final int threads = 8;
+        final int rounds = 20000;
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final long base = t * 1000000L;
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < rounds; i++) {
+                        long key = base + (i % 200);
+                        map.put(key, key);
+                        if (map.get(key) != key) {
+                            errors.incrementAndGet();
+                        }
+                        if (i % 3 != 0) {
+                            map.remove(key);
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        while (done.getCount() > 0) {
+            Enumeration<Long> en = map.values();
+            while (en.hasMoreElements()) {
+                if (en.nextElement() == null) {
+                    errors.incrementAndGet();
+                }
+            }
+        }
+        done.await();
+        assertEquals(0, errors.get());
+        int expected = 0;
+        for (int i = 0; i < 200; i++) {
+            if (map.get(i) != null) {
+                expected++;
+            }
+        }
+        assertTrue(map.size() >= expected);
+    }
+}
@@ -0,0 +1,95 @@
+package scouter.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * start/end cost of the active transaction registry: LongKeyMap vs StripedLongKeyMap.
+ * 2048 transactions stay in flight while 8 threads put and remove their own keys
+ * and one thread enumerates the registry like the active service counter.
+ * run with main() from the test classpath.
+ */
+@State(Scope.Group)
+public class TraceRegistryBenchmark {
+    private static final int IN_FLIGHT = 2048;
+    private static final Object CTX = new Object();
+
+    private LongKeyMap<Object> lockMap;
+    private StripedLongKeyMap<Object> stripedMap;
+    private final AtomicLong ids = new AtomicLong(IN_FLIGHT);
+
+    @State(Scope.Thread)
+    public static class Key {
+        long base;
+
+        @Setup
+        public void setUp(TraceRegistryBenchmark b) {
+            base = b.ids.addAndGet(1000000L);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        lockMap = new LongKeyMap<Object>();
+        stripedMap = new StripedLongKeyMap<Object>();
+        for (long k = 0; k < IN_FLIGHT; k++) {
+            lockMap.put(k, CTX);
+            stripedMap.put(k, CTX);
+        }
+    }
+
+    private static int count(Enumeration<Object> en) {
+        int n = 0;
+        while (en.hasMoreElements()) {
+            en.nextElement();
+            n++;
+        }
+        return n;
+    }
+
+    @Benchmark @Group("lock") @GroupThreads(8)
+    public Object lockStartEnd(Key key) {
+        long k = key.base++;
+        lockMap.put(k, CTX);
+        return lockMap.remove(k);
+    }
+    @Benchmark @Group("lock") @GroupThreads(1)
+    public int lockActiveCount() {
+        synchronized (lockMap) {
+            return count(lockMap.values());
+        }
+    }
+
+    @Benchmark @Group("striped") @GroupThreads(8)
+    public Object stripedStartEnd(Key key) {
+        long k = key.base++;
+        stripedMap.put(k, CTX);
+        return stripedMap.remove(k);
+    }
+    @Benchmark @Group("striped") @GroupThreads(1)
+    public int stripedActiveCount() {
+        return count(stripedMap.values());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(TraceRegistryBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
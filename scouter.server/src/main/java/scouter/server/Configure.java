@@ -31,6 +31,8 @@ import scouter.server.support.telegraf.TgConfig;
 import scouter.server.support.telegraf.TgmConfig;
 import scouter.util.DateUtil;
 import scouter.util.FileUtil;
+import scouter.util.HashUtil;
+import scouter.util.IntSet;
 import scouter.util.StrMatch;
 import scouter.util.StringEnumer;
 import scouter.util.StringKeyLinkedMap;
@@ -209,6 +211,12 @@ public class Configure extends Thread {
 	public int net_udp_so_rcvbuf_size = 1024 * 1024 * 4;
 	@ConfigDesc("")
 	public int _net_udp_worker_thread_count = 3;
+	@ConfigDesc("Receive UDP with DatagramChannels and pooled buffers decoded in place.(restart required)")
+	public boolean net_udp_nio_enabled = false;
+	@ConfigDesc("Count of UDP sockets bound to the same port with SO_REUSEPORT in nio mode. it needs java 9+ on linux or mac.(restart required)")
+	public int net_udp_nio_socket_count = 1;
+	@ConfigDesc("Max count of pooled UDP receive buffers(net_udp_packet_buffer_size each) in nio mode.(restart required)")
+	public int net_udp_nio_buffer_pool_count = 256;
 	@ConfigDesc("TCP Thread Pool Size")
 	public int net_tcp_service_pool_size = 100;
 	@ConfigDesc("Activating Http Server")
@@ -274,15 +282,34 @@ public class Configure extends Thread {
 	@ConfigDesc("Zipkin Waiting time(ms) until stopped heartbeat of object is determined to be inactive")
 	public int object_zipkin_deadtime_ms = 180 * 1000;
 
+	//Alert
+	@ConfigDesc("Number of threads evaluating the alert rules.\n" +
+			"Counters are partitioned by their key, so the values of a counter are checked in order.(restart required)")
+	public int alert_rule_thread_count = 2;
+	@ConfigDesc("Queue size of each alert rule thread.(restart required)")
+	public int alert_rule_queue_size = 10000;
+
 	//Compress
 	@ConfigDesc("Activating XLog data in zip file")
 	public boolean compress_xlog_enabled = false;
 	@ConfigDesc("Activating profile data in zip file")
 	public boolean compress_profile_enabled = false;
+	@ConfigDesc("Store profile steps with the dictionary and delta encoding of the daily profile codec.\n" +
+			"Applied from the next daily profile file, the files written before are still readable.")
+	public boolean profile_codec_enabled = false;
+	@ConfigDesc("Block codec of the compressed XLog and profile data, gzip or lz.\n" +
+			"lz is several times faster with a lower ratio, the blocks of both codecs are readable")
+	public String compress_codec = "gzip";
+	@ConfigDesc("Load the next block in the background when a reader moves on to the next block of the compressed data")
+	public boolean compress_read_ahead_enabled = true;
 	@ConfigDesc("")
 	public int _compress_write_buffer_block_count = 3;
+	@ConfigDesc("Max blocks being compressed and saved at once, the writer waits for them beyond this")
+	public int _compress_write_inflight_block_count = 4;
 	@ConfigDesc("")
 	public int _compress_read_cache_block_count = 3;
+	@ConfigDesc("Max size(MB) of the uncompressed blocks in the read cache")
+	public int _compress_read_cache_max_mb = 128;
 	@ConfigDesc("")
 	public long _compress_read_cache_expired_ms = DateUtil.MILLIS_PER_MINUTE;
 	@ConfigDesc("")
@@ -356,6 +383,22 @@ public class Configure extends Thread {
 			"[warn] modified this will break the database files.\nbackup old database files before change values.(restart required)")
 	public int _mgr_kv_store_index_default_mb = 8;
 
+	@ConfigDesc("use memory mapped files for hash blocks and key files of the database index.\n" +
+			"the file format is not changed.(restart required)")
+	public boolean mgr_db_index_mmap_enabled = false;
+
+	@ConfigDesc("write xlog time index of a new day as time sorted blocks instead of 500ms bucket chains.\n" +
+			"days already written in the old format are read and appended as they are.")
+	public boolean xlog_time_index_sorted_enabled = false;
+
+	@ConfigDesc("write realtime counters of a new day also as compressed series by object and counter.\n" +
+			"a single counter chart of the day reads only its series instead of whole counter maps.")
+	public boolean counter_series_store_enabled = false;
+
+	@ConfigDesc("keep 1 minute, 5 minutes and 1 hour min/max/sum/count/last rollups of realtime counters.\n" +
+			"counter charts of a long range read the rollups instead of realtime counters or 5 minutes samples.")
+	public boolean counter_rollup_enabled = false;
+
 	@ConfigDesc("change default memory size of xlog txid/gxid index.(MB)" +
 			"[warn] modified this will break the database files.\nbackup old database files before change values.(restart required)")
 	public int _mgr_xlog_id_index_mb = 1;
@@ -375,12 +418,46 @@ public class Configure extends Thread {
 	//Span
 	@ConfigDesc("Span Queue Size")
 	public int span_queue_size = 1000;
+	@ConfigDesc("Number of threads encoding the span containers and their trace index entries.\n" +
+			"Containers are partitioned by gxid, each thread has a queue of span_queue_size.(restart required)")
+	public int span_core_thread_count = 2;
 
 	//XLog
 	@ConfigDesc("XLog Writer Queue Size")
 	public int xlog_queue_size = 10000;
+	@ConfigDesc("XLog core processing thread count.\n" +
+			"XLogs are partitioned by objHash, so the order of XLogs from an agent is kept.\n" +
+			"xlog_queue_size is divided by this value for each partition.(restart required)\n" +
+			"[warn] xlog plugins are called concurrently if this value is greater than 1.")
+	public int xlog_core_thread_count = 1;
+	@ConfigDesc("Activating group commit of the XLog writer.\n" +
+			"XLogs are appended to the data file in batches and indexed when the data file is flushed.(restart required)")
+	public boolean xlog_group_commit_enabled = false;
+	@ConfigDesc("Max XLog count of a group commit batch")
+	public int xlog_group_commit_max_count = 500;
+	@ConfigDesc("Max time(ms) to wait for more XLogs to fill a group commit batch")
+	public int xlog_group_commit_max_wait_ms = 10;
+	@ConfigDesc("Max time(ms) that XLogs can stay unflushed in group commit mode.\n" +
+			"XLogs are searchable from the database after they are flushed.")
+	public int xlog_group_commit_flush_interval_ms = 1000;
+	@ConfigDesc("Max unflushed bytes of XLog data in group commit mode")
+	public int xlog_group_commit_max_unflushed_bytes = 1024 * 1024;
+	@ConfigDesc("Write a columnar side file of XLog search fields(objHash, service, elapsed, error, ip, login, desc) for fast XLog search")
+	public boolean xlog_column_store_enabled = false;
+	@ConfigDesc("Write bitmap indexes of XLog by service, objHash, error and ip for XLog search and paged loading by objects")
+	public boolean xlog_bitmap_index_enabled = false;
+	@ConfigDesc("Number of days whose XLog bitmap indexes stay loaded in memory after a search")
+	public int xlog_bitmap_index_cache_days = 3;
+	@ConfigDesc("Number of threads running XLog search scans(restart required)")
+	public int xlog_query_scan_thread_count = 4;
+	@ConfigDesc("Keep a latency histogram of each service of each object type per minute for server side percentiles")
+	public boolean xlog_latency_sketch_enabled = false;
 	@ConfigDesc("Ignored time(ms) in retrieving XLog in real time")
 	public int xlog_realtime_lower_bound_ms = 0;
+	@ConfigDesc("Count of the latest XLogs kept for realtime XLog view.(restart required)")
+	public int xlog_realtime_cache_count = 20480;
+	@ConfigDesc("Off-heap memory size of the latest XLogs kept for realtime XLog view.(MB, restart required)")
+	public int xlog_realtime_cache_mb = 16;
 	@ConfigDesc("Ignored time(ms) in retrieving previous XLog")
 	public int xlog_pasttime_lower_bound_ms = 0;
 //	@ConfigDesc("Ignored profile time(ms) without saving")
@@ -389,6 +466,25 @@ public class Configure extends Thread {
 	//Profile
 	@ConfigDesc("Profile Writer Queue Size")
 	public int profile_queue_size = 1000;
+	@ConfigDesc("Activating tail based profile retention.\n" +
+			"Profiles wait for their XLog and are saved only if the XLog matches a profile_retention_* rule.")
+	public boolean profile_retention_enabled = false;
+	@ConfigDesc("Max time(ms) a profile waits for its XLog")
+	public int profile_retention_window_ms = 10000;
+	@ConfigDesc("Max memory(MB) of the profiles waiting for their XLog. the oldest ones are decided early over this size.")
+	public int profile_retention_max_mb = 64;
+	@ConfigDesc("Save the profile when its XLog doesn't arrive in profile_retention_window_ms")
+	public boolean profile_retention_orphan_enabled = true;
+	@ConfigDesc("Save the profile when the elapsed time(ms) of its XLog is greater than or equal to this value")
+	public int profile_retention_elapsed_ms = 1000;
+	@ConfigDesc("Save the profile when its XLog has an error")
+	public boolean profile_retention_error_enabled = true;
+	@ConfigDesc("Percentage(0~100) of the other profiles saved as samples")
+	public int profile_retention_sampling_rate = 1;
+	@ConfigDesc("Service names whose profiles are always saved")
+	@ConfigValueType(ValueType.COMMA_SEPARATED_VALUE)
+	public String profile_retention_services = "";
+	public IntSet profileRetentionServiceSet = new IntSet();
 
 	//GeoIP
 	@ConfigDesc("Activating IP-based city/country extraction")
@@ -421,6 +517,8 @@ public class Configure extends Thread {
 	public int input_telegraf_delta_counter_normalize_default_seconds = 30;
 	@ConfigDesc("Deprecated use the telegraf config view instead. This value may be ignored.")
 	public int telegraf_object_deadtime_ms = 35000;
+	@ConfigDesc("max size(KB) of a telegraf request body. a larger body is rejected before it is read.")
+	public int input_telegraf_max_body_kb = 1024;
 
     @ConfigDesc("[This option is just a sample. Change $measurement$ to your measurement name like $cpu$.]\n" +
 			"Telegraf http input of the $measurement$ enabled.\n" +
@@ -633,7 +731,34 @@ public class Configure extends Thread {
 
 	private void applyConfig() {
 		this.xlog_queue_size = getInt("xlog_queue_size", 10000);
+		this.span_core_thread_count = getInt("span_core_thread_count", 2);
+		this.xlog_core_thread_count = getInt("xlog_core_thread_count", 1);
+		this.xlog_group_commit_enabled = getBoolean("xlog_group_commit_enabled", false);
+		this.xlog_group_commit_max_count = getInt("xlog_group_commit_max_count", 500);
+		this.xlog_group_commit_max_wait_ms = getInt("xlog_group_commit_max_wait_ms", 10);
+		this.xlog_group_commit_flush_interval_ms = getInt("xlog_group_commit_flush_interval_ms", 1000);
+		this.xlog_group_commit_max_unflushed_bytes = getInt("xlog_group_commit_max_unflushed_bytes", 1024 * 1024);
+		this.xlog_column_store_enabled = getBoolean("xlog_column_store_enabled", false);
+		this.xlog_bitmap_index_enabled = getBoolean("xlog_bitmap_index_enabled", false);
+		this.xlog_bitmap_index_cache_days = getInt("xlog_bitmap_index_cache_days", 3);
+		this.xlog_query_scan_thread_count = getInt("xlog_query_scan_thread_count", 4);
+		this.xlog_latency_sketch_enabled = getBoolean("xlog_latency_sketch_enabled", false);
 		this.profile_queue_size = getInt("profile_queue_size", 1000);
+		this.profile_retention_enabled = getBoolean("profile_retention_enabled", false);
+		this.profile_retention_window_ms = getInt("profile_retention_window_ms", 10000);
+		this.profile_retention_max_mb = getInt("profile_retention_max_mb", 64);
+		this.profile_retention_orphan_enabled = getBoolean("profile_retention_orphan_enabled", true);
+		this.profile_retention_elapsed_ms = getInt("profile_retention_elapsed_ms", 1000);
+		this.profile_retention_error_enabled = getBoolean("profile_retention_error_enabled", true);
+		this.profile_retention_sampling_rate = getInt("profile_retention_sampling_rate", 1);
+		this.profile_retention_services = getValue("profile_retention_services", "");
+		IntSet serviceSet = new IntSet();
+		for (String service : StringUtil.split(profile_retention_services, ',')) {
+			if (StringUtil.isNotEmpty(service)) {
+				serviceSet.add(HashUtil.hash(service.trim()));
+			}
+		}
+		this.profileRetentionServiceSet = serviceSet;
 		this.log_tcp_action_enabled = getBoolean("log_tcp_action_enabled", false);
 
 		this.net_udp_listen_ip = getValue("net_udp_listen_ip", "0.0.0.0");
@@ -681,10 +806,17 @@ public class Configure extends Thread {
 		this.object_deadtime_ms = getInt("object_deadtime_ms", 8000);
 		this.object_inactive_alert_level = getInt("object_inactive_alert_level", 0);
 		this.object_zipkin_deadtime_ms = getInt("object_zipkin_deadtime_ms", 300 * 1000);
+		this.alert_rule_thread_count = getInt("alert_rule_thread_count", 2);
+		this.alert_rule_queue_size = getInt("alert_rule_queue_size", 10000);
 
 		this.compress_xlog_enabled = getBoolean("compress_xlog_enabled", false);
 		this.compress_profile_enabled = getBoolean("compress_profile_enabled", false);
+		this.profile_codec_enabled = getBoolean("profile_codec_enabled", false);
+		this.compress_codec = getValue("compress_codec", "gzip");
+		this.compress_read_ahead_enabled = getBoolean("compress_read_ahead_enabled", true);
 		this._compress_write_buffer_block_count = getInt("_compress_write_buffer_block_count", 3);
+		this._compress_write_inflight_block_count = getInt("_compress_write_inflight_block_count", 4);
+		this._compress_read_cache_max_mb = getInt("_compress_read_cache_max_mb", 128);
 		this._compress_dailycount_header_cache_size = getInt("_compress_dailycount_header_cache_size", 3);
 		this._compress_read_cache_block_count = getInt("_compress_read_cache_block_count", 3);
 		this._compress_read_cache_expired_ms = getLong("_compress_read_cache_expired_ms", DateUtil.MILLIS_PER_MINUTE);
@@ -724,6 +856,8 @@ public class Configure extends Thread {
 		this._auto_5m_sampling = getBoolean("_auto_5m_sampling", true);
 
 		this.xlog_realtime_lower_bound_ms = getInt("xlog_realtime_lower_bound_ms", 0);
+		this.xlog_realtime_cache_count = getInt("xlog_realtime_cache_count", 20480);
+		this.xlog_realtime_cache_mb = getInt("xlog_realtime_cache_mb", 16);
 		this.xlog_pasttime_lower_bound_ms = getInt("xlog_pasttime_lower_bound_ms", 0);
 		this.mgr_purge_enabled = getBoolean("mgr_purge_enabled", true);
 		this.mgr_purge_disk_usage_pct = getInt("mgr_purge_disk_usage_pct", 80);
@@ -753,11 +887,18 @@ public class Configure extends Thread {
 
 		this._mgr_kv_store_index_default_mb = getInt("_mgr_kv_store_index_default_mb", 8);
 		this._mgr_xlog_id_index_mb = getInt("_mgr_xlog_id_index_mb", 1);
+		this.mgr_db_index_mmap_enabled = getBoolean("mgr_db_index_mmap_enabled", false);
+		this.xlog_time_index_sorted_enabled = getBoolean("xlog_time_index_sorted_enabled", false);
+		this.counter_series_store_enabled = getBoolean("counter_series_store_enabled", false);
+		this.counter_rollup_enabled = getBoolean("counter_rollup_enabled", false);
 
 		this.ext_link_name = getValue("ext_link_name", "scouter-paper");
 		this.ext_link_url_pattern = getValue("ext_link_url_pattern", "http://my-scouter-paper-ip:6188/index.html#/paper?&address=localhost&port=6188&realtime=false&xlogElapsedTime=8000&instances=$[objHashes]&from=$[from]&to=$[to]&layout=my-layout-template-01");
 
 		this._net_udp_worker_thread_count = getInt("_net_udp_worker_thread_count", 3);
+		this.net_udp_nio_enabled = getBoolean("net_udp_nio_enabled", false);
+		this.net_udp_nio_socket_count = getInt("net_udp_nio_socket_count", 1);
+		this.net_udp_nio_buffer_pool_count = getInt("net_udp_nio_buffer_pool_count", 256);
 		this.geoip_data_city_file = getValue("geoip_data_city_file", CONF_DIR + "GeoLiteCity.dat");
 		this.geoip_enabled = getBoolean("geoip_enabled", true);
 
@@ -781,6 +922,7 @@ public class Configure extends Thread {
 		this.input_telegraf_delta_counter_normalize_default_seconds = getInt("input_telegraf_delta_counter_normalize_default_seconds", 30);
 
         this.telegraf_object_deadtime_ms = getInt("telegraf_object_deadtime_ms", 35000);
+		this.input_telegraf_max_body_kb = getInt("input_telegraf_max_body_kb", 1024);
 
 		this.input_telegraf_$measurement$_enabled = getBoolean("input_telegraf_$measurement$_enabled", true);
 		this.input_telegraf_$measurement$_debug_enabled = getBoolean("input_telegraf_$measurement$_debug_enabled", false);
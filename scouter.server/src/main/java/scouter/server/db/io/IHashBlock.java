@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.server.db.io;
+
+import java.io.IOException;
+
+/**
+ * hash bucket table of an index file. a bucket keeps the position of the last key record of the hash chain.
+ */
+public interface IHashBlock {
+	public long get(int keyHash) throws IOException;
+
+	public void put(int keyHash, long value) throws IOException;
+
+	public int getCount();
+
+	public void close();
+}
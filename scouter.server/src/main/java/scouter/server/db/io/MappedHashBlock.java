@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+package scouter.server.db.io;
+
+import scouter.io.FlushCtr;
+import scouter.io.IFlushable;
+import scouter.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * memory mapped version of {@link MemHashBlock}. the file format is the same.
+ * buckets are updated in place and a flush writes only the dirty pages.
+ * reads take no lock, the buckets are split into stripes guarded by a sequence number
+ * so a reader retries when a writer of the same stripe was in the middle of a bucket update.
+ * the reader checks the sequence again with a compareAndSet keeping it, which orders its read
+ * before the increment of a following put.
+ * the mapping is released by the gc after close, a reader may still be in the buffer then.
+ */
+public class MappedHashBlock implements IHashBlock, IFlushable {
+	private final static int _countPos = 4;
+	private final static int _memHeadReserved = 1024;
+	private final static int _keyLength = 5;
+	private final static int STRIPES = 64;
+
+	protected File file;
+	protected RandomAccessFile raf;
+	protected MappedByteBuffer buffer;
+	protected int memBufferSize;
+
+	protected String path;
+	protected final AtomicInteger count = new AtomicInteger();
+	protected int capacity;
+
+	private final AtomicIntegerArray seq = new AtomicIntegerArray(STRIPES);
+	private final Object[] locks = new Object[STRIPES];
+	private volatile boolean dirty;
+
+	public MappedHashBlock(String path, int memSize) throws IOException {
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+		open(path, memSize);
+	}
+
+	private void open(String path, int memSize) throws IOException {
+		this.path = path;
+		this.memBufferSize = memSize;
+		this.file = new File(this.path + ".hfile");
+		boolean isNew = this.file.exists() == false || this.file.length() < _memHeadReserved;
+
+		this.raf = new RandomAccessFile(this.file, "rw");
+		if (isNew) {
+			this.raf.setLength(_memHeadReserved + memBufferSize);
+		} else {
+			this.memBufferSize = (int) (this.file.length() - _memHeadReserved);
+		}
+		this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, _memHeadReserved + memBufferSize);
+		if (isNew) {
+			this.buffer.put(0, (byte) 0xCA);
+			this.buffer.put(1, (byte) 0xFE);
+		} else {
+			this.count.set(this.buffer.getInt(_countPos));
+		}
+
+		this.capacity = (int) (memBufferSize / _keyLength);
+
+		FlushCtr.getInstance().regist(this);
+	}
+
+	private int _bucket(int keyHash) {
+		return (keyHash & Integer.MAX_VALUE) % capacity;
+	}
+
+	private int _offset(int bucketPos) {
+		return _keyLength * bucketPos + _memHeadReserved;
+	}
+
+	private long getLong5(int pos) {
+		return ((long) buffer.get(pos) << 32)
+				+ ((long) (buffer.get(pos + 1) & 255) << 24)
+				+ ((buffer.get(pos + 2) & 255) << 16)
+				+ ((buffer.get(pos + 3) & 255) << 8)
+				+ ((buffer.get(pos + 4) & 255));
+	}
+
+	private void putLong5(int pos, long v) {
+		buffer.put(pos, (byte) (v >>> 32));
+		buffer.put(pos + 1, (byte) (v >>> 24));
+		buffer.put(pos + 2, (byte) (v >>> 16));
+		buffer.put(pos + 3, (byte) (v >>> 8));
+		buffer.put(pos + 4, (byte) v);
+	}
+
+	public long get(int keyHash) throws IOException {
+		int bucket = _bucket(keyHash);
+		int stripe = bucket & (STRIPES - 1);
+		int pos = _offset(bucket);
+		while (true) {
+			int before = seq.get(stripe);
+			if ((before & 1) == 0) {
+				long value = getLong5(pos);
+				if (seq.compareAndSet(stripe, before, before)) {
+					return value;
+				}
+			}
+			Thread.yield();
+		}
+	}
+
+	public void put(int keyHash, long value) throws IOException {
+		int bucket = _bucket(keyHash);
+		int stripe = bucket & (STRIPES - 1);
+		int pos = _offset(bucket);
+		synchronized (locks[stripe]) {
+			seq.incrementAndGet(stripe);
+			if (getLong5(pos) == 0) {
+				buffer.putInt(_countPos, count.incrementAndGet());
+			}
+			putLong5(pos, value);
+			seq.incrementAndGet(stripe);
+		}
+		this.dirty = true;
+	}
+
+	public int getCount() {
+		return count.get();
+	}
+
+	public synchronized void flush() {
+		this.dirty = false;
+		if (this.buffer == null) {
+			return;
+		}
+		// puts of different stripes may have stored the count header out of order
+		this.buffer.putInt(_countPos, count.get());
+		this.buffer.force();
+	}
+
+	public long interval() {
+		return 4000;
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public synchronized void close() {
+		FlushCtr.getInstance().unregist(this);
+		MappedByteBuffer mapped = this.buffer;
+		if (mapped != null) {
+			this.buffer = null;
+			mapped.putInt(_countPos, count.get());
+			mapped.force();
+		}
+		FileUtil.close(this.raf);
+	}
+}
@@ -27,7 +27,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
-public class MemHashBlock implements IFlushable {
+public class MemHashBlock implements IHashBlock, IFlushable {
 	private final static int _countPos = 4;
 	private final static int _memHeadReserved = 1024;
 	private final static int _keyLength = 5;
@@ -105,7 +105,7 @@ public class Block {
 		return (long) END + ((long) blockNum) * GZipCtr.BLOCK_MAX_SIZE;
 	}
 
-	public byte[] getBlockBytes() {
+	public synchronized byte[] getBlockBytes() {
 		byte[] out = new byte[this.END-this.START];
 		System.arraycopy(this.buf, 0, out, 0, this.END-this.START);
 		return out;
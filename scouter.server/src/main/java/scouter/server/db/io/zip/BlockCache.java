@@ -0,0 +1,132 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.io.zip;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import scouter.server.core.ServerStat;
+
+/**
+ * LRU cache of the uncompressed blocks, bounded by the block count and the total bytes of the blocks.
+ * hits and misses are counted for the server stat.
+ */
+public class BlockCache {
+
+	private static class Entry {
+		final Block block;
+		final int size;
+		final long expireTime;
+
+		Entry(Block block, long expireTime) {
+			this.block = block;
+			this.size = block.END - block.START;
+			this.expireTime = expireTime;
+		}
+	}
+
+	private final LinkedHashMap<BKey, Entry> table = new LinkedHashMap<BKey, Entry>(16, 0.75f, true);
+	private int maxCount;
+	private long maxBytes;
+	private long bytes;
+
+	private long hit;
+	private long miss;
+
+	public BlockCache(int maxCount, long maxBytes) {
+		setMax(maxCount, maxBytes);
+	}
+
+	public synchronized void setMax(int maxCount, long maxBytes) {
+		this.maxCount = Math.max(1, maxCount);
+		this.maxBytes = Math.max(1, maxBytes);
+		evict();
+	}
+
+	public synchronized Block get(BKey key) {
+		Entry e = table.get(key);
+		if (e != null && e.expireTime < System.currentTimeMillis()) {
+			remove(key);
+			e = null;
+		}
+		if (e == null) {
+			miss++;
+			return null;
+		}
+		hit++;
+		return e.block;
+	}
+
+	/**
+	 * @return true if the block is cached, without touching its order or the hit count
+	 */
+	public synchronized boolean contains(BKey key) {
+		return table.containsKey(key);
+	}
+
+	public synchronized void put(BKey key, Block block, long keepMillis) {
+		Entry old = table.put(key, new Entry(block, System.currentTimeMillis() + keepMillis));
+		if (old != null) {
+			bytes -= old.size;
+		}
+		bytes += block.END - block.START;
+		evict();
+	}
+
+	public synchronized void remove(BKey key) {
+		Entry old = table.remove(key);
+		if (old != null) {
+			bytes -= old.size;
+		}
+	}
+
+	public synchronized void removeDate(String date) {
+		Iterator<Map.Entry<BKey, Entry>> it = table.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<BKey, Entry> e = it.next();
+			if (date.equals(e.getKey().date)) {
+				bytes -= e.getValue().size;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * the last block is kept even if it is larger than the byte limit,
+	 * the records of a block are read one by one.
+	 */
+	private void evict() {
+		Iterator<Entry> it = table.values().iterator();
+		while ((table.size() > maxCount || bytes > maxBytes) && table.size() > 1) {
+			bytes -= it.next().size;
+			it.remove();
+		}
+	}
+
+	public synchronized void publishStat() {
+		long total = hit + miss;
+		ServerStat.put("compress.cache.hit", hit);
+		ServerStat.put("compress.cache.miss", miss);
+		ServerStat.put("compress.cache.hit_rate", total == 0 ? 0 : hit * 100 / total);
+		ServerStat.put("compress.cache.block", table.size());
+		ServerStat.put("compress.cache.kb", bytes / 1024);
+		hit = 0;
+		miss = 0;
+	}
+}
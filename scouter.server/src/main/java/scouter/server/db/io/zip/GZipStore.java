@@ -78,6 +78,7 @@ public class GZipStore extends Thread implements IClose, IShutdown {
 					bk.lastAccessTime = System.currentTimeMillis();
 				}
 			}
+			IOChannel.getInstance().publishStat();
 			for (int i = 0; i < 100 && brun; i++) {
 				ThreadUtil.sleep(100);
 			}
@@ -177,6 +178,7 @@ public class GZipStore extends Thread implements IClose, IShutdown {
 	public void shutdown() {
 		this.brun = false;
 		close();
+		IOChannel.getInstance().shutdown();
 	}
 	public void close() {
 		this.flush();
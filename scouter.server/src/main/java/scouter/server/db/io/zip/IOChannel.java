@@ -16,19 +16,23 @@
  */
 package scouter.server.db.io.zip;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import scouter.server.ConfObserver;
 import scouter.server.Configure;
 import scouter.server.Logger;
-import scouter.util.CacheTable;
+import scouter.server.core.ServerStat;
 import scouter.util.CompressUtil;
 import scouter.util.FileUtil;
 import scouter.util.IShutdown;
+import scouter.util.LZUtil;
 import scouter.util.LinkedMap;
+import scouter.util.RequestQueue;
 import scouter.util.StopWatch;
+import scouter.util.ThreadUtil;
 public class IOChannel implements IShutdown {
 	private static IOChannel instance = null;
 	public final static synchronized IOChannel getInstance() {
@@ -40,9 +44,13 @@ public class IOChannel implements IShutdown {
 	public IOChannel() {
 		ConfObserver.put(IOChannel.class.getName(), new Runnable() {
 			public void run() {
-				readCache.setMaxRow(conf._compress_read_cache_block_count);
+				readCache.setMax(conf._compress_read_cache_block_count, conf._compress_read_cache_max_mb * 1024L * 1024L);
 			}
 		});
+		ReadAhead ra = new ReadAhead();
+		ra.setDaemon(true);
+		ra.setName(ThreadUtil.getName(ra));
+		ra.start();
 	}
 	private Configure conf = Configure.getInstance();
 	private LinkedMap<String, CountBoard> headers = new LinkedMap<String, CountBoard>();
@@ -95,15 +103,15 @@ public class IOChannel implements IShutdown {
 				readCache.put(new BKey(bk.date, bk.blockNum), bk, conf._compress_read_cache_expired_ms);
 			}
 			mgtime = (int) w2.getTime();
+		} else {
+			readCache.remove(new BKey(bk.date, bk.blockNum));
 		}
 		getCountBoard(bk.date).set(bk.getOffset());
 		try {
 			byte[] org = bk.getBlockBytes();
-			String date = bk.date;
-			int blockNum = bk.blockNum;
-			saveBlockBytes(getFile(date, blockNum), org);
-			// byte[] out = CompressUtil.doZip(org);
-			// FileUtil.save(getFile(date, blockNum), out);
+			Block snapshot = new Block(bk.date, org, bk.START, bk.START + org.length, bk.MAX);
+			snapshot.blockNum = bk.blockNum;
+			saveBlock(snapshot);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -127,52 +135,178 @@ public class IOChannel implements IShutdown {
 			}
 		});
 	}
-	protected static void saveBlockBytes(final File file, final byte[] block) {
-		exec.execute(new Runnable() {
-			public void run() {
+	/**
+	 * blocks handed to the write threads and not on the disk yet.
+	 * the readers take them from here, and only the latest snapshot of a block replaces the file.
+	 */
+	private final HashMap<BKey, StoreTask> storing = new HashMap<BKey, StoreTask>();
+	private long storeSeq;
+	private long storeWaitCount;
+	private void saveBlock(Block block) throws InterruptedException {
+		StoreTask task;
+		synchronized (storing) {
+			while (storing.size() >= Math.max(1, conf._compress_write_inflight_block_count)) {
+				storeWaitCount++;
+				storing.wait(1000);
+			}
+			task = new StoreTask(block, ++storeSeq);
+			storing.put(task.key, task);
+		}
+		exec.execute(task);
+	}
+	private Block getStoringBlock(BKey key) {
+		synchronized (storing) {
+			StoreTask task = storing.get(key);
+			return task == null ? null : task.block;
+		}
+	}
+	class StoreTask implements Runnable {
+		final BKey key;
+		final Block block;
+		final long seq;
+		StoreTask(Block block, long seq) {
+			this.key = new BKey(block.date, block.blockNum);
+			this.block = block;
+			this.seq = seq;
+		}
+		public void run() {
+			File file = getFile(block.date, block.blockNum);
+			File tmp = new File(file.getPath() + "." + seq + ".tmp");
+			boolean saved = false;
+			try {
+				byte[] org = block.getBlockBytes();
+				byte[] out = "lz".equalsIgnoreCase(conf.compress_codec) ? LZUtil.compress(org) : CompressUtil.doZip(org);
+				FileOutputStream fout = new FileOutputStream(tmp);
 				try {
-					byte[] out = CompressUtil.doZip(block);
-					FileUtil.save(file, out);
-				} catch (Exception e) {
-					Logger.println("S209", e.getMessage());
+					fout.write(out);
+				} finally {
+					FileUtil.close(fout);
 				}
+				saved = true;
+			} catch (Throwable e) {
+				Logger.println("S209", e.getMessage());
 			}
-		});
+			synchronized (storing) {
+				if (storing.get(key) == this) {
+					if (saved && tmp.renameTo(file) == false) {
+						file.delete();
+						tmp.renameTo(file);
+					}
+					storing.remove(key);
+				}
+				tmp.delete();
+				storing.notifyAll();
+			}
+		}
+	}
+	/**
+	 * waits for the blocks handed to the write threads.
+	 */
+	public boolean waitStored(long timeout) {
+		long timeTo = System.currentTimeMillis() + timeout;
+		synchronized (storing) {
+			while (storing.size() > 0) {
+				long time = timeTo - System.currentTimeMillis();
+				if (time <= 0)
+					return false;
+				try {
+					storing.wait(time);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+		}
+		return true;
 	}
 	private File getFile(String date, int blockNum) {
 		String filename = (GZipCtr.createPath(date) + "/xlog." + blockNum);
 		return new File(filename);
 	}
-	private CacheTable<BKey, Block> readCache = new CacheTable<BKey, Block>().setMaxRow(conf._compress_read_cache_block_count);
+	private BlockCache readCache = new BlockCache(conf._compress_read_cache_block_count, conf._compress_read_cache_max_mb * 1024L * 1024L);
 	public Block getReadBlock(String date, int blockNum) {
-		Block b = readCache.get(new BKey(date, blockNum));
-		if (b != null)
-			return b;
-		File f = getFile(date, blockNum);
+		BKey key = new BKey(date, blockNum);
+		Block b = readCache.get(key);
+		if (b == null) {
+			b = getStoringBlock(key);
+			if (b != null)
+				return b;
+			b = load(key);
+		}
+		if (b != null) {
+			readAhead(key);
+		}
+		return b;
+	}
+	private Block load(BKey key) {
+		File f = getFile(key.date, key.blockNum);
 		if (f.exists() == false)
 			return null;
 		try {
-			byte[] gz = FileUtil.readAll(f);
-			gz = CompressUtil.unZip(gz);
-			Block bk = new Block(date, gz, 0, gz.length, GZipCtr.BLOCK_MAX_SIZE);
-			bk.blockNum = blockNum;
-			readCache.put(new BKey(date, blockNum), bk, conf._compress_read_cache_expired_ms);
+			byte[] data = FileUtil.readAll(f);
+			data = LZUtil.isLZ(data) ? LZUtil.decompress(data) : CompressUtil.unZip(data);
+			Block bk = new Block(key.date, data, 0, data.length, GZipCtr.BLOCK_MAX_SIZE);
+			bk.blockNum = key.blockNum;
+			readCache.put(key, bk, conf._compress_read_cache_expired_ms);
 			return bk;
 		} catch (Throwable e) {
 			e.printStackTrace();
 		}
 		return null;
 	}
+	/**
+	 * the records of a time range are read in the order of their positions,
+	 * so when a reader moves on to the next block of a date, the block after it is loaded in the background.
+	 */
+	private HashMap<String, Integer> lastReadBlock = new HashMap<String, Integer>();
+	private RequestQueue<BKey> readAheadQueue = new RequestQueue<BKey>(16);
+	private long readAheadCount;
+	private void readAhead(BKey key) {
+		if (conf.compress_read_ahead_enabled == false)
+			return;
+		synchronized (lastReadBlock) {
+			Integer last = lastReadBlock.put(key.date, key.blockNum);
+			if (last == null || last.intValue() != key.blockNum - 1)
+				return;
+		}
+		BKey next = new BKey(key.date, key.blockNum + 1);
+		if (readCache.contains(next) == false) {
+			readAheadQueue.put(next);
+		}
+	}
+	class ReadAhead extends Thread {
+		public void run() {
+			while (true) {
+				BKey key = readAheadQueue.get();
+				try {
+					if (readCache.contains(key) || getStoringBlock(key) != null)
+						continue;
+					if (load(key) != null) {
+						readAheadCount++;
+					}
+				} catch (Throwable t) {
+					Logger.println("S240", 10, "read ahead " + key.date + " " + key.blockNum, t);
+				}
+			}
+		}
+	}
+	public void publishStat() {
+		readCache.publishStat();
+		synchronized (storing) {
+			ServerStat.put("compress.write.inflight", storing.size());
+			ServerStat.put("compress.write.wait", storeWaitCount);
+			storeWaitCount = 0;
+		}
+		ServerStat.put("compress.read_ahead", readAheadCount);
+		readAheadCount = 0;
+	}
 	public void shutdown() {
+		waitStored(10000);
 	}
 	public void close(String date) {
 		try {
-			Enumeration<BKey> en = readCache.keys();
-			while (en.hasMoreElements()) {
-				BKey k = en.nextElement();
-				if (date.equals(k.date)) {
-					readCache.remove(k);
-				}
+			readCache.removeDate(date);
+			synchronized (lastReadBlock) {
+				lastReadBlock.remove(date);
 			}
 		} catch (Throwable t) {
 			t.printStackTrace();
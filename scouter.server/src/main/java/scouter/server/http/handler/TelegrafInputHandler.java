@@ -27,6 +27,7 @@ import scouter.server.CounterManager;
 import scouter.server.Logger;
 import scouter.server.http.HttpServer;
 import scouter.server.http.model.CounterProtocol;
+import scouter.server.http.model.InfluxLineParser;
 import scouter.server.http.model.InfluxSingleLine;
 import scouter.server.netio.data.NetDataProcessor;
 import scouter.util.CacheTable;
@@ -37,8 +38,9 @@ import scouter.util.ThreadUtil;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +51,7 @@ public class TelegrafInputHandler extends Thread {
     private static TelegrafInputHandler instance = new TelegrafInputHandler();
     private static Configure configure = Configure.getInstance();
     private static CounterManager counterManager = CounterManager.getInstance();
+    private static final int MAX_LINES = 1000;
 
     private RequestQueue<InfluxSingleLine> registerObjTypeQueue = new RequestQueue<InfluxSingleLine>(1024);
     private RequestQueue<AddCounterParam> addCounterQueue = new RequestQueue<AddCounterParam>(1024);
@@ -119,43 +122,58 @@ public class TelegrafInputHandler extends Thread {
         }
 
         long receivedTime = System.currentTimeMillis();
-        Map<String, String> uniqueLineString = new HashMap<String, String>();
-        int lineCount = 0;
-        boolean earlyResponse = false;
-        while (true) {
-            if (lineCount++ > 1000) {
-                earlyResponse = true;
-                break;
-            }
-            String lineString = request.getReader().readLine();
-            if (lineString == null) {
-                break;
-            }
-            if (configure.input_telegraf_debug_enabled) {
-                Logger.println("TG002", "[line protocol received] " + lineString);
-            }
-            uniqueLineString.put(InfluxSingleLine.toLineStringKey(lineString), lineString);
+        int maxBytes = configure.input_telegraf_max_body_kb * 1024;
+        if (request.getContentLength() > maxBytes) {
+            Logger.println("TG012", 10, "[WARN] Too large line protocol payload. " + request.getContentLength() + " bytes are rejected.");
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
         }
-
-        if (earlyResponse) {
-            Logger.println("TG010", "[WARN] Too many line protocol in payload. fast return working. some line could be dropped!");
+        byte[] body = readBody(request.getInputStream(), request.getContentLength(), maxBytes, MAX_LINES);
+        InfluxLineParser parser = new InfluxLineParser(configure, receivedTime);
+        if (body == null || !parser.parse(body, 0, body.length, MAX_LINES)) {
+            Logger.println("TG010", "[WARN] Too many line protocol or too large payload. fast return working. some line could be dropped!");
             return;
         }
 
-        for (Map.Entry<String, String> lineStringEntry : uniqueLineString.entrySet()) {
-            InfluxSingleLine line = InfluxSingleLine.of(lineStringEntry.getValue(), configure, receivedTime);
-            if (configure.input_telegraf_debug_enabled) {
-                Logger.println("TG003", "[line protocol] " + lineStringEntry.getValue() + " [line parsed] " + line);
-
-            } else if (line != null && line.isDebug()) {
-                Logger.println("TG004", "[line protocol] " + lineStringEntry.getValue() + " [line parsed] " + line);
-            }
+        String remoteAddress = HttpServer.getRemoteAddr(request);
+        for (InfluxSingleLine line : parser.getLines()) {
+            count(line, remoteAddress);
+        }
+    }
 
-            if (line == null) {
+    /**
+     * read the body counting its lines on the way.
+     * returns null as soon as it goes over maxBytes or maxLines, so a large body is never held whole.
+     */
+    static byte[] readBody(InputStream in, int contentLength, int maxBytes, int maxLines) throws IOException {
+        byte[] buf = new byte[contentLength >= 0 ? Math.min(contentLength, maxBytes) : Math.min(8192, maxBytes)];
+        int len = 0;
+        int lineCount = 0;
+        while (true) {
+            if (len == buf.length) {
+                int b = in.read();
+                if (b < 0) {
+                    return buf;
+                }
+                if (len >= maxBytes || (b == '\n' && ++lineCount > maxLines)) {
+                    return null;
+                }
+                buf = Arrays.copyOf(buf, (int) Math.min((long) len * 2 + 1, maxBytes));
+                buf[len++] = (byte) b;
                 continue;
             }
-            count(line, HttpServer.getRemoteAddr(request));
+            int n = in.read(buf, len, buf.length - len);
+            if (n < 0) {
+                break;
+            }
+            for (int i = len; i < len + n; i++) {
+                if (buf[i] == '\n' && ++lineCount > maxLines) {
+                    return null;
+                }
+            }
+            len += n;
         }
+        return len == buf.length ? buf : Arrays.copyOf(buf, len);
     }
 
     protected void count(InfluxSingleLine line, String remoteAddress) throws IOException {
@@ -0,0 +1,470 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package scouter.server.http.model;
+
+import scouter.lang.value.DecimalValue;
+import scouter.lang.value.FloatValue;
+import scouter.lang.value.NumberValue;
+import scouter.server.Configure;
+import scouter.server.Logger;
+import scouter.server.ScouterTgMtConfig;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser of the influx line protocol over the bytes of a telegraf request body.
+ * Lines are tokenized in place, names are interned from the bytes and numbers are parsed without building strings.
+ * A line of a measurement without a config is dropped as soon as its measurement is read.
+ */
+public class InfluxLineParser {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    private static final Interner interner = new Interner(4096);
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final Configure conf;
+    private final long receivedTime;
+
+    /**
+     * the latest line of a measurement + tags + first field key, same as the previous line string key
+     */
+    private final Map<LineKey, InfluxSingleLine> lines = new LinkedHashMap<LineKey, InfluxSingleLine>();
+
+    private byte[] scratch = new byte[64];
+    private boolean escaped;
+    private int keyEnd;
+
+    public InfluxLineParser(Configure conf, long receivedTime) {
+        this.conf = conf;
+        this.receivedTime = receivedTime;
+    }
+
+    /**
+     * parses the lines of a request body.
+     * @return false if the body has more than maxLines lines, then no line is taken.
+     */
+    public boolean parse(byte[] buf, int off, int len, int maxLines) {
+        int end = off + len;
+        int lineCount = 0;
+        for (int i = off; i < end; i++) {
+            if (buf[i] == '\n') {
+                lineCount++;
+            }
+        }
+        if (len > 0 && buf[end - 1] != '\n') {
+            lineCount++;
+        }
+        if (lineCount > maxLines) {
+            return false;
+        }
+
+        int s = off;
+        while (s < end) {
+            int nl = s;
+            while (nl < end && buf[nl] != '\n') {
+                nl++;
+            }
+            int e = nl;
+            if (e > s && buf[e - 1] == '\r') {
+                e--;
+            }
+            if (e > s && buf[s] != '#') {
+                if (conf.input_telegraf_debug_enabled) {
+                    Logger.println("TG002", "[line protocol received] " + new String(buf, s, e - s, UTF8));
+                }
+                InfluxSingleLine line = parseLine(buf, s, e);
+                if (conf.input_telegraf_debug_enabled) {
+                    Logger.println("TG003", "[line protocol] " + new String(buf, s, e - s, UTF8) + " [line parsed] " + line);
+                } else if (line != null && line.isDebug()) {
+                    Logger.println("TG004", "[line protocol] " + new String(buf, s, e - s, UTF8) + " [line parsed] " + line);
+                }
+                if (line != null) {
+                    lines.put(new LineKey(buf, s, keyEnd), line);
+                }
+            }
+            s = nl + 1;
+        }
+        return true;
+    }
+
+    public Collection<InfluxSingleLine> getLines() {
+        return lines.values();
+    }
+
+    /**
+     * @return null if the line is not for a configured measurement, filtered out or invalid
+     */
+    public InfluxSingleLine parseLine(byte[] b, int s, int e) {
+        try {
+            return parseLine0(b, s, e);
+        } catch (Throwable t) {
+            Logger.println("TG011", 10, "[line protocol] invalid line " + new String(b, s, e - s, UTF8), t);
+            return null;
+        }
+    }
+
+    private InfluxSingleLine parseLine0(byte[] b, int s, int e) {
+        int i = scan(b, s, e, ',', ' ', ' ');
+        if (i == s) {
+            return null;
+        }
+        String measurement = intern(b, s, i, escaped);
+        ScouterTgMtConfig tConfig = conf.telegrafInputConfigMap.get(measurement);
+        if (tConfig == null) {
+            return null;
+        }
+        if (!conf.input_telegraf_debug_enabled && tConfig.isDebugEnabled()) {
+            Logger.println("TG006", "[line protocol received] " + new String(b, s, e - s, UTF8));
+        }
+        if (!tConfig.isEnabled() || !tConfig.isValidConfig()) {
+            return null;
+        }
+
+        Map<String, String> tags = new HashMap<String, String>();
+        while (i < e && b[i] == ',') {
+            int ks = i + 1;
+            int ke = scan(b, ks, e, '=', ',', ' ');
+            boolean keyEscaped = escaped;
+            int vs = ke < e && b[ke] == '=' ? ke + 1 : ke;
+            int ve = scan(b, vs, e, ',', ' ', ' ');
+            if (ke > ks) {
+                tags.put(intern(b, ks, ke, keyEscaped), intern(b, vs, ve, escaped));
+            }
+            i = ve;
+        }
+        if (i >= e) {
+            return null;
+        }
+        if (!tConfig.isTagFilterMatching(tags)) {
+            return null;
+        }
+
+        Map<CounterProtocol, NumberValue> numberFields = new HashMap<CounterProtocol, NumberValue>();
+        i++;
+        keyEnd = -1;
+        while (true) {
+            int ks = i;
+            int ke = scan(b, ks, e, '=', ',', ' ');
+            if (keyEnd < 0) {
+                keyEnd = ke;
+            }
+            if (ke >= e || b[ke] != '=' || ke + 1 >= e) {
+                return null;
+            }
+            int vs = ke + 1;
+            int ve;
+            if (b[vs] == '"') {
+                ve = skipQuoted(b, vs + 1, e);
+            } else {
+                ve = scan(b, vs, e, ',', ' ', ' ');
+                if (ve == vs) {
+                    return null;
+                }
+                CounterProtocol counterProtocol = ke > ks ? tConfig.getCounterProtocol(intern(b, ks, ke, escaped)) : null;
+                if (counterProtocol != null) {
+                    NumberValue value = parseNumber(b, vs, ve);
+                    if (value != null) {
+                        numberFields.put(counterProtocol, value);
+                    }
+                }
+            }
+            i = ve;
+            if (i < e && b[i] == ',') {
+                i++;
+                continue;
+            }
+            break;
+        }
+        if (i >= e) {
+            return null;
+        }
+
+        //line protocol timestamp is nano second -> divide 1000,000 -> to millis
+        long timestamp = parseLong(b, i + 1, e) / 1000000;
+        return new InfluxSingleLine(tConfig, measurement, tags, numberFields, receivedTime, timestamp, tConfig.isDebugEnabled());
+    }
+
+    /**
+     * @return the position of the first unescaped stop char or e
+     */
+    private int scan(byte[] b, int i, int e, char stop1, char stop2, char stop3) {
+        escaped = false;
+        while (i < e) {
+            byte c = b[i];
+            if (c == '\\' && i + 1 < e) {
+                escaped = true;
+                i += 2;
+            } else if (c == stop1 || c == stop2 || c == stop3) {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return e;
+    }
+
+    private static int skipQuoted(byte[] b, int i, int e) {
+        while (i < e) {
+            byte c = b[i];
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return e;
+    }
+
+    private String intern(byte[] b, int s, int e, boolean escaped) {
+        if (!escaped) {
+            return interner.get(b, s, e - s);
+        }
+        if (scratch.length < e - s) {
+            scratch = new byte[e - s];
+        }
+        int n = 0;
+        for (int i = s; i < e; i++) {
+            if (b[i] == '\\' && i + 1 < e) {
+                i++;
+            }
+            scratch[n++] = b[i];
+        }
+        return interner.get(scratch, 0, n);
+    }
+
+    /**
+     * integer (1i) and float fields, null for the others (boolean, unsigned)
+     */
+    static NumberValue parseNumber(byte[] b, int s, int e) {
+        byte last = b[e - 1];
+        if (last == 'i') {
+            return new DecimalValue(parseLong(b, s, e - 1));
+        } else if (last >= '0' && last <= '9') {
+            return new FloatValue(parseFloat(b, s, e));
+        }
+        return null;
+    }
+
+    static long parseLong(byte[] b, int s, int e) {
+        int i = s;
+        boolean negative = false;
+        if (i < e && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        if (i >= e) {
+            throw new NumberFormatException(new String(b, s, e - s, LATIN1));
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < e; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw new NumberFormatException(new String(b, s, e - s, LATIN1));
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException(new String(b, s, e - s, LATIN1));
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * the same value as Float.parseFloat.
+     * the digits are taken into a long and scaled by an exact power of ten, that is within 2 ulp of the double value.
+     * the float is taken only if it is not close to the middle of two floats, otherwise Float.parseFloat decides it.
+     */
+    static float parseFloat(byte[] b, int s, int e) {
+        int i = s;
+        boolean negative = false;
+        if (i < e && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exp = 0;
+        boolean any = false;
+        for (; i < e && b[i] >= '0' && b[i] <= '9'; i++) {
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b[i] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exp++;
+            }
+        }
+        if (i < e && b[i] == '.') {
+            for (i++; i < e && b[i] >= '0' && b[i] <= '9'; i++) {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exp--;
+                }
+            }
+        }
+        if (any && i < e && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < e && (b[i] == '-' || b[i] == '+')) {
+                negativeExp = b[i] == '-';
+                i++;
+            }
+            int expDigits = 0;
+            int value = 0;
+            for (; i < e && b[i] >= '0' && b[i] <= '9'; i++) {
+                expDigits++;
+                if (value < 10000) {
+                    value = value * 10 + (b[i] - '0');
+                }
+            }
+            if (expDigits == 0) {
+                any = false;
+            }
+            exp += negativeExp ? -value : value;
+        }
+        if (any && i == e) {
+            if (mantissa == 0) {
+                return negative ? -0.0f : 0.0f;
+            }
+            if (exp >= -22 && exp <= 22) {
+                double d = exp < 0 ? mantissa / POW10[-exp] : mantissa * POW10[exp];
+                float f = (float) d;
+                if (f >= Float.MIN_NORMAL && f < Float.POSITIVE_INFINITY) {
+                    double margin = 2 * Math.ulp(d);
+                    double upper = ((double) f + Math.nextUp(f)) / 2;
+                    double lower = ((double) f + Math.nextDown(f)) / 2;
+                    if (upper - d > margin && d - lower > margin) {
+                        return negative ? -f : f;
+                    }
+                }
+            }
+        }
+        return Float.parseFloat(new String(b, s, e - s, LATIN1));
+    }
+
+    private static final class LineKey {
+        private final byte[] buf;
+        private final int off;
+        private final int len;
+        private final int hash;
+
+        LineKey(byte[] buf, int off, int end) {
+            this.buf = buf;
+            this.off = off;
+            this.len = end - off;
+            this.hash = hash(buf, off, len);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LineKey)) {
+                return false;
+            }
+            LineKey other = (LineKey) o;
+            return hash == other.hash && equalBytes(buf, off, len, other.buf, other.off, other.len);
+        }
+    }
+
+    /**
+     * a direct mapped table of the names seen, shared by the request threads.
+     * entries are immutable, so a racing put only costs a miss.
+     */
+    static final class Interner {
+        private final Entry[] table;
+        private final int mask;
+
+        Interner(int size) {
+            this.table = new Entry[size];
+            this.mask = size - 1;
+        }
+
+        String get(byte[] b, int off, int len) {
+            int h = hash(b, off, len);
+            int index = (h ^ (h >>> 16)) & mask;
+            Entry entry = table[index];
+            if (entry != null && entry.hash == h && equalBytes(entry.bytes, 0, entry.bytes.length, b, off, len)) {
+                return entry.value;
+            }
+            byte[] bytes = new byte[len];
+            System.arraycopy(b, off, bytes, 0, len);
+            String value = new String(bytes, UTF8);
+            table[index] = new Entry(h, bytes, value);
+            return value;
+        }
+
+        private static final class Entry {
+            final int hash;
+            final byte[] bytes;
+            final String value;
+
+            Entry(int hash, byte[] bytes, String value) {
+                this.hash = hash;
+                this.bytes = bytes;
+                this.value = value;
+            }
+        }
+    }
+
+    private static int hash(byte[] b, int off, int len) {
+        int h = 1;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + b[i];
+        }
+        return h;
+    }
+
+    private static boolean equalBytes(byte[] a, int aOff, int aLen, byte[] b, int bOff, int bLen) {
+        if (aLen != bLen) {
+            return false;
+        }
+        for (int i = 0; i < aLen; i++) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -23,27 +23,26 @@ import scouter.lang.CounterKey;
 import scouter.lang.TimeTypeEnum;
 import scouter.lang.pack.ObjectPack;
 import scouter.lang.pack.PerfCounterPack;
-import scouter.lang.value.DecimalValue;
 import scouter.lang.value.DoubleValue;
 import scouter.lang.value.FloatValue;
 import scouter.lang.value.MapValue;
 import scouter.lang.value.NumberValue;
 import scouter.lang.value.ValueEnum;
 import scouter.server.Configure;
-import scouter.server.Logger;
 import scouter.server.ScouterTgMtConfig;
 import scouter.server.core.app.MeterCounter;
 import scouter.server.core.app.MeterCounterManager;
 import scouter.server.core.cache.CounterTimeCache;
 import scouter.util.HashUtil;
 
-import java.util.HashMap;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
  * @author Gun Lee (gunlee01@gmail.com) on 2018. 7. 22.
  */
 public class InfluxSingleLine {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     private String measurement;
     private String host;
@@ -57,18 +56,19 @@ public class InfluxSingleLine {
     boolean debug;
 
     Map<String, String> tags;
-    Map<CounterProtocol, NumberValue> numberFields = new HashMap<CounterProtocol, NumberValue>();
+    Map<CounterProtocol, NumberValue> numberFields;
 
-    private InfluxSingleLine(ScouterTgMtConfig tConfig,
-                             String measurement,
-                             Map<String, String> tags,
-                             Map<String, String> fields,
-                             long receivedTime,
-                             long timestampOrigin,
-                             boolean debug) {
+    InfluxSingleLine(ScouterTgMtConfig tConfig,
+                     String measurement,
+                     Map<String, String> tags,
+                     Map<CounterProtocol, NumberValue> numberFields,
+                     long receivedTime,
+                     long timestampOrigin,
+                     boolean debug) {
 
         this.measurement = measurement;
         this.tags = tags;
+        this.numberFields = numberFields;
         this.receivedTime = receivedTime;
         this.timestampOrigin = timestampOrigin;
         this.host = tConfig.toHost(tags);
@@ -78,262 +78,14 @@ public class InfluxSingleLine {
         this.objName = tConfig.toObjName(host, tags);
         this.objHash = HashUtil.hash(objName);
         this.debug = debug;
-
-        for (Map.Entry<String, String> field : fields.entrySet()) {
-            addNumField(tConfig, field);
-        }
-    }
-
-    private void addNumField(ScouterTgMtConfig tConfig, Map.Entry<String, String> field) {
-        CounterProtocol counterProtocol = tConfig.getCounterProtocol(field.getKey());
-        if (counterProtocol == null) {
-            return;
-        }
-
-        String valueStr = field.getValue();
-        char lastChar = valueStr.charAt(valueStr.length() - 1);
-
-        if (lastChar == 'i') { //long
-            long value = Long.parseLong(valueStr.substring(0, valueStr.length() - 1));
-            numberFields.put(counterProtocol, new DecimalValue(value));
-        } else if (lastChar >= '0' && lastChar <= '9') { //float
-            numberFields.put(counterProtocol, new FloatValue(Float.parseFloat(valueStr)));
-        } else {
-            //skip - boolean or string
-            return;
-        }
     }
 
     /**
-     * line string key is measurement + tag&values + first field keys (TODO check again)
+     * parses a single line, see {@link InfluxLineParser} for a request body.
      */
-    public static String toLineStringKey(String lineString) {
-        char[] chars = lineString.toCharArray();
-        char sink = '\0';
-        int mode = 0; //0: measurement, 1: tags
-
-        StringBuilder lineKey = new StringBuilder(80);
-        for (int pos = 0; pos < lineString.length(); pos++) {
-            char c = chars[pos];
-            if (mode == 0) { //measurement, tags
-                if (sink == '\\') {
-                    lineKey.append(c);
-                    sink = '\0';
-
-                } else {
-                    switch (c) {
-                        case '\\':
-                            sink = '\\';
-                            break;
-                        case ' ':
-                            lineKey.append(' ');
-                            mode++;
-                            break;
-                        default:
-                            lineKey.append(c);
-                            break;
-                    }
-                }
-
-            } else if (mode == 1) { //fields
-                if (sink == '\\') {
-                    lineKey.append(c);
-                    sink = '\0';
-
-                } else {
-                    switch (c) {
-                        case '\\':
-                            sink = '\\';
-                            break;
-                        case ' ':
-                            mode++;
-                            break;
-                        case '=':
-                            mode++;
-                            break;
-                        case ',':
-                            mode++;
-                            break;
-                        default:
-                            lineKey.append(c);
-                            break;
-                    }
-                }
-            } else {
-                break;
-            }
-
-        }
-
-        return lineKey.toString();
-    }
-
     public static InfluxSingleLine of(String lineStr, Configure configure, long receivedTime) {
-        char[] chars = lineStr.toCharArray();
-        char sink = '\0';
-        int mode = 0; //0: measurement, 1: tags, 2: fields, 3: timestamp
-
-        StringBuilder measurementSb = new StringBuilder();
-
-        StringBuilder tagKeySb = new StringBuilder();
-        StringBuilder tagValueSb = new StringBuilder();
-        boolean tagKeyMode = true; //if false then tag value mode
-        Map<String, String> tags = new HashMap<String, String>();
-
-        StringBuilder fieldKeySb = new StringBuilder();
-        StringBuilder fieldValueSb = new StringBuilder();
-        boolean fieldKeyMode = true; //if false then field value mode
-        Map<String, String> fields = new HashMap<String, String>();
-
-        StringBuilder timestampSb = new StringBuilder();
-
-        for (int pos = 0; pos < lineStr.length(); pos++) {
-            char c = chars[pos];
-            if (mode == 0) { //measurement
-                if (sink == '\\') {
-                    measurementSb.append(c);
-                    sink = '\0';
-
-                } else {
-                    switch (c) {
-                        case '\\':
-                            sink = '\\';
-                            break;
-                        case ',':
-                            mode++;
-                            break;
-                        default:
-                            measurementSb.append(c);
-                            break;
-                    }
-                }
-
-            } else if (mode == 1) { //tags
-                if (sink == '\\') {
-                    if (tagKeyMode) {
-                        tagKeySb.append(c);
-                    } else {
-                        tagValueSb.append(c);
-                    }
-                    sink = '\0';
-
-                } else {
-                    switch (c) {
-                        case '\\':
-                            sink = '\\';
-                            break;
-                        case ' ':
-                            mode++;
-                            if (tagKeySb.length() > 0) {
-                                tags.put(tagKeySb.toString(), tagValueSb.toString());
-                            }
-                            break;
-                        case '=':
-                            tagKeyMode = false;
-                            break;
-                        case ',':
-                            tagKeyMode = true;
-                            tags.put(tagKeySb.toString(), tagValueSb.toString());
-                            tagKeySb = new StringBuilder();
-                            tagValueSb = new StringBuilder();
-                            break;
-                        default:
-                            if (tagKeyMode) {
-                                tagKeySb.append(c);
-                            } else {
-                                tagValueSb.append(c);
-                            }
-                            break;
-                    }
-                }
-
-            } else if (mode == 2) { //fields
-                if (sink == '\\') {
-                    if (fieldKeyMode) {
-                        fieldKeySb.append(c);
-                    } else {
-                        fieldValueSb.append(c);
-                    }
-                    sink = '\0';
-
-                } else {
-                    switch (c) {
-                        case '\\':
-                            if (sink != '"') {
-                                sink = '\\';
-                            }
-                            break;
-                        case '"':
-                            if (sink == '"') {
-                                sink = '\0';
-                            } else {
-                                sink = '"';
-                            }
-                            break;
-                        case ' ':
-                            if (sink != '"') {
-                                mode++;
-                                if (fieldKeySb.length() > 0) {
-                                    fields.put(fieldKeySb.toString(), fieldValueSb.toString());
-                                }
-                            }
-                            break;
-                        case '=':
-                            if (sink != '"') {
-                                fieldKeyMode = false;
-                            }
-                            break;
-                        case ',':
-                            if (sink != '"') {
-                                fieldKeyMode = true;
-                                fields.put(fieldKeySb.toString(), fieldValueSb.toString());
-                                fieldKeySb = new StringBuilder();
-                                fieldValueSb = new StringBuilder();
-                            }
-                            break;
-                        default:
-                            if (sink != '"') {
-                                if (fieldKeyMode) {
-                                    fieldKeySb.append(c);
-                                } else {
-                                    fieldValueSb.append(c);
-                                }
-                            }
-                            break;
-                    }
-                }
-
-            } else if (mode == 3) { // timestamp
-                timestampSb.append(c);
-            }
-        }
-
-        String measurement = measurementSb.toString();
-        ScouterTgMtConfig tConfig = configure.telegrafInputConfigMap.get(measurement);
-
-        if (tConfig == null) {
-            return null;
-        }
-        if (!configure.input_telegraf_debug_enabled && tConfig.isDebugEnabled()) {
-            Logger.println("TG006", "[line protocol received] " + lineStr);
-        }
-        if (!tConfig.isEnabled()) {
-            return null;
-        }
-        if (!tConfig.isValidConfig()) {
-            return null;
-        }
-        if (!tConfig.isTagFilterMatching(tags)) {
-            return null;
-        }
-
-        try {
-            //line protocol timestamp is nano second -> divide 1000,000 -> to millis
-            return new InfluxSingleLine(tConfig, measurement, tags, fields, receivedTime, Long.parseLong(timestampSb.toString()) / 1000000, tConfig.isDebugEnabled());
-        } catch (Throwable t) {
-            t.printStackTrace();
-            return null;
-        }
+        byte[] line = lineStr.getBytes(UTF8);
+        return new InfluxLineParser(configure, receivedTime).parseLine(line, 0, line.length);
     }
 
     public String getMeasurement() {
@@ -19,13 +19,55 @@ package scouter.server.plugin.alert;
 
 import scouter.lang.CounterKey;
 import scouter.lang.value.Value;
+import scouter.server.Configure;
+import scouter.server.Logger;
+import scouter.server.core.CoreRun;
+import scouter.server.core.ServerStat;
+import scouter.util.ConcurrentRequestQueue;
 import scouter.util.LinkedMap;
+import scouter.util.StringKeyLinkedMap;
 
+import java.util.Enumeration;
+
+/**
+ * alert rules are evaluated by alert_rule_thread_count workers off the counter ingestion thread.
+ * a worker is chosen by the counter name, so a rule, which may keep state of its own, and the history
+ * of its counters are only touched by one thread.
+ */
 public class AlertEngine {
 
 	static LinkedMap<CounterKey, RealCounter> realTimeMap = new LinkedMap<CounterKey, RealCounter>().setMax(3000);
 
+	private static final long STAT_INTERVAL = 10000;
+	private static Worker[] workers = createWorkers();
+	private static StringKeyLinkedMap<RuleStat> ruleStats = new StringKeyLinkedMap<RuleStat>().setMax(1000);
+	private static volatile long lastStatTime = System.currentTimeMillis();
+
+	private static Worker[] createWorkers() {
+		Configure conf = Configure.getInstance();
+		int count = Math.max(1, conf.alert_rule_thread_count);
+		int queueSize = Math.max(1, conf.alert_rule_queue_size);
+		Worker[] w = new Worker[count];
+		for (int i = 0; i < count; i++) {
+			w[i] = new Worker(i, queueSize);
+			w[i].start();
+		}
+		return w;
+	}
+
 	public static void putRealTime(CounterKey key, Value value) {
+		AlertRuleLoader loader = AlertRuleLoader.getInstance();
+		if (loader.alertRuleTable.containsKey(key.counter) == false)
+			return;
+		Worker worker = workers[(key.counter.hashCode() & Integer.MAX_VALUE) % workers.length];
+		if (worker.queue.put(new Job(key, value, System.currentTimeMillis())) == false) {
+			Logger.println("S237", 10, "alert rule queue exceeded!!");
+		}
+	}
+
+	private static void process(Job job) {
+		CounterKey key = job.key;
+		Value value = job.value;
 		AlertRuleLoader loader = AlertRuleLoader.getInstance();
 		AlertRule rule = loader.alertRuleTable.get(key.counter);
 		if (rule == null)
@@ -52,23 +94,140 @@ public class AlertEngine {
 			realCounter.silentTime(alertConf.silent_time);
 			realCounter.checkTerm(alertConf.check_term);
 		}
-		realCounter.setValue(value);
+		realCounter.setValue(value, job.time);
 
 		if (realCounter.checkTerm() > 0) {
 			long now = System.currentTimeMillis();
 			if (now - realCounter.checkTerm()*1000 > realCounter.lastCheckTime) {
 				realCounter.lastCheckTime = now;
-				rule.process(realCounter);
+				processRule(key.counter, rule, realCounter);
 			}
 		} else {
+			processRule(key.counter, rule, realCounter);
+		}
+
+		realCounter.addValueHistory((Number) value, job.time);
+	}
+
+	private static void processRule(String counter, AlertRule rule, RealCounter realCounter) {
+		long start = System.nanoTime();
+		try {
 			rule.process(realCounter);
+		} catch (Throwable t) {
+			Logger.println("S238", 10, "alert rule error : " + counter, t);
 		}
+		getRuleStat(counter).add(System.nanoTime() - start);
+	}
 
-		realCounter.addValueHistory((Number) value);
+	private static RuleStat getRuleStat(String counter) {
+		RuleStat stat = ruleStats.get(counter);
+		if (stat == null) {
+			synchronized (ruleStats) {
+				stat = ruleStats.get(counter);
+				if (stat == null) {
+					stat = new RuleStat(counter);
+					ruleStats.put(counter, stat);
+				}
+			}
+		}
+		return stat;
+	}
+
+	/**
+	 * publishes the queue size and, for each rule, the count, average and max time
+	 * of its evaluations since the last call.
+	 */
+	private static void publishStat() {
+		if (System.currentTimeMillis() - lastStatTime < STAT_INTERVAL) {
+			return;
+		}
+		synchronized (AlertEngine.class) {
+			long now = System.currentTimeMillis();
+			if (now - lastStatTime < STAT_INTERVAL) {
+				return;
+			}
+			lastStatTime = now;
+		}
+		int queued = 0;
+		for (int i = 0; i < workers.length; i++) {
+			queued += workers[i].queue.size();
+		}
+		ServerStat.put("alert.rule.queue", queued);
+		Enumeration<RuleStat> en = ruleStats.values();
+		while (en.hasMoreElements()) {
+			en.nextElement().publish();
+		}
 	}
 
 	public static void load() {
 		AlertRuleLoader.getInstance();
 	}
 
+	static class Job {
+		final CounterKey key;
+		final Value value;
+		final long time;
+
+		Job(CounterKey key, Value value, long time) {
+			this.key = key;
+			this.value = value;
+			this.time = time;
+		}
+	}
+
+	static class RuleStat {
+		private final String countKey;
+		private final String avgKey;
+		private final String maxKey;
+		private int count;
+		private long totalNanos;
+		private long maxNanos;
+
+		RuleStat(String counter) {
+			this.countKey = "alert.rule." + counter + ".count";
+			this.avgKey = "alert.rule." + counter + ".avg_us";
+			this.maxKey = "alert.rule." + counter + ".max_us";
+		}
+
+		synchronized void add(long nanos) {
+			count++;
+			totalNanos += nanos;
+			if (nanos > maxNanos) {
+				maxNanos = nanos;
+			}
+		}
+
+		synchronized void publish() {
+			ServerStat.put(countKey, count);
+			ServerStat.put(avgKey, count == 0 ? 0 : totalNanos / count / 1000);
+			ServerStat.put(maxKey, maxNanos / 1000);
+			count = 0;
+			totalNanos = 0;
+			maxNanos = 0;
+		}
+	}
+
+	static class Worker extends Thread {
+		final ConcurrentRequestQueue<Job> queue;
+
+		Worker(int index, int queueSize) {
+			this.queue = new ConcurrentRequestQueue<Job>(queueSize);
+			setDaemon(true);
+			setName("scouter.server.plugin.alert.AlertEngine-" + index);
+		}
+
+		public void run() {
+			while (CoreRun.running()) {
+				Job job = queue.get(1000);
+				if (job != null) {
+					try {
+						process(job);
+					} catch (Throwable t) {
+						Logger.println("S238", 10, "alert rule error : " + job.key.counter, t);
+					}
+				}
+				publishStat();
+			}
+		}
+	}
 }
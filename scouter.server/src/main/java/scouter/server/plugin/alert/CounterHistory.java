@@ -0,0 +1,160 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.plugin.alert;
+
+/**
+ * value history of a RealCounter, newest first.
+ * times and values are kept in primitive rings together with the running sum of the values,
+ * so a time window is found by binary search and summed with two lookups instead of a scan.
+ * the times are expected in the order they were added.
+ */
+public class CounterHistory {
+	private long[] times;
+	private float[] values;
+	private double[] sums;
+	private int head;
+	private int size;
+	private double total;
+
+	public CounterHistory(int capacity) {
+		this.times = new long[capacity];
+		this.values = new float[capacity];
+		this.sums = new double[capacity];
+	}
+
+	public int capacity() {
+		return times.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * keeps the newest values that fit in the new capacity
+	 */
+	public void resize(int capacity) {
+		if (capacity == times.length) {
+			return;
+		}
+		int n = Math.min(size, capacity);
+		long[] t = new long[capacity];
+		float[] v = new float[capacity];
+		double[] s = new double[capacity];
+		for (int i = 0; i < n; i++) {
+			int from = index(n - 1 - i);
+			t[i] = times[from];
+			v[i] = values[from];
+			s[i] = sums[from];
+		}
+		this.times = t;
+		this.values = v;
+		this.sums = s;
+		this.size = n;
+		this.head = n % capacity;
+	}
+
+	public void add(long time, float value) {
+		total += value;
+		times[head] = time;
+		values[head] = value;
+		sums[head] = total;
+		head = (head + 1) % times.length;
+		if (size < times.length) {
+			size++;
+		}
+	}
+
+	/**
+	 * ring index of the i-th newest value
+	 */
+	private int index(int i) {
+		int x = head - 1 - i;
+		return x < 0 ? x + times.length : x;
+	}
+
+	public long getTime(int i) {
+		return times[index(i)];
+	}
+
+	public float getValue(int i) {
+		return values[index(i)];
+	}
+
+	/**
+	 * @return how many of the newest values were added at or after the time
+	 */
+	public int countSince(long from) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times[index(mid)] >= from) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * sum of the values from the i-th newest to the oldest one
+	 */
+	private double sumFrom(int i) {
+		if (i >= size) {
+			return 0;
+		}
+		int oldest = index(size - 1);
+		return sums[index(i)] - (sums[oldest] - values[oldest]);
+	}
+
+	/**
+	 * sum of the i-th newest values for start <= i < end
+	 */
+	public double sum(int start, int end) {
+		if (start >= end) {
+			return 0;
+		}
+		return sumFrom(start) - sumFrom(end);
+	}
+
+	public float max(int start, int end) {
+		float max = Float.NEGATIVE_INFINITY;
+		for (int i = start; i < end; i++) {
+			float v = values[index(i)];
+			if (v > max) {
+				max = v;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return how many of the i-th newest values for start <= i < end are greater than or equal to the value
+	 */
+	public int countOver(int start, int end, float value) {
+		int cnt = 0;
+		for (int i = start; i < end; i++) {
+			if (values[index(i)] >= value) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+}
@@ -30,8 +30,6 @@ import scouter.server.core.AgentManager;
 import scouter.server.core.cache.CounterCache;
 import scouter.util.HashUtil;
 import scouter.util.IntLongLinkedMap;
-import scouter.util.LongEnumer;
-import scouter.util.LongKeyLinkedMap;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -48,7 +46,7 @@ public class RealCounter {
 
 	private Value _value;
 	private long _time;
-	private LongKeyLinkedMap<Number> _history;
+	private CounterHistory _history;
 	private IntLongLinkedMap _lastAlertTime;
 
 	private String _objType;
@@ -141,8 +139,13 @@ public class RealCounter {
 
 	@Internal
 	public void setValue(Value v) {
+		setValue(v, System.currentTimeMillis());
+	}
+
+	@Internal
+	public void setValue(Value v, long time) {
 		this._value = v;
-		this._time = System.currentTimeMillis();
+		this._time = time;
 	}
 
 	@Deprecated
@@ -203,18 +206,7 @@ public class RealCounter {
 		if (getHistorySize() == 0)
 			return 0;
 		long from = System.currentTimeMillis() - sec * 1000L;
-		int cnt = 0;
-		LongEnumer en = _history.keys();
-		while (en.hasMoreElements()) {
-			long tm = en.nextLong();
-			if (tm < from)
-				break;
-			Number val = _history.get(tm);
-			if (val.floatValue() >= value) {
-				cnt++;
-			}
-		}
-		return cnt;
+		return _history.countOver(0, _history.countSince(from), value);
 	}
 
 	@Deprecated
@@ -258,31 +250,31 @@ public class RealCounter {
 		long from = System.currentTimeMillis() - fromAgoSec * 1000L;
 		long to = from + durationSec * 1000L;
 
-		int cnt = 0;
-		float sum = 0;
-		LongEnumer en = _history.keys();
-		while (en.hasMoreElements()) {
-			long tm = en.nextLong();
-			if (tm < from)
-				break;
-			if (tm >= to)
-				continue;
-
-			Number val = _history.get(tm);
-			sum += val.floatValue();
-			cnt++;
+		int start = _history.countSince(to);
+		int end = _history.countSince(from);
+		if (start >= end) {
+			return 0;
 		}
-		if (cnt == 0) {
+		return (float) (_history.sum(start, end) / (end - start));
+	}
+
+	@ConfigDesc("get max value of the counter in the latest duration.")
+	@ParamDesc("int durationSec")
+	public float getLatestMax(int durationSec) {
+		if (getHistorySize() == 0)
+			return 0;
+		int end = _history.countSince(System.currentTimeMillis() - durationSec * 1000L);
+		if (end == 0) {
 			return 0;
 		}
-		return sum/cnt;
+		return _history.max(0, end);
 	}
 
 	@ConfigDesc("get oldest time of the counter's history.")
 	public long getHistoryOldestTime() {
 		if (getHistorySize() == 0)
 			return 0;
-		long tm = _history.getLastKey();
+		long tm = _history.getTime(_history.size() - 1);
 		long now = System.currentTimeMillis();
 		return (now - tm) / 1000;
 	}
@@ -297,15 +289,7 @@ public class RealCounter {
 		if (getHistorySize() == 0)
 			return 0;
 		long from = System.currentTimeMillis() - sec * 1000L;
-		int cnt = 0;
-		LongEnumer en = _history.keys();
-		while (en.hasMoreElements()) {
-			long tm = en.nextLong();
-			if (tm < from)
-				break;
-			cnt++;
-		}
-		return cnt;
+		return _history.countSince(from);
 	}
 
 	@Deprecated
@@ -409,18 +393,23 @@ public class RealCounter {
 			this._history = null;
 		} else {
 			if (this._history == null) {
-				this._history = new LongKeyLinkedMap<Number>();
+				this._history = new CounterHistory(size);
+			} else {
+				this._history.resize(size);
 			}
-			this._history.setMax(size);
 		}
 	}
 
 	@Internal
 	public void addValueHistory(Number value) {
+		addValueHistory(value, System.currentTimeMillis());
+	}
+
+	@Internal
+	public void addValueHistory(Number value, long time) {
 		if (this._history == null)
 			return;
-		long time = System.currentTimeMillis();
-		this._history.putFirst(time, value);
+		this._history.add(time, value.floatValue());
 	}
 
 	@Internal
@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.core
+
+import java.util
+
+import scouter.lang.{CounterKey, TimeTypeEnum}
+import scouter.lang.counters.CounterConstants
+import scouter.lang.value.{NumberValue, Value}
+import scouter.server.Configure
+import scouter.server.db.RollupCounterWR
+import scouter.server.db.counter.RollupBucket
+import scouter.server.util.ThreadScala
+import scouter.util.{CastUtil, DateUtil}
+
+/**
+  * incremental 1 minute, 5 minutes and 1 hour aggregates of realtime counters.
+  * a bucket is written when a value of the next bucket comes in or when it is older than the grace time.
+  */
+object CounterRollup {
+    /** a bucket is closed this long after its end even if no value of the next bucket comes in */
+    val GRACE_TIME = DateUtil.MILLIS_PER_MINUTE
+    /** a counter without any value for this long is forgotten */
+    val IDLE_TIME = 2 * DateUtil.MILLIS_PER_HOUR
+
+    /**
+      * @param out called with the key, the bucket start, the time from which the bucket is filled and the bucket
+      */
+    class Rollup(timetype: Byte, out: (CounterKey, Long, Long, RollupBucket) => Any) {
+        val size = TimeTypeEnum.getTime(timetype)
+        var start = 0L
+        var from = 0L
+        var written = 0L
+        var bucket: RollupBucket = null
+
+        def add(key: CounterKey, time: Long, v: Double) {
+            val bucketStart = time - DateUtil.getDateMillis(time) % size
+            //values for a bucket already written are dropped not to overwrite the slot with a partial bucket
+            if (bucketStart <= written)
+                return
+            if (bucket != null && bucketStart != start) {
+                write(key)
+            }
+            if (bucket == null) {
+                bucket = new RollupBucket()
+                start = bucketStart
+                //the first bucket after the rollup started misses the values before its first value
+                from = if (written > 0) bucketStart else time
+            }
+            bucket.add(v)
+        }
+
+        def write(key: CounterKey) {
+            if (bucket == null)
+                return
+            out(key, start, from, bucket)
+            written = start
+            bucket = null
+        }
+    }
+
+    class Series(objHash: Int, counter: String) {
+        val keys = RollupCounterWR.TIME_TYPES.map(new CounterKey(objHash, counter, _))
+        val rollups = RollupCounterWR.TIME_TYPES.map(new Rollup(_, write))
+        var lastTime = 0L
+    }
+
+    private def write(key: CounterKey, start: Long, from: Long, bucket: RollupBucket) {
+        RollupCounterWR.add(CastUtil.cint(DateUtil.yyyymmdd(start)), key, CastUtil.cint(DateUtil.hhmm(start)), from, bucket)
+    }
+
+    private val seriesMap = new util.HashMap[CounterKey, Series]()
+
+    ThreadScala.startFixedRate(DateUtil.MILLIS_PER_MINUTE) {
+        closeOld(System.currentTimeMillis())
+    }
+
+    def add(key: CounterKey, time: Long, value: Value) {
+        if (Configure.getInstance().counter_rollup_enabled == false)
+            return
+        if (value.isInstanceOf[NumberValue] == false)
+            return
+        if (key.counter == CounterConstants.COMMON_OBJHASH || key.counter == CounterConstants.COMMON_TIME)
+            return
+        val v = value.asInstanceOf[NumberValue].doubleValue()
+        seriesMap.synchronized {
+            var s = seriesMap.get(key)
+            if (s == null) {
+                s = new Series(key.objHash, key.counter)
+                seriesMap.put(key, s)
+            }
+            s.lastTime = time
+            for (i <- 0 until s.rollups.length) {
+                s.rollups(i).add(s.keys(i), time, v)
+            }
+        }
+    }
+
+    private[core] def closeOld(now: Long) {
+        seriesMap.synchronized {
+            val itr = seriesMap.values().iterator()
+            while (itr.hasNext()) {
+                val s = itr.next()
+                for (i <- 0 until s.rollups.length) {
+                    val r = s.rollups(i)
+                    if (r.bucket != null && r.start + r.size + GRACE_TIME <= now) {
+                        r.write(s.keys(i))
+                    }
+                }
+                if (s.lastTime + IDLE_TIME < now) {
+                    itr.remove()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.core
+
+import java.util.concurrent.ConcurrentHashMap
+
+import scouter.lang.pack.XLogPack
+import scouter.server.Configure
+import scouter.server.db.LatencySketchWR
+import scouter.server.util.ThreadScala
+import scouter.util.{DateUtil, HashUtil, LogLinearHistogram}
+
+/**
+  * per minute latency histograms of each service of each object type, merged over all objects of the type.
+  * the current and the previous minute of a service are open so that xlogs from several objects may come a little out of order.
+  * a minute is written when a xlog of a later minute pushes it out or when it is older than the grace time.
+  */
+object LatencySketch {
+    /** about 3% of relative error up to an hour */
+    val SUB_BITS = 5
+    val MAX_ELAPSED = DateUtil.MILLIS_PER_HOUR
+    /** a minute is closed this long after its end even if no xlog of the later minutes comes in */
+    val GRACE_TIME = 10 * DateUtil.MILLIS_PER_SECOND
+    /** a service without any xlog for this long is forgotten */
+    val IDLE_TIME = 10 * DateUtil.MILLIS_PER_MINUTE
+
+    class Minute(_time: Long) {
+        val time = _time
+        val histogram = new LogLinearHistogram(SUB_BITS, MAX_ELAPSED)
+    }
+
+    /**
+      * @param out called with a minute to be written
+      */
+    class Sketch(_objType: Int, _service: Int, out: (Sketch, Minute) => Any) {
+        val objType = _objType
+        val service = _service
+        var cur: Minute = null
+        var prev: Minute = null
+        var written = 0L
+        var lastTime = 0L
+        var removed = false
+
+        def add(time: Long, elapsed: Int) {
+            val minute = time - time % DateUtil.MILLIS_PER_MINUTE
+            //xlogs for a minute already written are dropped
+            if (minute <= written)
+                return
+            if (cur == null || minute > cur.time) {
+                write(prev)
+                prev = cur
+                cur = new Minute(minute)
+            } else if (minute != cur.time) {
+                if (prev == null || minute > prev.time) {
+                    write(prev)
+                    prev = new Minute(minute)
+                } else if (minute != prev.time) {
+                    return
+                }
+                prev.histogram.record(elapsed)
+                return
+            }
+            cur.histogram.record(elapsed)
+        }
+
+        def write(m: Minute) {
+            if (m == null)
+                return
+            out(this, m)
+            if (m.time > written) {
+                written = m.time
+            }
+        }
+
+        def closeOld(now: Long) {
+            if (prev != null && prev.time + DateUtil.MILLIS_PER_MINUTE + GRACE_TIME <= now) {
+                write(prev)
+                prev = null
+            }
+            if (cur != null && cur.time + DateUtil.MILLIS_PER_MINUTE + GRACE_TIME <= now) {
+                write(cur)
+                cur = null
+            }
+        }
+
+        def copy(m: Minute): Minute = {
+            if (m == null)
+                return null
+            val c = new Minute(m.time)
+            c.histogram.add(m.histogram)
+            c
+        }
+    }
+
+    private val sketchMap = new ConcurrentHashMap[java.lang.Long, Sketch]()
+
+    ThreadScala.startFixedRate(GRACE_TIME) {
+        closeOld(System.currentTimeMillis())
+    }
+
+    private def write(s: Sketch, m: Minute) {
+        LatencySketchWR.add(DateUtil.yyyymmdd(m.time), s.objType, s.service, m.time, m.histogram.toBytes())
+    }
+
+    private def key(objType: Int, service: Int): java.lang.Long = {
+        (objType.toLong << 32) | (service & 0xffffffffL)
+    }
+
+    def add(p: XLogPack) {
+        if (Configure.getInstance().xlog_latency_sketch_enabled == false)
+            return
+        val agent = AgentManager.getAgent(p.objHash)
+        if (agent == null || agent.objType == null)
+            return
+        add(HashUtil.hash(agent.objType), p.service, p.endTime, p.elapsed)
+    }
+
+    def add(objType: Int, service: Int, endTime: Long, elapsed: Int) {
+        val k = key(objType, service)
+        while (true) {
+            var s = sketchMap.get(k)
+            if (s == null) {
+                s = new Sketch(objType, service, write)
+                val old = sketchMap.putIfAbsent(k, s)
+                if (old != null) {
+                    s = old
+                }
+            }
+            s.synchronized {
+                //removed by closeOld after the lookup
+                if (s.removed == false) {
+                    s.lastTime = endTime
+                    s.add(endTime, elapsed)
+                    return
+                }
+            }
+        }
+    }
+
+    /**
+      * copies of the minutes not written yet in [stime, etime] in time order.
+      */
+    def getOpen(objType: Int, service: Int, stime: Long, etime: Long): List[Minute] = {
+        val s = sketchMap.get(key(objType, service))
+        if (s == null)
+            return Nil
+        val minutes = s.synchronized {
+            List(s.copy(s.prev), s.copy(s.cur))
+        }
+        minutes.filter(m => m != null && m.time + DateUtil.MILLIS_PER_MINUTE > stime && m.time <= etime)
+    }
+
+    private[core] def closeOld(now: Long) {
+        val itr = sketchMap.values().iterator()
+        while (itr.hasNext()) {
+            val s = itr.next()
+            s.synchronized {
+                s.closeOld(now)
+                if (s.cur == null && s.prev == null && s.lastTime + IDLE_TIME < now) {
+                    s.removed = true
+                    itr.remove()
+                }
+            }
+        }
+    }
+}
@@ -52,6 +52,7 @@ object PerfCountCore {
                 val value = counterPack.data.get(k);
                 val counterKey = new CounterKey(objHash, k, counterPack.timetype);
                 Auto5MSampling.add(counterKey, value);
+                CounterRollup.add(counterKey, counterPack.time, value);
                 CounterCache.put(counterKey, value);
                 AlertEngine.putRealTime(counterKey, value); //experimental
             })
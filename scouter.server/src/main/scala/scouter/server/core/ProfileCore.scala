@@ -21,8 +21,6 @@ package scouter.server.core;
 import scouter.lang.pack.XLogProfilePack
 import scouter.server.Configure
 import scouter.server.Logger
-import scouter.server.db.XLogProfileWR
-import scouter.server.db.XLogProfileWR
 import scouter.server.plugin.PlugInManager
 import scouter.server.util.ThreadScala
 import scouter.util.BytesUtil
@@ -38,9 +36,7 @@ object ProfileCore {
         ServerStat.put("profile.core.queue",queue.size());
         if (BytesUtil.getLength(m.profile) > 0) {
             PlugInManager.profile(m)
-            //if (conf.xlog_profile_save_lower_bound_ms <= m.elapsed) {
-            XLogProfileWR.add(m.time, m.txid, m.profile)
-            //}
+            ProfileRetention.add(m)
         }
     }
 
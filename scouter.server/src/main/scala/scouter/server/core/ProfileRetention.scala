@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.core
+
+import java.util.concurrent.atomic.AtomicLong
+
+import scouter.lang.pack.{XLogPack, XLogProfilePack}
+import scouter.server.Configure
+import scouter.server.db.XLogProfileWR
+import scouter.server.util.ThreadScala
+import scouter.util.LongKeyLinkedMap
+
+import scala.collection.mutable.ArrayBuffer
+
+object ProfileRetention {
+    /** decisions remembered for the blocks coming after their xlog */
+    val MAX_DECISION = 100000
+    /** the state is split by txid so that the xlog and profile threads rarely wait for each other */
+    val STRIPES = 16
+
+    class Block(_time: Long, _data: Array[Byte]) {
+        val time = _time
+        val data = _data
+    }
+
+    class Pending(_time: Long) {
+        val firstTime = _time
+        val blocks = new ArrayBuffer[Block](2)
+        var bytes = 0L
+    }
+
+    private val retention = new ProfileRetention(Configure.getInstance(), XLogProfileWR.add)
+
+    ThreadScala.startFixedRate(1000) {
+        retention.expire(System.currentTimeMillis())
+        ServerStat.put("profile.retention.pending", retention.pendingCount())
+        ServerStat.put("profile.retention.pending.kb", retention.pendingBytes.get() / 1024)
+        ServerStat.put("profile.retention.kept", retention.kept.get())
+        ServerStat.put("profile.retention.dropped", retention.dropped.get())
+    }
+
+    /**
+      * called by ProfileCore for each profile block
+      */
+    def add(p: XLogProfilePack) {
+        retention.add(p)
+    }
+
+    /**
+      * called by XLogCore for each xlog before it is serialized
+      */
+    def add(x: XLogPack) {
+        retention.add(x)
+    }
+}
+
+/**
+  * tail based profile retention.
+  * profile blocks wait here by txid until the xlog of the transaction arrives
+  * and are written only if the xlog matches one of the profile_retention_* rules.
+  * the decision is remembered for a while so that the blocks coming after the xlog follow it.
+  * blocks whose xlog doesn't come in profile_retention_window_ms are orphans and follow profile_retention_orphan_enabled.
+  * the pending blocks and the decisions are kept in STRIPES stripes by txid, each one under its own lock.
+  * @param writer writes a profile block of (time, txid), XLogProfileWR.add
+  */
+class ProfileRetention(conf: Configure, writer: (Long, Long, Array[Byte]) => Any) {
+    import ProfileRetention._
+
+    private class Stripe {
+        val pending = new LongKeyLinkedMap[Pending]()
+        val decided = new LongKeyLinkedMap[java.lang.Boolean]().setMax(MAX_DECISION / STRIPES)
+    }
+
+    private val stripes = Array.fill(STRIPES)(new Stripe())
+    val pendingBytes = new AtomicLong()
+    val kept = new AtomicLong()
+    val dropped = new AtomicLong()
+
+    private def stripeOf(txid: Long): Stripe = {
+        stripes(((txid ^ (txid >>> 32)).toInt & Integer.MAX_VALUE) % STRIPES)
+    }
+
+    def add(p: XLogProfilePack) {
+        if (conf.profile_retention_enabled == false) {
+            writer(p.time, p.txid, p.profile)
+            return
+        }
+        val writes = new ArrayBuffer[(Long, Block)]()
+        val s = stripeOf(p.txid)
+        s.synchronized {
+            val keep = s.decided.get(p.txid)
+            if (keep != null) {
+                if (keep.booleanValue()) {
+                    writes += ((p.txid, new Block(p.time, p.profile)))
+                    kept.incrementAndGet()
+                } else {
+                    dropped.incrementAndGet()
+                }
+            } else {
+                var pd = s.pending.get(p.txid)
+                if (pd == null) {
+                    pd = new Pending(p.time)
+                    s.pending.put(p.txid, pd)
+                }
+                pd.blocks += new Block(p.time, p.profile)
+                pd.bytes += p.profile.length
+                pendingBytes.addAndGet(p.profile.length)
+
+                //the oldest of this stripe are orphaned, the stripe holds at least the block just added
+                val maxBytes = conf.profile_retention_max_mb * 1024L * 1024L
+                while (pendingBytes.get() > maxBytes && s.pending.isEmpty() == false) {
+                    val txid = s.pending.getFirstKey()
+                    decide(s, txid, s.pending.removeFirst(), conf.profile_retention_orphan_enabled, writes)
+                }
+            }
+        }
+        write(writes)
+    }
+
+    /**
+      * decide on the profile of the xlog. profileCount of a dropped xlog is cleared,
+      * so it must be called before the xlog is serialized.
+      */
+    def add(x: XLogPack) {
+        if (conf.profile_retention_enabled == false)
+            return
+        val keep = isKept(x)
+        val writes = new ArrayBuffer[(Long, Block)]()
+        val s = stripeOf(x.txid)
+        s.synchronized {
+            val pd = s.pending.remove(x.txid)
+            if (pd != null || x.profileCount > 0) {
+                decide(s, x.txid, pd, keep, writes)
+            }
+        }
+        if (keep == false) {
+            x.profileCount = 0
+        }
+        write(writes)
+    }
+
+    def isKept(x: XLogPack): Boolean = {
+        if (x.error != 0 && conf.profile_retention_error_enabled)
+            return true
+        if (x.elapsed >= conf.profile_retention_elapsed_ms)
+            return true
+        if (conf.profileRetentionServiceSet.contains(x.service))
+            return true
+        val rate = conf.profile_retention_sampling_rate
+        rate > 0 && sample(x.txid) < rate
+    }
+
+    /**
+      * 0 ~ 99 spread over the bits of the txid
+      */
+    private def sample(txid: Long): Int = {
+        var h = txid ^ (txid >>> 33)
+        h *= 0xff51afd7ed558ccdL
+        h ^= h >>> 33
+        ((h & Long.MaxValue) % 100).toInt
+    }
+
+    private def decide(s: Stripe, txid: Long, pd: Pending, keep: Boolean, writes: ArrayBuffer[(Long, Block)]) {
+        s.decided.put(txid, java.lang.Boolean.valueOf(keep))
+        if (pd == null)
+            return
+        pendingBytes.addAndGet(-pd.bytes)
+        if (keep) {
+            pd.blocks.foreach(b => writes += ((txid, b)))
+            kept.addAndGet(pd.blocks.size)
+        } else {
+            dropped.addAndGet(pd.blocks.size)
+        }
+    }
+
+    private def write(writes: ArrayBuffer[(Long, Block)]) {
+        writes.foreach(w => writer(w._2.time, w._1, w._2.data))
+    }
+
+    def pendingCount(): Int = {
+        stripes.map(s => s.synchronized { s.pending.size() }).sum
+    }
+
+    def expire(now: Long) {
+        //everything waiting is orphaned when the retention is turned off
+        val enabled = conf.profile_retention_enabled
+        val timeTo = now - conf.profile_retention_window_ms
+        stripes.foreach(s => {
+            val writes = new ArrayBuffer[(Long, Block)]()
+            s.synchronized {
+                while (s.pending.isEmpty() == false && (enabled == false || s.pending.getFirstValue().firstTime <= timeTo)) {
+                    val txid = s.pending.getFirstKey()
+                    decide(s, txid, s.pending.removeFirst(), enabled == false || conf.profile_retention_orphan_enabled, writes)
+                }
+            }
+            write(writes)
+        })
+    }
+}
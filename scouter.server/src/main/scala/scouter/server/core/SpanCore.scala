@@ -19,8 +19,9 @@
 package scouter.server.core
 
 import scouter.io.DataOutputX
-import scouter.lang.pack.SpanContainerPack
+import scouter.lang.pack.{SpanContainerPack, SpanPack}
 import scouter.server.db.ZipkinSpanWR
+import scouter.server.db.span.SpanTree
 import scouter.server.util.ThreadScala
 import scouter.server.{Configure, Logger}
 import scouter.util.RequestQueue
@@ -32,18 +33,32 @@ import scouter.util.RequestQueue
 object SpanCore {
 
     val conf = Configure.getInstance()
-    val queue = new RequestQueue[SpanContainerPack](conf.span_queue_size)
+    val queues = new Array[RequestQueue[SpanContainerPack]](Math.max(1, conf.span_core_thread_count))
 
-    ThreadScala.startDaemon("scouter.server.core.SpanCore", {CoreRun.running}) {
-        val spanContainerPack = queue.get()
-        ServerStat.put("span.core.queue", queue.size());
+    for (i <- 0 until queues.length) {
+        val queue = new RequestQueue[SpanContainerPack](conf.span_queue_size)
+        queues(i) = queue
+        ThreadScala.startDaemon("scouter.server.core.SpanCore-" + i, {CoreRun.running}) {
+            val spanContainerPack = queue.get()
+            ServerStat.put("span.core.queue", queues.map(_.size()).sum);
 
-        if (Configure.WORKABLE) {
-            //TODO plugin
-            //PlugInManager.xlog(spanPack)
+            if (Configure.WORKABLE) {
+                //TODO plugin
+                //PlugInManager.xlog(spanPack)
 
-            val spanContainerBytes = new DataOutputX().writePack(spanContainerPack).toByteArray
-            ZipkinSpanWR.add(spanContainerPack.timestamp, spanContainerPack.gxid, spanContainerBytes)
+                val spanContainerBytes = new DataOutputX().writePack(spanContainerPack).toByteArray
+                ZipkinSpanWR.add(spanContainerPack.timestamp, spanContainerPack.gxid, spanContainerBytes, treeEntry(spanContainerPack))
+            }
+        }
+    }
+
+    private def treeEntry(p: SpanContainerPack): Array[Byte] = {
+        try {
+            SpanTree.toEntry(SpanPack.toObjectList(p.spans))
+        } catch {
+            case t: Throwable =>
+                Logger.println("SZ117", 10, "span tree entry error " + p, t)
+                null
         }
     }
 
@@ -52,6 +67,7 @@ object SpanCore {
             p.timestamp = System.currentTimeMillis()
         }
 
+        val queue = queues(((p.gxid ^ (p.gxid >>> 32)).toInt & Int.MaxValue) % queues.length)
         val ok = queue.put(p)
         if (!ok) {
             Logger.println("SZ116", 10, "queue exceeded Span Core Queue!!");
@@ -18,6 +18,8 @@
 
 package scouter.server.core;
 
+import java.util.concurrent.atomic.AtomicLongArray
+
 import scouter.io.DataOutputX
 import scouter.lang.pack.{XLogPack, XLogTypes}
 import scouter.server.{Configure, Logger}
@@ -28,12 +30,75 @@ import scouter.server.geoip.GeoIpUtil
 import scouter.server.plugin.PlugInManager
 import scouter.server.tagcnt.XLogTagCount
 import scouter.server.util.ThreadScala
-import scouter.util.RequestQueue
+import scouter.util.ConcurrentRequestQueue
 
+/**
+  * XLogs are partitioned by objHash into xlog_core_thread_count queues,
+  * each one handled by its own thread so that the order of an agent's XLogs is kept.
+  *
+  * With more than one partition the stages of process are called concurrently.
+  * VisitorCore, XLogGroupPerf, XLogTagCount and XLogWR only hand the pack to their own queue thread,
+  * XLogGroupUtil and GeoIpUtil use the synchronized scouter.util linked maps,
+  * XLogCache puts under the ring lock, LatencySketch locks per service sketch and ProfileRetention locks per txid stripe.
+  * xlog plugins are the exception, they are not required to be thread-safe, which is why the default count is 1.
+  */
 object XLogCore {
 
   val conf = Configure.getInstance();
-  val queue = new RequestQueue[XLogPack](conf.xlog_queue_size);
+  val partitionCount = Math.max(1, conf.xlog_core_thread_count);
+  val queues = new Array[ConcurrentRequestQueue[XLogPack]](partitionCount);
+  val processed = new AtomicLongArray(partitionCount);
+  val dropped = new AtomicLongArray(partitionCount);
+
+  for (i <- 0 until partitionCount) {
+    val queue = new ConcurrentRequestQueue[XLogPack](Math.max(1, conf.xlog_queue_size / partitionCount));
+    queues(i) = queue;
+    ThreadScala.startDaemon("scouter.server.core.XLogCore-" + i, { CoreRun.running }) {
+      val m = queue.get();
+      process(m);
+      processed.incrementAndGet(i);
+    }
+  }
+
+  val STAGES = Array("visitor", "calc", "plugin", "retention", "encode", "cache", "tagcnt", "write");
+  private val VISITOR = 0
+  private val CALC = 1
+  private val PLUGIN = 2
+  private val RETENTION = 3
+  private val ENCODE = 4
+  private val CACHE = 5
+  private val TAGCNT = 6
+  private val WRITE = 7
+  val stageNanos = new AtomicLongArray(STAGES.length);
+
+  private var lastStatTime = System.currentTimeMillis();
+  private val lastProcessed = new Array[Long](partitionCount);
+  private val lastStageNanos = new Array[Long](STAGES.length);
+
+  ThreadScala.startDaemon("scouter.server.core.XLogCoreStat", { CoreRun.running }, 5000) {
+    val now = System.currentTimeMillis();
+    val elapsed = Math.max(1, now - lastStatTime);
+    lastStatTime = now;
+    var total = 0;
+    var totalProcessed = 0L;
+    for (i <- 0 until partitionCount) {
+      val size = queues(i).size();
+      total += size;
+      val count = processed.get(i);
+      ServerStat.put("xlog.core." + i + ".queue", size);
+      ServerStat.put("xlog.core." + i + ".tps", (count - lastProcessed(i)) * 1000f / elapsed);
+      ServerStat.put("xlog.core." + i + ".drop", dropped.get(i));
+      totalProcessed += count - lastProcessed(i);
+      lastProcessed(i) = count;
+    }
+    ServerStat.put("xlog.core.queue", total);
+    //average micros spent in each stage per xlog, summed over the partitions
+    for (i <- 0 until STAGES.length) {
+      val nanos = stageNanos.get(i);
+      ServerStat.put("xlog.stage." + STAGES(i) + ".us", (nanos - lastStageNanos(i)) / 1000f / Math.max(1, totalProcessed));
+      lastStageNanos(i) = nanos;
+    }
+  }
 
   def calc(m: XLogPack) = {
     XLogGroupUtil.process(m);
@@ -41,43 +106,64 @@ object XLogCore {
       GeoIpUtil.setNationAndCity(m);
     }
     XLogGroupPerf.add(m);
+    LatencySketch.add(m);
   }
-  ThreadScala.startDaemon("scouter.server.core.XLogCore", { CoreRun.running }) {
-    val m = queue.get();
-    ServerStat.put("xlog.core.queue", queue.size());
 
-    if (Configure.WORKABLE) {
+  private def stage(i: Int, start: Long): Long = {
+    val now = System.nanoTime();
+    stageNanos.addAndGet(i, now - start);
+    return now;
+  }
 
+  private def process(m: XLogPack) {
+    if (Configure.WORKABLE) {
+      var t = System.nanoTime();
       m.xType match {
         case XLogTypes.WEB_SERVICE =>
           VisitorCore.add(m)
+          t = stage(VISITOR, t)
           calc(m)
         case XLogTypes.APP_SERVICE =>
           calc(m)
         case _ => //기타 타입은 무시한다.
       }
+      t = stage(CALC, t)
 
       PlugInManager.xlog(m);
       //for backward compatibility
       PlugInManager.xlogdb(m);
+      t = stage(PLUGIN, t)
+      //the profileCount of a xlog whose profile is dropped is cleared before it is encoded
+      ProfileRetention.add(m)
+      t = stage(RETENTION, t)
 
       val b = new DataOutputX().writePack(m).toByteArray();
+      t = stage(ENCODE, t)
       XLogCache.put(m.objHash, m.elapsed, m.error != 0, b);
+      t = stage(CACHE, t)
       if (conf.tagcnt_enabled) {
         XLogTagCount.add(m)
       }
-      XLogWR.add(m.endTime, m.txid, m.gxid, m.elapsed, b);
+      t = stage(TAGCNT, t)
+      XLogWR.add(m, b);
+      stage(WRITE, t)
 
     }
   }
 
+  def partitionOf(objHash: Int): Int = {
+    return (objHash & Integer.MAX_VALUE) % partitionCount;
+  }
+
   def add(p: XLogPack) {
     if (p.endTime == 0) {
       p.endTime = System.currentTimeMillis();
     }
 
-    val ok = queue.put(p);
+    val partition = partitionOf(p.objHash);
+    val ok = queues(partition).put(p);
     if (ok == false) {
+      dropped.incrementAndGet(partition);
       Logger.println("S116", 10, "queue exceeded!!");
     }
   }
@@ -35,8 +35,8 @@ object SpanStepBuilder {
         object SpanRelationOrdering extends Ordering[SpanRelation] {
             def compare(element1: SpanRelation, element2: SpanRelation): Int = {
                 if (element1.pack.timestamp < element2.pack.timestamp) -1
-                else if (element1.pack.timestamp == element2.pack.timestamp) 0
-                else 1
+                else if (element1.pack.timestamp > element2.pack.timestamp) 1
+                else java.lang.Long.compare(element1.pack.txid, element2.pack.txid)
             }
         }
         val children: mutable.TreeSet[SpanRelation] = mutable.TreeSet()(SpanRelationOrdering)
@@ -96,14 +96,22 @@ object SpanStepBuilder {
     }
 
 
+    /**
+      * pre-order walk with an explicit stack, a trace of 10k spans can be deeper than the thread stack.
+      */
     private def establishSpanPackHierarchy(startTxid: Long, spanRelation: SpanRelation): ListBuffer[SpanPack] = {
         val spanPacks = mutable.ListBuffer[SpanPack]()
-        val isInitial = startTxid == spanRelation.pack.txid
-        var profileEnd = !isInitial && SpanTypes.isBoundary(spanRelation.pack.spanType)
-        spanPacks += spanRelation.pack
-        if (!profileEnd) {
-            for (childSpanRelation <- spanRelation.children) {
-                spanPacks ++= establishSpanPackHierarchy(startTxid, childSpanRelation)
+        val stack = mutable.ArrayStack[SpanRelation](spanRelation)
+        val visited = mutable.HashSet[SpanRelation]()
+        while (stack.nonEmpty) {
+            val relation = stack.pop()
+            if (visited.add(relation)) {
+                val isInitial = startTxid == relation.pack.txid
+                val profileEnd = !isInitial && SpanTypes.isBoundary(relation.pack.spanType)
+                spanPacks += relation.pack
+                if (!profileEnd) {
+                    relation.children.toSeq.reverseIterator.foreach(child => stack.push(child))
+                }
             }
         }
         spanPacks
@@ -18,31 +18,63 @@
 
 package scouter.server.core.cache;
 
+import java.util.ArrayList
+
+import scouter.server.Configure
 import scouter.util.IntSet;
 
 object XLogCache {
 
-    val cache = new XLogLoopCache[Array[Byte]](20480);
+    val conf = Configure.getInstance()
+    val cache = new XLogRingCache(Math.max(1024, conf.xlog_realtime_cache_count), Math.max(1, conf.xlog_realtime_cache_mb) * 1024 * 1024);
 
     def put(objHash: Int, time: Int, error: Boolean, record: Array[Byte]) {
         cache.put(objHash, time, error, record);
     }
 
     def get(last_loop: Long, last_index: Int, time: Int): CacheOut[Array[Byte]] = {
-        return cache.get(last_loop, last_index, time);
+        return get(null, last_loop, last_index, time);
     }
 
     def get(objHashSet: IntSet, last_loop: Long, last_index: Int, time: Int): CacheOut[Array[Byte]] = {
-        return cache.get(objHashSet, last_loop, last_index, time);
+        val end = cache.getHead();
+        return collect(objHashSet, cache.startOf(last_loop, last_index, end), end, time);
     }
 
     def getWithinCount(last_loop: Long, last_index: Int, count: Int): CacheOut[Array[Byte]] = {
-        return cache.getWithinCount(last_loop, last_index, count);
+        return getWithinCount(null, last_loop, last_index, count);
     }
 
     def getWithinCount(objHashSet: IntSet, last_loop: Long, last_index: Int, count: Int): CacheOut[Array[Byte]] = {
-        return cache.getWithinCount(objHashSet, last_loop, last_index, count);
+        val end = cache.getHead();
+        return collect(objHashSet, cache.startWithinCount(last_loop, last_index, count, end), end, 0);
     }
 
+    /**
+      * stream the records after (last_loop, last_index) without building a list.
+      * header(loop, index) is called once before the records, and handler(buffer, length) for each record.
+      */
+    def read(objHashSet: IntSet, last_loop: Long, last_index: Int, time: Int, header: (Long, Int) => Any, handler: (Array[Byte], Int) => Any) {
+        val end = cache.getHead();
+        header(cache.getLoop(end), cache.getIndex(end));
+        cache.read(objHashSet, cache.startOf(last_loop, last_index, end), end, time, handler);
+    }
 
-}
\ No newline at end of file
+    def readWithinCount(objHashSet: IntSet, last_loop: Long, last_index: Int, count: Int, header: (Long, Int) => Any, handler: (Array[Byte], Int) => Any) {
+        val end = cache.getHead();
+        header(cache.getLoop(end), cache.getIndex(end));
+        cache.read(objHashSet, cache.startWithinCount(last_loop, last_index, count, end), end, 0, handler);
+    }
+
+    private def collect(objHashSet: IntSet, from: Long, end: Long, time: Int): CacheOut[Array[Byte]] = {
+        val d = new CacheOut[Array[Byte]]();
+        val list = new ArrayList[Array[Byte]]();
+        cache.read(objHashSet, from, end, time, (buf: Array[Byte], len: Int) => {
+            list.add(java.util.Arrays.copyOf(buf, len));
+        });
+        d.data = list;
+        d.loop = cache.getLoop(end);
+        d.index = cache.getIndex(end);
+        return d;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.core.cache
+
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicLongArray
+
+import scouter.util.IntSet
+
+/**
+  * ring of the latest xlogs.
+  * records are kept in a direct buffer, and objHash, elapsed and error in primitive arrays for filtering.
+  * put is serialized, readers take no lock. a reader validates a slot with its sequence before and after
+  * copying and drops a record which was overwritten meanwhile. put invalidates a slot with getAndSet before
+  * it overwrites the record or its data and the reader checks again with a compareAndSet keeping the value,
+  * so a copy which passed the check happens-before the overwrite.
+  * a position is given as (loop, index) = (sequence / slotCount, sequence % slotCount) as before.
+  */
+class XLogRingCache(val slotCount: Int, dataBytes: Int) {
+    private val objHashTable = new Array[Int](slotCount)
+    private val elapsed = new Array[Int](slotCount)
+    private val error = new Array[Boolean](slotCount)
+    private val offset = new Array[Long](slotCount)
+    private val length = new Array[Int](slotCount)
+    /** sequence + 1 of the record in the slot, 0 while it is being written */
+    private val seqs = new AtomicLongArray(slotCount)
+
+    private val data = ByteBuffer.allocateDirect(dataBytes)
+    private val writeBuffer = data.duplicate()
+    private val readBuffer = new ThreadLocal[ByteBuffer] {
+        override def initialValue(): ByteBuffer = data.duplicate()
+    }
+    private val scratch = new ThreadLocal[Array[Byte]] {
+        override def initialValue(): Array[Byte] = new Array[Byte](4096)
+    }
+
+    /** next sequence to write */
+    @volatile private var head = 0L
+    /** end of the data reserved by the last put. bytes before dataHead - dataBytes are overwritten */
+    private var dataHead = 0L
+    /** oldest sequence whose data is not overwritten yet */
+    private var tail = 0L
+
+    def put(objHash: Int, time: Int, err: Boolean, record: Array[Byte]) {
+        if (record.length > dataBytes)
+            return
+        this.synchronized {
+            val seq = head
+            val i = (seq % slotCount).toInt
+            seqs.getAndSet(i, 0)
+
+            //a record does not wrap around the end of the buffer
+            var pos = dataHead
+            val at = (pos % dataBytes).toInt
+            if (at + record.length > dataBytes) {
+                pos += dataBytes - at
+            }
+            dataHead = pos + record.length
+            //older slots are reused and invalidated already, the oldest ones whose data is overwritten are invalidated here
+            tail = Math.max(tail, seq + 1 - slotCount)
+            while (tail < seq && offset((tail % slotCount).toInt) < dataHead - dataBytes) {
+                seqs.getAndSet((tail % slotCount).toInt, 0)
+                tail += 1
+            }
+            writeBuffer.position((pos % dataBytes).toInt)
+            writeBuffer.put(record)
+
+            objHashTable(i) = objHash
+            elapsed(i) = time
+            error(i) = err
+            offset(i) = pos
+            length(i) = record.length
+            seqs.lazySet(i, seq + 1)
+            head = seq + 1
+        }
+    }
+
+    def getLoop(seq: Long): Long = seq / slotCount
+
+    def getIndex(seq: Long): Int = (seq % slotCount).toInt
+
+    def getHead(): Long = head
+
+    private def oldest(end: Long): Long = Math.max(0, end - slotCount)
+
+    /**
+      * the first sequence after (lastLoop, lastIndex). all the ring if the position is too old or unknown.
+      */
+    def startOf(lastLoop: Long, lastIndex: Int, end: Long): Long = {
+        val start = lastLoop * slotCount + lastIndex
+        if (start > end || end - start > slotCount) oldest(end) else start
+    }
+
+    /**
+      * the first sequence of the latest count records after (lastLoop, lastIndex) like XLogLoopCache.getListWithinCount
+      */
+    def startWithinCount(lastLoop: Long, lastIndex: Int, count: Int, end: Long): Long = {
+        var n = count
+        val endLoop = getLoop(end)
+        val endIndex = getIndex(end)
+        (endLoop - lastLoop) match {
+            case 0 =>
+                val gap = endIndex - lastIndex
+                if (gap > 0) {
+                    n = Math.min(n, gap)
+                }
+            case 1 =>
+                n = Math.min(n, slotCount - lastIndex + endIndex)
+            case _ =>
+        }
+        Math.max(oldest(end), end - n)
+    }
+
+    /**
+      * call the handler with (buffer, length) for records in [from, to) which pass the filters.
+      * the buffer is reused and valid only in the call.
+      */
+    def read(objHashSet: IntSet, from: Long, to: Long, time: Int, handler: (Array[Byte], Int) => Any) {
+        var seq = Math.max(from, oldest(head))
+        while (seq < to) {
+            val i = (seq % slotCount).toInt
+            if (seqs.get(i) == seq + 1
+                    && (objHashSet == null || objHashSet.contains(objHashTable(i)))
+                    && (elapsed(i) >= time || error(i))) {
+                val pos = offset(i)
+                val len = length(i)
+                var buf = scratch.get()
+                if (buf.length < len) {
+                    buf = new Array[Byte](Math.max(len, buf.length * 2))
+                    scratch.set(buf)
+                }
+                val in = readBuffer.get()
+                in.position((pos % dataBytes).toInt)
+                in.get(buf, 0, len)
+                if (seqs.compareAndSet(i, seq + 1, seq + 1)) {
+                    handler(buf, len)
+                }
+            }
+            seq += 1
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.db
+
+import java.io.File
+
+import scouter.server.db.latency.{LatencySketchData, LatencySketchIndex}
+import scouter.util.{DateUtil, FileUtil, LogLinearHistogram}
+
+object LatencySketchRD {
+
+    def exists(date: String): Boolean = {
+        new File(LatencySketchWR.getDBPath(date) + "/" + LatencySketchWR.root + ".data").exists()
+    }
+
+    /**
+      * read the minute histograms of a service of [stime, etime] in time order.
+      */
+    def read(objType: Int, service: Int, stime: Long, etime: Long, handler: (Long, LogLinearHistogram) => Any) {
+        val key = LatencySketchIndex.key(objType, service)
+        var dayStart = DateUtil.yyyymmdd(DateUtil.yyyymmdd(stime))
+        while (dayStart <= etime) {
+            val date = DateUtil.yyyymmdd(dayStart)
+            if (exists(date)) {
+                readDay(date, key, stime, etime, handler)
+            }
+            //the next day, safe for a day longer than 24 hours
+            dayStart = DateUtil.yyyymmdd(DateUtil.yyyymmdd(dayStart + DateUtil.MILLIS_PER_DAY + 2 * DateUtil.MILLIS_PER_HOUR))
+        }
+    }
+
+    private def readDay(date: String, key: Array[Byte], stime: Long, etime: Long, handler: (Long, LogLinearHistogram) => Any) {
+        val fileName = LatencySketchWR.getDBPath(date) + "/" + LatencySketchWR.root
+        val index = LatencySketchIndex.open(fileName)
+        val reader = LatencySketchData.open(fileName)
+        try {
+            //the index gives the latest first and a minute is written once
+            val offsets = index.getAll(key)
+            var i = offsets.length - 1
+            while (i >= 0) {
+                val time = reader.readTime(offsets(i))
+                if (time > etime)
+                    return
+                if (time + DateUtil.MILLIS_PER_MINUTE > stime) {
+                    val m = reader.read(offsets(i))
+                    handler(m._1, m._2)
+                }
+                i -= 1
+            }
+        } finally {
+            FileUtil.close(reader)
+            FileUtil.close(index)
+        }
+    }
+}
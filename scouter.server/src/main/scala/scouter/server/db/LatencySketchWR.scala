@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.db
+
+import java.io.File
+import java.util.TreeMap
+
+import scouter.server.Logger
+import scouter.server.core.ServerStat
+import scouter.server.db.latency.{LatencySketchData, LatencySketchIndex}
+import scouter.server.util.ThreadScala
+import scouter.util.{FileUtil, IClose, RequestQueue}
+
+/**
+  * writes the closed minute histograms of services.
+  * a minute is appended to the day's data file and indexed by objType and service.
+  */
+object LatencySketchWR {
+    val root = "latency"
+    val queue = new RequestQueue[Data](DBCtr.MAX_QUE_SIZE)
+
+    /** the last minutes of yesterday may be closed after the first minutes of today */
+    val MAX_OPEN_DAYS = 2
+    val days = new TreeMap[String, DayFiles]()
+
+    ThreadScala.start("scouter.server.db.LatencySketchWR") {
+        while (DBCtr.running) {
+            val d = queue.get()
+            ServerStat.put("latency.db.queue", queue.size())
+            try {
+                val files = open(d.date)
+                val location = files.writer.write(d.time, d.histogram)
+                files.index.add(LatencySketchIndex.key(d.objType, d.service), location)
+            } catch {
+                case t: Throwable => Logger.println("S235", 10, "LatencySketchWR : " + t)
+            }
+        }
+        while (days.size() > 0) {
+            FileUtil.close(days.remove(days.firstKey()))
+        }
+    }
+
+    def add(date: String, objType: Int, service: Int, time: Long, histogram: Array[Byte]) {
+        val ok = queue.put(new Data(date, objType, service, time, histogram))
+        if (ok == false) {
+            Logger.println("S236", 10, "queue exceeded!!")
+        }
+    }
+
+    class Data(_date: String, _objType: Int, _service: Int, _time: Long, _histogram: Array[Byte]) {
+        val date = _date
+        val objType = _objType
+        val service = _service
+        val time = _time
+        val histogram = _histogram
+    }
+
+    class DayFiles(date: String) extends IClose {
+        val path = getDBPath(date)
+        new File(path).mkdirs()
+        val index = LatencySketchIndex.open(path + "/" + root)
+        val writer = LatencySketchData.openForWrite(path + "/" + root)
+
+        override def close() {
+            FileUtil.close(index)
+            FileUtil.close(writer)
+        }
+    }
+
+    private def open(date: String): DayFiles = {
+        var files = days.get(date)
+        if (files == null) {
+            files = new DayFiles(date)
+            days.put(date, files)
+            while (days.size() > MAX_OPEN_DAYS) {
+                val oldest = if (days.firstKey() == date) days.lastKey() else days.firstKey()
+                FileUtil.close(days.remove(oldest))
+            }
+        }
+        files
+    }
+
+    def getDBPath(date: String): String = {
+        val sb = new StringBuffer()
+        sb.append(DBCtr.getRootPath())
+        sb.append("/").append(date).append("/").append(root)
+        return sb.toString()
+    }
+}
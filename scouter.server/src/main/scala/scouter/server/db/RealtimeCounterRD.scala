@@ -2,6 +2,8 @@ package scouter.server.db;
 
 import scouter.io.DataInputX
 import scouter.lang.value.MapValue
+import scouter.lang.value.Value
+import scouter.server.db.counter.CounterSeriesStore
 import scouter.server.db.counter.RealtimeCounterDBHelper
 import scouter.util.DateUtil
 import scouter.util.FileUtil
@@ -33,6 +35,49 @@ object RealtimeCounterRD {
         }
     }
 
+    def hasSeries(date: String): Boolean = {
+        CounterSeriesStore.exists(RealtimeCounterDBHelper.getDBPath(date) + "/real")
+    }
+
+    /**
+      * read a counter of an object from the series store of the day.
+      * falls back to the realtime counter file if the day has no series store or the counter has non numeric values.
+      */
+    def readCounter(objName: String, counter: String, date: String, stime: Long, etime: Long, handler: (Long, Value) => Any) {
+        if (objName == null)
+            return ;
+        if (hasSeries(date) && readSeries(objName, counter, date, stime, etime, handler)) {
+            return ;
+        }
+        read(objName, date, stime, etime, (time: Long, data: MapValue) => {
+            val value = data.get(counter)
+            if (value != null) {
+                handler(time, value)
+            }
+        })
+    }
+
+    /**
+      * @return false if the counter is not kept in the series store
+      */
+    private def readSeries(objName: String, counter: String, date: String, stime: Long, etime: Long, handler: (Long, Value) => Any): Boolean = {
+        var perfdb: RealtimeCounterDBHelper = null;
+        try {
+            perfdb = new RealtimeCounterDBHelper().open(date, true);
+            if (perfdb == null)
+                return true;
+            val tag = perfdb.counterDbHeader.getTagStrInt().get(counter)
+            if (tag < 0)
+                return true;
+            return CounterSeriesStore.read(perfdb.path + "/real", CounterSeriesStore.key(HashUtil.hash(objName), tag), stime, etime, handler)
+        } catch {
+            case e: Exception => e.printStackTrace();
+        } finally {
+            FileUtil.close(perfdb);
+        }
+        true
+    }
+
     def readBulk(date: String, _stime: Long, etime: Long, handler: (MapValue) => Any) {
         var perfdb: RealtimeCounterDBHelper = null;
         try {
@@ -25,13 +25,13 @@ import scouter.server.db.counter.RealtimeCounterDBHelper
 import scouter.server.plugin.PlugInManager
 import scouter.util.DateUtil
 import scouter.util.FileUtil
-import scouter.util.RequestQueue
+import scouter.util.ConcurrentRequestQueue
 import scouter.util.HashUtil
 import scouter.util.IClose
 import scouter.util.ThreadUtil;
 import scouter.server.util.ThreadScala
 object RealtimeCounterWR {
-    val queue = new RequestQueue[PerfCounterPack](DBCtr.MAX_QUE_SIZE);
+    val queue = new ConcurrentRequestQueue[PerfCounterPack](DBCtr.MAX_QUE_SIZE);
     ThreadScala.start("scouter.server.db.RealtimeCounterWR") {
         val last_logtime = System.currentTimeMillis();
         var dBHelper: RealtimeCounterDBHelper = null
@@ -51,6 +51,10 @@ object RealtimeCounterWR {
                 val counterBytes = RealtimeCounterDBHelper.getTagBytes(dBHelper.counterDbHeader.getTagStrInt(), pack.data)
                 val dataOffset = dBHelper.counterData.write(counterBytes)
                 dBHelper.counterIndex.write(objHash, pack.time, dataOffset)
+                if (dBHelper.series != null) {
+                    val tags = dBHelper.counterDbHeader.getTagStrInt()
+                    dBHelper.series.add(objHash, pack.time, pack.data, (name: String) => tags.get(name))
+                }
 
             } catch {
                 case t: Throwable => Logger.println("S133", 10, t.toString())
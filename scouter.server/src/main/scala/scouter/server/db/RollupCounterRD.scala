@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db
+
+import java.io.File
+
+import scouter.lang.{CounterKey, TimeTypeEnum}
+import scouter.lang.value.{NullValue, Value}
+import scouter.server.db.counter.{DailyCounterIndex, RollupBucket, RollupCounterData}
+import scouter.util.{DateUtil, FileUtil}
+
+object RollupCounterRD {
+    /**
+      * the finest rollup for a time range. REALTIME means the range is short enough to read the realtime counters.
+      */
+    def getTimeType(stime: Long, etime: Long): Byte = {
+        val range = etime - stime
+        if (range <= 6 * DateUtil.MILLIS_PER_HOUR) TimeTypeEnum.REALTIME
+        else if (range <= 3 * DateUtil.MILLIS_PER_DAY) TimeTypeEnum.ONE_MIN
+        else if (range <= 31 * DateUtil.MILLIS_PER_DAY) TimeTypeEnum.FIVE_MIN
+        else TimeTypeEnum.HOUR
+    }
+
+    /**
+      * the time from which the rollups of the day are filled. Long.MaxValue if the day has no rollup.
+      */
+    def getCoveredFrom(date: String, timetype: Byte): Long = {
+        val fileName = DailyCounterWR.getDBPath(date) + "/" + RollupCounterWR.prefix(timetype)
+        if (new File(fileName + ".data").exists() == false) {
+            return Long.MaxValue
+        }
+        val reader = RollupCounterData.open(fileName)
+        try {
+            return reader.getCoveredFrom()
+        } finally {
+            FileUtil.close(reader)
+        }
+    }
+
+    /**
+      * buckets of a day for the time type of the key. an empty bucket is null.
+      */
+    def getBuckets(date: String, key: CounterKey): Array[RollupBucket] = {
+        if (RollupCounterWR.TIME_TYPES.contains(key.timetype) == false)
+            return null
+        val fileName = DailyCounterWR.getDBPath(date) + "/" + RollupCounterWR.prefix(key.timetype)
+        if (new File(fileName + ".data").exists() == false) {
+            return null
+        }
+        val offset = getOffset(key, fileName)
+        if (offset < 0)
+            return null
+        val reader = RollupCounterData.open(fileName)
+        try {
+            return reader.getBuckets(offset)
+        } finally {
+            FileUtil.close(reader)
+        }
+    }
+
+    /**
+      * values of the buckets of a day as the given stat(min, max, sum, count, last or avg). null if the day has no rollup of the key.
+      */
+    def getValues(date: String, key: CounterKey, stat: String): Array[Value] = {
+        val buckets = getBuckets(date, key)
+        if (buckets == null)
+            return null
+        buckets.map(b => if (b == null) new NullValue() else b.get(stat))
+    }
+
+    def getOffset(key: CounterKey, fileName: String): Long = {
+        val idx = DailyCounterIndex.open(fileName)
+        try {
+            return idx.get(key.getBytesKey())
+        } finally {
+            FileUtil.close(idx)
+        }
+    }
+
+    /**
+      * read the buckets of [stime, etime] in time order.
+      */
+    def read(objHash: Int, counter: String, timetype: Byte, stime: Long, etime: Long, handler: (Long, RollupBucket) => Any) {
+        val delta = TimeTypeEnum.getTime(timetype)
+        var dayStart = DateUtil.yyyymmdd(DateUtil.yyyymmdd(stime))
+        while (dayStart <= etime) {
+            val date = DateUtil.yyyymmdd(dayStart)
+            val buckets = getBuckets(date, new CounterKey(objHash, counter, timetype))
+            if (buckets != null) {
+                for (i <- 0 until buckets.length) {
+                    val time = dayStart + delta * i
+                    if (buckets(i) != null && time + delta > stime && time <= etime) {
+                        handler(time, buckets(i))
+                    }
+                }
+            }
+            //the next day, safe for a day longer than 24 hours
+            dayStart = DateUtil.yyyymmdd(DateUtil.yyyymmdd(dayStart + DateUtil.MILLIS_PER_DAY + 2 * DateUtil.MILLIS_PER_HOUR))
+        }
+    }
+}
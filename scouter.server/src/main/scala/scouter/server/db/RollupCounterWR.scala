@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db
+
+import java.io.File
+import java.util.TreeMap
+
+import scouter.lang.{CounterKey, TimeTypeEnum}
+import scouter.server.Logger
+import scouter.server.db.counter.{DailyCounterIndex, DailyCounterUtils, RollupBucket, RollupCounterData}
+import scouter.server.util.ThreadScala
+import scouter.util.{FileUtil, IClose, RequestQueue}
+
+/**
+  * 'rollup counter writer' queue and dispatcher.
+  * closed 1 minute, 5 minutes and 1 hour buckets are written to the slot of the bucket in the day's rollup file of each time type.
+  */
+object RollupCounterWR {
+    val queue = new RequestQueue[Data](DBCtr.MAX_QUE_SIZE)
+    val TIME_TYPES = Array(TimeTypeEnum.ONE_MIN, TimeTypeEnum.FIVE_MIN, TimeTypeEnum.HOUR)
+
+    /** an hour bucket of yesterday may be closed after the first minute buckets of today */
+    val MAX_OPEN_DAYS = 2
+    val days = new TreeMap[Integer, DayFiles]()
+
+    def prefix(timetype: Byte): String = {
+        timetype match {
+            case TimeTypeEnum.ONE_MIN => "rollup1m"
+            case TimeTypeEnum.FIVE_MIN => "rollup5m"
+            case _ => "rollup1h"
+        }
+    }
+
+    ThreadScala.start("scouter.server.db.RollupCounterWR") {
+        while (DBCtr.running) {
+            val d = queue.get()
+            try {
+                val files = open(d.date)
+                val index = files.index(d.key.timetype)
+                val writer = files.writer(d.key.timetype)
+                val key = d.key.getBytesKey()
+                val bucketPos = DailyCounterUtils.getBucketPos(d.key.timetype, d.hhmm)
+                val offset = index.get(key)
+                writer.cover(d.from)
+                if (offset >= 0) {
+                    writer.write(offset, bucketPos, d.bucket)
+                } else {
+                    val location = writer.writeNew(d.key.timetype, bucketPos, d.bucket)
+                    if (location >= 0) {
+                        index.set(key, location)
+                    }
+                }
+            } catch {
+                case t: Throwable => Logger.println("S233", 10, "RollupCounterWR : " + t)
+            }
+        }
+        while (days.size() > 0) {
+            FileUtil.close(days.remove(days.firstKey()))
+        }
+    }
+
+    /**
+      * @param from the time from which the bucket is filled, later than the bucket start if the rollup started in the bucket
+      */
+    def add(date: Int, key: CounterKey, hhmm: Int, from: Long, bucket: RollupBucket) {
+        val ok = queue.put(new Data(date, key, hhmm, from, bucket))
+        if (ok == false) {
+            Logger.println("S234", 10, "queue exceeded!!")
+        }
+    }
+
+    class Data(_date: Int, _key: CounterKey, _hhmm: Int, _from: Long, _bucket: RollupBucket) {
+        val date = _date
+        val key = _key
+        val hhmm = _hhmm
+        val from = _from
+        val bucket = _bucket
+    }
+
+    class DayFiles(date: String) extends IClose {
+        val index = new Array[DailyCounterIndex](TimeTypeEnum.DAY)
+        val writer = new Array[RollupCounterData](TimeTypeEnum.DAY)
+
+        val path = DailyCounterWR.getDBPath(date)
+        new File(path).mkdirs()
+        for (t <- TIME_TYPES) {
+            index(t) = DailyCounterIndex.open(path + "/" + prefix(t))
+            writer(t) = RollupCounterData.openForWrite(path + "/" + prefix(t))
+        }
+
+        override def close() {
+            for (t <- TIME_TYPES) {
+                FileUtil.close(index(t))
+                FileUtil.close(writer(t))
+            }
+        }
+    }
+
+    private def open(date: Int): DayFiles = {
+        var files = days.get(date)
+        if (files == null) {
+            files = new DayFiles(Integer.toString(date))
+            days.put(date, files)
+            while (days.size() > MAX_OPEN_DAYS) {
+                val oldest = if (days.firstKey() == date) days.lastKey() else days.firstKey()
+                FileUtil.close(days.remove(oldest))
+            }
+        }
+        files
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db
+
+import scouter.util.StrMatch
+
+import scala.collection.mutable
+
+/**
+  * StrMatch on text hashes of a day.
+  * each hash is resolved by TextRD and matched only once per query instead of once per row.
+  */
+class TextMatcher(divs: String, pattern: String) {
+    private val strMatch = new StrMatch(pattern)
+    private val matched = new mutable.HashMap[Int, Boolean]()
+    private var date: String = null
+
+    def include(date: String, hash: Int): Boolean = {
+        if (date != this.date) {
+            this.date = date
+            matched.clear()
+        }
+        matched.getOrElseUpdate(hash, strMatch.include(TextRD.getString(date, divs, hash)))
+    }
+}
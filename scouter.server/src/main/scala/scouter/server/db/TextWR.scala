@@ -26,14 +26,14 @@ import scouter.server.core.cache.TextCache
 import scouter.server.core.{CoreRun, ServerStat}
 import scouter.server.db.text.TextTable
 import scouter.server.util.{EnumerScala, ThreadScala}
-import scouter.util.{DateUtil, FileUtil, LinkedMap, RequestQueue}
+import scouter.util.{ConcurrentRequestQueue, DateUtil, FileUtil, LinkedMap}
 
 object TextWR {
 
     protected val database = new LinkedMap[String, TextTable]();
     protected var idleConns = new ArrayList[String]();
 
-    val queue = new RequestQueue[Data](DBCtr.LARGE_MAX_QUE_SIZE);
+    val queue = new ConcurrentRequestQueue[Data](DBCtr.LARGE_MAX_QUE_SIZE);
 
     // executed every 10sec
     ThreadScala.start("scouter.server.db.TextWR", {CoreRun.running}, 10000) {
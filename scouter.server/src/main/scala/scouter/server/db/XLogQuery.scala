@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db
+
+import java.util.concurrent.{ArrayBlockingQueue, TimeUnit}
+
+import scouter.lang.pack.XLogPack
+import scouter.server.db.io.ITimeIndex
+import scouter.server.db.xlog.{XLogBitmapIndex, XLogColumnBlock}
+import scouter.util.{LongSet, RoaringBitmap}
+
+object XLogQuery {
+    val BUFFER_SIZE = 256
+    /** a query whose consumer does not take a result for this time is cancelled */
+    val STALL_TIMEOUT = 30000L
+    /** a shared scan waits no longer than this for a consumer before detaching its query */
+    val SHARED_WAIT = 50L
+
+    /** results of offer */
+    val MORE = 0
+    val FULL = 1
+    val DONE = 2
+}
+
+/**
+  * an xlog query of a day executed by XLogQueryEngine.
+  * rows in [stime, etime] accepted by the predicate are mapped by the projection and streamed to the consumer
+  * through a bounded buffer. a scan of its own waits while the consumer is behind.
+  * a shared scan waits only SHARED_WAIT, then it detaches the query which goes on with a scan of its own.
+  * bitmapSelect and columnFilter are optional pushdowns used when the day has bitmap indexes or columns.
+  * they must not reject a row the predicate accepts.
+  */
+class XLogQuery[T <: AnyRef](val date: String, val stime: Long, val etime: Long,
+                             val predicate: XLogPack => Boolean,
+                             val projection: (Long, Array[Byte], XLogPack) => T,
+                             val limit: Int) {
+    import XLogQuery._
+
+    var bitmapSelect: XLogBitmapIndex => RoaringBitmap = null
+    var columnFilter: (XLogColumnBlock, Int) => Boolean = null
+
+    private val buffer = new ArrayBlockingQueue[T](BUFFER_SIZE)
+    @volatile private var cancelled = false
+    @volatile private var finished = false
+    @volatile private var count = 0
+
+    /** bucket of the last result and the txids given in it, so a scan resuming from the bucket skips them */
+    private var lastBucket = Long.MinValue
+    private val lastBucketTxids = new LongSet()
+
+    def cancel() {
+        cancelled = true
+        buffer.clear()
+    }
+
+    def isCancelled(): Boolean = cancelled
+
+    def isDone(): Boolean = cancelled || count >= limit
+
+    /** rows given to the consumer so far */
+    private[db] def resultCount(): Int = count
+
+    /**
+      * the next result, waiting for the scan. null at the end of the query,
+      * which is also when the limit is reached or the query is cancelled without waiting for the scan to finish.
+      */
+    def next(): T = {
+        while (true) {
+            val v = buffer.poll(100, TimeUnit.MILLISECONDS)
+            if (v != null) {
+                return v
+            }
+            if (finished || isDone()) {
+                return buffer.poll()
+            }
+        }
+        null.asInstanceOf[T]
+    }
+
+    /**
+      * called by a scan of its own, waiting while the buffer is full. the pack is read from the data if it is null.
+      * @return false if the query needs no more rows
+      */
+    private[db] def offer(time: Long, data: Array[Byte], pack: XLogPack): Boolean = {
+        offer(time, data, pack, true) == MORE
+    }
+
+    /**
+      * @param wait wait for the consumer while the buffer is full up to STALL_TIMEOUT, otherwise up to SHARED_WAIT
+      * @return MORE, FULL if the row was not taken because the buffer is full, or DONE if the query needs no more rows
+      */
+    private[db] def offer(time: Long, data: Array[Byte], pack: XLogPack, wait: Boolean): Int = {
+        if (isDone()) {
+            return DONE
+        }
+        if (time < stime || time > etime) {
+            return MORE
+        }
+        val x = if (pack != null) pack else XLogQueryEngine.toPack(data)
+        val bucket = ITimeIndex.bucketTime(time)
+        if (bucket == lastBucket && lastBucketTxids.contains(x.txid)) {
+            return MORE
+        }
+        if (predicate(x) == false) {
+            return MORE
+        }
+        val v = projection(time, data, x)
+        if (wait) {
+            var waited = 0L
+            while (buffer.offer(v, 100, TimeUnit.MILLISECONDS) == false) {
+                if (cancelled) {
+                    return DONE
+                }
+                waited += 100
+                if (waited >= STALL_TIMEOUT) {
+                    cancel()
+                    return DONE
+                }
+            }
+        } else if (buffer.offer(v, SHARED_WAIT, TimeUnit.MILLISECONDS) == false) {
+            return FULL
+        }
+        if (bucket != lastBucket) {
+            lastBucket = bucket
+            lastBucketTxids.clear()
+        }
+        lastBucketTxids.add(x.txid)
+        count += 1
+        if (isDone()) DONE else MORE
+    }
+
+    private[db] def finish() {
+        finished = true
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Executor, Executors, ThreadFactory}
+
+import scouter.io.DataInputX
+import scouter.lang.pack.XLogPack
+import scouter.server.Configure
+import scouter.server.db.io.ITimeIndex
+
+import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
+import scala.util.control.ControlThrowable
+
+object XLogQueryEngine {
+    private val threadNo = new AtomicInteger()
+
+    private lazy val engine = new XLogQueryEngine(XLogRD.readByTime,
+        Executors.newFixedThreadPool(Math.max(1, Configure.getInstance().xlog_query_scan_thread_count), new ThreadFactory {
+            override def newThread(r: Runnable): Thread = {
+                val t = new Thread(r, "scouter.server.db.XLogQueryScan-" + threadNo.incrementAndGet())
+                t.setDaemon(true)
+                t
+            }
+        }))
+
+    def toPack(data: Array[Byte]): XLogPack = {
+        new DataInputX(data).readPack().asInstanceOf[XLogPack]
+    }
+
+    def execute[T <: AnyRef](q: XLogQuery[T]): XLogQuery[T] = {
+        engine.execute(q)
+    }
+}
+
+/**
+  * runs XLogQuery on the scan threads of the executor.
+  * a query with a pushdown runs on the bitmap indexes or columns of the day if there are.
+  * other queries share a time index scan of the same day whose range covers theirs and which has not reached
+  * the bucket of their start time yet, so every query gets its rows in time order.
+  * a query whose consumer is behind is detached from the shared scan and resumes from the bucket of the row
+  * it did not take on a scan of its own.
+  * @param readByTime reads (time, xlog) of a day in time order, XLogRD.readByTime
+  */
+class XLogQueryEngine(readByTime: (String, Long, Long, (Long, Array[Byte]) => Any) => Unit, executor: Executor) {
+    private object StopScan extends ControlThrowable
+
+    private class SharedScan(val date: String, val stime: Long, val etime: Long) {
+        val queries = new ArrayBuffer[XLogQuery[_ <: AnyRef]]()
+        var targets = new Array[XLogQuery[_ <: AnyRef]](0)
+        var lastTime = Long.MinValue
+        var closed = false
+
+        def join(q: XLogQuery[_ <: AnyRef]): Boolean = {
+            this.synchronized {
+                if (closed || stime > q.stime || etime < q.etime) {
+                    return false
+                }
+                //rows of the bucket being scanned are not in time order, the query has to start after it
+                if (lastTime != Long.MinValue && ITimeIndex.bucketTime(lastTime) + ITimeIndex.BUCKET_MILLIS > q.stime) {
+                    return false
+                }
+                queries += q
+                targets = queries.filter(_.isDone() == false).toArray
+                true
+            }
+        }
+
+        def detach(q: XLogQuery[_ <: AnyRef]) {
+            this.synchronized {
+                queries -= q
+                targets = queries.filter(_.isDone() == false).toArray
+            }
+        }
+    }
+
+    private val scans = new mutable.HashMap[String, ArrayBuffer[SharedScan]]()
+
+    private def submit(body: => Any) {
+        executor.execute(new Runnable {
+            override def run() {
+                body
+            }
+        })
+    }
+
+    def execute[T <: AnyRef](q: XLogQuery[T]): XLogQuery[T] = {
+        if (q.bitmapSelect != null && XLogRD.hasBitmaps(q.date)) {
+            submit {
+                try {
+                    XLogRD.readByBitmaps(q.date, q.stime, q.etime, q.bitmapSelect, (time: Long, data: Array[Byte]) => offerOrStop(q, time, data))
+                } finally {
+                    q.finish()
+                }
+            }
+        } else if (q.columnFilter != null && XLogRD.hasColumns(q.date)) {
+            submit {
+                try {
+                    XLogRD.readByColumns(q.date, q.stime, q.etime, q.limit, q.columnFilter, (time: Long, data: Array[Byte]) => {
+                        offerOrStop(q, time, data)
+                        q.resultCount()
+                    })
+                } finally {
+                    q.finish()
+                }
+            }
+        } else {
+            joinOrStart(q)
+        }
+        q
+    }
+
+    private def offerOrStop(q: XLogQuery[_ <: AnyRef], time: Long, data: Array[Byte]) {
+        if (q.offer(time, data, null) == false) {
+            throw StopScan
+        }
+    }
+
+    /**
+      * a scan of its own for the query from the time
+      */
+    private def scanAlone(q: XLogQuery[_ <: AnyRef], from: Long) {
+        submit {
+            try {
+                readByTime(q.date, from, q.etime, (time: Long, data: Array[Byte]) => offerOrStop(q, time, data))
+            } catch {
+                case StopScan =>
+            } finally {
+                q.finish()
+            }
+        }
+    }
+
+    private def joinOrStart(q: XLogQuery[_ <: AnyRef]) {
+        val scan = scans.synchronized {
+            val running = scans.getOrElseUpdate(q.date, new ArrayBuffer[SharedScan]())
+            if (running.exists(_.join(q))) {
+                return
+            }
+            val s = new SharedScan(q.date, q.stime, q.etime)
+            s.join(q)
+            running += s
+            s
+        }
+        submit {
+            try {
+                readByTime(scan.date, scan.stime, scan.etime, (time: Long, data: Array[Byte]) => {
+                    val targets = scan.synchronized {
+                        scan.lastTime = time
+                        if (scan.targets.isEmpty) {
+                            scan.closed = true
+                            throw StopScan
+                        }
+                        scan.targets
+                    }
+                    var pack: XLogPack = null
+                    for (t <- targets) {
+                        //a query is finished as soon as it needs no more rows or the scan is past the bucket of its end time
+                        if (t.isDone() || ITimeIndex.bucketTime(time) > t.etime) {
+                            scan.detach(t)
+                            t.finish()
+                        } else if (time >= t.stime && time <= t.etime) {
+                            if (pack == null) {
+                                pack = XLogQueryEngine.toPack(data)
+                            }
+                            t.offer(time, data, pack, false) match {
+                                case XLogQuery.FULL =>
+                                    scan.detach(t)
+                                    scanAlone(t, Math.max(t.stime, ITimeIndex.bucketTime(time)))
+                                case XLogQuery.DONE =>
+                                    scan.detach(t)
+                                    t.finish()
+                                case _ =>
+                            }
+                        }
+                    }
+                })
+            } catch {
+                case StopScan =>
+            } finally {
+                scans.synchronized {
+                    scan.synchronized {
+                        scan.closed = true
+                    }
+                    scans.get(scan.date).foreach(running => {
+                        running -= scan
+                        if (running.isEmpty) {
+                            scans.remove(scan.date)
+                        }
+                    })
+                }
+                scan.synchronized {
+                    scan.queries.foreach(_.finish())
+                }
+            }
+        }
+    }
+}
@@ -22,10 +22,17 @@ import java.io.File
 import java.util.List
 import java.util.Vector
 import scouter.io.DataOutputX
+import scouter.server.db.xlog.XLogBitmapIndex
+import scouter.server.db.xlog.XLogColumnBlock
+import scouter.server.db.xlog.XLogColumnStore
 import scouter.server.db.xlog.XLogDataReader
 import scouter.server.db.xlog.XLogIndex
 import scouter.util.FileUtil
-import scouter.server.db.io.IndexTimeFile
+import scouter.util.RoaringBitmap
+import scouter.server.db.io.ITimeIndex
+import scouter.server.db.io.SortedTimeIndexFile
+
+import scala.collection.mutable.ArrayBuffer
 
 object XLogRD {
 
@@ -37,10 +44,10 @@ object XLogRD {
         if (new File(path).canRead()) {
             val file = path + "/" + XLogWR.prefix;
             var reader: XLogDataReader = null;
-            var table: IndexTimeFile = null;
+            var table: ITimeIndex = null;
             try {
                 reader = XLogDataReader.open(date, file);
-                table = new IndexTimeFile(file + XLogIndex.POSTFIX_TIME);
+                table = SortedTimeIndexFile.open(file + XLogIndex.POSTFIX_TIME, false);
                 table.readByLimitCount(fromTime, toTime, lastBucketTime, limitCount, handler, reader.read)
             } catch {
                 case e: Exception => e.printStackTrace()
@@ -57,10 +64,10 @@ object XLogRD {
         if (new File(path).canRead()) {
             val file = path + "/" + XLogWR.prefix;
             var reader: XLogDataReader = null;
-            var table: IndexTimeFile = null;
+            var table: ITimeIndex = null;
             try {
                 reader = XLogDataReader.open(date, file);
-                table = new IndexTimeFile(file + XLogIndex.POSTFIX_TIME);
+                table = SortedTimeIndexFile.open(file + XLogIndex.POSTFIX_TIME, false);
                 table.read(fromTime, toTime, handler, reader.read)
             } catch {
                 case e: Exception => e.printStackTrace()
@@ -78,10 +85,10 @@ object XLogRD {
         if (new File(path).canRead()) {
             val file = path + "/" + XLogWR.prefix;
             var reader: XLogDataReader = null;
-            var table: IndexTimeFile = null;
+            var table: ITimeIndex = null;
             try {
                 reader = XLogDataReader.open(date, file);
-                table = new IndexTimeFile(file + XLogIndex.POSTFIX_TIME);
+                table = SortedTimeIndexFile.open(file + XLogIndex.POSTFIX_TIME, false);
                 table.readFromEnd(fromTime, toTime, handler, reader.read)
             } catch {
                 case e: Throwable => //e.printStackTrace();
@@ -92,6 +99,91 @@ object XLogRD {
         }
     }
 
+    def hasColumns(date: String): Boolean = {
+        XLogColumnStore.exists(XLogWR.getDBPath(date) + "/" + XLogWR.prefix)
+    }
+
+    /**
+      * evaluate the filter on the columnar side file and load only the matched xlogs in time order.
+      * filter(block, i) is called for rows in [fromTime, toTime].
+      * the handler returns the running count and the read stops when it reaches limitCount.
+      */
+    def readByColumns(date: String, fromTime: Long, toTime: Long, limitCount: Int, filter: (XLogColumnBlock, Int) => Boolean, handler: (Long, Array[Byte]) => Int) {
+        val path = XLogWR.getDBPath(date);
+        if (new File(path).canRead()) {
+            val file = path + "/" + XLogWR.prefix;
+            var reader: XLogDataReader = null;
+            try {
+                XLogColumnStore.readRows(file, fromTime, toTime, filter, (time: Long, pos: Long) => {
+                    if (reader == null) {
+                        reader = XLogDataReader.open(date, file);
+                    }
+                    handler(time, reader.read(pos)) < limitCount
+                })
+            } catch {
+                case e: Exception => e.printStackTrace()
+                case _ :Throwable=>
+            } finally {
+                FileUtil.close(reader);
+            }
+        }
+    }
+
+    def hasBitmaps(date: String): Boolean = {
+        XLogBitmapIndex.exists(XLogWR.getDBPath(date) + "/" + XLogWR.prefix)
+    }
+
+    /**
+      * load the xlogs of the rows selected on the bitmap index in time order.
+      */
+    def readByBitmaps(date: String, fromTime: Long, toTime: Long, select: XLogBitmapIndex => RoaringBitmap, handler: (Long, Array[Byte]) => Any) {
+        scanBitmaps(date, fromTime, toTime, Integer.MAX_VALUE, select, (time: Long, data: Array[Byte]) => {
+            handler(time, data)
+            0
+        })
+    }
+
+    /**
+      * paged version of readByBitmaps. it starts from lastBucketTime(the bucket time of the last xlog of the previous page),
+      * passes the bucket time of each xlog to the handler like ITimeIndex.readByLimitCount
+      * and stops when the handler returns a count reaching limitCount.
+      */
+    def readByBitmaps(date: String, fromTime: Long, toTime: Long, lastBucketTime: Long, limitCount: Int, select: XLogBitmapIndex => RoaringBitmap, handler: (Long, Array[Byte]) => Int) {
+        val from = if (lastBucketTime != 0) Math.max(fromTime, lastBucketTime) else fromTime;
+        scanBitmaps(date, from, toTime, limitCount, select, (time: Long, data: Array[Byte]) => handler(ITimeIndex.bucketTime(time), data))
+    }
+
+    private def scanBitmaps(date: String, from: Long, toTime: Long, limitCount: Int, select: XLogBitmapIndex => RoaringBitmap, handler: (Long, Array[Byte]) => Int) {
+        val path = XLogWR.getDBPath(date);
+        if (new File(path).canRead()) {
+            val file = path + "/" + XLogWR.prefix;
+            val matched = new ArrayBuffer[(Long, Long)]();
+            var index: XLogBitmapIndex = null;
+            var reader: XLogDataReader = null;
+            try {
+                index = XLogBitmapIndex.openForRead(file);
+                index.readRows(select(index), from, toTime, (time: Long, pos: Long) => {
+                    matched += ((time, pos))
+                })
+                if (matched.nonEmpty) {
+                    reader = XLogDataReader.open(date, file);
+                    val sorted = matched.sortBy(_._1).iterator
+                    var counted = 0
+                    while (counted < limitCount && sorted.hasNext) {
+                        val m = sorted.next()
+                        counted = handler(m._1, reader.read(m._2))
+                    }
+                }
+            } catch {
+                case e: Exception => e.printStackTrace()
+                case _ :Throwable=>
+            } finally {
+                FileUtil.close(index);
+                FileUtil.close(reader);
+            }
+        }
+    }
+
     def getByTxid(date: String, txid: Long): Array[Byte] = {
         val path = XLogWR.getDBPath(date);
         if (new File(path).canRead() == false) {
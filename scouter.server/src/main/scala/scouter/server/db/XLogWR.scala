@@ -15,72 +15,234 @@
  *  limitations under the License. 
  *
  */
-
 package scouter.server.db;
 
 import java.io.File
+import java.util
 
+import scouter.lang.pack.XLogPack
 import scouter.server.core.ServerStat
-import scouter.server.db.xlog.{XLogDataWriter, XLogIndex}
+import scouter.server.db.xlog.{XLogBitmapIndex, XLogColumnStore, XLogDataWriter, XLogGroupCommit, XLogIndex}
 import scouter.server.util.{OftenAction, ThreadScala}
 import scouter.server.{Configure, Logger}
-import scouter.util.{DateUtil, FileUtil, RequestQueue, ThreadUtil}
+import scouter.util.{ConcurrentRequestQueue, DateUtil, FileUtil, ThreadUtil}
 
 import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
 
 object XLogWR {
-    case class XLogData(time: Long, txid: Long, gxid: Long, elapsed: Int, data: Array[Byte])
-    case class StorageContainer(idleLimit: Long, var lastAccess: Long, index: XLogIndex, writer: XLogDataWriter)
+    case class XLogData(time: Long, txid: Long, gxid: Long, elapsed: Int, data: Array[Byte], pack: XLogPack = null)
+    case class StorageContainer(idleLimit: Long, var lastAccess: Long, index: XLogIndex, writer: XLogDataWriter, columns: XLogColumnStore, bitmaps: XLogBitmapIndex) {
+        //group commit : written but not yet flushed and indexed
+        val pending = new ArrayBuffer[(XLogData, Long)]()
+        var unflushedBytes = 0L
+        var lastFlush = System.currentTimeMillis()
+    }
 
     val MAX_IDLE = 30 * 60 * 1000L
     val dir = "/xlog"
     val prefix = "xlog"
 
-    val queue = new RequestQueue[XLogData](Configure.getInstance().xlog_queue_size)
+    val conf = Configure.getInstance()
+    val queue = new ConcurrentRequestQueue[XLogData](conf.xlog_queue_size)
+    //containers and their pending batches are touched only by the writer thread
     val dailyContainer = mutable.Map[Long, StorageContainer]()
+    /** queued by the watcher, the writer closes the idle containers when it takes it */
+    private val CLOSE_IDLE = XLogData(0, 0, 0, 0, null)
 
     ThreadScala.start("scouter.server.db.XLogDataFileWatcher") {
         while (DBCtr.running) {
             ThreadUtil.sleep(5 * 60 * 1000)
-            val now = System.currentTimeMillis()
-            dailyContainer
-                    .filter(kv => now - kv._2.lastAccess > kv._2.idleLimit)
-                    .keys.foreach(k => close(k))
+            queue.put(CLOSE_IDLE)
         }
     }
 
     ThreadScala.start("scouter.server.db.XLogWR") {
+        if (conf.xlog_group_commit_enabled) {
+            runGroupCommit()
+        } else {
+            run()
+        }
+        closeAll()
+    }
+
+    private def run(): Unit = {
         while (DBCtr.running) {
             val m = queue.get()
 
             ServerStat.put("xlog.db.queue",queue.size())
             try {
-                val currentDateUnit = DateUtil.getDateUnit(m.time)
-                val container = dailyContainer.getOrElseUpdate(currentDateUnit, {
-                    val (index, writer) = open(m.time)
-                    StorageContainer(MAX_IDLE, System.currentTimeMillis(), index, writer)
-                })
-
-                if (container.index == null) {
-                    OftenAction.act("XLoWR", 10) {
-                        dailyContainer.remove(currentDateUnit)
-                        queue.clear()
-                    }
-                    Logger.println("SZ143", 10, "can't open XLoWR")
-
+                val container = if (m eq CLOSE_IDLE) {
+                    closeIdle()
+                    null
                 } else {
+                    getContainer(m.time)
+                }
+                if (container != null) {
                     container.lastAccess = System.currentTimeMillis()
                     val location = container.writer.write(m.data)
                     container.index.setByTime(m.time, location)
                     container.index.setByTxid(m.txid, location)
                     container.index.setByGxid(m.gxid, location)
+                    addFields(container, m, location)
                 }
 
             } catch {
                 case t: Throwable => t.printStackTrace()
             }
         }
-        closeAll()
+    }
+
+    /**
+      * drain up to xlog_group_commit_max_count xlogs or wait xlog_group_commit_max_wait_ms for them,
+      * write them with one append and index them together when the data file is flushed.
+      */
+    private def runGroupCommit(): Unit = {
+        val commit = new XLogGroupCommit[XLogData](queue)
+        val batch = new util.ArrayList[XLogData]()
+        while (DBCtr.running) {
+            val maxCount = Math.max(1, conf.xlog_group_commit_max_count)
+            val flushInterval = if (conf.xlog_group_commit_flush_interval_ms > 0) conf.xlog_group_commit_flush_interval_ms else 1000
+            try {
+                if (commit.collect(batch, maxCount, conf.xlog_group_commit_max_wait_ms, flushInterval) > 0) {
+                    val idle = removeCloseIdle(batch)
+                    ServerStat.put("xlog.db.queue", queue.size())
+                    ServerStat.put("xlog.db.batch", batch.size())
+                    writeBatch(batch)
+                    if (idle) {
+                        closeIdle()
+                    }
+                }
+            } catch {
+                case t: Throwable => t.printStackTrace()
+            } finally {
+                batch.clear()
+            }
+            try {
+                flushPending(false)
+            } catch {
+                case t: Throwable => t.printStackTrace()
+            }
+        }
+        //what is still queued on shutdown is written before closeAll flushes the containers
+        try {
+            while (commit.drain(batch, Math.max(1, conf.xlog_group_commit_max_count)) > 0) {
+                removeCloseIdle(batch)
+                writeBatch(batch)
+                batch.clear()
+            }
+        } catch {
+            case t: Throwable => t.printStackTrace()
+        }
+    }
+
+    private def removeCloseIdle(batch: util.List[XLogData]): Boolean = {
+        var found = false
+        val it = batch.iterator()
+        while (it.hasNext) {
+            if (it.next() eq CLOSE_IDLE) {
+                it.remove()
+                found = true
+            }
+        }
+        found
+    }
+
+    private def closeIdle(): Unit = {
+        val now = System.currentTimeMillis()
+        dailyContainer
+                .filter(kv => now - kv._2.lastAccess > kv._2.idleLimit)
+                .keys.foreach(k => close(k))
+    }
+
+    private def writeBatch(batch: util.List[XLogData]): Unit = {
+        var from = 0
+        while (from < batch.size()) {
+            val dateUnit = DateUtil.getDateUnit(batch.get(from).time)
+            var to = from + 1
+            while (to < batch.size() && DateUtil.getDateUnit(batch.get(to).time) == dateUnit) {
+                to += 1
+            }
+            val container = getContainer(batch.get(from).time)
+            if (container != null) {
+                container.lastAccess = System.currentTimeMillis()
+                val list = batch.subList(from, to)
+                val records = new util.ArrayList[Array[Byte]](list.size())
+                for (i <- 0 until list.size()) {
+                    records.add(list.get(i).data)
+                }
+                val location = new Array[Long](list.size())
+                container.unflushedBytes += container.writer.writeBatch(records, location)
+                for (i <- 0 until list.size()) {
+                    container.pending += ((list.get(i), location(i)))
+                }
+            }
+            from = to
+        }
+    }
+
+    private def flushPending(force: Boolean): Unit = {
+        val now = System.currentTimeMillis()
+        dailyContainer.values.foreach(container => {
+            if (XLogGroupCommit.flushDue(force, now, container.lastFlush, container.unflushedBytes,
+                    conf.xlog_group_commit_flush_interval_ms, conf.xlog_group_commit_max_unflushed_bytes)) {
+                flush(container)
+            }
+        })
+    }
+
+    private def flush(container: StorageContainer): Unit = {
+        container.lastFlush = System.currentTimeMillis()
+        if (container.pending.isEmpty) {
+            return
+        }
+        container.writer.flush()
+
+        val count = container.pending.size
+        val time = new Array[Long](count)
+        val txid = new Array[Long](count)
+        val gxid = new Array[Long](count)
+        val pos = new Array[Long](count)
+        for (i <- 0 until count) {
+            val (m, location) = container.pending(i)
+            time(i) = m.time
+            txid(i) = m.txid
+            gxid(i) = m.gxid
+            pos(i) = location
+            addFields(container, m, location)
+        }
+        container.pending.clear()
+        container.unflushedBytes = 0
+        container.index.setBatch(count, time, txid, gxid, pos)
+    }
+
+    private def addFields(container: StorageContainer, m: XLogData, location: Long): Unit = {
+        if (m.pack == null)
+            return
+        if (container.columns != null) {
+            container.columns.add(m.pack, location)
+        }
+        if (container.bitmaps != null) {
+            container.bitmaps.add(m.pack, location)
+        }
+    }
+
+    private def getContainer(time: Long): StorageContainer = {
+        val currentDateUnit = DateUtil.getDateUnit(time)
+        val container = dailyContainer.getOrElseUpdate(currentDateUnit, {
+            val (index, writer, columns, bitmaps) = open(time)
+            StorageContainer(MAX_IDLE, System.currentTimeMillis(), index, writer, columns, bitmaps)
+        })
+
+        if (container.index == null) {
+            OftenAction.act("XLoWR", 10) {
+                dailyContainer.remove(currentDateUnit)
+                queue.clear()
+            }
+            Logger.println("SZ143", 10, "can't open XLoWR")
+            return null
+        }
+        container
     }
 
     def add(time: Long, tid: Long, gid: Long, elapsed: Int, data: Array[Byte]): Unit = {
@@ -90,23 +252,42 @@ object XLogWR {
         }
     }
 
+    def add(p: XLogPack, data: Array[Byte]): Unit = {
+        val ok = queue.put(XLogData(p.endTime, p.txid, p.gxid, p.elapsed, data, p))
+        if (!ok) {
+            Logger.println("S144", 10, "queue exceeded!!")
+        }
+    }
+
     def closeAll(): Unit = {
         dailyContainer.values.foreach (container => {
-            FileUtil.close(container.index)
-            FileUtil.close(container.writer)
+            closeContainer(container)
         })
         dailyContainer.clear()
     }
 
     def close(time: Long): Unit = {
         dailyContainer.get(time).foreach(container => {
-            FileUtil.close(container.index)
-            FileUtil.close(container.writer)
+            closeContainer(container)
         })
         dailyContainer.remove(time)
     }
 
-    def open(time: Long): (XLogIndex, XLogDataWriter) = {
+    private def closeContainer(container: StorageContainer): Unit = {
+        if (container.index != null) {
+            try {
+                flush(container)
+            } catch {
+                case t: Throwable => t.printStackTrace()
+            }
+        }
+        FileUtil.close(container.index)
+        FileUtil.close(container.writer)
+        FileUtil.close(container.columns)
+        FileUtil.close(container.bitmaps)
+    }
+
+    def open(time: Long): (XLogIndex, XLogDataWriter, XLogColumnStore, XLogBitmapIndex) = {
         val date = DateUtil.yyyymmdd(time)
 
         try {
@@ -116,8 +297,12 @@ object XLogWR {
             val file = path + "/" + prefix
             val index = XLogIndex.open(file)
             val writer = XLogDataWriter.open(date, file)
+            //a day which has xlogs without columns or bitmaps keeps going without them
+            val newDay = !XLogIndex.exists(file)
+            val columns = if (conf.xlog_column_store_enabled && (newDay || XLogColumnStore.exists(file))) XLogColumnStore.open(file) else null
+            val bitmaps = if (conf.xlog_bitmap_index_enabled && (newDay || XLogBitmapIndex.exists(file))) XLogBitmapIndex.open(file) else null
 
-            return (index, writer)
+            return (index, writer, columns, bitmaps)
 
         } catch {
             case e: Throwable => {
@@ -126,7 +311,7 @@ object XLogWR {
             }
         }
 
-        (null, null)
+        (null, null, null, null)
     }
 
     def getDBPath(date: String): String = {
@@ -24,7 +24,7 @@ import java.util.Vector
 
 import scouter.io.DataOutputX
 import scouter.server.db.io.IndexTimeFile
-import scouter.server.db.span.{ZipkinSpanDataReader, ZipkinSpanIndex}
+import scouter.server.db.span.{SpanTree, ZipkinSpanDataReader, ZipkinSpanIndex}
 import scouter.util.FileUtil
 
 import scala.collection.mutable
@@ -170,6 +170,59 @@ object ZipkinSpanRD {
 
     }
 
+    /**
+      * the spans of a gxid assembled from the span tree index without reading the containers.
+      * null if the day has no tree index or some containers of the gxid are not in it.
+      */
+    def getSpanTree(date: String, gxid: Long): SpanTree = {
+        val path = ZipkinSpanWR.getDBPath(date)
+        if (!new File(path).canRead()) {
+            return null
+        }
+        val file = path + "/" + ZipkinSpanWR.SPAN_PREFIX
+        var idx: ZipkinSpanIndex = null
+        try {
+            idx = ZipkinSpanIndex.open(file)
+            val entries = idx.getTree(gxid)
+            if (entries == null || entries.size() == 0 || entries.size() < idx.getByGxid(gxid).size()) {
+                return null
+            }
+            SpanTree.assemble(entries)
+        } catch {
+            case e: Exception =>
+                e.printStackTrace()
+                null
+        } finally {
+            FileUtil.close(idx)
+        }
+    }
+
+    /**
+      * the span containers at the positions of the span tree nodes.
+      */
+    def getByPositions(date: String, positions: Array[Long]): List[Array[Byte]] = {
+        val spanList = new util.ArrayList[Array[Byte]]()
+        val file = ZipkinSpanWR.getDBPath(date) + "/" + ZipkinSpanWR.SPAN_PREFIX
+        var reader: ZipkinSpanDataReader = null
+        try {
+            reader = ZipkinSpanDataReader.open(date, file)
+            for (pos <- positions) {
+                val buff = reader.read(pos)
+                if (buff != null) {
+                    spanList.add(buff)
+                }
+            }
+        } catch {
+            case e: Exception => e.printStackTrace()
+
+        } finally {
+            FileUtil.close(reader)
+        }
+
+        import scala.collection.JavaConversions._
+        spanList.toList
+    }
+
     def getByGxid(date: String, guid: Long): List[Array[Byte]] = {
 
         var spanList = new util.ArrayList[Array[Byte]]()
@@ -30,7 +30,7 @@ import scala.collection.mutable
 
 
 object ZipkinSpanWR {
-    case class SpanData(time: Long, gxid: Long, data: Array[Byte])
+    case class SpanData(time: Long, gxid: Long, data: Array[Byte], tree: Array[Byte])
     case class StorageContainer(idleLimit: Long, lastAccess: Long, index: ZipkinSpanIndex, writer: ZipkinSpanDataWriter)
 
     val MAX_IDLE = 30 * 60 * 1000L
@@ -73,6 +73,9 @@ object ZipkinSpanWR {
                     val location = container.writer.write(m.data)
                     container.index.setByTime(m.time, location)
                     container.index.setByGxid(m.gxid, location)
+                    if (m.tree != null) {
+                        container.index.setTree(m.gxid, location, m.tree)
+                    }
                 }
 
             } catch {
@@ -83,7 +86,14 @@ object ZipkinSpanWR {
     }
 
     def add(time: Long, gid: Long, data: Array[Byte]): Unit = {
-        val ok = queue.put(SpanData(time, gid, data))
+        add(time, gid, data, null)
+    }
+
+    /**
+      * @param tree the SpanTree entry of the span container
+      */
+    def add(time: Long, gid: Long, data: Array[Byte], tree: Array[Byte]): Unit = {
+        val ok = queue.put(SpanData(time, gid, data, tree))
         if (!ok) {
             Logger.println("SZ144", 10, "queue exceeded!! - ZipkinSpanWR")
         }
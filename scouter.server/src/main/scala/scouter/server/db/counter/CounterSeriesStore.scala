@@ -0,0 +1,669 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.counter
+
+import java.io.{File, RandomAccessFile}
+import java.util.Hashtable
+
+import scouter.io.{DataInputX, DataOutputX, FlushCtr, IFlushable}
+import scouter.lang.counters.CounterConstants
+import scouter.lang.value.{DecimalValue, DoubleValue, FloatValue, MapValue, Value}
+import scouter.server.Logger
+import scouter.server.db.RealtimeCounterRD
+import scouter.server.util.EnumerScala
+import scouter.util.{DateUtil, FileUtil, IClose, LongKeyMap}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * bit stream of a series block.
+  */
+class SeriesBitOutput(initial: Int) {
+    var buffer = new Array[Byte](initial)
+    var bitCount = 0
+
+    def write(value: Long, bits: Int) {
+        val need = (bitCount + bits + 7) >> 3
+        if (need > buffer.length) {
+            buffer = java.util.Arrays.copyOf(buffer, Math.max(need, buffer.length * 2))
+        }
+        var remain = bits
+        while (remain > 0) {
+            val free = 8 - (bitCount & 7)
+            val take = Math.min(free, remain)
+            val chunk = ((value >>> (remain - take)) & ((1L << take) - 1)).toInt
+            val i = bitCount >> 3
+            buffer(i) = (buffer(i) | (chunk << (free - take))).toByte
+            bitCount += take
+            remain -= take
+        }
+    }
+
+    def toBytes(): Array[Byte] = java.util.Arrays.copyOf(buffer, (bitCount + 7) >> 3)
+}
+
+class SeriesBitInput(buffer: Array[Byte]) {
+    private var bitPos = 0
+
+    def read(bits: Int): Long = {
+        var v = 0L
+        var remain = bits
+        while (remain > 0) {
+            val avail = 8 - (bitPos & 7)
+            val take = Math.min(avail, remain)
+            val b = buffer(bitPos >> 3) & 0xff
+            v = (v << take) | ((b >>> (avail - take)) & ((1 << take) - 1))
+            bitPos += take
+            remain -= take
+        }
+        v
+    }
+
+    def readBit(): Boolean = read(1) == 1L
+}
+
+/**
+  * a block of one series.
+  * timestamps are stored as delta of delta and values as xor with the previous value (gorilla encoding).
+  */
+class SeriesBlock(val kind: Byte) {
+    val out = new SeriesBitOutput(64)
+    var count = 0
+    var minTime = Long.MaxValue
+    var maxTime = Long.MinValue
+    val created = System.currentTimeMillis()
+
+    private var prevTime = 0L
+    private var prevDelta = 0L
+    private var prevBits = 0L
+    private var prevLeading = -1
+    private var prevTrailing = 0
+
+    def add(time: Long, bits: Long) {
+        if (count == 0) {
+            out.write(time, 64)
+            out.write(bits, 64)
+        } else {
+            val delta = time - prevTime
+            writeDod(delta - prevDelta)
+            prevDelta = delta
+            writeXor(bits ^ prevBits)
+        }
+        prevTime = time
+        prevBits = bits
+        minTime = Math.min(minTime, time)
+        maxTime = Math.max(maxTime, time)
+        count += 1
+    }
+
+    private def writeDod(dod: Long) {
+        if (dod == 0) {
+            out.write(0, 1)
+        } else if (dod >= -63 && dod <= 64) {
+            out.write(0x2, 2)
+            out.write(dod + 63, 7)
+        } else if (dod >= -255 && dod <= 256) {
+            out.write(0x6, 3)
+            out.write(dod + 255, 9)
+        } else if (dod >= -2047 && dod <= 2048) {
+            out.write(0xe, 4)
+            out.write(dod + 2047, 12)
+        } else {
+            out.write(0xf, 4)
+            out.write(dod, 64)
+        }
+    }
+
+    private def writeXor(xor: Long) {
+        if (xor == 0) {
+            out.write(0, 1)
+            return
+        }
+        out.write(1, 1)
+        val leading = Math.min(java.lang.Long.numberOfLeadingZeros(xor), 31)
+        val trailing = java.lang.Long.numberOfTrailingZeros(xor)
+        if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+            out.write(0, 1)
+            out.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing)
+        } else {
+            val significant = 64 - leading - trailing
+            out.write(1, 1)
+            out.write(leading, 5)
+            out.write(significant - 1, 6)
+            out.write(xor >>> trailing, significant)
+            prevLeading = leading
+            prevTrailing = trailing
+        }
+    }
+
+    def lastTime(): Long = prevTime
+}
+
+object SeriesBlock {
+    val KIND_DECIMAL: Byte = 1
+    val KIND_FLOAT: Byte = 2
+    val KIND_DOUBLE: Byte = 3
+
+    def kindOf(v: Value): Byte = {
+        v match {
+            case _: DecimalValue => KIND_DECIMAL
+            case _: FloatValue => KIND_FLOAT
+            case _: DoubleValue => KIND_DOUBLE
+            case _ => 0
+        }
+    }
+
+    def toBits(v: Value): Long = {
+        v match {
+            case d: DecimalValue => d.value
+            case f: FloatValue => java.lang.Float.floatToIntBits(f.value) & 0xffffffffL
+            case d: DoubleValue => java.lang.Double.doubleToLongBits(d.value)
+            case _ => 0L
+        }
+    }
+
+    def toValue(kind: Byte, bits: Long): Value = {
+        kind match {
+            case KIND_DECIMAL => new DecimalValue(bits)
+            case KIND_FLOAT => new FloatValue(java.lang.Float.intBitsToFloat(bits.toInt))
+            case _ => new DoubleValue(java.lang.Double.longBitsToDouble(bits))
+        }
+    }
+
+    def decode(kind: Byte, count: Int, bytes: Array[Byte], stime: Long, etime: Long, handler: (Long, Value) => Any) {
+        if (count == 0)
+            return
+        val in = new SeriesBitInput(bytes)
+        var time = in.read(64)
+        var bits = in.read(64)
+        var delta = 0L
+        var leading = 0
+        var trailing = 0
+        if (time >= stime && time <= etime) {
+            handler(time, toValue(kind, bits))
+        }
+        for (i <- 1 until count) {
+            delta += readDod(in)
+            time += delta
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = in.read(5).toInt
+                    val significant = in.read(6).toInt + 1
+                    trailing = 64 - leading - significant
+                }
+                bits ^= in.read(64 - leading - trailing) << trailing
+            }
+            if (time >= stime && time <= etime) {
+                handler(time, toValue(kind, bits))
+            }
+        }
+    }
+
+    private def readDod(in: SeriesBitInput): Long = {
+        if (in.readBit() == false) return 0
+        if (in.readBit() == false) return in.read(7) - 63
+        if (in.readBit() == false) return in.read(9) - 255
+        if (in.readBit() == false) return in.read(12) - 2047
+        in.read(64)
+    }
+}
+
+object CounterSeriesStore {
+    val POSTFIX = ".ser"
+    val HEAD_POSTFIX = ".shd"
+    val BLOCK_POINTS = 256
+    /** pending blocks older than this are written even if not full */
+    val BLOCK_MAX_AGE = 10 * 60 * 1000L
+    /**
+      * key(8) + previous block pos(8) + min time(8) + max time(8) + chain max time(8) + count(4) + kind(1) + payload size(4)
+      * the chain max time is the max time of the block and all the previous blocks of the series.
+      */
+    val HEADER_SIZE = 49
+
+    val table = new Hashtable[String, CounterSeriesStore]()
+
+    def open(file: String): CounterSeriesStore = {
+        table.synchronized {
+            var store = table.get(file)
+            if (store != null) {
+                store.reference += 1
+            } else {
+                store = new CounterSeriesStore(file)
+                table.put(file, store)
+            }
+            return store
+        }
+    }
+
+    def exists(file: String): Boolean = {
+        new File(file + POSTFIX).exists()
+    }
+
+    def key(objHash: Int, tag: Int): Long = {
+        (objHash.toLong << 32) | (tag & 0xffffffffL)
+    }
+
+    /**
+      * read the latest block position of every series and whether the series has non numeric values.
+      * the head file is a snapshot, so blocks written after the snapshot are scanned from the data file.
+      */
+    private[counter] def readHeads(file: String, data: RandomAccessFile, handler: (Long, Long, Boolean) => Any): Long = {
+        var covered = 0L
+        val f = new File(file + HEAD_POSTFIX)
+        if (f.exists()) {
+            val bytes = FileUtil.readAll(f)
+            if (bytes != null && bytes.length >= 12) {
+                val in = new DataInputX(bytes)
+                covered = in.readLong()
+                val count = in.readInt()
+                for (i <- 0 until count) {
+                    handler(in.readLong(), in.readLong(), in.readBoolean())
+                }
+            }
+        }
+        val length = data.length()
+        if (covered > length) {
+            covered = 0
+        }
+        val header = new Array[Byte](HEADER_SIZE)
+        var pos = covered
+        while (pos + HEADER_SIZE <= length) {
+            data.seek(pos)
+            data.readFully(header)
+            val next = pos + HEADER_SIZE + DataInputX.toInt(header, 45)
+            if (next > length) {
+                return pos
+            }
+            handler(DataInputX.toLong(header, 0), pos, false)
+            pos = next
+        }
+        pos
+    }
+
+    /**
+      * read a series in [stime, etime] in time order following the block chain of the series backward from its latest block.
+      * the walk stops at the first block whose chain max time is older than stime.
+      * @return false if the series has non numeric values which are kept only in the realtime counter file.
+      *         nothing is passed to the handler then.
+      */
+    def read(file: String, key: Long, stime: Long, etime: Long, handler: (Long, Value) => Any): Boolean = {
+        var head = -1L
+        var text = false
+        var pending: ArrayBuffer[(Byte, Int, Array[Byte])] = null
+        val live = table.get(file)
+        if (live != null) {
+            live.synchronized {
+                head = live.headOf(key)
+                text = live.isText(key)
+                pending = live.snapshot(key)
+            }
+        }
+        val points = new ArrayBuffer[(Long, Value)]()
+        val f = new File(file + POSTFIX)
+        if (f.exists()) {
+            val in = new RandomAccessFile(f, "r")
+            try {
+                if (live == null) {
+                    readHeads(file, in, (k: Long, pos: Long, t: Boolean) => {
+                        if (k == key) {
+                            head = pos
+                            text |= t
+                        }
+                    })
+                }
+                if (text) {
+                    return false
+                }
+                val blocks = new ArrayBuffer[Array[Byte]]()
+                val header = new Array[Byte](HEADER_SIZE)
+                var pos = head
+                while (pos >= 0) {
+                    in.seek(pos)
+                    in.readFully(header)
+                    if (DataInputX.toLong(header, 32) < stime) {
+                        pos = -1
+                    } else {
+                        if (DataInputX.toLong(header, 24) >= stime && DataInputX.toLong(header, 16) <= etime) {
+                            val bytes = new Array[Byte](HEADER_SIZE + DataInputX.toInt(header, 45))
+                            System.arraycopy(header, 0, bytes, 0, HEADER_SIZE)
+                            in.readFully(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE)
+                            blocks += bytes
+                        }
+                        pos = DataInputX.toLong(header, 8)
+                    }
+                }
+                for (i <- blocks.size - 1 to 0 by -1) {
+                    val b = blocks(i)
+                    val payload = java.util.Arrays.copyOfRange(b, HEADER_SIZE, b.length)
+                    SeriesBlock.decode(b(44), DataInputX.toInt(b, 40), payload, stime, etime, (time: Long, v: Value) => points += ((time, v)))
+                }
+            } finally {
+                FileUtil.close(in)
+            }
+        }
+        if (text) {
+            return false
+        }
+        if (pending != null) {
+            pending.foreach(p => SeriesBlock.decode(p._1, p._2, p._3, stime, etime, (time: Long, v: Value) => points += ((time, v))))
+        }
+        //late points are kept in their own blocks which overlap the others
+        var sorted = true
+        for (i <- 1 until points.size) {
+            if (points(i)._1 < points(i - 1)._1) {
+                sorted = false
+            }
+        }
+        val ordered = if (sorted) points else points.sortBy(_._1)
+        ordered.foreach(p => handler(p._1, p._2))
+        true
+    }
+
+    /**
+      * build the series store of a day from the realtime counter files.
+      */
+    def convert(date: String): Int = {
+        if (date == DateUtil.yyyymmdd(System.currentTimeMillis())) {
+            return 0
+        }
+        var db: RealtimeCounterDBHelper = null
+        var store: CounterSeriesStore = null
+        var count = 0
+        try {
+            db = new RealtimeCounterDBHelper().open(date, true)
+            if (db == null || exists(db.path + "/real")) {
+                return 0
+            }
+            store = open(db.path + "/real")
+            val tags = db.counterDbHeader.getTagStrInt()
+            val stime = DateUtil.yyyymmdd(date)
+            val etime = stime + DateUtil.MILLIS_PER_DAY - 1
+            RealtimeCounterRD.readBulk(date, stime, etime, (m: MapValue) => {
+                //maps written before objHash and time were added to the data file can not be converted
+                if (m.containsKey(CounterConstants.COMMON_OBJHASH)) {
+                    store.add(m.getInt(CounterConstants.COMMON_OBJHASH), m.getLong(CounterConstants.COMMON_TIME), m, (name: String) => tags.get(name))
+                    count += 1
+                }
+            })
+        } finally {
+            FileUtil.close(store)
+            FileUtil.close(db)
+        }
+        count
+    }
+
+    /**
+      * convert realtime counters of old days.
+      * usage : CounterSeriesStore {yyyymmdd} ...
+      * the server configuration must point to the database directory.
+      */
+    def main(args: Array[String]) {
+        args.foreach(date => {
+            println(date + " : " + convert(date) + " counter maps converted")
+        })
+    }
+}
+
+/**
+  * per day compressed series of realtime counters by objHash and counter.
+  * each block keeps the position of the previous block of the same series,
+  * so a series is read without touching the blocks of the other series.
+  * points older than the last point of the pending block of a series go to a separate late block,
+  * so blocks of a series may overlap and are merged by time on read.
+  * a series with non numeric values is only marked and read from the realtime counter file.
+  */
+class CounterSeriesStore(file: String) extends IClose with IFlushable {
+    import CounterSeriesStore._
+
+    class Series {
+        var head = -1L
+        /** chain max time of the head block, read from the file when it is not known yet */
+        var chainMax = Long.MinValue
+        var block: SeriesBlock = null
+        /** points older than the last point of the block */
+        var late: SeriesBlock = null
+        var text = false
+    }
+
+    var reference = 0
+    private val out = new RandomAccessFile(file + POSTFIX, "rw")
+    private val series = new LongKeyMap[Series]()
+    private var headDirty = false
+    private var pendingBlocks = 0
+    /** creation time of the oldest pending block, or earlier */
+    private var oldestPending = Long.MaxValue
+
+    out.setLength(readHeads(file, out, (k: Long, pos: Long, text: Boolean) => {
+        val s = seriesOf(k)
+        s.head = pos
+        s.text |= text
+    }))
+    FlushCtr.getInstance().regist(this)
+
+    private def seriesOf(key: Long): Series = {
+        var s = series.get(key)
+        if (s == null) {
+            s = new Series()
+            series.put(key, s)
+        }
+        s
+    }
+
+    /**
+      * @param tagOf counter name to the tag of the realtime counter header
+      */
+    def add(objHash: Int, time: Long, data: MapValue, tagOf: String => Int) {
+        this.synchronized {
+            EnumerScala.foreach(data.keys(), (name: String) => {
+                if (name != CounterConstants.COMMON_OBJHASH && name != CounterConstants.COMMON_TIME) {
+                    val value = data.get(name)
+                    val kind = SeriesBlock.kindOf(value)
+                    val tag = tagOf(name)
+                    if (tag >= 0) {
+                        if (kind != 0) {
+                            add(key(objHash, tag), kind, time, SeriesBlock.toBits(value))
+                        } else {
+                            markText(key(objHash, tag))
+                        }
+                    }
+                }
+            })
+        }
+    }
+
+    private def add(key: Long, kind: Byte, time: Long, bits: Long) {
+        val s = seriesOf(key)
+        if (s.block != null && time < s.block.lastTime()) {
+            if (s.late != null && (s.late.kind != kind || time < s.late.lastTime())) {
+                s.late = writeBlock(key, s, s.late)
+            }
+            if (s.late == null) {
+                s.late = newBlock(kind)
+            }
+            s.late.add(time, bits)
+            if (s.late.count >= BLOCK_POINTS) {
+                s.late = writeBlock(key, s, s.late)
+            }
+            return
+        }
+        if (s.block != null && s.block.kind != kind) {
+            s.block = writeBlock(key, s, s.block)
+        }
+        if (s.block == null) {
+            s.block = newBlock(kind)
+        }
+        s.block.add(time, bits)
+        if (s.block.count >= BLOCK_POINTS) {
+            s.block = writeBlock(key, s, s.block)
+        }
+    }
+
+    private def newBlock(kind: Byte): SeriesBlock = {
+        val b = new SeriesBlock(kind)
+        pendingBlocks += 1
+        oldestPending = Math.min(oldestPending, b.created)
+        b
+    }
+
+    private def markText(key: Long) {
+        val s = seriesOf(key)
+        if (s.text == false) {
+            s.text = true
+            headDirty = true
+        }
+    }
+
+    /**
+      * append the block to the chain of the series.
+      * @return null to be set to the block field of the series
+      */
+    private def writeBlock(key: Long, s: Series, b: SeriesBlock): SeriesBlock = {
+        pendingBlocks -= 1
+        if (b.count == 0)
+            return null
+        if (s.head >= 0 && s.chainMax == Long.MinValue) {
+            out.seek(s.head + 32)
+            s.chainMax = out.readLong()
+        }
+        s.chainMax = Math.max(s.chainMax, b.maxTime)
+        val payload = b.out.toBytes()
+        val o = new DataOutputX(HEADER_SIZE + payload.length)
+        o.writeLong(key)
+        o.writeLong(s.head)
+        o.writeLong(b.minTime)
+        o.writeLong(b.maxTime)
+        o.writeLong(s.chainMax)
+        o.writeInt(b.count)
+        o.writeByte(b.kind)
+        o.writeInt(payload.length)
+        o.write(payload)
+        val pos = out.length()
+        out.seek(pos)
+        out.write(o.toByteArray())
+        s.head = pos
+        headDirty = true
+        null
+    }
+
+    private[counter] def headOf(key: Long): Long = {
+        val s = series.get(key)
+        if (s == null) -1 else s.head
+    }
+
+    private[counter] def isText(key: Long): Boolean = {
+        val s = series.get(key)
+        s != null && s.text
+    }
+
+    private[counter] def snapshot(key: Long): ArrayBuffer[(Byte, Int, Array[Byte])] = {
+        val s = series.get(key)
+        if (s == null)
+            return null
+        val blocks = new ArrayBuffer[(Byte, Int, Array[Byte])]()
+        List(s.block, s.late).foreach(b => {
+            if (b != null && b.count > 0) {
+                blocks += ((b.kind, b.count, b.out.toBytes()))
+            }
+        })
+        blocks
+    }
+
+    private def writeHeads() {
+        val o = new DataOutputX()
+        o.writeLong(out.length())
+        o.writeInt(series.size())
+        EnumerScala.foreach(series.keys(), (k: Long) => {
+            val s = series.get(k)
+            o.writeLong(k)
+            o.writeLong(s.head)
+            o.writeBoolean(s.text)
+        })
+        val tmp = new File(file + HEAD_POSTFIX + ".tmp")
+        FileUtil.save(tmp, o.toByteArray())
+        val target = new File(file + HEAD_POSTFIX)
+        target.delete()
+        tmp.renameTo(target)
+        headDirty = false
+    }
+
+    private def writeBlocks(force: Boolean) {
+        val now = System.currentTimeMillis()
+        var oldest = Long.MaxValue
+        EnumerScala.foreach(series.keys(), (k: Long) => {
+            val s = series.get(k)
+            if (s.block != null) {
+                if (force || now - s.block.created >= BLOCK_MAX_AGE) {
+                    s.block = writeBlock(k, s, s.block)
+                } else {
+                    oldest = Math.min(oldest, s.block.created)
+                }
+            }
+            if (s.late != null) {
+                if (force || now - s.late.created >= BLOCK_MAX_AGE) {
+                    s.late = writeBlock(k, s, s.late)
+                } else {
+                    oldest = Math.min(oldest, s.late.created)
+                }
+            }
+        })
+        oldestPending = oldest
+    }
+
+    def flush() {
+        this.synchronized {
+            try {
+                writeBlocks(false)
+                if (headDirty) {
+                    writeHeads()
+                }
+            } catch {
+                case e: Exception => Logger.println("S232", 10, file + POSTFIX + " : " + e)
+            }
+        }
+    }
+
+    def isDirty(): Boolean = {
+        this.synchronized {
+            headDirty || (pendingBlocks > 0 && System.currentTimeMillis() - oldestPending >= BLOCK_MAX_AGE)
+        }
+    }
+
+    def interval(): Long = {
+        10000
+    }
+
+    override def close() {
+        table.synchronized {
+            if (this.reference == 0) {
+                table.remove(this.file)
+                FlushCtr.getInstance().unregist(this)
+                this.synchronized {
+                    try {
+                        writeBlocks(true)
+                        writeHeads()
+                    } catch {
+                        case e: Exception => Logger.println("S232", 10, file + POSTFIX + " : " + e)
+                    }
+                }
+                FileUtil.close(out)
+            } else {
+                this.reference -= 1
+            }
+        }
+    }
+}
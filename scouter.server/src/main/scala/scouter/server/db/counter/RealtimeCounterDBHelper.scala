@@ -27,6 +27,7 @@ import scouter.lang.value.MapValue
 import scouter.lang.value.Value
 import scouter.io.DataInputX
 import scouter.io.DataOutputX
+import scouter.server.Configure
 import scouter.server.db.DBCtr
 import scouter.util.FileUtil
 import scouter.util.IClose
@@ -37,6 +38,13 @@ import scouter.server.util.EnumerScala
 import scala.collection.mutable.ArrayBuffer
 
 object RealtimeCounterDBHelper {
+    def getDBPath(date: String): String = {
+        val sb = new StringBuffer();
+        sb.append(DBCtr.getRootPath());
+        sb.append("/").append(date).append("/counter");
+        return sb.toString();
+    }
+
     def setTagBytes(tag: IntKeyMap[String], buff: Array[Byte]): MapValue = {
         if (buff == null)
             return null;
@@ -112,20 +120,14 @@ class RealtimeCounterDBHelper extends IClose {
     var counterDbHeader: RealtimeCounterDBHeader = null
     var counterIndex: RealtimeCounterIndex = null
     var counterData: RealtimeCounterData = null
+    var series: CounterSeriesStore = null
     var currentDateUnit = 0L
     var activeTime = 0L
 
     var path: String = null
 
-    private def getDBPath(date: String): String = {
-        val sb = new StringBuffer();
-        sb.append(DBCtr.getRootPath());
-        sb.append("/").append(date).append("/counter");
-        return sb.toString();
-    }
-
     def open(date: String, readOnly: Boolean): RealtimeCounterDBHelper = {
-        path = getDBPath(date)
+        path = RealtimeCounterDBHelper.getDBPath(date)
         val f = new File(path);
         if (readOnly) {
             if (f.exists() == false)
@@ -135,10 +137,15 @@ class RealtimeCounterDBHelper extends IClose {
                 f.mkdirs();
         }
         val file = path + "/real";
+        val newDay = new File(file + ".data").exists() == false
 
         this.counterDbHeader = RealtimeCounterDBHeader.open(file);
         this.counterIndex = RealtimeCounterIndex.open(file);
         this.counterData = RealtimeCounterData.open(file);
+        //series are written only for a whole day, a day started without them is converted later.
+        if (readOnly == false && Configure.getInstance().counter_series_store_enabled && (newDay || CounterSeriesStore.exists(file))) {
+            this.series = CounterSeriesStore.open(file);
+        }
         this.activeTime = System.currentTimeMillis();
 
         return this;
@@ -151,8 +158,10 @@ class RealtimeCounterDBHelper extends IClose {
         FileUtil.close(counterIndex);
         FileUtil.close(counterData);
         FileUtil.close(counterDbHeader);
+        FileUtil.close(series);
         counterIndex = null;
         counterData = null;
+        series = null;
     }
 
     def close(dbs: Map[String, RealtimeCounterDBHelper]) {
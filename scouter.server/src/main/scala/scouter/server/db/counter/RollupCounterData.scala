@@ -0,0 +1,211 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.counter
+
+import java.io.RandomAccessFile
+import java.util.Hashtable
+
+import scouter.io.{DataInputX, DataOutputX}
+import scouter.lang.value.{DoubleValue, Value}
+import scouter.util.{FileUtil, IClose}
+
+/**
+  * min, max, sum, count and last value of a counter in a time bucket.
+  */
+class RollupBucket {
+    var min = Double.MaxValue
+    var max = -Double.MaxValue
+    var sum = 0.0d
+    var count = 0
+    var last = 0.0d
+
+    def add(v: Double) {
+        if (v < min) min = v
+        if (v > max) max = v
+        sum += v
+        count += 1
+        last = v
+    }
+
+    def avg(): Double = if (count == 0) 0 else sum / count
+
+    /**
+      * @param stat min, max, sum, count, last or avg(default)
+      */
+    def get(stat: String): Value = {
+        if (stat == null) return new DoubleValue(avg())
+        stat match {
+            case "min" => new DoubleValue(min)
+            case "max" => new DoubleValue(max)
+            case "sum" => new DoubleValue(sum)
+            case "count" => new DoubleValue(count)
+            case "last" => new DoubleValue(last)
+            case _ => new DoubleValue(avg())
+        }
+    }
+}
+
+object RollupCounterData {
+    /** min, max, last, sum(double) + count(int) */
+    val BUCKET_SIZE = 36
+    /** the time from which the buckets of the file are filled */
+    val HEADER_SIZE = 8
+
+    val table = new Hashtable[String, RollupCounterData]()
+    val preFixForWriter = "w--"
+
+    def openForWrite(fileName: String): RollupCounterData = {
+        val wFileName = preFixForWriter + fileName
+        table.synchronized {
+            var writer = table.get(wFileName)
+            if (writer != null) {
+                writer.refrence += 1
+            } else {
+                writer = new RollupCounterData(fileName, "rw")
+                table.put(wFileName, writer)
+            }
+            return writer
+        }
+    }
+
+    def open(fileName: String): RollupCounterData = {
+        table.synchronized {
+            var reader = table.get(fileName)
+            if (reader != null) {
+                reader.refrence += 1
+            } else {
+                reader = new RollupCounterData(fileName, "r")
+                table.put(fileName, reader)
+            }
+            return reader
+        }
+    }
+}
+
+/**
+  * the file starts with the time from which the buckets are filled, the rollups may be turned on in the middle of a day.
+  * a record of a counter key is the time type followed by the fixed size buckets of a day.
+  * a bucket of zero count is empty.
+  */
+class RollupCounterData(fileName: String, mode: String) extends IClose {
+    import RollupCounterData._
+
+    var refrence = 0
+    var dataFile = new RandomAccessFile(fileName + ".data", mode)
+    private var coveredFrom = Long.MaxValue
+
+    if (dataFile.length() < HEADER_SIZE) {
+        if (mode == "rw") {
+            dataFile.setLength(0)
+            dataFile.writeLong(coveredFrom)
+        }
+    } else {
+        coveredFrom = dataFile.readLong()
+    }
+
+    override def close() {
+        table.synchronized {
+            if (this.refrence == 0) {
+                table.remove(this.fileName)
+                table.remove(preFixForWriter + this.fileName)
+                dataFile = FileUtil.close(dataFile)
+            } else {
+                this.refrence -= 1
+            }
+        }
+    }
+
+    /**
+      * @return Long.MaxValue if no bucket is written
+      */
+    def getCoveredFrom(): Long = {
+        this.synchronized {
+            if (dataFile.length() < HEADER_SIZE) {
+                return Long.MaxValue
+            }
+            dataFile.seek(0)
+            dataFile.readLong()
+        }
+    }
+
+    /**
+      * @param from the time from which a written bucket is filled
+      */
+    def cover(from: Long) {
+        this.synchronized {
+            if (from < coveredFrom) {
+                coveredFrom = from
+                dataFile.seek(0)
+                dataFile.writeLong(from)
+            }
+        }
+    }
+
+    def getBuckets(offset: Long): Array[RollupBucket] = {
+        this.synchronized {
+            dataFile.seek(offset)
+            val timetype = dataFile.readByte()
+            val bucketCount = DailyCounterUtils.getBucketCount(timetype)
+            val buffer = new Array[Byte](BUCKET_SIZE * bucketCount)
+            dataFile.readFully(buffer)
+
+            val buckets = new Array[RollupBucket](bucketCount)
+            for (i <- 0 until bucketCount) {
+                val p = i * BUCKET_SIZE
+                val count = DataInputX.toInt(buffer, p + 32)
+                if (count > 0) {
+                    val b = new RollupBucket()
+                    b.min = java.lang.Double.longBitsToDouble(DataInputX.toLong(buffer, p))
+                    b.max = java.lang.Double.longBitsToDouble(DataInputX.toLong(buffer, p + 8))
+                    b.last = java.lang.Double.longBitsToDouble(DataInputX.toLong(buffer, p + 16))
+                    b.sum = java.lang.Double.longBitsToDouble(DataInputX.toLong(buffer, p + 24))
+                    b.count = count
+                    buckets(i) = b
+                }
+            }
+            return buckets
+        }
+    }
+
+    private def toBytes(b: RollupBucket): Array[Byte] = {
+        val out = new DataOutputX(BUCKET_SIZE)
+        out.writeDouble(b.min)
+        out.writeDouble(b.max)
+        out.writeDouble(b.last)
+        out.writeDouble(b.sum)
+        out.writeInt(b.count)
+        out.toByteArray()
+    }
+
+    def write(offset: Long, bucketPos: Int, b: RollupBucket) {
+        dataFile.seek(offset + 1 + bucketPos * BUCKET_SIZE)
+        dataFile.write(toBytes(b))
+    }
+
+    def writeNew(timetype: Byte, bucketPos: Int, b: RollupBucket): Long = {
+        val bucketCount = DailyCounterUtils.getBucketCount(timetype)
+        if (bucketCount <= 0)
+            return -1
+        val location = dataFile.length()
+        dataFile.seek(location)
+        dataFile.writeByte(timetype)
+        dataFile.write(new Array[Byte](BUCKET_SIZE * bucketCount)) //fill 1 day data with empty buckets
+        write(location, bucketPos, b)
+        return location
+    }
+}
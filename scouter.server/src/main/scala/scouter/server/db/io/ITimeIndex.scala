@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.io
+
+import scouter.util.IClose
+
+/**
+  * time based index of XLogIndex.
+  * implemented by IndexTimeFile(500ms bucket chains) and SortedTimeIndexFile(sorted blocks)
+  */
+trait ITimeIndex extends IClose {
+
+    def put(time: Long, dataPos: Array[Byte]): Long
+
+    def putBatch(entries: Seq[(Long, Array[Byte])])
+
+    def read(stime: Long, etime: Long, handler: (Long, Array[Byte]) => Any, reader: (Long) => Array[Byte])
+
+    def readFromEnd(stime: Long, etime: Long, handler: (Long, Array[Byte]) => Any, reader: (Long) => Array[Byte])
+
+    /**
+      * paged read from lastBucketTime(or stime if it's 0) in time order.
+      * the handler receives the 500ms bucket time of each entry, which the next page passes back as lastBucketTime,
+      * and returns the running count. the read stops when the count reaches limitCount.
+      */
+    def readByLimitCount(stime: Long, etime: Long, lastBucketTime: Long, limitCount: Int, handler: (Long, Array[Byte]) => Int, reader: (Long) => Array[Byte])
+
+}
+
+object ITimeIndex {
+    val BUCKET_MILLIS = 500L
+
+    /**
+      * start of the 500ms bucket of the time, the same bucket IndexTimeFile keys its chains with
+      */
+    def bucketTime(time: Long): Long = {
+        time - time % BUCKET_MILLIS
+    }
+}
@@ -26,8 +26,10 @@ import java.util.Map
 
 import scouter.server.{Configure, Logger}
 import scouter.io.DataInputX
+import scouter.io.DataOutputX
 import scouter.util.CompareUtil
 import scouter.util.HashUtil
+import scouter.util.IntLongLinkedMap
 import scouter.util.IClose;
 
 class IndexKeyFile(_path: String, hashSize: Int = 1) extends IClose {
@@ -35,8 +37,8 @@ class IndexKeyFile(_path: String, hashSize: Int = 1) extends IClose {
     val MB = 1024 * 1024;
 
     val path = _path
-    val hashBlock = new MemHashBlock(path, hashSize * MB)
-    val keyFile = new RealKeyFile(path)
+    val hashBlock: IHashBlock = if (conf.mgr_db_index_mmap_enabled) new MappedHashBlock(path, hashSize * MB) else new MemHashBlock(path, hashSize * MB)
+    val keyFile = RealKeyFile.open(path)
 
     def putAll(table: IndexKeyFile): Int = {
         var count = 0
@@ -63,6 +65,37 @@ class IndexKeyFile(_path: String, hashSize: Int = 1) extends IClose {
         return true;
     }
 
+    /**
+      * put several keys with a single write on the key file.
+      * the hash block is updated after the records are written.
+      */
+    def putBatch(entries: Seq[(Array[Byte], Array[Byte])]) {
+        if (entries.isEmpty)
+            return;
+        val linked = new IntLongLinkedMap();
+        this.keyFile.appendBatch((startPos: Long) => {
+            val out = new DataOutputX();
+            entries.foreach(entry => {
+                val indexKey = entry._1;
+                val dataOffset = entry._2;
+                if (indexKey == null || dataOffset == null) {
+                    throw new IOException("invalid key/value");
+                }
+                val keyHash = HashUtil.hash(indexKey);
+                val prevKeyPos = if (linked.containsKey(keyHash)) linked.get(keyHash) else hashBlock.get(keyHash);
+                val newKeyPos = startPos + out.size();
+                RealKeyFile.writeRecord(out, prevKeyPos, indexKey, dataOffset);
+                linked.put(keyHash, newKeyPos);
+            })
+            out.toByteArray()
+        });
+        val en = linked.keys();
+        while (en.hasMoreElements()) {
+            val keyHash = en.nextInt();
+            this.hashBlock.put(keyHash, linked.get(keyHash));
+        }
+    }
+
     def update(key: Array[Byte], value: Array[Byte]): Boolean = {
         if (key == null || value == null) {
             throw new IOException("invalid key/value");
@@ -32,6 +32,7 @@ import scouter.util.BytesUtil
 import scouter.util.CompareUtil
 import scouter.util.DateUtil
 import scouter.util.IClose
+import scouter.util.LongLongLinkedMap
 
 import scala.collection.mutable.ListBuffer
 
@@ -39,11 +40,11 @@ import scala.collection.mutable.ListBuffer
   * timestamp(long) based index file
   * @param _path Index File Path
   */
-class IndexTimeFile(_path: String) extends IClose {
+class IndexTimeFile(_path: String) extends ITimeIndex {
 
     protected var path = _path
     protected var timeBlockHash = new MemTimeBlock(_path);
-    protected var keyFile = new RealKeyFile(_path);
+    protected var keyFile = RealKeyFile.open(_path);
 
     def put(time: Long, dataPos: Array[Byte]): Long = {
         if (time <= 0 || dataPos == null) {
@@ -56,6 +57,38 @@ class IndexTimeFile(_path: String) extends IClose {
         return newKeyPos;
     }
 
+    /**
+      * put several time keys with a single write on the key file.
+      * the time block is updated after the records are written.
+      */
+    def putBatch(entries: Seq[(Long, Array[Byte])]) {
+        if (entries.isEmpty)
+            return;
+        val linked = new LongLongLinkedMap();
+        this.keyFile.appendBatch((startPos: Long) => {
+            val out = new DataOutputX();
+            entries.foreach(entry => {
+                val time = entry._1;
+                val dataPos = entry._2;
+                if (time <= 0 || dataPos == null) {
+                    throw new IOException("invalid key/value");
+                }
+                val bucket = time / 500L;
+                val prevKeyPos = if (linked.containsKey(bucket)) linked.get(bucket) else timeBlockHash.get(time);
+                val newKeyPos = startPos + out.size();
+                RealKeyFile.writeRecord(out, prevKeyPos, DataOutputX.toBytes(time), dataPos);
+                linked.put(bucket, newKeyPos);
+            })
+            out.toByteArray()
+        });
+        val en = linked.keys();
+        while (en.hasMoreElements()) {
+            val bucket = en.nextLong();
+            this.timeBlockHash.put(bucket * 500L, linked.get(bucket));
+        }
+        this.timeBlockHash.addCount(entries.size);
+    }
+
     private def getSecAll(time: Long): ArrayList[TimeToData] = {
         if (time <= 0) {
             throw new IOException("invalid key");
@@ -252,7 +285,7 @@ class IndexTimeFile(_path: String) extends IClose {
 
         while (timeBucketCount < DateUtil.SECONDS_PER_DAY * 2 && timeBucketTime <= etime) {
             getSecAllV2(timeBucketTime).filter(tv => tv.time >= stime && tv.time <= etime).foreach(tv => {
-                if(counted > limitCount) {
+                if(counted >= limitCount) {
                     return
                 }
                 counted = handler(timeBucketTime, reader(DataInputX.toLong5(tv.dataPos, 0)))
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.io
+
+import java.io.EOFException
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.nio.channels.FileChannel
+
+import scouter.io.DataInputX
+
+/**
+  * RealKeyFile whose reads don't take the file lock.
+  * Fully written segments of the key file are memory mapped and the last(growing) segment is read by positional reads.
+  * Writes still go through RealKeyFile, key records are never moved once appended.
+  * The segments are dropped on close and unmapped by the gc once no reader holds them,
+  * a reader still in a segment never touches an unmapped buffer.
+  */
+class MappedKeyFile(_path: String) extends RealKeyFile(_path) {
+    private val SEGMENT_SIZE = MappedKeyFile.SEGMENT_SIZE
+    private val channel = this.raf.getChannel()
+    @volatile private var segments = new Array[MappedByteBuffer](0)
+
+    private def segment(index: Int): MappedByteBuffer = {
+        val current = segments
+        if (index < current.length && current(index) != null) {
+            return current(index)
+        }
+        if ((index + 1).toLong * SEGMENT_SIZE > getLength()) {
+            return null
+        }
+        this.synchronized {
+            if (index >= segments.length) {
+                val grown = new Array[MappedByteBuffer](index + 1)
+                System.arraycopy(segments, 0, grown, 0, segments.length)
+                segments = grown
+            }
+            if (segments(index) == null) {
+                segments(index) = channel.map(FileChannel.MapMode.READ_ONLY, index.toLong * SEGMENT_SIZE, SEGMENT_SIZE)
+            }
+            return segments(index)
+        }
+    }
+
+    private def read(pos: Long, len: Int): Array[Byte] = {
+        val buff = new Array[Byte](len)
+        var done = 0
+        while (done < len) {
+            val p = pos + done
+            val seg = segment((p / SEGMENT_SIZE).toInt)
+            if (seg != null) {
+                val off = (p % SEGMENT_SIZE).toInt
+                val n = Math.min(len - done, SEGMENT_SIZE - off)
+                var i = 0
+                while (i < n) {
+                    buff(done + i) = seg.get(off + i)
+                    i += 1
+                }
+                done += n
+            } else {
+                val n = channel.read(ByteBuffer.wrap(buff, done, len - done), p)
+                if (n < 0) {
+                    throw new EOFException("pos=" + p + " " + path)
+                }
+                done += n
+            }
+        }
+        buff
+    }
+
+    private def readUnsignedShort(pos: Long): Int = {
+        val b = read(pos, 2)
+        ((b(0) & 0xff) << 8) + (b(1) & 0xff)
+    }
+
+    /**
+      * @return (blob, length of the blob record)
+      */
+    private def readBlob(pos: Long): (Array[Byte], Int) = {
+        val baselen = read(pos, 1)(0) & 0xff
+        baselen match {
+            case 255 =>
+                val len = readUnsignedShort(pos + 1)
+                (read(pos + 3, len), 3 + len)
+            case 254 =>
+                val len = DataInputX.toInt(read(pos + 1, 4), 0)
+                (read(pos + 5, len), 5 + len)
+            case 0 =>
+                (new Array[Byte](0), 1)
+            case _ =>
+                (read(pos + 1, baselen), 1 + baselen)
+        }
+    }
+
+    override def getRecord(pos: Long): ITEM = {
+        val head = read(pos, 1 + 5 + 2)
+        val keyLen = ((head(6) & 0xff) << 8) + (head(7) & 0xff)
+        val r = new ITEM()
+        r.deleted = head(0) != 0
+        r.prevPos = DataInputX.toLong5(head, 1)
+        r.timeKey = read(pos + 8, keyLen)
+        val (dataPos, blobLen) = readBlob(pos + 8 + keyLen)
+        r.dataPos = dataPos
+        r.offset = pos + 8 + keyLen + blobLen
+        r
+    }
+
+    override def isDeleted(pos: Long): Boolean = {
+        read(pos, 1)(0) != 0
+    }
+
+    override def getPrevPos(pos: Long): Long = {
+        DataInputX.toLong5(read(pos + 1, 5), 0)
+    }
+
+    override def getTimeKey(pos: Long): Array[Byte] = {
+        val keyLen = readUnsignedShort(pos + 1 + 5)
+        read(pos + 1 + 5 + 2, keyLen)
+    }
+
+    override def getDataPos(pos: Long): Array[Byte] = {
+        val keyLen = readUnsignedShort(pos + 1 + 5)
+        readBlob(pos + 1 + 5 + 2 + keyLen)._1
+    }
+
+    override def close() {
+        this.synchronized {
+            segments = new Array[MappedByteBuffer](0)
+        }
+        super.close()
+    }
+}
+
+object MappedKeyFile {
+    val SEGMENT_SIZE = 16 * 1024 * 1024
+}
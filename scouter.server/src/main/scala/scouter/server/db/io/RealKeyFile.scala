@@ -21,6 +21,7 @@ package scouter.server.db.io;
 import java.io.{File, RandomAccessFile}
 
 import scouter.io.{DataInputX, DataOutputX}
+import scouter.server.Configure
 import scouter.util.IClose;
 
 class ITEM {
@@ -31,6 +32,19 @@ class ITEM {
     var offset = 0L
 }
 
+object RealKeyFile {
+    def open(path: String): RealKeyFile = {
+        if (Configure.getInstance().mgr_db_index_mmap_enabled) new MappedKeyFile(path) else new RealKeyFile(path)
+    }
+
+    def writeRecord(out: DataOutputX, prevPos: Long, indexKey: Array[Byte], dataPos: Array[Byte]) {
+        out.writeBoolean(false);
+        out.writeLong5(prevPos);
+        out.writeShortBytes(indexKey);
+        out.writeBlob(dataPos);
+    }
+}
+
 class RealKeyFile(_path: String) extends IClose {
     val path = _path;
     val file = new File(path + ".kfile");
@@ -103,10 +117,7 @@ class RealKeyFile(_path: String) extends IClose {
             this.raf.seek(pos);
 
             val out = new DataOutputX();
-            out.writeBoolean(false);
-            out.writeLong5(prevPos);
-            out.writeShortBytes(indexKey);
-            out.writeBlob(dataPos);
+            RealKeyFile.writeRecord(out, prevPos, indexKey, dataPos);
          
             this.raf.write(out.toByteArray())
         }
@@ -136,6 +147,20 @@ class RealKeyFile(_path: String) extends IClose {
         }
     }
 
+    /**
+      * append several records with a single write.
+      * build gets the position of the first record and returns the records made by RealKeyFile.writeRecord
+      */
+    def appendBatch(build: (Long) => Array[Byte]): Long = {
+        this.synchronized {
+            val pos = this.raf.length();
+            val records = build(pos);
+            this.raf.seek(pos);
+            this.raf.write(records);
+            return pos;
+        }
+    }
+
     def close() {
         if (this.raf == null)
             return ;
@@ -0,0 +1,539 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.io
+
+import java.io.{File, RandomAccessFile}
+import java.util.{Comparator, PriorityQueue}
+
+import scouter.io.{DataInputX, DataOutputX, FlushCtr, IFlushable}
+import scouter.server.Logger
+import scouter.util.FileUtil
+
+import scala.collection.mutable.ArrayBuffer
+
+object SortedTimeIndexFile {
+    /** time(8) + data position(5) */
+    val ENTRY_SIZE = 13
+    /** offset(8) + count(4) + min time(8) + max time(8) + max time of this and all previous blocks(8) */
+    val BLOCK_SIZE = 36
+    val BLOCK_ENTRY_COUNT = 1024
+    /** block count(4) that the tail entries belong to */
+    val TAIL_HEAD_SIZE = 4
+
+    val POSTFIX_DATA = ".tidx"
+    val POSTFIX_BLOCK = ".tblk"
+    val POSTFIX_TAIL = ".ttail"
+
+    def exists(path: String): Boolean = {
+        new File(path + POSTFIX_BLOCK).exists()
+    }
+
+    /**
+      * open the time index of the path.
+      * the sorted format is used if the path already has it, or if it's a new index and sortedForNew is true.
+      */
+    def open(path: String, sortedForNew: Boolean): ITimeIndex = {
+        if (exists(path)) {
+            return new SortedTimeIndexFile(path)
+        }
+        if (sortedForNew && new File(path + ".kfile").exists() == false) {
+            return new SortedTimeIndexFile(path)
+        }
+        new IndexTimeFile(path)
+    }
+
+    /**
+      * convert an index written by IndexTimeFile into the sorted format. the old files are kept.
+      * @return converted entry count
+      */
+    def convert(path: String): Int = {
+        if (exists(path) || new File(path + ".kfile").exists() == false) {
+            return 0
+        }
+        var count = 0
+        var old: IndexTimeFile = null
+        var sorted: SortedTimeIndexFile = null
+        try {
+            old = new IndexTimeFile(path)
+            sorted = new SortedTimeIndexFile(path)
+            val buffer = new ArrayBuffer[(Long, Array[Byte])]()
+            old.read((timeKey: Array[Byte], dataPos: Array[Byte]) => {
+                buffer += ((DataInputX.toLong(timeKey, 0), dataPos))
+                if (buffer.size >= BLOCK_ENTRY_COUNT) {
+                    sorted.putBatch(buffer)
+                    buffer.clear()
+                }
+                count += 1
+            })
+            sorted.putBatch(buffer)
+        } finally {
+            FileUtil.close(old)
+            FileUtil.close(sorted)
+        }
+        count
+    }
+
+    /**
+      * convert time indexes of old days.
+      * usage : SortedTimeIndexFile {index path without postfix} ...
+      * eg) ./database/20181010/xlog/xlog_tim
+      */
+    def main(args: Array[String]) {
+        args.foreach(path => {
+            println(path + " : " + convert(path) + " entries converted")
+        })
+    }
+}
+
+/**
+  * append only time index.
+  * entries are buffered, sorted by time and written as fixed width blocks of BLOCK_ENTRY_COUNT entries,
+  * and each block has a summary(offset, count, min/max time) in the block file.
+  * entries of the block being filled are appended to the tail file on every flush so readers see them
+  * before the block is sealed. a block is sealed when it is full or when the index is closed.
+  * a range scan binary searches the first block on the running max time of the summaries, reads only blocks
+  * overlapping the range, binary searches the start position in each block and merges the blocks in time order.
+  */
+class SortedTimeIndexFile(_path: String) extends ITimeIndex with IFlushable {
+    import SortedTimeIndexFile._
+
+    case class Block(offset: Long, count: Int, minTime: Long, maxTime: Long)
+
+    class Cursor(time: Array[Long], pos: Array[Long], var index: Int, end: Int, step: Int) {
+        def currentTime: Long = time(index)
+        def currentPos: Long = pos(index)
+        def advance(): Boolean = {
+            index += step
+            index != end
+        }
+    }
+
+    /**
+      * a sorted run of entries, a sealed block in the data file or the unsealed tail
+      */
+    abstract class Run(val minTime: Long, val maxTime: Long) {
+        def open(stime: Long, etime: Long, forward: Boolean): Cursor
+    }
+
+    val path = _path
+    private val dataFile = new File(path + POSTFIX_DATA)
+    private val blockFile = new File(path + POSTFIX_BLOCK)
+    private val tailFile = new File(path + POSTFIX_TAIL)
+
+    private var dataOut: RandomAccessFile = null
+    private var blockOut: RandomAccessFile = null
+    private var tailOut: RandomAccessFile = null
+    private var dataEnd = 0L
+    private var blockCount = 0
+    private var runningMax = Long.MinValue
+
+    private val pendingTime = new ArrayBuffer[Long]()
+    private val pendingPos = new ArrayBuffer[Long]()
+    /** pending entries already appended to the tail file */
+    private var tailWritten = 0
+
+    private def openForWrite() {
+        if (dataOut != null)
+            return
+        blockOut = new RandomAccessFile(blockFile, "rw")
+        blockCount = (blockOut.length() / BLOCK_SIZE).toInt
+        blockOut.setLength(blockCount.toLong * BLOCK_SIZE)
+        if (blockCount > 0) {
+            blockOut.seek((blockCount - 1).toLong * BLOCK_SIZE)
+            val offset = blockOut.readLong()
+            val count = blockOut.readInt()
+            blockOut.skipBytes(16)
+            runningMax = blockOut.readLong()
+            dataEnd = offset + count.toLong * ENTRY_SIZE
+        }
+        dataOut = new RandomAccessFile(dataFile, "rw")
+        //cut off entries of a block whose summary was not written
+        dataOut.setLength(dataEnd)
+
+        //entries of the unsealed block from the last run, a tail of an older block count was already sealed
+        tailOut = new RandomAccessFile(tailFile, "rw")
+        val tail = readTail(tailOut, blockCount)
+        if (tail != null) {
+            pendingTime ++= tail._1
+            pendingPos ++= tail._2
+            tailWritten = tail._1.length
+            tailOut.setLength(TAIL_HEAD_SIZE + tailWritten.toLong * ENTRY_SIZE)
+        } else {
+            resetTail()
+        }
+        FlushCtr.getInstance().regist(this)
+    }
+
+    private def resetTail() {
+        tailOut.setLength(0)
+        tailOut.seek(0)
+        tailOut.writeInt(blockCount)
+        tailWritten = 0
+    }
+
+    def put(time: Long, dataPos: Array[Byte]): Long = {
+        this.synchronized {
+            openForWrite()
+            pendingTime += time
+            pendingPos += DataInputX.toLong5(dataPos, 0)
+            if (pendingTime.size >= BLOCK_ENTRY_COUNT) {
+                sealBlock()
+            }
+            return 0L
+        }
+    }
+
+    def putBatch(entries: Seq[(Long, Array[Byte])]) {
+        this.synchronized {
+            openForWrite()
+            entries.foreach(entry => {
+                pendingTime += entry._1
+                pendingPos += DataInputX.toLong5(entry._2, 0)
+                if (pendingTime.size >= BLOCK_ENTRY_COUNT) {
+                    sealBlock()
+                }
+            })
+        }
+    }
+
+    private def sealBlock() {
+        val count = pendingTime.size
+        if (count == 0)
+            return
+        val order = (0 until count).sortBy(i => pendingTime(i))
+        val out = new DataOutputX(count * ENTRY_SIZE)
+        order.foreach(i => {
+            out.writeLong(pendingTime(i))
+            out.writeLong5(pendingPos(i))
+        })
+        dataOut.seek(dataEnd)
+        dataOut.write(out.toByteArray())
+
+        val minTime = pendingTime(order.head)
+        val maxTime = pendingTime(order.last)
+        runningMax = Math.max(runningMax, maxTime)
+        val summary = new DataOutputX(BLOCK_SIZE)
+        summary.writeLong(dataEnd)
+        summary.writeInt(count)
+        summary.writeLong(minTime)
+        summary.writeLong(maxTime)
+        summary.writeLong(runningMax)
+        blockOut.seek(blockCount.toLong * BLOCK_SIZE)
+        blockOut.write(summary.toByteArray())
+
+        blockCount += 1
+        dataEnd += count.toLong * ENTRY_SIZE
+        pendingTime.clear()
+        pendingPos.clear()
+        resetTail()
+    }
+
+    /**
+      * append the entries which are not in the tail file yet
+      */
+    private def writeTail() {
+        val count = pendingTime.size - tailWritten
+        if (count <= 0)
+            return
+        val out = new DataOutputX(count * ENTRY_SIZE)
+        for (i <- tailWritten until pendingTime.size) {
+            out.writeLong(pendingTime(i))
+            out.writeLong5(pendingPos(i))
+        }
+        tailOut.seek(TAIL_HEAD_SIZE + tailWritten.toLong * ENTRY_SIZE)
+        tailOut.write(out.toByteArray())
+        tailWritten = pendingTime.size
+    }
+
+    def flush() {
+        this.synchronized {
+            if (dataOut == null)
+                return
+            try {
+                writeTail()
+            } catch {
+                case e: Exception => Logger.println("S227", 10, path + " : " + e)
+            }
+        }
+    }
+
+    def isDirty(): Boolean = {
+        pendingTime.size > tailWritten
+    }
+
+    def interval(): Long = {
+        1000
+    }
+
+    /**
+      * @return (time, position) of the tail entries if they belong to the block count, null otherwise
+      */
+    private def readTail(raf: RandomAccessFile, count: Int): (Array[Long], Array[Long]) = {
+        val length = raf.length()
+        if (length < TAIL_HEAD_SIZE)
+            return null
+        raf.seek(0)
+        if (raf.readInt() != count)
+            return null
+        //an entry being appended is cut off
+        val n = ((length - TAIL_HEAD_SIZE) / ENTRY_SIZE).toInt
+        val bytes = new Array[Byte](n * ENTRY_SIZE)
+        raf.readFully(bytes)
+        val time = new Array[Long](n)
+        val pos = new Array[Long](n)
+        for (i <- 0 until n) {
+            time(i) = DataInputX.toLong(bytes, i * ENTRY_SIZE)
+            pos(i) = DataInputX.toLong5(bytes, i * ENTRY_SIZE + 8)
+        }
+        (time, pos)
+    }
+
+    /**
+      * first block whose running max time is not less than the time. blocks before it end before the time.
+      */
+    private def firstBlock(raf: RandomAccessFile, count: Int, time: Long): Int = {
+        var low = 0
+        var high = count
+        while (low < high) {
+            val mid = (low + high) >>> 1
+            raf.seek(mid.toLong * BLOCK_SIZE + 28)
+            if (raf.readLong() < time) low = mid + 1 else high = mid
+        }
+        low
+    }
+
+    /**
+      * @return (sealed block count, blocks overlapping [stime, etime])
+      */
+    private def loadBlocks(stime: Long, etime: Long): (Int, Array[Block]) = {
+        if (blockFile.exists() == false) {
+            return (0, new Array[Block](0))
+        }
+        val raf = new RandomAccessFile(blockFile, "r")
+        try {
+            val count = (raf.length() / BLOCK_SIZE).toInt
+            val first = firstBlock(raf, count, stime)
+            val bytes = new Array[Byte]((count - first) * BLOCK_SIZE)
+            raf.seek(first.toLong * BLOCK_SIZE)
+            raf.readFully(bytes)
+            val blocks = new ArrayBuffer[Block]()
+            for (i <- 0 until count - first) {
+                val p = i * BLOCK_SIZE
+                val b = Block(DataInputX.toLong(bytes, p), DataInputX.toInt(bytes, p + 8),
+                    DataInputX.toLong(bytes, p + 12), DataInputX.toLong(bytes, p + 20))
+                if (b.maxTime >= stime && b.minTime <= etime) {
+                    blocks += b
+                }
+            }
+            (count, blocks.toArray)
+        } finally {
+            FileUtil.close(raf)
+        }
+    }
+
+    /**
+      * sealed blocks and the tail of the same block count.
+      * a block sealed between reading the blocks and the tail changes the tail's block count, then it's read again.
+      */
+    private def loadRuns(stime: Long, etime: Long, dataRaf: => RandomAccessFile): Array[Run] = {
+        if (dataOut != null && isDirty()) {
+            flush()
+        }
+        var attempt = 0
+        while (true) {
+            val (count, blocks) = loadBlocks(stime, etime)
+            val tail = if (tailFile.exists()) {
+                val raf = new RandomAccessFile(tailFile, "r")
+                try readTail(raf, count) finally FileUtil.close(raf)
+            } else null
+            if (tail != null || attempt >= 2 || tailFile.exists() == false) {
+                val runs = new ArrayBuffer[Run]()
+                blocks.foreach(b => runs += new Run(b.minTime, b.maxTime) {
+                    def open(stime: Long, etime: Long, forward: Boolean): Cursor = load(dataRaf, b, stime, etime, forward)
+                })
+                if (tail != null && tail._1.length > 0) {
+                    val order = tail._1.indices.sortBy(i => tail._1(i))
+                    val time = order.map(tail._1(_)).toArray
+                    val pos = order.map(tail._2(_)).toArray
+                    if (time.last >= stime && time.head <= etime) {
+                        runs += new Run(time.head, time.last) {
+                            def open(stime: Long, etime: Long, forward: Boolean): Cursor = cursor(time, pos, stime, etime, forward)
+                        }
+                    }
+                }
+                return runs.toArray
+            }
+            attempt += 1
+        }
+        null
+    }
+
+    /**
+      * first index whose time is not less than the time
+      */
+    private def lowerBound(times: Array[Long], time: Long): Int = {
+        var low = 0
+        var high = times.length
+        while (low < high) {
+            val mid = (low + high) >>> 1
+            if (times(mid) < time) low = mid + 1 else high = mid
+        }
+        low
+    }
+
+    /**
+      * first index whose time is greater than the time
+      */
+    private def upperBound(times: Array[Long], time: Long): Int = {
+        var low = 0
+        var high = times.length
+        while (low < high) {
+            val mid = (low + high) >>> 1
+            if (times(mid) <= time) low = mid + 1 else high = mid
+        }
+        low
+    }
+
+    private def cursor(time: Array[Long], pos: Array[Long], stime: Long, etime: Long, forward: Boolean): Cursor = {
+        val first = lowerBound(time, stime)
+        val last = upperBound(time, etime) - 1
+        if (first > last) {
+            return null
+        }
+        if (forward) new Cursor(time, pos, first, last + 1, 1) else new Cursor(time, pos, last, first - 1, -1)
+    }
+
+    private def load(raf: RandomAccessFile, block: Block, stime: Long, etime: Long, forward: Boolean): Cursor = {
+        val bytes = new Array[Byte](block.count * ENTRY_SIZE)
+        raf.seek(block.offset)
+        raf.readFully(bytes)
+        val time = new Array[Long](block.count)
+        val pos = new Array[Long](block.count)
+        for (i <- 0 until block.count) {
+            time(i) = DataInputX.toLong(bytes, i * ENTRY_SIZE)
+            pos(i) = DataInputX.toLong5(bytes, i * ENTRY_SIZE + 8)
+        }
+        cursor(time, pos, stime, etime, forward)
+    }
+
+    /**
+      * merge the runs overlapping [stime, etime] in time order. scan stops when the handler returns false.
+      */
+    private def scan(stime: Long, etime: Long, forward: Boolean, handler: (Long, Long) => Boolean) {
+        var raf: RandomAccessFile = null
+        try {
+            val candidates = loadRuns(stime, etime, {
+                if (raf == null) raf = new RandomAccessFile(dataFile, "r")
+                raf
+            })
+            if (candidates.isEmpty)
+                return
+            val runs = if (forward) candidates.sortBy(_.minTime) else candidates.sortBy(-_.maxTime)
+            val queue = new PriorityQueue[Cursor](runs.length, new Comparator[Cursor] {
+                override def compare(a: Cursor, b: Cursor): Int = {
+                    if (forward) java.lang.Long.compare(a.currentTime, b.currentTime)
+                    else java.lang.Long.compare(b.currentTime, a.currentTime)
+                }
+            })
+
+            var next = 0
+            var running = true
+            while (running) {
+                //open runs which can have entries ahead of the queue head
+                while (next < runs.length && (queue.isEmpty()
+                        || (forward && runs(next).minTime <= queue.peek().currentTime)
+                        || (!forward && runs(next).maxTime >= queue.peek().currentTime))) {
+                    val cursor = runs(next).open(stime, etime, forward)
+                    if (cursor != null) {
+                        queue.add(cursor)
+                    }
+                    next += 1
+                }
+                if (queue.isEmpty()) {
+                    running = false
+                } else {
+                    val cursor = queue.poll()
+                    if (handler(cursor.currentTime, cursor.currentPos) == false) {
+                        running = false
+                    } else if (cursor.advance()) {
+                        queue.add(cursor)
+                    }
+                }
+            }
+        } finally {
+            FileUtil.close(raf)
+        }
+    }
+
+    def read(stime: Long, etime: Long, handler: (Long, Array[Byte]) => Any) {
+        scan(stime, etime, true, (time: Long, pos: Long) => {
+            handler(time, DataOutputX.toBytes5(pos))
+            true
+        })
+    }
+
+    def readFromEnd(stime: Long, etime: Long, handler: (Long, Array[Byte]) => Any) {
+        scan(stime, etime, false, (time: Long, pos: Long) => {
+            handler(time, DataOutputX.toBytes5(pos))
+            true
+        })
+    }
+
+    def read(stime: Long, etime: Long, handler: (Long, Array[Byte]) => Any, reader: (Long) => Array[Byte]) {
+        scan(stime, etime, true, (time: Long, pos: Long) => {
+            handler(time, reader(pos))
+            true
+        })
+    }
+
+    def readFromEnd(stime: Long, etime: Long, handler: (Long, Array[Byte]) => Any, reader: (Long) => Array[Byte]) {
+        scan(stime, etime, false, (time: Long, pos: Long) => {
+            handler(time, reader(pos))
+            true
+        })
+    }
+
+    def readByLimitCount(stime: Long, etime: Long, lastBucketTime: Long, limitCount: Int, handler: (Long, Array[Byte]) => Int, reader: (Long) => Array[Byte]) {
+        val from = if (lastBucketTime != 0) Math.max(stime, lastBucketTime) else stime
+        scan(from, etime, true, (time: Long, pos: Long) => {
+            handler(ITimeIndex.bucketTime(time), reader(pos)) < limitCount
+        })
+    }
+
+    /**
+      * seals the block being filled
+      */
+    override def close() {
+        this.synchronized {
+            if (dataOut != null) {
+                FlushCtr.getInstance().unregist(this)
+                try {
+                    sealBlock()
+                } catch {
+                    case e: Exception => Logger.println("S227", 10, path + " : " + e)
+                }
+            }
+            FileUtil.close(dataOut)
+            FileUtil.close(blockOut)
+            FileUtil.close(tailOut)
+            dataOut = null
+            blockOut = null
+            tailOut = null
+        }
+    }
+}
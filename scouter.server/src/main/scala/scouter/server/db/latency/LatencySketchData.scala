@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.db.latency
+
+import java.io.RandomAccessFile
+import java.util.Hashtable
+
+import scouter.io.{DataInputX, DataOutputX}
+import scouter.util.{FileUtil, IClose, LogLinearHistogram}
+
+object LatencySketchData {
+    val table = new Hashtable[String, LatencySketchData]()
+    val preFixForWriter = "w--"
+
+    def openForWrite(fileName: String): LatencySketchData = {
+        val wFileName = preFixForWriter + fileName
+        table.synchronized {
+            var writer = table.get(wFileName)
+            if (writer != null) {
+                writer.refrence += 1
+            } else {
+                writer = new LatencySketchData(fileName, "rw")
+                table.put(wFileName, writer)
+            }
+            return writer
+        }
+    }
+
+    def open(fileName: String): LatencySketchData = {
+        table.synchronized {
+            var reader = table.get(fileName)
+            if (reader != null) {
+                reader.refrence += 1
+            } else {
+                reader = new LatencySketchData(fileName, "r")
+                table.put(fileName, reader)
+            }
+            return reader
+        }
+    }
+}
+
+/**
+  * a record is the length followed by the start time of the minute and the histogram of the minute.
+  */
+class LatencySketchData(fileName: String, mode: String) extends IClose {
+    import LatencySketchData._
+
+    var refrence = 0
+    var dataFile = new RandomAccessFile(fileName + ".data", mode)
+
+    override def close() {
+        table.synchronized {
+            if (this.refrence == 0) {
+                table.remove(this.fileName)
+                table.remove(preFixForWriter + this.fileName)
+                dataFile = FileUtil.close(dataFile)
+            } else {
+                this.refrence -= 1
+            }
+        }
+    }
+
+    def write(time: Long, histogram: Array[Byte]): Long = {
+        val out = new DataOutputX()
+        out.writeLong(time)
+        out.writeBlob(histogram)
+        val bytes = out.toByteArray()
+        this.synchronized {
+            val location = dataFile.length()
+            dataFile.seek(location)
+            dataFile.writeInt(bytes.length)
+            dataFile.write(bytes)
+            return location
+        }
+    }
+
+    def readTime(offset: Long): Long = {
+        this.synchronized {
+            dataFile.seek(offset + 4)
+            return dataFile.readLong()
+        }
+    }
+
+    def read(offset: Long): (Long, LogLinearHistogram) = {
+        val buffer = this.synchronized {
+            dataFile.seek(offset)
+            val b = new Array[Byte](dataFile.readInt())
+            dataFile.readFully(b)
+            b
+        }
+        val in = new DataInputX(buffer)
+        val time = in.readLong()
+        (time, LogLinearHistogram.fromBytes(in.readBlob()))
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.db.latency
+
+import java.util.Hashtable
+
+import scouter.io.{DataInputX, DataOutputX}
+import scouter.server.db.io.IndexKeyFile
+import scouter.util.{FileUtil, IClose}
+
+object LatencySketchIndex {
+    val table = new Hashtable[String, LatencySketchIndex]()
+
+    def open(fileName: String): LatencySketchIndex = {
+        table.synchronized {
+            var index = table.get(fileName)
+            if (index != null) {
+                index.refrence += 1
+            } else {
+                index = new LatencySketchIndex(fileName)
+                table.put(fileName, index)
+            }
+            return index
+        }
+    }
+
+    def key(objType: Int, service: Int): Array[Byte] = {
+        new DataOutputX(8).writeInt(objType).writeInt(service).toByteArray()
+    }
+}
+
+/**
+  * objType and service to the data offsets of the minutes of the service.
+  */
+class LatencySketchIndex(fileName: String) extends IClose {
+    var refrence = 0
+    var index = new IndexKeyFile(fileName)
+
+    def add(key: Array[Byte], dataOffset: Long) {
+        index.put(key, DataOutputX.toBytes5(dataOffset))
+    }
+
+    /**
+      * offsets of a key, the latest first
+      */
+    def getAll(key: Array[Byte]): Array[Long] = {
+        val list = index.getAll(key)
+        val offsets = new Array[Long](list.size())
+        for (i <- 0 until offsets.length) {
+            offsets(i) = DataInputX.toLong5(list.get(i), 0)
+        }
+        offsets
+    }
+
+    override def close() {
+        LatencySketchIndex.table.synchronized {
+            if (this.refrence == 0) {
+                LatencySketchIndex.table.remove(this.fileName)
+                FileUtil.close(index)
+            } else {
+                this.refrence -= 1
+            }
+        }
+    }
+}
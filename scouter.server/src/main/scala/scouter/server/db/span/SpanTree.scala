@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.db.span
+
+import java.util
+
+import scouter.io.{DataInputX, DataOutputX}
+import scouter.lang.pack.{SpanPack, SpanTypes}
+
+import scala.collection.mutable
+
+/**
+  * span relations of a trace kept in the span tree index, one entry per span container.
+  * the tree of a gxid is assembled from the entries alone, the containers are read only for the spans a view needs.
+  */
+class SpanNode(val txid: Long, val caller: Long, val name: Int, val timestamp: Long, val elapsed: Int,
+               val spanType: Byte, val error: Int, val pos: Long) {
+    val xloggable = SpanTypes.isXLoggable(spanType)
+    val children = new util.ArrayList[SpanNode]()
+}
+
+class SpanTree(val nodes: util.List[SpanNode]) {
+    private val xloggableByTxid = new util.HashMap[Long, SpanNode]()
+    private val spanByTxid = new util.HashMap[Long, SpanNode]()
+
+    for (i <- 0 until nodes.size()) {
+        val n = nodes.get(i)
+        if (n.xloggable) xloggableByTxid.put(n.txid, n) else spanByTxid.put(n.txid, n)
+    }
+
+    /**
+      * the xloggable span if there is one, a client and a server span share the id.
+      */
+    def get(txid: Long): SpanNode = {
+        val n = xloggableByTxid.get(txid)
+        if (n != null) n else spanByTxid.get(txid)
+    }
+
+    /**
+      * the spans of the profile of an xloggable span in the order of the profile, the same relations as SpanStepBuilder.
+      * descendants are followed through the non-xloggable spans and not beyond a boundary span.
+      */
+    def profileOf(txid: Long): util.List[SpanNode] = {
+        val out = new util.ArrayList[SpanNode]()
+        val start = xloggableByTxid.get(txid)
+        if (start == null)
+            return out
+        val stack = new util.ArrayList[SpanNode]()
+        val seen = new util.IdentityHashMap[SpanNode, SpanNode]()
+        stack.add(start)
+        while (stack.size() > 0) {
+            val n = stack.remove(stack.size() - 1)
+            if (seen.put(n, n) == null) {
+                out.add(n)
+                if (n.txid == txid || !SpanTypes.isBoundary(n.spanType)) {
+                    var i = n.children.size() - 1
+                    while (i >= 0) {
+                        stack.add(n.children.get(i))
+                        i -= 1
+                    }
+                }
+            }
+        }
+        out
+    }
+
+    /**
+      * the positions of the containers holding the spans, in the order they were written.
+      */
+    def positions(spans: util.List[SpanNode]): Array[Long] = {
+        val set = new mutable.HashSet[Long]()
+        for (i <- 0 until spans.size()) {
+            set += spans.get(i).pos
+        }
+        set.toArray.sorted
+    }
+
+    private def link(): Unit = {
+        val linked = new mutable.HashSet[(Long, Boolean, Long)]()
+        def add(parent: SpanNode, child: SpanNode): Unit = {
+            if (parent != null && linked.add((parent.txid, parent.xloggable, child.txid))) {
+                parent.children.add(child)
+            }
+        }
+        for (i <- 0 until nodes.size()) {
+            val n = nodes.get(i)
+            val child = spanByTxid.get(n.txid)
+            if (n.caller != 0 && child != null) {
+                add(spanByTxid.get(n.caller), child)
+                add(xloggableByTxid.get(n.caller), child)
+            }
+        }
+        val it = nodes.iterator()
+        while (it.hasNext) {
+            util.Collections.sort(it.next().children, SpanTree.ORDER)
+        }
+    }
+
+    link()
+}
+
+object SpanTree {
+    val ORDER = new util.Comparator[SpanNode] {
+        override def compare(a: SpanNode, b: SpanNode): Int = {
+            if (a.timestamp != b.timestamp) java.lang.Long.compare(a.timestamp, b.timestamp)
+            else java.lang.Long.compare(a.txid, b.txid)
+        }
+    }
+
+    def toNode(s: SpanPack, pos: Long): SpanNode = {
+        new SpanNode(s.txid, s.caller, s.name, s.timestamp, s.elapsed, s.spanType, s.error, pos)
+    }
+
+    /**
+      * the entry of a container without its position, the writer puts the position in front of it.
+      */
+    def toEntry(spans: util.List[SpanPack]): Array[Byte] = {
+        val out = new DataOutputX()
+        out.writeDecimal(spans.size())
+        for (i <- 0 until spans.size()) {
+            val s = spans.get(i)
+            out.writeLong(s.txid)
+            out.writeLong(s.caller)
+            out.writeDecimal(s.name)
+            out.writeDecimal(s.timestamp)
+            out.writeDecimal(s.elapsed)
+            out.writeByte(s.spanType)
+            out.writeDecimal(s.error)
+        }
+        out.toByteArray
+    }
+
+    def readEntry(entry: Array[Byte], nodes: util.List[SpanNode]): Unit = {
+        val in = new DataInputX(entry)
+        val pos = in.readLong5()
+        val count = in.readDecimal().toInt
+        for (i <- 0 until count) {
+            nodes.add(new SpanNode(in.readLong(), in.readLong(), in.readDecimal().toInt, in.readDecimal(),
+                in.readDecimal().toInt, in.readByte(), in.readDecimal().toInt, pos))
+        }
+    }
+
+    /**
+      * @param entries the entries of a gxid in the order of the index, the latest first
+      */
+    def assemble(entries: util.List[Array[Byte]]): SpanTree = {
+        val nodes = new util.ArrayList[SpanNode]()
+        var i = entries.size() - 1
+        while (i >= 0) {
+            readEntry(entries.get(i), nodes)
+            i -= 1
+        }
+        new SpanTree(nodes)
+    }
+}
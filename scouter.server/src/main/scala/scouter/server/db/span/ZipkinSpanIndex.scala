@@ -21,6 +21,7 @@
   */
 package scouter.server.db.span
 
+import java.io.File
 import java.util
 
 import scouter.io.{DataInputX, DataOutputX}
@@ -32,6 +33,7 @@ object ZipkinSpanIndex {
     val POSTFIX_TIME = "_tim"
     val POSTFIX_GID = "_gid"
     val POSTFIX_TID = "_tid"
+    val POSTFIX_TREE = "_tree"
 
     val table = new util.Hashtable[String, ZipkinSpanIndex]()
 
@@ -54,6 +56,7 @@ class ZipkinSpanIndex(val filePathName: String) extends IClose {
     var ref = 0
     var gxidIndex: IndexKeyFile = _
     var timeIndex: IndexTimeFile = _
+    var treeIndex: IndexKeyFile = _
 
     def setByGxid(gxid: Long, pos: Long): Unit = {
         if (gxid == 0)
@@ -71,6 +74,30 @@ class ZipkinSpanIndex(val filePathName: String) extends IClose {
         this.timeIndex.put(time, DataOutputX.toBytes5(pos))
     }
 
+    /**
+      * @param entry a SpanTree entry of the container at the position
+      */
+    def setTree(gxid: Long, pos: Long, entry: Array[Byte]): Unit = {
+        if (gxid == 0)
+            return ;
+        if (this.treeIndex == null) {
+            this.treeIndex = new IndexKeyFile(filePathName + ZipkinSpanIndex.POSTFIX_TREE)
+        }
+        this.treeIndex.put(DataOutputX.toBytes(gxid), new DataOutputX().writeLong5(pos).write(entry).toByteArray)
+    }
+
+    /**
+      * @return the SpanTree entries of the gxid, null if the day has no tree index
+      */
+    def getTree(gxid: Long): util.List[Array[Byte]] = {
+        if (this.treeIndex == null) {
+            if (!new File(filePathName + ZipkinSpanIndex.POSTFIX_TREE + ".kfile").exists())
+                return null
+            this.treeIndex = new IndexKeyFile(filePathName + ZipkinSpanIndex.POSTFIX_TREE)
+        }
+        this.treeIndex.getAll(DataOutputX.toBytes(gxid))
+    }
+
     def getByGxid(gxid: Long): util.List[Long] = {
         if (this.gxidIndex == null) {
             this.gxidIndex = new IndexKeyFile(filePathName + ZipkinSpanIndex.POSTFIX_GID)
@@ -97,6 +124,7 @@ class ZipkinSpanIndex(val filePathName: String) extends IClose {
                 ZipkinSpanIndex.table.remove(this.filePathName)
                 FileUtil.close(this.gxidIndex)
                 FileUtil.close(this.timeIndex)
+                FileUtil.close(this.treeIndex)
             } else {
                 this.ref -= 1;
             }
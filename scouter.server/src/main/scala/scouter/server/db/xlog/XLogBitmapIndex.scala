@@ -0,0 +1,380 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.xlog
+
+import java.io.{File, RandomAccessFile}
+import java.util.{Hashtable, LinkedHashMap}
+
+import scouter.io.{DataInputX, DataOutputX, FlushCtr, IFlushable}
+import scouter.lang.pack.XLogPack
+import scouter.server.{Configure, Logger}
+import scouter.util.{FileUtil, IClose, RoaringBitmap}
+
+import scala.collection.mutable
+
+object XLogBitmapIndex {
+    val SERVICE = 0
+    val OBJ = 1
+    val ERROR = 2
+    val IP = 3
+
+    val POSTFIX_ROW = "_bmp.row"
+    val POSTFIX_TIME = "_bmp.tim"
+    val POSTFIX = Array("_bmp_svc.bmp", "_bmp_obj.bmp", "_bmp_err.bmp", "_bmp_ip.bmp")
+
+    /** time(8) + data position(5) + service, objHash, error, ip(4) */
+    val ROW_SIZE = 29
+    val READ_CHUNK_ROWS = 256
+    val SNAPSHOT_INTERVAL = 10000L
+    /** rows of a time bound(min, max time) block */
+    val TIME_BLOCK_ROWS = 1024
+
+    val table = new Hashtable[String, XLogBitmapIndex]()
+    /** indexes loaded for search, least recently used first. guarded by table */
+    private val cache = new LinkedHashMap[String, XLogBitmapIndex](16, 0.75f, true)
+
+    def open(file: String): XLogBitmapIndex = {
+        table.synchronized {
+            var index = table.get(file)
+            if (index != null) {
+                index.reference += 1
+            } else {
+                index = new XLogBitmapIndex(file)
+                table.put(file, index)
+            }
+            return index
+        }
+    }
+
+    /**
+      * open the index for a search. indexes of the recent xlog_bitmap_index_cache_days days searched
+      * stay loaded after the search closes them, so past days are not loaded from the snapshots on every search.
+      */
+    def openForRead(file: String): XLogBitmapIndex = {
+        table.synchronized {
+            val index = open(file)
+            if (cache.get(file) == null) {
+                index.reference += 1
+                cache.put(file, index)
+            }
+            val days = Math.max(0, Configure.getInstance().xlog_bitmap_index_cache_days)
+            while (cache.size() > days) {
+                val eldest = cache.entrySet().iterator()
+                val e = eldest.next()
+                eldest.remove()
+                e.getValue.close()
+            }
+            return index
+        }
+    }
+
+    def exists(file: String): Boolean = {
+        new File(file + POSTFIX_ROW).exists()
+    }
+
+    def keyOf(p: XLogPack, field: Int): Int = {
+        field match {
+            case SERVICE => p.service
+            case OBJ => p.objHash
+            case ERROR => p.error
+            case _ => if (p.ipaddr != null && p.ipaddr.length == 4) DataInputX.toInt(p.ipaddr, 0) else 0
+        }
+    }
+}
+
+/**
+  * per day bitmap indexes of xlog rows keyed by service, objHash, error and ipv4(0 if unknown).
+  * a row id is the order of the xlog in the row file, which keeps the time and data position of each row.
+  * bitmaps are kept in memory and written as snapshots every 10 seconds.
+  * the min and max time of every TIME_BLOCK_ROWS rows are kept too, so a time range skips the rows of other blocks.
+  * rows after the last snapshot are replayed from the row file when the index is opened.
+  */
+class XLogBitmapIndex(file: String) extends IClose with IFlushable {
+    import XLogBitmapIndex._
+
+    var reference = 0
+
+    private val rowOut = new RandomAccessFile(file + POSTFIX_ROW, "rw")
+    private var writtenRows = (rowOut.length() / ROW_SIZE).toInt
+    private var rowBuffer = new DataOutputX()
+    private var bufferedRows = 0
+
+    private val bitmaps = Array.fill(POSTFIX.length)(new mutable.HashMap[Int, RoaringBitmap]())
+    private val snapshotRows = new Array[Int](POSTFIX.length)
+    private var lastSnapshot = System.currentTimeMillis()
+
+    private var blockMin = new Array[Long](64)
+    private var blockMax = new Array[Long](64)
+    private var timeBlocks = 0
+    /** rows covered by the time bounds file */
+    private var timeRows = 0
+
+    rowOut.setLength(writtenRows.toLong * ROW_SIZE)
+    load()
+    FlushCtr.getInstance().regist(this)
+
+    private def load() {
+        for (field <- 0 until POSTFIX.length) {
+            val snapshot = new File(file + POSTFIX(field))
+            if (snapshot.exists()) {
+                try {
+                    val in = new DataInputX(FileUtil.readAll(snapshot))
+                    val rows = in.readInt()
+                    val keys = in.readInt()
+                    for (i <- 0 until keys) {
+                        val key = in.readInt()
+                        bitmaps(field).put(key, RoaringBitmap.fromBytes(in.readBlob()))
+                    }
+                    snapshotRows(field) = rows
+                } catch {
+                    case e: Exception => Logger.println("S230", 10, snapshot + " : " + e)
+                }
+                //the snapshot is ahead of the row file, rebuild all from the rows
+                if (snapshotRows(field) > writtenRows) {
+                    bitmaps(field).clear()
+                    snapshotRows(field) = 0
+                }
+            }
+        }
+        loadTimes()
+        val from = Math.min(snapshotRows.min, timeRows)
+        if (from < writtenRows) {
+            val chunk = new Array[Byte](READ_CHUNK_ROWS * ROW_SIZE)
+            var row = from
+            while (row < writtenRows) {
+                val n = Math.min(READ_CHUNK_ROWS, writtenRows - row)
+                rowOut.seek(row.toLong * ROW_SIZE)
+                rowOut.readFully(chunk, 0, n * ROW_SIZE)
+                for (i <- 0 until n) {
+                    if (row + i >= timeRows) {
+                        addTime(row + i, DataInputX.toLong(chunk, i * ROW_SIZE))
+                    }
+                    for (field <- 0 until POSTFIX.length) {
+                        if (row + i >= snapshotRows(field)) {
+                            addKey(field, DataInputX.toInt(chunk, i * ROW_SIZE + 13 + field * 4), row + i)
+                        }
+                    }
+                }
+                row += n
+            }
+        }
+    }
+
+    private def loadTimes() {
+        val f = new File(file + POSTFIX_TIME)
+        if (f.exists() == false)
+            return
+        try {
+            val in = new DataInputX(FileUtil.readAll(f))
+            val rows = in.readInt()
+            val blocks = in.readInt()
+            if (rows <= writtenRows) {
+                for (b <- 0 until blocks) {
+                    addTime(b * TIME_BLOCK_ROWS, in.readLong())
+                    blockMax(b) = in.readLong()
+                }
+                timeRows = rows
+            } else {
+                timeBlocks = 0
+            }
+        } catch {
+            case e: Exception =>
+                Logger.println("S230", 10, f + " : " + e)
+                timeBlocks = 0
+                timeRows = 0
+        }
+    }
+
+    private def addTime(row: Int, time: Long) {
+        val b = row / TIME_BLOCK_ROWS
+        if (b >= blockMin.length) {
+            blockMin = java.util.Arrays.copyOf(blockMin, Math.max(b + 1, blockMin.length * 2))
+            blockMax = java.util.Arrays.copyOf(blockMax, blockMin.length)
+        }
+        if (b >= timeBlocks) {
+            blockMin(b) = time
+            blockMax(b) = time
+            timeBlocks = b + 1
+        } else {
+            blockMin(b) = Math.min(blockMin(b), time)
+            blockMax(b) = Math.max(blockMax(b), time)
+        }
+    }
+
+    private def addKey(field: Int, key: Int, row: Int) {
+        bitmaps(field).getOrElseUpdate(key, new RoaringBitmap()).add(row)
+    }
+
+    def add(p: XLogPack, dataPos: Long) {
+        this.synchronized {
+            val row = writtenRows + bufferedRows
+            rowBuffer.writeLong(p.endTime)
+            rowBuffer.writeLong5(dataPos)
+            addTime(row, p.endTime)
+            for (field <- 0 until POSTFIX.length) {
+                val key = keyOf(p, field)
+                rowBuffer.writeInt(key)
+                addKey(field, key, row)
+            }
+            bufferedRows += 1
+        }
+    }
+
+    private def writeRows() {
+        if (bufferedRows == 0)
+            return
+        rowOut.seek(writtenRows.toLong * ROW_SIZE)
+        rowOut.write(rowBuffer.toByteArray())
+        rowBuffer = new DataOutputX()
+        writtenRows += bufferedRows
+        bufferedRows = 0
+    }
+
+    private def writeSnapshot() {
+        for (field <- 0 until POSTFIX.length) {
+            if (snapshotRows(field) < writtenRows) {
+                val out = new DataOutputX()
+                out.writeInt(writtenRows)
+                out.writeInt(bitmaps(field).size)
+                bitmaps(field).foreach(kv => {
+                    out.writeInt(kv._1)
+                    out.writeBlob(kv._2.toBytes())
+                })
+                val target = new File(file + POSTFIX(field))
+                val temp = new File(file + POSTFIX(field) + ".tmp")
+                FileUtil.save(temp, out.toByteArray())
+                target.delete()
+                temp.renameTo(target)
+                snapshotRows(field) = writtenRows
+            }
+        }
+        if (timeRows < writtenRows) {
+            val out = new DataOutputX()
+            out.writeInt(writtenRows)
+            out.writeInt(timeBlocks)
+            for (b <- 0 until timeBlocks) {
+                out.writeLong(blockMin(b))
+                out.writeLong(blockMax(b))
+            }
+            val target = new File(file + POSTFIX_TIME)
+            val temp = new File(file + POSTFIX_TIME + ".tmp")
+            FileUtil.save(temp, out.toByteArray())
+            target.delete()
+            temp.renameTo(target)
+            timeRows = writtenRows
+        }
+        lastSnapshot = System.currentTimeMillis()
+    }
+
+    /**
+      * union of the bitmaps whose key is accepted
+      */
+    def select(field: Int, accept: Int => Boolean): RoaringBitmap = {
+        this.synchronized {
+            var out = new RoaringBitmap()
+            bitmaps(field).foreach(kv => {
+                if (accept(kv._1)) {
+                    out = RoaringBitmap.or(out, kv._2)
+                }
+            })
+            out
+        }
+    }
+
+    def get(field: Int, key: Int): RoaringBitmap = {
+        select(field, _ == key)
+    }
+
+    /**
+      * handler(time, data position) is called for each row in the bitmap whose time is in [stime, etime], in row order.
+      * rows of a block whose time bounds are out of the range are skipped without being read.
+      */
+    def readRows(rows: RoaringBitmap, stime: Long, etime: Long, handler: (Long, Long) => Any) {
+        val (rowCount, minTimes, maxTimes) = this.synchronized {
+            writeRows()
+            (writtenRows, java.util.Arrays.copyOf(blockMin, timeBlocks), java.util.Arrays.copyOf(blockMax, timeBlocks))
+        }
+        val in = new RandomAccessFile(file + POSTFIX_ROW, "r")
+        try {
+            val chunk = new Array[Byte](READ_CHUNK_ROWS * ROW_SIZE)
+            var chunkStart = 0
+            var chunkCount = 0
+            val values = rows.values()
+            while (values.hasMoreElements()) {
+                val row = values.nextInt()
+                val b = row / TIME_BLOCK_ROWS
+                if (row < rowCount && b < minTimes.length && maxTimes(b) >= stime && minTimes(b) <= etime) {
+                    if (row >= chunkStart + chunkCount) {
+                        chunkStart = row
+                        chunkCount = Math.min(READ_CHUNK_ROWS, rowCount - row)
+                        in.seek(row.toLong * ROW_SIZE)
+                        in.readFully(chunk, 0, chunkCount * ROW_SIZE)
+                    }
+                    val offset = (row - chunkStart) * ROW_SIZE
+                    val time = DataInputX.toLong(chunk, offset)
+                    if (time >= stime && time <= etime) {
+                        handler(time, DataInputX.toLong5(chunk, offset + 8))
+                    }
+                }
+            }
+        } finally {
+            FileUtil.close(in)
+        }
+    }
+
+    def flush() {
+        this.synchronized {
+            try {
+                writeRows()
+                if (System.currentTimeMillis() - lastSnapshot >= SNAPSHOT_INTERVAL) {
+                    writeSnapshot()
+                }
+            } catch {
+                case e: Exception => Logger.println("S230", 10, file + POSTFIX_ROW + " : " + e)
+            }
+        }
+    }
+
+    def isDirty(): Boolean = {
+        bufferedRows > 0 || (Math.min(snapshotRows.min, timeRows) < writtenRows && System.currentTimeMillis() - lastSnapshot >= SNAPSHOT_INTERVAL)
+    }
+
+    def interval(): Long = {
+        1000
+    }
+
+    override def close() {
+        table.synchronized {
+            if (this.reference == 0) {
+                table.remove(this.file)
+                FlushCtr.getInstance().unregist(this)
+                this.synchronized {
+                    try {
+                        writeRows()
+                        writeSnapshot()
+                    } catch {
+                        case e: Exception => Logger.println("S230", 10, file + POSTFIX_ROW + " : " + e)
+                    }
+                }
+                FileUtil.close(rowOut)
+            } else {
+                this.reference -= 1
+            }
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+package scouter.server.db.xlog
+
+import java.io.{File, RandomAccessFile}
+import java.util.{Comparator, Hashtable, PriorityQueue}
+
+import scouter.io.{DataInputX, DataOutputX, FlushCtr, IFlushable}
+import scouter.lang.pack.XLogPack
+import scouter.server.Logger
+import scouter.util.{FileUtil, IClose}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * a block of xlog columns. row i of every array belongs to the same xlog.
+  */
+class XLogColumnBlock(capacity: Int) {
+    var count = 0
+    val time = new Array[Long](capacity)
+    val objHash = new Array[Int](capacity)
+    val service = new Array[Int](capacity)
+    val elapsed = new Array[Int](capacity)
+    val error = new Array[Int](capacity)
+    /** ipv4 address as int, 0 if unknown or ipv6 */
+    val ip = new Array[Int](capacity)
+    val login = new Array[Int](capacity)
+    val desc = new Array[Int](capacity)
+    val txid = new Array[Long](capacity)
+    val dataPos = new Array[Long](capacity)
+
+    def isFull(): Boolean = count >= capacity
+
+    def add(p: XLogPack, pos: Long) {
+        val i = count
+        time(i) = p.endTime
+        objHash(i) = p.objHash
+        service(i) = p.service
+        elapsed(i) = p.elapsed
+        error(i) = p.error
+        ip(i) = if (p.ipaddr != null && p.ipaddr.length == 4) DataInputX.toInt(p.ipaddr, 0) else 0
+        login(i) = p.login
+        desc(i) = p.desc
+        txid(i) = p.txid
+        dataPos(i) = pos
+        count += 1
+    }
+
+    def copy(): XLogColumnBlock = {
+        val b = new XLogColumnBlock(count)
+        b.count = count
+        System.arraycopy(time, 0, b.time, 0, count)
+        System.arraycopy(objHash, 0, b.objHash, 0, count)
+        System.arraycopy(service, 0, b.service, 0, count)
+        System.arraycopy(elapsed, 0, b.elapsed, 0, count)
+        System.arraycopy(error, 0, b.error, 0, count)
+        System.arraycopy(ip, 0, b.ip, 0, count)
+        System.arraycopy(login, 0, b.login, 0, count)
+        System.arraycopy(desc, 0, b.desc, 0, count)
+        System.arraycopy(txid, 0, b.txid, 0, count)
+        System.arraycopy(dataPos, 0, b.dataPos, 0, count)
+        b
+    }
+
+    def minTime(): Long = {
+        var min = Long.MaxValue
+        for (i <- 0 until count) min = Math.min(min, time(i))
+        min
+    }
+
+    def maxTime(): Long = {
+        var max = Long.MinValue
+        for (i <- 0 until count) max = Math.max(max, time(i))
+        max
+    }
+
+    /**
+      * header(count, payload size, min time, max time) followed by the columns one after another
+      */
+    def toBytes(): Array[Byte] = {
+        val payload = count * XLogColumnStore.ROW_SIZE
+        val out = new DataOutputX(XLogColumnStore.HEADER_SIZE + payload)
+        out.writeInt(count)
+        out.writeInt(payload)
+        out.writeLong(minTime())
+        out.writeLong(maxTime())
+        for (i <- 0 until count) out.writeLong(time(i))
+        for (i <- 0 until count) out.writeInt(objHash(i))
+        for (i <- 0 until count) out.writeInt(service(i))
+        for (i <- 0 until count) out.writeInt(elapsed(i))
+        for (i <- 0 until count) out.writeInt(error(i))
+        for (i <- 0 until count) out.writeInt(ip(i))
+        for (i <- 0 until count) out.writeInt(login(i))
+        for (i <- 0 until count) out.writeInt(desc(i))
+        for (i <- 0 until count) out.writeLong(txid(i))
+        for (i <- 0 until count) out.writeLong(dataPos(i))
+        out.toByteArray()
+    }
+}
+
+object XLogColumnBlock {
+    def read(count: Int, payload: Array[Byte]): XLogColumnBlock = {
+        val b = new XLogColumnBlock(count)
+        b.count = count
+        var p = 0
+        for (i <- 0 until count) { b.time(i) = DataInputX.toLong(payload, p); p += 8 }
+        for (i <- 0 until count) { b.objHash(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.service(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.elapsed(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.error(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.ip(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.login(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.desc(i) = DataInputX.toInt(payload, p); p += 4 }
+        for (i <- 0 until count) { b.txid(i) = DataInputX.toLong(payload, p); p += 8 }
+        for (i <- 0 until count) { b.dataPos(i) = DataInputX.toLong(payload, p); p += 8 }
+        b
+    }
+}
+
+object XLogColumnStore {
+    val POSTFIX = ".col"
+    val BLOCK_ROWS = 1024
+    /** count(4) + payload size(4) + min time(8) + max time(8) */
+    val HEADER_SIZE = 24
+    /** time, txid, dataPos(8) + objHash, service, elapsed, error, ip, login, desc(4) */
+    val ROW_SIZE = 3 * 8 + 7 * 4
+
+    val table = new Hashtable[String, XLogColumnStore]()
+
+    def open(file: String): XLogColumnStore = {
+        table.synchronized {
+            var store = table.get(file)
+            if (store != null) {
+                store.reference += 1
+            } else {
+                store = new XLogColumnStore(file)
+                table.put(file, store)
+            }
+            return store
+        }
+    }
+
+    def exists(file: String): Boolean = {
+        new File(file + POSTFIX).exists()
+    }
+
+    /**
+      * a block of the column file, or the live block not written yet when live is not null.
+      * seq is the position of the block in the file, the live block has the seq it will be written with.
+      */
+    class BlockRef(val seq: Int, val offset: Long, val count: Int, val payload: Int,
+                   val minTime: Long, val maxTime: Long, val live: XLogColumnBlock)
+
+    /**
+      * blocks which may have rows in [stime, etime], including rows not yet written by the live store.
+      * the live block is taken before the file is read, so a block written in between is read from the file
+      * and the copy of it is dropped.
+      */
+    def blocks(file: String, stime: Long, etime: Long): Array[BlockRef] = {
+        val store = table.get(file)
+        var live = if (store != null) store.snapshot() else null
+        val refs = new ArrayBuffer[BlockRef]()
+        val f = new File(file + POSTFIX)
+        if (f.exists()) {
+            val in = new RandomAccessFile(f, "r")
+            try {
+                val length = in.length()
+                val header = new Array[Byte](HEADER_SIZE)
+                var pos = 0L
+                var seq = 0
+                var reading = true
+                while (reading && pos + HEADER_SIZE <= length) {
+                    in.seek(pos)
+                    in.readFully(header)
+                    val payload = DataInputX.toInt(header, 4)
+                    if (pos + HEADER_SIZE + payload > length) {
+                        reading = false
+                    } else {
+                        val minTime = DataInputX.toLong(header, 8)
+                        val maxTime = DataInputX.toLong(header, 16)
+                        if (maxTime >= stime && minTime <= etime) {
+                            refs += new BlockRef(seq, pos + HEADER_SIZE, DataInputX.toInt(header, 0), payload, minTime, maxTime, null)
+                        }
+                        if (live != null && live._1 == seq) {
+                            live = null
+                        }
+                        pos += HEADER_SIZE + payload
+                        seq += 1
+                    }
+                }
+            } finally {
+                FileUtil.close(in)
+            }
+        }
+        if (live != null) {
+            val b = live._2
+            if (b.maxTime() >= stime && b.minTime() <= etime) {
+                refs += new BlockRef(live._1, -1, b.count, 0, b.minTime(), b.maxTime(), b)
+            }
+        }
+        refs.toArray
+    }
+
+    def load(in: RandomAccessFile, ref: BlockRef): XLogColumnBlock = {
+        if (ref.live != null) {
+            return ref.live
+        }
+        val bytes = new Array[Byte](ref.payload)
+        in.seek(ref.offset)
+        in.readFully(bytes)
+        XLogColumnBlock.read(ref.count, bytes)
+    }
+
+    /**
+      * scan the blocks which may have rows in [stime, etime], including rows not yet written by the live store.
+      * rows out of the range are not filtered here.
+      */
+    def read(file: String, stime: Long, etime: Long, handler: XLogColumnBlock => Any) {
+        val refs = blocks(file, stime, etime)
+        var in: RandomAccessFile = null
+        try {
+            refs.foreach(ref => {
+                if (in == null && ref.live == null) {
+                    in = new RandomAccessFile(file + POSTFIX, "r")
+                }
+                handler(load(in, ref))
+            })
+        } finally {
+            FileUtil.close(in)
+        }
+    }
+
+    /**
+      * the (time, data position) of rows in [stime, etime] accepted by the filter, in time order.
+      * blocks are loaded only when they can have a row ahead of the rows already matched,
+      * so the scan reads no more blocks than it needs when the handler stops it by returning false.
+      */
+    def readRows(file: String, stime: Long, etime: Long, filter: (XLogColumnBlock, Int) => Boolean, handler: (Long, Long) => Boolean) {
+        val refs = blocks(file, stime, etime).sortBy(_.minTime)
+        if (refs.isEmpty)
+            return
+        val rows = new PriorityQueue[(Long, Long)](BLOCK_ROWS, new Comparator[(Long, Long)] {
+            override def compare(a: (Long, Long), b: (Long, Long)): Int = java.lang.Long.compare(a._1, b._1)
+        })
+        var in: RandomAccessFile = null
+        try {
+            var next = 0
+            while (true) {
+                while (next < refs.length && (rows.isEmpty() || refs(next).minTime <= rows.peek()._1)) {
+                    val ref = refs(next)
+                    if (in == null && ref.live == null) {
+                        in = new RandomAccessFile(file + POSTFIX, "r")
+                    }
+                    val block = load(in, ref)
+                    for (i <- 0 until block.count) {
+                        val time = block.time(i)
+                        if (time >= stime && time <= etime && filter(block, i)) {
+                            rows.add((time, block.dataPos(i)))
+                        }
+                    }
+                    next += 1
+                }
+                if (rows.isEmpty()) {
+                    return
+                }
+                val row = rows.poll()
+                if (handler(row._1, row._2) == false) {
+                    return
+                }
+            }
+        } finally {
+            FileUtil.close(in)
+        }
+    }
+}
+
+/**
+  * per day columnar companion of the xlog data file.
+  * keeps the fields used by search filters so they can be evaluated without loading and deserializing packs.
+  */
+class XLogColumnStore(file: String) extends IClose with IFlushable {
+    import XLogColumnStore._
+
+    var reference = 0
+    private val out = new RandomAccessFile(file + POSTFIX, "rw")
+    private var pending = new XLogColumnBlock(BLOCK_ROWS)
+    /** blocks in the file, the seq of the pending block */
+    private var blockSeq = 0
+
+    //cut off a block which was not completely written
+    out.setLength(validLength())
+    FlushCtr.getInstance().regist(this)
+
+    private def validLength(): Long = {
+        val length = out.length()
+        var pos = 0L
+        while (pos + HEADER_SIZE <= length) {
+            out.seek(pos + 4)
+            val next = pos + HEADER_SIZE + out.readInt()
+            if (next > length) {
+                return pos
+            }
+            pos = next
+            blockSeq += 1
+        }
+        pos
+    }
+
+    def add(p: XLogPack, dataPos: Long) {
+        this.synchronized {
+            pending.add(p, dataPos)
+            if (pending.isFull()) {
+                writePending()
+            }
+        }
+    }
+
+    private def writePending() {
+        if (pending.count == 0)
+            return
+        out.seek(out.length())
+        out.write(pending.toBytes())
+        blockSeq += 1
+        pending = new XLogColumnBlock(BLOCK_ROWS)
+    }
+
+    /**
+      * (seq, copy) of the block not written yet, null if it's empty
+      */
+    def snapshot(): (Int, XLogColumnBlock) = {
+        this.synchronized {
+            if (pending.count == 0) null else (blockSeq, pending.copy())
+        }
+    }
+
+    def flush() {
+        this.synchronized {
+            try {
+                writePending()
+            } catch {
+                case e: Exception => Logger.println("S228", 10, file + POSTFIX + " : " + e)
+            }
+        }
+    }
+
+    def isDirty(): Boolean = {
+        pending.count > 0
+    }
+
+    def interval(): Long = {
+        1000
+    }
+
+    override def close() {
+        table.synchronized {
+            if (this.reference == 0) {
+                table.remove(this.file)
+                FlushCtr.getInstance().unregist(this)
+                flush()
+                FileUtil.close(out)
+            } else {
+                this.reference -= 1
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Hashtable;
 import java.util.Properties;
 
+import scouter.io.DataOutputX;
 import scouter.server.Configure;
 import scouter.server.db.io.RealDataFile;
 import scouter.server.db.io.zip.GZipStore;
@@ -82,6 +83,42 @@ class XLogDataWriter(date: String, file: String) extends IClose {
         }
     }
 
+    /**
+      * append the records with one write without flushing. location(i) is set to the position of i-th record.
+      * @return bytes written
+      */
+    def writeBatch(records: java.util.List[Array[Byte]], location: Array[Long]): Int = {
+        if (gzip) {
+            var size = 0;
+            for (i <- 0 until records.size()) {
+                val bytes = records.get(i);
+                location(i) = GZipStore.getInstance().write(date, bytes);
+                size += bytes.length;
+            }
+            return size;
+        }
+        this.synchronized {
+            val buffer = new DataOutputX();
+            val base = out.getOffset();
+            for (i <- 0 until records.size()) {
+                val bytes = records.get(i);
+                location(i) = base + buffer.size();
+                buffer.writeShort(bytes.length.toShort);
+                buffer.write(bytes);
+            }
+            out.write(buffer.toByteArray());
+            return buffer.size();
+        }
+    }
+
+    def flush() {
+        if (gzip == false) {
+            this.synchronized {
+                out.flush();
+            }
+        }
+    }
+
     override def close() {
         XLogDataWriter.table.synchronized {
             if (this.reference == 0) {
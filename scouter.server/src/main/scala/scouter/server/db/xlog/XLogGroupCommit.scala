@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.db.xlog
+
+import java.util
+
+import scouter.util.ConcurrentRequestQueue
+
+/**
+  * batching of the xlog group commit, XLogWR writes what is collected here with one append.
+  */
+class XLogGroupCommit[T](queue: ConcurrentRequestQueue[T]) {
+
+    /**
+      * waits up to pollMs for a first item, then takes up to maxCount items and lingers up to maxWaitMs for more.
+      * @return the number of items added to the batch
+      */
+    def collect(batch: util.List[T], maxCount: Int, maxWaitMs: Long, pollMs: Long): Int = {
+        val first = queue.get(pollMs)
+        if (first == null) {
+            return 0
+        }
+        var count = 1
+        batch.add(first)
+        count += queue.drainTo(batch, maxCount - count)
+        val waitUntil = System.currentTimeMillis() + maxWaitMs
+        var remain = maxWaitMs
+        while (count < maxCount && remain > 0) {
+            val m = queue.get(remain)
+            if (m != null) {
+                batch.add(m)
+                count += 1
+                count += queue.drainTo(batch, maxCount - count)
+            }
+            remain = waitUntil - System.currentTimeMillis()
+        }
+        count
+    }
+
+    /**
+      * takes what is left in the queue without waiting, on shutdown.
+      */
+    def drain(batch: util.List[T], maxCount: Int): Int = {
+        queue.drainTo(batch, maxCount)
+    }
+}
+
+object XLogGroupCommit {
+    /**
+      * the written xlogs of a day are flushed and indexed after intervalMs or once maxUnflushedBytes are written.
+      */
+    def flushDue(force: Boolean, now: Long, lastFlush: Long, unflushedBytes: Long, intervalMs: Long, maxUnflushedBytes: Long): Boolean = {
+        force || now - lastFlush >= intervalMs || unflushedBytes >= maxUnflushedBytes
+    }
+}
@@ -18,6 +18,7 @@
 
 package scouter.server.db.xlog;
 
+import java.io.File
 import java.io.IOException
 import java.util.ArrayList
 import java.util.HashMap
@@ -28,7 +29,8 @@ import java.util.Map
 import java.util.Set
 
 import scouter.server.db.io.IndexKeyFile
-import scouter.server.db.io.IndexTimeFile
+import scouter.server.db.io.ITimeIndex
+import scouter.server.db.io.SortedTimeIndexFile
 import scouter.io.DataInputX
 import scouter.io.DataOutputX
 import scouter.server.Configure
@@ -36,6 +38,8 @@ import scouter.util.FileUtil
 import scouter.util.IClose
 import scouter.server.util.EnumerScala
 
+import scala.collection.mutable.ArrayBuffer
+
 object XLogIndex {
     val POSTFIX_TIME = "_tim";
     val POSTFIX_GID = "_gid";
@@ -56,6 +60,13 @@ object XLogIndex {
             }
         }
     }
+
+    /**
+      * true if xlogs were already indexed in the file
+      */
+    def exists(file: String): Boolean = {
+        new File(file + POSTFIX_TIME + ".kfile").exists() || SortedTimeIndexFile.exists(file + POSTFIX_TIME)
+    }
 }
 
 class XLogIndex(_file: String) extends IClose {
@@ -65,7 +76,7 @@ class XLogIndex(_file: String) extends IClose {
     var refrence = 0
     var txidIndex: IndexKeyFile = null
     var gxidIndex: IndexKeyFile = null
-    var timeIndex: IndexTimeFile = null
+    var timeIndex: ITimeIndex = null
 
     def setByTxid(txid: Long, pos: Long) {
         if (this.txidIndex == null) {
@@ -85,11 +96,44 @@ class XLogIndex(_file: String) extends IClose {
 
     def setByTime(time: Long, pos: Long) {
         if (this.timeIndex == null) {
-            this.timeIndex = new IndexTimeFile(file + XLogIndex.POSTFIX_TIME);
+            this.timeIndex = SortedTimeIndexFile.open(file + XLogIndex.POSTFIX_TIME, Configure.getInstance().xlog_time_index_sorted_enabled);
         }
         this.timeIndex.put(time, DataOutputX.toBytes5(pos));
     }
 
+    /**
+      * index a batch of xlogs, pos(i) is the data location of i-th xlog.
+      */
+    def setBatch(count: Int, time: Array[Long], txid: Array[Long], gxid: Array[Long], pos: Array[Long]) {
+        if (count == 0)
+            return ;
+        if (this.timeIndex == null) {
+            this.timeIndex = SortedTimeIndexFile.open(file + XLogIndex.POSTFIX_TIME, Configure.getInstance().xlog_time_index_sorted_enabled);
+        }
+        if (this.txidIndex == null) {
+            this.txidIndex = new IndexKeyFile(file + XLogIndex.POSTFIX_TID, ID_INDEX_MB);
+        }
+        val timeEntries = new ArrayBuffer[(Long, Array[Byte])](count);
+        val txidEntries = new ArrayBuffer[(Array[Byte], Array[Byte])](count);
+        val gxidEntries = new ArrayBuffer[(Array[Byte], Array[Byte])]();
+        for (i <- 0 until count) {
+            val location = DataOutputX.toBytes5(pos(i));
+            timeEntries += ((time(i), location));
+            txidEntries += ((DataOutputX.toBytes(txid(i)), location));
+            if (gxid(i) != 0) {
+                gxidEntries += ((DataOutputX.toBytes(gxid(i)), location));
+            }
+        }
+        this.timeIndex.putBatch(timeEntries);
+        this.txidIndex.putBatch(txidEntries);
+        if (gxidEntries.nonEmpty) {
+            if (this.gxidIndex == null) {
+                this.gxidIndex = new IndexKeyFile(file + XLogIndex.POSTFIX_GID, ID_INDEX_MB);
+            }
+            this.gxidIndex.putBatch(gxidEntries);
+        }
+    }
+
     def getByTxid(txid: Long): Long = {
         if (this.txidIndex == null) {
             this.txidIndex = new IndexKeyFile(file + XLogIndex.POSTFIX_TID);
@@ -24,6 +24,8 @@ import java.io.RandomAccessFile;
 import java.util.Hashtable;
 import java.util.Properties;
 
+import scouter.lang.step.ProfileCodec;
+import scouter.lang.step.ProfileDictionary;
 import scouter.server.Configure;
 import scouter.server.db.io.zip.GZipStore;
 import scouter.util.FileUtil;
@@ -53,11 +55,14 @@ class XLogProfileDataReader(date: String, file: String) extends  IClose {
 
     private var profileFile: RandomAccessFile = null
     private var gzip = conf.compress_profile_enabled
+    private var codec = false
+    private var dict: ProfileDictionary = null
 
     val confFile = new File(file + ".profile.conf");
     if (confFile.exists()) {
         val properties = FileUtil.readProperties(confFile);
         this.gzip = "true".equalsIgnoreCase(properties.getProperty("compress_profile_enabled", ""+conf.compress_profile_enabled).trim());
+        this.codec = "true".equalsIgnoreCase(properties.getProperty("profile_codec_enabled", "false").trim());
     }
 
     val profile = new File(file + ".profile");
@@ -66,6 +71,37 @@ class XLogProfileDataReader(date: String, file: String) extends  IClose {
     }
 
     def read(pos: Long): Array[Byte] = {
+        val block = readBlock(pos);
+        if (this.codec == false || block == null) {
+            return block;
+        }
+        return decode(block);
+    }
+
+    /**
+     * the dictionary file grows while the day is being written,
+     * so it is loaded again when a block refers to an id not loaded yet.
+     */
+    private def decode(block: Array[Byte]): Array[Byte] = {
+        val loaded = dictionary(false);
+        try {
+            return ProfileCodec.decode(block, loaded);
+        } catch {
+            case e: IllegalArgumentException =>
+                return ProfileCodec.decode(block, dictionary(true));
+        }
+    }
+
+    private def dictionary(reload: Boolean): ProfileDictionary = {
+        this.synchronized {
+            if (dict == null || reload) {
+                dict = XLogProfileDataWriter.loadDictionary(new File(file + ".profile.dict"));
+            }
+            return dict;
+        }
+    }
+
+    private def readBlock(pos: Long): Array[Byte] = {
         if (this.gzip) {
             return GZipStore.getInstance().read(date, pos);
         }
@@ -18,12 +18,19 @@
 
 package scouter.server.db.xlog;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Hashtable;
 import java.util.Properties;
 
+import scouter.lang.step.ProfileCodec;
+import scouter.lang.step.ProfileDictionary;
 import scouter.server.Configure;
+import scouter.server.Logger;
 import scouter.server.db.io.RealDataFile;
 import scouter.server.db.io.zip.GZipStore;
 import scouter.util.FileUtil;
@@ -44,6 +51,25 @@ object XLogProfileDataWriter {
             return writer;
         }
     }
+
+    /**
+     * reads the hashes of the daily profile dictionary in id order.
+     * a partly written last entry is ignored.
+     */
+    def loadDictionary(file: File): ProfileDictionary = {
+        val dict = new ProfileDictionary();
+        if (file.canRead() == false)
+            return dict;
+        val bytes = FileUtil.readAll(file);
+        if (bytes == null)
+            return dict;
+        var i = 0;
+        while (i + 4 <= bytes.length) {
+            dict.add(((bytes(i) & 0xff) << 24) | ((bytes(i + 1) & 0xff) << 16) | ((bytes(i + 2) & 0xff) << 8) | (bytes(i + 3) & 0xff));
+            i += 4;
+        }
+        return dict;
+    }
 }
 
 class XLogProfileDataWriter(date: String, file: String) extends IClose {
@@ -52,15 +78,19 @@ class XLogProfileDataWriter(date: String, file: String) extends IClose {
     val conf = Configure.getInstance();
 
     var gzip = conf.compress_profile_enabled
+    var codec = conf.profile_codec_enabled
 
     val f = new File(file + ".profile.conf");
     if (f.exists()) {
         val properties = FileUtil.readProperties(f);
         gzip = "true".equalsIgnoreCase(properties.getProperty("compress_profile_enabled", "" + conf.compress_profile_enabled).trim());
+        codec = "true".equalsIgnoreCase(properties.getProperty("profile_codec_enabled", "false").trim());
     } else {
         gzip = conf.compress_profile_enabled;
+        codec = conf.profile_codec_enabled;
         val properties = new Properties();
         properties.put("compress_profile_enabled", "" + conf.compress_profile_enabled);
+        properties.put("profile_codec_enabled", "" + conf.profile_codec_enabled);
         FileUtil.writeProperties(f, properties);
     }
     var out: RealDataFile = null;
@@ -68,10 +98,60 @@ class XLogProfileDataWriter(date: String, file: String) extends IClose {
         out = new RealDataFile(file + ".profile");
     }
 
+    private var dict: ProfileDictionary = null;
+    private var dictOut: DataOutputStream = null;
+    if (codec) {
+        val dictFile = new File(file + ".profile.dict");
+        if (dictFile.length() % 4 != 0) {
+            val raf = new RandomAccessFile(dictFile, "rw");
+            raf.setLength(dictFile.length() / 4 * 4);
+            raf.close();
+        }
+        dict = XLogProfileDataWriter.loadDictionary(dictFile);
+        dictOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dictFile, true)));
+    }
+
     def write(bytes: Any): Long = {
         return write(bytes.asInstanceOf[Array[Byte]]);
     }
     def write(bytes: Array[Byte]): Long = {
+        if (codec) {
+            return writeBlock(encode(bytes));
+        }
+        return writeBlock(bytes);
+    }
+
+    /**
+     * the hashes new to the dictionary are saved before the block,
+     * so every block on the disk can be decoded with the dictionary file.
+     */
+    private def encode(bytes: Array[Byte]): Array[Byte] = {
+        dict.synchronized {
+            if (dictOut == null) {
+                return ProfileCodec.raw(bytes);
+            }
+            val saved = dict.getSize();
+            val block = ProfileCodec.encode(bytes, dict);
+            if (dict.getSize() > saved) {
+                try {
+                    val hashes = dict.getHashes(saved);
+                    for (h <- hashes) {
+                        dictOut.writeInt(h);
+                    }
+                    dictOut.flush();
+                } catch {
+                    case e: IOException =>
+                        Logger.println("S239", 10, "profile dictionary write error " + file + ".profile.dict", e);
+                        FileUtil.close(dictOut);
+                        dictOut = null;
+                        return ProfileCodec.raw(bytes);
+                }
+            }
+            return block;
+        }
+    }
+
+    private def writeBlock(bytes: Array[Byte]): Long = {
         if (gzip) {
             return GZipStore.getInstance().write(date, bytes);
         }
@@ -89,6 +169,7 @@ class XLogProfileDataWriter(date: String, file: String) extends IClose {
             if (this.refrence == 0) {
                 XLogProfileDataWriter.table.remove(this.file);
                 FileUtil.close(out)
+                FileUtil.close(dictOut)
             } else {
                 this.refrence -= 1;
             }
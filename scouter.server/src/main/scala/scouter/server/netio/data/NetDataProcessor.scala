@@ -18,6 +18,7 @@
 package scouter.server.netio.data
 import java.io.IOException
 import java.net.InetAddress
+import java.nio.ByteBuffer
 
 import scouter.io.{DataInputX, DataOutputX}
 import scouter.lang.{TextTypes, TimeTypeEnum}
@@ -28,13 +29,17 @@ import scouter.server.Configure
 import scouter.server.Logger
 import scouter.server.core._
 import scouter.server.core.cache.TextCache
+import scouter.server.netio.data.net.DataUdpChannelServer
 import scouter.server.util.ThreadScala
-import scouter.util.{BytesUtil, HashUtil, RequestQueue, StringUtil}
+import scouter.util.{BytesUtil, ConcurrentRequestQueue, HashUtil, StringUtil}
 import scouter.lang.value.DecimalValue
 object NetDataProcessor {
-    class NetData(_data: Array[Byte], _addr: InetAddress) {
+    class NetData(_data: Array[Byte], _addr: InetAddress, _offset: Int = 0, _buffer: ByteBuffer = null) {
         val addr = _addr
         val data = _data
+        val offset = _offset
+        /** pooled receive buffer which holds the data, returned after the data is processed */
+        val buffer = _buffer
     }
     var working = true
     val num = Configure.getInstance()._net_udp_worker_thread_count
@@ -50,14 +55,27 @@ object NetDataProcessor {
             }
         }
     }
-    val queue = new RequestQueue[NetData](2048)
+    val queue = new ConcurrentRequestQueue[NetData](2048)
     val conf = Configure.getInstance()
 
-    def add(data: Array[Byte], addr: InetAddress) {
+    def add(data: Array[Byte], addr: InetAddress): Boolean = {
         val ok = queue.putNotifySingle(new NetData(data, addr))
         if (ok == false) {
             Logger.println("S158", 10, "overflow recv queue!!")
         }
+        ok
+    }
+
+    /**
+      * queue a datagram received in a pooled buffer. it is decoded in place and the buffer is released after that.
+      * @return false if the queue is full. the caller keeps the buffer.
+      */
+    def add(buffer: ByteBuffer, addr: InetAddress): Boolean = {
+        val ok = queue.putNotifySingle(new NetData(buffer.array(), addr, buffer.arrayOffset(), buffer))
+        if (ok == false) {
+            Logger.println("S158", 10, "overflow recv queue!!")
+        }
+        ok
     }
 
     @throws[IOException]
@@ -70,7 +88,7 @@ object NetDataProcessor {
 
     def process(p: NetData) {
         try {
-            val in = new DataInputX(p.data)
+            val in = new DataInputX(p.data, p.offset)
             val cafe = in.readInt()
             cafe match {
                 case NetCafe.UDP_CAFE => processCafe(in, p.addr)
@@ -80,12 +98,17 @@ object NetDataProcessor {
                 case NetCafe.UDP_JAVA_N => processCafeN(in, p.addr)
                 case NetCafe.UDP_JAVA_MTU => processCafeMTU(in, p.addr)
                 case _ =>
-                    System.out.println("Receive unknown data, length=" + BytesUtil.getLength(p.data) + " from " + p.addr)
+                    val length = if (p.buffer != null) p.buffer.limit() else BytesUtil.getLength(p.data)
+                    System.out.println("Receive unknown data, length=" + length + " from " + p.addr)
             }
         } catch {
             case e: Throwable =>
                 Logger.println("S159", 10, "invalid data ", e)
                 e.printStackTrace()
+        } finally {
+            if (p.buffer != null) {
+                DataUdpChannelServer.release(p.buffer)
+            }
         }
     }
     private def processCafeMTU(in: DataInputX, addr: InetAddress) {
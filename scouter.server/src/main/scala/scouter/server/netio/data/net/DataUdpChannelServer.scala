@@ -0,0 +1,205 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.netio.data.net
+
+import java.net.{InetAddress, InetSocketAddress, SocketOption, StandardSocketOptions}
+import java.nio.ByteBuffer
+import java.nio.channels.DatagramChannel
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+import scouter.server.core.ServerStat
+import scouter.server.netio.data.NetDataProcessor
+import scouter.server.util.ThreadScala
+import scouter.server.{Configure, Logger}
+import scouter.util.{ConcurrentRequestQueue, ThreadUtil}
+
+/**
+  * udp receiver on DatagramChannels.
+  * net_udp_nio_socket_count channels are bound to the same port with SO_REUSEPORT so the kernel spreads datagrams
+  * over them, and each channel has its own receive thread.
+  * datagrams are received into pooled buffers which are queued as they are and decoded in place by NetDataProcessor.
+  * when the pool is exhausted a datagram is copied out of the receiver's own buffer as DataUdpServer does.
+  */
+object DataUdpChannelServer {
+
+    class Receiver(val id: Int) {
+        val recv = new AtomicLong()
+        val drop = new AtomicLong()
+    }
+
+    /**
+      * receive buffers, allocated lazily up to maxBuffers and reused after release.
+      */
+    class BufferPool(val bufferSize: Int, val maxBuffers: Int) {
+        private val pool = new ConcurrentRequestQueue[ByteBuffer](maxBuffers)
+        val allocated = new AtomicInteger()
+
+        /**
+          * @return null if all the buffers are in use
+          */
+        def take(): ByteBuffer = {
+            val buffer = pool.getNoWait()
+            if (buffer != null) {
+                return buffer
+            }
+            if (allocated.incrementAndGet() <= maxBuffers) {
+                return ByteBuffer.allocate(bufferSize)
+            }
+            allocated.decrementAndGet()
+            null
+        }
+
+        def release(buffer: ByteBuffer) {
+            buffer.clear()
+            pool.put(buffer)
+        }
+
+        def size(): Int = pool.size()
+    }
+
+    val conf = Configure.getInstance()
+    val bufferSize = conf.net_udp_packet_buffer_size
+    val pool = new BufferPool(bufferSize, Math.max(1, conf.net_udp_nio_buffer_pool_count))
+    var receivers: Array[Receiver] = new Array[Receiver](0)
+
+    def start() {
+        val reusePort = reusePortOption()
+        var count = Math.max(1, conf.net_udp_nio_socket_count)
+        if (count > 1 && reusePort == null) {
+            Logger.println("S231", "SO_REUSEPORT is not supported, single udp channel is used")
+            count = 1
+        }
+        Logger.println("udp(nio) listen " + conf.net_udp_listen_ip + ":" + conf.net_udp_listen_port)
+        Logger.println("\tudp_channels=" + count)
+        Logger.println("\tudp_buffer=" + bufferSize)
+        Logger.println("\tudp_buffer_pool=" + pool.maxBuffers)
+        Logger.println("\tudp_so_rcvbuf=" + conf.net_udp_so_rcvbuf_size)
+
+        receivers = (0 until count).map(new Receiver(_)).toArray
+        receivers.foreach(r => {
+            ThreadScala.startDaemon("scouter.server.netio.data.net.DataUdpChannelServer-" + r.id) {
+                while (true) {
+                    val channel = open(conf.net_udp_listen_ip, conf.net_udp_listen_port, if (count > 1) reusePort else null)
+                    recv(r, channel, pool, NetDataProcessor.add, NetDataProcessor.add)
+                    close(channel)
+                }
+            }
+        })
+        ThreadScala.startDaemon("scouter.server.netio.data.net.DataUdpChannelStat", true, 5000) {
+            receivers.foreach(r => {
+                ServerStat.put("udp." + r.id + ".recv", r.recv.get())
+                ServerStat.put("udp." + r.id + ".drop", r.drop.get())
+            })
+            ServerStat.put("udp.buffer.pool", pool.size())
+            ServerStat.put("udp.buffer.allocated", pool.allocated.get())
+        }
+    }
+
+    private[net] def reusePortOption(): SocketOption[java.lang.Boolean] = {
+        try {
+            //StandardSocketOptions.SO_REUSEPORT is from java 9
+            val option = classOf[StandardSocketOptions].getField("SO_REUSEPORT").get(null).asInstanceOf[SocketOption[java.lang.Boolean]]
+            val probe = DatagramChannel.open()
+            try {
+                if (probe.supportedOptions().contains(option)) option else null
+            } finally {
+                close(probe)
+            }
+        } catch {
+            case e: Throwable => null
+        }
+    }
+
+    private def close(channel: DatagramChannel) {
+        try {
+            if (channel != null) {
+                channel.close()
+            }
+        } catch {
+            case e: Throwable =>
+        }
+    }
+
+    def release(buffer: ByteBuffer) {
+        pool.release(buffer)
+    }
+
+    /**
+      * receive datagrams until the channel fails or is closed.
+      * a datagram in a pooled buffer is passed to addBuffer which owns the buffer unless it returns false,
+      * otherwise it is copied out to addData.
+      */
+    private[net] def recv(r: Receiver, channel: DatagramChannel, pool: BufferPool,
+                          addBuffer: (ByteBuffer, InetAddress) => Boolean, addData: (Array[Byte], InetAddress) => Boolean) {
+        try {
+            val own = ByteBuffer.allocate(pool.bufferSize)
+            // loop until any exception
+            while (true) {
+                var buffer = pool.take()
+                val pooled = buffer != null
+                if (!pooled) {
+                    buffer = own
+                    buffer.clear()
+                }
+                val addr = channel.receive(buffer).asInstanceOf[InetSocketAddress].getAddress()
+                buffer.flip()
+                r.recv.incrementAndGet()
+                if (pooled) {
+                    if (addBuffer(buffer, addr) == false) {
+                        r.drop.incrementAndGet()
+                        pool.release(buffer)
+                    }
+                } else {
+                    val data = new Array[Byte](buffer.limit())
+                    buffer.get(data)
+                    if (addData(data, addr) == false) {
+                        r.drop.incrementAndGet()
+                    }
+                }
+            }
+        } catch {
+            case t: Throwable =>
+                Logger.println("S151", 10, t)
+        }
+    }
+
+    private[net] def open(host: String, port: Int, reusePort: SocketOption[java.lang.Boolean]): DatagramChannel = {
+        while (true) {
+            var channel: DatagramChannel = null
+            try {
+                channel = DatagramChannel.open()
+                if (reusePort != null) {
+                    channel.setOption(reusePort, java.lang.Boolean.TRUE)
+                }
+                val buf = conf.net_udp_so_rcvbuf_size
+                if (buf > 0) {
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, Integer.valueOf(buf))
+                }
+                channel.bind(new InetSocketAddress(InetAddress.getByName(host), port))
+                return channel
+            } catch {
+                case e: Exception =>
+                    close(channel)
+                    Logger.println("S157", 1, "udp data server port=" + port, e)
+            }
+            ThreadUtil.sleep(3000)
+        }
+        null
+    }
+}
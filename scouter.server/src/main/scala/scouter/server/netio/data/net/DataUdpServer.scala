@@ -32,11 +32,15 @@ object DataUdpServer {
 
     val conf = Configure.getInstance();
     var udpsocket: DatagramSocket = null;
-    ThreadScala.startDaemon("scouter.server.netio.data.net.DataUdpServer") {
-        while (true) {
-            open(conf.net_udp_listen_ip, conf.net_udp_listen_port);
-            recv();
-            FileUtil.close(udpsocket)
+    if (conf.net_udp_nio_enabled) {
+        DataUdpChannelServer.start()
+    } else {
+        ThreadScala.startDaemon("scouter.server.netio.data.net.DataUdpServer") {
+            while (true) {
+                open(conf.net_udp_listen_ip, conf.net_udp_listen_port);
+                recv();
+                FileUtil.close(udpsocket)
+            }
         }
     }
 
@@ -22,12 +22,13 @@ import scouter.io.{DataInputX, DataOutputX}
 import scouter.lang.{CounterKey, TimeTypeEnum}
 import scouter.lang.counters.CounterConstants
 import scouter.lang.pack.MapPack
-import scouter.lang.value.{DoubleValue, MapValue, Value}
+import scouter.lang.value.{DoubleValue, ListValue, MapValue, Value}
 import scouter.net.{RequestCmd, TcpFlag}
 import scouter.server.core.AgentManager
 import scouter.server.core.AgentManager.objMap
 import scouter.server.core.cache.CounterCache
-import scouter.server.db.{ObjectRD, RealtimeCounterRD}
+import scouter.server.db.{ObjectRD, RealtimeCounterRD, RollupCounterRD}
+import scouter.server.db.counter.RollupBucket
 import scouter.server.netio.service.anotation.ServiceHandler
 import scouter.server.util.TimedSeries
 import scouter.util.{CastUtil, DateUtil, IntKeyMap, StringUtil}
@@ -236,15 +237,18 @@ class CounterService {
         val date = DateUtil.yyyymmdd(stime);
         val objName = getObjName(date, objHash);
 
-        val handler = (time: Long, data: MapValue) => {
-            val value = data.get(counter);
-            if (value != null) {
-                timeLv.add(time);
-                valueLv.add(value);
-            }
+        val handler = (time: Long, value: Value) => {
+            timeLv.add(time);
+            valueLv.add(value);
         }
 
-        RealtimeCounterRD.read(objName, date, stime, etime, handler)
+        val rollupType = getRollupTimeType(date, stime, etime)
+        if (rollupType != TimeTypeEnum.REALTIME) {
+            val stat = param.getText("stat")
+            RollupCounterRD.read(objHash, counter, rollupType, stime, etime, (time: Long, b: RollupBucket) => handler(time, b.get(stat)))
+        } else {
+            RealtimeCounterRD.readCounter(objName, counter, date, stime, etime, handler)
+        }
 
         dout.writeByte(TcpFlag.HasNEXT);
         dout.writePack(mpack);
@@ -302,7 +306,14 @@ class CounterService {
         }
 
 //        val start = System.currentTimeMillis()
-        RealtimeCounterRD.readBulk(date, stime, etime, handler)
+        val rollupType = getRollupTimeType(date, stime, etime)
+        if (rollupType != TimeTypeEnum.REALTIME) {
+            readRollups(objHashLv, counter, rollupType, stime, etime, param.getText("stat"), mapPackMap)
+        } else if (RealtimeCounterRD.hasSeries(date)) {
+            readSeries(objHashLv, counter, date, stime, etime, mapPackMap)
+        } else {
+            RealtimeCounterRD.readBulk(date, stime, etime, handler)
+        }
 //        val end = System.currentTimeMillis()
 //        println("[elapsed]" + (end-start))
 
@@ -346,6 +357,44 @@ class CounterService {
 
     }
 
+    /**
+      * read a counter of each object from the series store instead of scanning the counter maps of all objects.
+      */
+    private def readSeries(objHashLv: ListValue, counter: String, date: String, stime: Long, etime: Long, mapPackMap: IntKeyMap[MapPack]) {
+        for (i <- 0 to objHashLv.size() - 1) {
+            val objHash = objHashLv.getInt(i)
+            val mapPack = mapPackMap.get(objHash)
+            val timeLv = mapPack.getList("time")
+            val valueLv = mapPack.getList("value")
+            RealtimeCounterRD.readCounter(getObjName(date, objHash), counter, date, stime, etime, (time: Long, value: Value) => {
+                timeLv.add(time)
+                valueLv.add(value)
+            })
+        }
+    }
+
+    /**
+      * rollup time type for a range too long to draw realtime counters.
+      * REALTIME if the range is short or the rollups of the day do not cover the start of the range.
+      */
+    private def getRollupTimeType(date: String, stime: Long, etime: Long): Byte = {
+        val timetype = RollupCounterRD.getTimeType(stime, etime)
+        if (timetype == TimeTypeEnum.REALTIME || RollupCounterRD.getCoveredFrom(date, timetype) > stime) TimeTypeEnum.REALTIME else timetype
+    }
+
+    private def readRollups(objHashLv: ListValue, counter: String, timetype: Byte, stime: Long, etime: Long, stat: String, mapPackMap: IntKeyMap[MapPack]) {
+        for (i <- 0 to objHashLv.size() - 1) {
+            val objHash = objHashLv.getInt(i)
+            val mapPack = mapPackMap.get(objHash)
+            val timeLv = mapPack.getList("time")
+            val valueLv = mapPack.getList("value")
+            RollupCounterRD.read(objHash, counter, timetype, stime, etime, (time: Long, b: RollupBucket) => {
+                timeLv.add(time)
+                valueLv.add(b.get(stat))
+            })
+        }
+    }
+
     def getObjName(date: String, objHash: Int): String = {
         return ObjectRD.getObjName(date, objHash);
     }
@@ -375,15 +424,12 @@ class CounterService {
             val objHash = objHashLv.getInt(i);
             val objName = getObjName(date, objHash);
             /////////////////RealtimeCounterRD////////////////////////
-            val handler = (time: Long, data: MapValue) => {
-                val value = data.get(counter);
-                if (value != null) {
-                    series.add(objHash, time, CastUtil.cdouble(value));
-                }
+            val handler = (time: Long, value: Value) => {
+                series.add(objHash, time, CastUtil.cdouble(value));
                 true
             }
 
-            RealtimeCounterRD.read(objName, date, stime, etime, handler)
+            RealtimeCounterRD.readCounter(objName, counter, date, stime, etime, handler)
         }
         series.addEnd();
 
@@ -452,7 +498,14 @@ class CounterService {
             }
         }
 
-        RealtimeCounterRD.readBulk(date, stime, etime, handler)
+        val rollupType = getRollupTimeType(date, stime, etime)
+        if (rollupType != TimeTypeEnum.REALTIME) {
+            readRollups(objHashLv, counter, rollupType, stime, etime, param.getText("stat"), mapPackMap)
+        } else if (RealtimeCounterRD.hasSeries(date)) {
+            readSeries(objHashLv, counter, date, stime, etime, mapPackMap)
+        } else {
+            RealtimeCounterRD.readBulk(date, stime, etime, handler)
+        }
 
         for (i <- 0 to objHashLv.size() - 1) {
             dout.writeByte(TcpFlag.HasNEXT);
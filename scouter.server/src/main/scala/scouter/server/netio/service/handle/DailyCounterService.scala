@@ -32,6 +32,7 @@ import scouter.net.RequestCmd
 import scouter.net.TcpFlag
 import scouter.server.core.AgentManager
 import scouter.server.db.DailyCounterRD
+import scouter.server.db.RollupCounterRD
 import scouter.server.netio.service.anotation.ServiceHandler
 import scouter.util.CastUtil
 import scouter.util.DateUtil
@@ -50,7 +51,7 @@ class DailyCounterService {
         val stime = DateUtil.yyyymmdd(date);
 
         val ck = new CounterKey(objHash, counter, timetype);
-        val v = DailyCounterRD.getValues(date, ck);
+        val v = getValues(date, ck, param.getText("stat"));
 
         val mpack = new MapPack();
         val timeLv = mpack.newList("time");
@@ -91,7 +92,7 @@ class DailyCounterService {
             val objHash = objHashLv.getInt(i);
           try {
             val ck = new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN);
-            val v = DailyCounterRD.getValues(date, ck);
+            val v = getValues(date, ck, param.getText("stat"));
             if (v != null) {
                 val mpack = new MapPack();
                 mpack.put("objHash", objHash);
@@ -145,7 +146,7 @@ class DailyCounterService {
             val objHash = objHashLv.getInt(i);
             try {
               val ck = new CounterKey(objHash, counter, period);
-              val v = DailyCounterRD.getValues(date, ck);
+              val v = getValues(date, ck, inout.getText("stat"));
               for (j <- 0 to ArrayUtil.len(v) - 1) {
                   val value = v(j);
                   var doubleValue = if (value == null) 0.0 else CastUtil.cdouble(value);
@@ -201,7 +202,7 @@ class DailyCounterService {
         for (i <- 0 to ArrayUtil.len(objHashLv) - 1) {
             val objHash = objHashLv.getInt(i);
             val ckey = new CounterKey(objHash, counter, period);
-            val outvalue = DailyCounterRD.getValues(date, ckey);
+            val outvalue = getValues(date, ckey, param.getText("stat"));
             for (j <- 0 to ArrayUtil.len(outvalue) - 1) {
                 val value = outvalue(j);
                 if (value != null) {
@@ -252,7 +253,7 @@ class DailyCounterService {
             val timeLv = mpack.newList("time");
             val valueLv = mpack.newList("value");
 
-            val v = DailyCounterRD.getValues(date, new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN));
+            val v = getValues(date, new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN), param.getText("stat"));
 
             for (j <- 0 to ArrayUtil.len(v) - 1) {
                 val time = stime + DateUtil.MILLIS_PER_MINUTE * 5 * j;
@@ -286,6 +287,9 @@ class DailyCounterService {
         var stime = DateUtil.yyyymmdd(sDate);
         var etime = DateUtil.yyyymmdd(eDate) + DateUtil.MILLIS_PER_DAY;
 
+        //hourly rollups for a long range
+        val timetype = if (RollupCounterRD.getTimeType(stime, etime) == TimeTypeEnum.HOUR) TimeTypeEnum.HOUR else TimeTypeEnum.FIVE_MIN
+
         var date = stime;
         while (date <= (etime - DateUtil.MILLIS_PER_DAY)) {
             val d = DateUtil.yyyymmdd(date);
@@ -297,10 +301,15 @@ class DailyCounterService {
                   val timeLv = mpack.newList("time");
                   val valueLv = mpack.newList("value");
   
-                  val v = DailyCounterRD.getValues(d, new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN));
+                  var v = getValues(d, new CounterKey(objHash, counter, timetype), param.getText("stat"));
+                  var delta = TimeTypeEnum.getTime(timetype).toLong;
+                  if (v == null && timetype != TimeTypeEnum.FIVE_MIN) {
+                      v = getValues(d, new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN), param.getText("stat"));
+                      delta = DateUtil.MILLIS_PER_FIVE_MINUTE;
+                  }
   
                   for (j <- 0 to ArrayUtil.len(v) - 1) {
-                      val time = date + DateUtil.MILLIS_PER_MINUTE * 5 * j;
+                      val time = date + delta * j;
                       timeLv.add(time);
                       valueLv.add(v(j));
                   }
@@ -356,7 +365,7 @@ class DailyCounterService {
                 val objHash = objHashLv.getInt(i);
                 try {
                   val ckey = new CounterKey(objHash, counter, period);
-                  val outvalue = DailyCounterRD.getValues(d, ckey);
+                  val outvalue = getValues(d, ckey, param.getText("stat"));
                   for (j <- 0 to ArrayUtil.len(outvalue) - 1) {
                       val value = outvalue(j);
                       var doubleValue = CastUtil.cdouble(value);
@@ -411,7 +420,7 @@ class DailyCounterService {
         val valueLv = mpack.newList("value");
 
         val ckey = new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN);
-        val outvalue = DailyCounterRD.getValues(date, ckey)
+        val outvalue = getValues(date, ckey, param.getText("stat"))
         if (outvalue == null)
             return ;
 
@@ -476,7 +485,7 @@ class DailyCounterService {
             mpack.put("objHash", objHash);
             val timeLv = mpack.newList("time");
             val valueLv = mpack.newList("value");
-            val v = DailyCounterRD.getValues(date, key);
+            val v = getValues(date, key, param.getText("stat"));
             for (j <- 0 to ArrayUtil.len(v) - 1) {
                 val time = stime + DateUtil.MILLIS_PER_MINUTE * 5 * j;
                 val value = v(j);
@@ -503,7 +512,7 @@ class DailyCounterService {
             
             try {
               val ck = new CounterKey(objHash, counter, TimeTypeEnum.FIVE_MIN);
-              val v = DailyCounterRD.getValues(date, ck);
+              val v = getValues(date, ck, param.getText("stat"));
   
               val mpack = new MapPack();
               mpack.put("objHash", objHash);
@@ -549,7 +558,7 @@ class DailyCounterService {
               while (lastDay.equals(date) == false) {
                   date = DateUtil.yyyymmdd(time);
                   val oclock = DateUtil.yyyymmdd(date);
-                  val v = DailyCounterRD.getValues(date, key);
+                  val v = getValues(date, key, param.getText("stat"));
                   if (v == null) {
                       for (j <- 0 to 287) {
                           timeLv.add(oclock + DateUtil.MILLIS_PER_FIVE_MINUTE * j);
@@ -574,4 +583,31 @@ class DailyCounterService {
             }
         }
     }
+
+    /**
+      * values of a day. the rollup of realtime counters if the day has it, otherwise the values written by DailyCounterWR.
+      * the buckets before the rollups started in the day are taken from the values written by DailyCounterWR.
+      * @param stat min, max, sum, count, last or avg(default) of a rollup
+      */
+    private def getValues(date: String, key: CounterKey, stat: String): Array[Value] = {
+        val v = RollupCounterRD.getValues(date, key, stat)
+        if (v == null)
+            return DailyCounterRD.getValues(date, key)
+        val dayStart = DateUtil.yyyymmdd(date)
+        val coveredFrom = RollupCounterRD.getCoveredFrom(date, key.timetype)
+        if (coveredFrom <= dayStart)
+            return v
+        val daily = DailyCounterRD.getValues(date, key)
+        if (daily == null || daily.length != v.length) {
+            //DailyCounterWR writes only five minutes values, a partial rollup of another time type is not used like a day without it
+            return if (key.timetype == TimeTypeEnum.FIVE_MIN) v else null
+        }
+        val delta = TimeTypeEnum.getTime(key.timetype)
+        for (i <- 0 until v.length) {
+            if (dayStart + delta * i < coveredFrom && daily(i) != null && daily(i).isInstanceOf[NullValue] == false) {
+                v(i) = daily(i)
+            }
+        }
+        v
+    }
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *
+ */
+
+package scouter.server.netio.service.handle
+
+import scouter.io.{DataInputX, DataOutputX}
+import scouter.lang.pack.MapPack
+import scouter.net.{RequestCmd, TcpFlag}
+import scouter.server.core.LatencySketch
+import scouter.server.db.LatencySketchRD
+import scouter.server.netio.service.anotation.ServiceHandler
+import scouter.util.{DateUtil, HashUtil, LogLinearHistogram}
+
+class LatencySketchService {
+
+    /**
+      * percentiles of a service over all objects of an object type.
+      * the minute histograms are merged into buckets of the interval(minutes, default 1) and over the whole range.
+      */
+    @ServiceHandler(RequestCmd.SERVICE_LATENCY_PERCENTILE)
+    def getServiceLatencyPercentile(din: DataInputX, dout: DataOutputX, login: Boolean) {
+        val param = din.readMapPack()
+        val objType = HashUtil.hash(param.getText("objType"))
+        val service = param.getInt("service")
+        val stime = param.getLong("stime")
+        val etime = param.getLong("etime")
+        val interval = Math.max(1, param.getInt("interval")) * DateUtil.MILLIS_PER_MINUTE
+
+        val result = new MapPack()
+        val timeLv = result.newList("time")
+        val countLv = result.newList("count")
+        val p50Lv = result.newList("p50")
+        val p90Lv = result.newList("p90")
+        val p99Lv = result.newList("p99")
+        val p999Lv = result.newList("p999")
+
+        val base = stime - stime % DateUtil.MILLIS_PER_MINUTE
+        val total = new LogLinearHistogram(LatencySketch.SUB_BITS, LatencySketch.MAX_ELAPSED)
+        var bucketTime = -1L
+        var bucket: LogLinearHistogram = null
+
+        def flush() {
+            if (bucket != null) {
+                timeLv.add(bucketTime)
+                countLv.add(bucket.getTotalCount())
+                p50Lv.add(bucket.getValueAtPercentile(50))
+                p90Lv.add(bucket.getValueAtPercentile(90))
+                p99Lv.add(bucket.getValueAtPercentile(99))
+                p999Lv.add(bucket.getValueAtPercentile(99.9))
+                bucket = null
+            }
+        }
+
+        val handler = (time: Long, h: LogLinearHistogram) => {
+            val t = time - (time - base) % interval
+            if (t != bucketTime) {
+                flush()
+                bucketTime = t
+                bucket = new LogLinearHistogram(LatencySketch.SUB_BITS, LatencySketch.MAX_ELAPSED)
+            }
+            bucket.add(h)
+            total.add(h)
+        }
+        LatencySketchRD.read(objType, service, stime, etime, handler)
+        LatencySketch.getOpen(objType, service, stime, etime).foreach(m => handler(m.time, m.histogram))
+        flush()
+
+        result.put("total_count", total.getTotalCount())
+        result.put("total_p50", total.getValueAtPercentile(50))
+        result.put("total_p90", total.getValueAtPercentile(90))
+        result.put("total_p99", total.getValueAtPercentile(99))
+        result.put("total_p999", total.getValueAtPercentile(99.9))
+
+        dout.writeByte(TcpFlag.HasNEXT)
+        dout.writePack(result)
+    }
+}
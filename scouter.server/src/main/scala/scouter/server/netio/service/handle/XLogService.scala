@@ -28,7 +28,9 @@ import scouter.net.{RequestCmd, TcpFlag}
 import scouter.server.Configure
 import scouter.server.core.app.SpanStepBuilder
 import scouter.server.core.cache.XLogCache
-import scouter.server.db.{TextRD, XLogProfileRD, XLogRD, ZipkinSpanRD}
+import scouter.server.db.span.{SpanNode, SpanTree}
+import scouter.server.db.xlog.{XLogBitmapIndex, XLogColumnBlock}
+import scouter.server.db.{TextMatcher, TextRD, XLogProfileRD, XLogQuery, XLogQueryEngine, XLogRD, ZipkinSpanRD}
 import scouter.server.netio.service.anotation.ServiceHandler
 import scouter.server.util.EnumerScala
 import scouter.util._
@@ -120,29 +122,52 @@ class XLogService {
         dout.writeBlob(Step.toBytes(stepList.map(_.asInstanceOf[Step]).asJava))
     }
 
+    /**
+      * with the span tree index only the containers holding the spans of the profile are read.
+      */
     private def getStepsFromSpans(date: String, gxid: Long, txid: Long): (ListBuffer[StepSingle], SpanPack) = {
         import collection.JavaConverters._
         val spanBuffer = new mutable.ListBuffer[SpanPack]
-        val spanContainerPackList = ZipkinSpanRD.getByGxid(date, gxid)
-        spanContainerPackList.foreach(bytes => {
-            val din = new DataInputX(bytes)
-            val container = din.readPack.asInstanceOf[SpanContainerPack]
-            spanBuffer ++= SpanPack.toObjectList(container.spans).asScala
-        })
+        val tree = ZipkinSpanRD.getSpanTree(date, gxid)
+        if (tree != null) {
+            val profile = tree.profileOf(txid)
+            val txids = new mutable.HashSet[Long]()
+            profile.asScala.foreach(node => txids += node.txid)
+            ZipkinSpanRD.getByPositions(date, tree.positions(profile)).foreach(bytes => {
+                val container = new DataInputX(bytes).readPack.asInstanceOf[SpanContainerPack]
+                spanBuffer ++= SpanPack.toObjectList(container.spans).asScala.filter(p => txids.contains(p.txid))
+            })
+        } else {
+            val spanContainerPackList = ZipkinSpanRD.getByGxid(date, gxid)
+            spanContainerPackList.foreach(bytes => {
+                val din = new DataInputX(bytes)
+                val container = din.readPack.asInstanceOf[SpanContainerPack]
+                spanBuffer ++= SpanPack.toObjectList(container.spans).asScala
+            })
+        }
 
         SpanStepBuilder.toSteps(gxid, txid, spanBuffer)
     }
 
-    private def getSpansMap(date: String, gxid: Long): Map[Long, SpanPack] = {
+    /**
+      * the span tree of the gxid, built from the span containers for the days before the span tree index.
+      */
+    private def getSpanTree(date: String, gxid: Long): SpanTree = {
         import collection.JavaConverters._
-        val spanMap = mutable.HashMap[Long, SpanPack]()
+        val tree = ZipkinSpanRD.getSpanTree(date, gxid)
+        if (tree != null) {
+            return tree
+        }
+        val nodes = new java.util.ArrayList[SpanNode]()
         val spanContainerPackList = ZipkinSpanRD.getByGxid(date, gxid)
-        spanContainerPackList.foreach(bytes => {
-            val din = new DataInputX(bytes)
-            val container = din.readPack.asInstanceOf[SpanContainerPack]
-            spanMap ++= SpanPack.toObjectList(container.spans).asScala.map(p => (p.txid, p))
-        })
-        spanMap.toMap
+        if (spanContainerPackList != null) {
+            spanContainerPackList.foreach(bytes => {
+                val din = new DataInputX(bytes)
+                val container = din.readPack.asInstanceOf[SpanContainerPack]
+                SpanPack.toObjectList(container.spans).asScala.foreach(p => nodes.add(SpanTree.toNode(p, 0)))
+            })
+        }
+        new SpanTree(nodes)
     }
 
     private def processGetProfile(dout: DataOutputX, date: String, txid: Long, max: Int): Unit = {
@@ -185,22 +210,16 @@ class XLogService {
             intSet.add(obj.intValue());
         })
 
-        val d = if(intSet != null)
-                XLogCache.get(intSet, loop, index, limit)
-                else XLogCache.get(loop, index, limit)
-
-        if (d == null) return ;
-
-        // 첫번째 패킷에 정보를 전송한다.
-        val outparam = new MapPack();
-        outparam.put("loop", new DecimalValue(d.loop));
-        outparam.put("index", new DecimalValue(d.index));
-        dout.writeByte(TcpFlag.HasNEXT);
-        dout.writePack(outparam);
-
-        EnumerScala.forward(d.data, (p: Array[Byte]) => {
+        XLogCache.read(intSet, loop, index, limit, (lastLoop: Long, lastIndex: Int) => {
+            // 첫번째 패킷에 정보를 전송한다.
+            val outparam = new MapPack();
+            outparam.put("loop", new DecimalValue(lastLoop));
+            outparam.put("index", new DecimalValue(lastIndex));
+            dout.writeByte(TcpFlag.HasNEXT);
+            dout.writePack(outparam);
+        }, (buf: Array[Byte], len: Int) => {
             dout.writeByte(TcpFlag.HasNEXT);
-            dout.write(p);
+            dout.write(buf, 0, len);
         })
 
     }
@@ -229,23 +248,16 @@ class XLogService {
             objHashSet.add(obj.intValue());
         })
 
-        val d = if(objHashSet != null)
-                    XLogCache.getWithinCount(objHashSet, loop, index, count)
-                else XLogCache.getWithinCount(loop, index, count)
-
-        if (d == null)
-            return ;
-
-        // 첫번째 패킷에 정보를 전송한다.
-        val outparam = new MapPack();
-        outparam.put("loop", new DecimalValue(d.loop));
-        outparam.put("index", new DecimalValue(d.index));
-        dout.writeByte(TcpFlag.HasNEXT);
-        dout.writePack(outparam);
-
-        EnumerScala.forward(d.data, (p: Array[Byte]) => {
+        XLogCache.readWithinCount(objHashSet, loop, index, count, (lastLoop: Long, lastIndex: Int) => {
+            // 첫번째 패킷에 정보를 전송한다.
+            val outparam = new MapPack();
+            outparam.put("loop", new DecimalValue(lastLoop));
+            outparam.put("index", new DecimalValue(lastIndex));
+            dout.writeByte(TcpFlag.HasNEXT);
+            dout.writePack(outparam);
+        }, (buf: Array[Byte], len: Int) => {
             dout.writeByte(TcpFlag.HasNEXT);
-            dout.write(p);
+            dout.write(buf, 0, len);
         })
 
     }
@@ -373,7 +385,13 @@ class XLogService {
             }
             count
         }
-        XLogRD.readByTimeLimitCount(date, stime, etime, lastBucketTime, limitCount, handler)
+        //one more xlog than the page tells if there is a next page
+        if (XLogRD.hasBitmaps(date)) {
+            val select = (index: XLogBitmapIndex) => index.select(XLogBitmapIndex.OBJ, objHashSet.contains(_))
+            XLogRD.readByBitmaps(date, stime, etime, lastBucketTime, limitCount + 1, select, handler)
+        } else {
+            XLogRD.readByTimeLimitCount(date, stime, etime, lastBucketTime, limitCount + 1, handler)
+        }
 
         if(lastTime > 0L) {
             writeHistoryPerfGroupV2MetaPack(dout, hasMore, lastTime, lastData.txid)
@@ -421,9 +439,9 @@ class XLogService {
             var xbytesChecked = false
 
             if (xbytes == null && gxid != 0) {
-                val spanMap = getSpansMap(date, gxid)
-                if (spanMap.nonEmpty) {
-                    val superTxId = getXLoggableParent(txid, spanMap)
+                val spanTree = getSpanTree(date, gxid)
+                if (spanTree.nodes.size() > 0) {
+                    val superTxId = getXLoggableParent(txid, spanTree)
                     xbytes = XLogRD.getByTxid(date, superTxId)
                     xbytesChecked = true
                 }
@@ -433,8 +451,8 @@ class XLogService {
                 if (!xbytesChecked) {
                     val xlog = new DataInputX(xbytes).readPack().asInstanceOf[XLogPack]
                     if ((xlog.xType == XLogTypes.ZIPKIN_SPAN || xlog.b3Mode) && xlog.caller != 0 && xlog.caller != xlog.gxid) {
-                        val spanMap = getSpansMap(date, xlog.gxid)
-                        xlog.caller = getXLoggableParent(xlog.caller, spanMap)
+                        val spanTree = getSpanTree(date, xlog.gxid)
+                        xlog.caller = getXLoggableParent(xlog.caller, spanTree)
                         xbytes = new DataOutputX().writePack(xlog).toByteArray
                     }
                 }
@@ -447,15 +465,15 @@ class XLogService {
         }
     }
 
-    private def getXLoggableParent(caller: Long, map: Map[Long, SpanPack]): Long = {
-        if (!map.contains(caller)) {
+    private def getXLoggableParent(caller: Long, tree: SpanTree): Long = {
+        val node = tree.get(caller)
+        if (node == null) {
             0
         } else {
-            val pack = map(caller)
-            if (SpanTypes.isParentXLoggable(pack.spanType)) {
+            if (SpanTypes.isParentXLoggable(node.spanType)) {
                 caller
             } else {
-                getXLoggableParent(pack.caller, map)
+                getXLoggableParent(node.caller, tree)
             }
         }
 
@@ -578,11 +596,13 @@ class XLogService {
         val text3 = param.getText("text3");
         val text4 = param.getText("text4");
         val text5 = param.getText("text5");
+        val minElapsed = param.getInt("minElapsed");
+        val errorOnly = param.getBoolean("error");
 
-        val serviceMatch = if (service == null) null else new StrMatch(service);
+        val serviceMatch = if (service == null) null else new TextMatcher(TextTypes.SERVICE, service);
         val ipMatch = if (ip == null) null else new StrMatch(ip);
-        val loginMatch = if (login == null) null else new StrMatch(login);
-        val descMatch = if (desc == null) null else new StrMatch(desc);
+        val loginMatch = if (login == null) null else new TextMatcher(TextTypes.LOGIN, login);
+        val descMatch = if (desc == null) null else new TextMatcher(TextTypes.DESC, desc);
         val text1Match = if (text1 == null) null else new StrMatch(text1);
         val text2Match = if (text2 == null) null else new StrMatch(text2);
         val text3Match = if (text3 == null) null else new StrMatch(text3);
@@ -599,11 +619,10 @@ class XLogService {
             twoDays = true;
         }
 
-        val handler = (time: Long, data: Array[Byte]) => {
-            if (loadCount >= Configure.getInstance().req_search_xlog_max_count) {
-                return ;
-            }
-            val x = new DataInputX(data).readPack().asInstanceOf[XLogPack];
+        val ipMatched = new mutable.HashMap[Int, Boolean]()
+
+        val predicate = (x: XLogPack) => {
+            val day = DateUtil.yyyymmdd(x.endTime);
             var ok = true
             if (ipMatch != null) {
                 if (x.ipaddr == null) {
@@ -616,21 +635,24 @@ class XLogService {
             if (objHash != 0 && x.objHash != objHash) {
                 ok = false;
             }
+            if (x.elapsed < minElapsed) {
+                ok = false;
+            }
+            if (errorOnly && x.error == 0) {
+                ok = false;
+            }
             if (serviceMatch != null) {
-                var serviceName = TextRD.getString(DateUtil.yyyymmdd(time), TextTypes.SERVICE, x.service);
-                if (serviceMatch.include(serviceName) == false) {
+                if (serviceMatch.include(day, x.service) == false) {
                     ok = false;
                 }
             }
             if (loginMatch != null) {
-                var loginName = TextRD.getString(DateUtil.yyyymmdd(time), TextTypes.LOGIN, x.login);
-                if (loginMatch.include(loginName) == false) {
+                if (loginMatch.include(day, x.login) == false) {
                     ok = false;
                 }
             }
             if (descMatch != null) {
-                var descName = TextRD.getString(DateUtil.yyyymmdd(time), TextTypes.DESC, x.desc);
-                if (descMatch.include(descName) == false) {
+                if (descMatch.include(day, x.desc) == false) {
                     ok = false;
                 }
             }
@@ -670,20 +692,73 @@ class XLogService {
                 }
             }
 
-            if (ok) {
-                //TODO adjust caller in the case of Sapn
-                dout.writeByte(TcpFlag.HasNEXT);
-                dout.write(data);
-                dout.flush();
-                loadCount += 1;
+            ok
+        }
+
+        //prefilter on the xlog columns so that only candidates are loaded. an unknown(0) ip is decided by the predicate.
+        val columnFilter = (day: String) => (b: XLogColumnBlock, i: Int) => {
+            (objHash == 0 || b.objHash(i) == objHash) &&
+                b.elapsed(i) >= minElapsed &&
+                (!errorOnly || b.error(i) != 0) &&
+                (serviceMatch == null || serviceMatch.include(day, b.service(i))) &&
+                (loginMatch == null || loginMatch.include(day, b.login(i))) &&
+                (descMatch == null || descMatch.include(day, b.desc(i))) &&
+                (ipMatch == null || b.ip(i) == 0 || ipMatched.getOrElseUpdate(b.ip(i), ipMatch.include(IPUtil.toString(DataOutputX.toBytes(b.ip(i))))))
+        }
+        //candidate rows on the bitmap indexes. login, desc and elapsed are checked by the predicate.
+        val bitmapSelect = (day: String) => (index: XLogBitmapIndex) => {
+            var rows: RoaringBitmap = null
+            val and = (b: RoaringBitmap) => rows = if (rows == null) b else RoaringBitmap.and(rows, b)
+            if (objHash != 0) {
+                and(index.get(XLogBitmapIndex.OBJ, objHash))
+            }
+            if (serviceMatch != null) {
+                and(index.select(XLogBitmapIndex.SERVICE, serviceMatch.include(day, _)))
+            }
+            if (errorOnly) {
+                and(index.select(XLogBitmapIndex.ERROR, _ != 0))
+            }
+            if (ipMatch != null) {
+                and(index.select(XLogBitmapIndex.IP, (ip: Int) => ip == 0 || ipMatch.include(IPUtil.toString(DataOutputX.toBytes(ip)))))
+            }
+            rows
+        }
+        val bitmapSelective = objHash != 0 || serviceMatch != null || errorOnly || ipMatch != null
+        val selective = objHash != 0 || minElapsed > 0 || errorOnly || serviceMatch != null || loginMatch != null || descMatch != null || ipMatch != null
+
+        val read = (day: String, from: Long, to: Long) => {
+            val limit = Configure.getInstance().req_search_xlog_max_count - loadCount;
+            if (limit > 0) {
+                val query = new XLogQuery[Array[Byte]](day, from, to, predicate, (time: Long, data: Array[Byte], x: XLogPack) => data, limit);
+                if (bitmapSelective) {
+                    query.bitmapSelect = bitmapSelect(day);
+                }
+                if (selective) {
+                    query.columnFilter = columnFilter(day);
+                }
+                XLogQueryEngine.execute(query);
+                try {
+                    var data = query.next();
+                    while (data != null) {
+                        //TODO adjust caller in the case of Sapn
+                        dout.writeByte(TcpFlag.HasNEXT);
+                        dout.write(data);
+                        dout.flush();
+                        loadCount += 1;
+                        data = query.next();
+                    }
+                } finally {
+                    //stops the scan when the client has gone
+                    query.cancel();
+                }
             }
         }
 
         if (twoDays) {
-            XLogRD.readByTime(date, stime, mtime - 1, handler);
-            XLogRD.readByTime(date2, mtime, etime, handler);
+            read(date, stime, mtime - 1);
+            read(date2, mtime, etime);
         } else {
-            XLogRD.readByTime(date, stime, etime, handler);
+            read(date, stime, etime);
         }
     }
 
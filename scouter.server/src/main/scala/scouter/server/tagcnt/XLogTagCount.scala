@@ -30,12 +30,12 @@ import scouter.server.core.AgentManager
 import scouter.server.core.CoreRun
 import scouter.server.util.ThreadScala
 import scouter.util.IPUtil
-import scouter.util.RequestQueue
+import scouter.util.ConcurrentRequestQueue
 import scouter.util.StringUtil
 
 object XLogTagCount {
 
-    val queue = new RequestQueue[XLogPack](CoreRun.MAX_QUE_SIZE);
+    val queue = new ConcurrentRequestQueue[XLogPack](CoreRun.MAX_QUE_SIZE);
 
     ThreadScala.startDaemon("scouter.server.tagcnt.XLogTagCount") {
         val conf = Configure.getInstance();
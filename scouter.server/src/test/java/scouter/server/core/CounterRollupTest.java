@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.core;
+
+import org.junit.Test;
+import scala.runtime.AbstractFunction4;
+import scala.runtime.BoxedUnit;
+import scouter.lang.CounterKey;
+import scouter.lang.TimeTypeEnum;
+import scouter.lang.value.DoubleValue;
+import scouter.server.db.counter.RollupBucket;
+import scouter.util.DateUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CounterRollupTest {
+
+    private static final long DAY = DateUtil.yyyymmdd("20240101");
+    private static final CounterKey KEY = new CounterKey(10, "cpu", TimeTypeEnum.ONE_MIN);
+
+    private static class Written extends AbstractFunction4<CounterKey, Object, Object, RollupBucket, Object> {
+        final List<Long> starts = new ArrayList<Long>();
+        final List<Long> froms = new ArrayList<Long>();
+        final List<RollupBucket> buckets = new ArrayList<RollupBucket>();
+
+        public Object apply(CounterKey key, Object start, Object from, RollupBucket bucket) {
+            starts.add((Long) start);
+            froms.add((Long) from);
+            buckets.add(bucket);
+            return BoxedUnit.UNIT;
+        }
+    }
+
+    @Test
+    public void values_are_bucketed_by_minute() {
+        Written out = new Written();
+        CounterRollup.Rollup r = new CounterRollup.Rollup(TimeTypeEnum.ONE_MIN, out);
+        long m = DateUtil.MILLIS_PER_MINUTE;
+        r.add(KEY, DAY + 10 * m + 20000, 3);
+        r.add(KEY, DAY + 10 * m + 40000, 1);
+        r.add(KEY, DAY + 10 * m + 50000, 2);
+        assertEquals(0, out.buckets.size());
+
+        // a value of the next bucket closes the bucket
+        r.add(KEY, DAY + 11 * m + 2000, 5);
+        assertEquals(1, out.buckets.size());
+        RollupBucket b = out.buckets.get(0);
+        assertEquals(DAY + 10 * m, (long) out.starts.get(0));
+        // the rollup started in the middle of the first bucket
+        assertEquals(DAY + 10 * m + 20000, (long) out.froms.get(0));
+        assertEquals(1, b.min(), 0);
+        assertEquals(3, b.max(), 0);
+        assertEquals(6, b.sum(), 0);
+        assertEquals(3, b.count());
+        assertEquals(2, b.last(), 0);
+        assertEquals(2, b.avg(), 0);
+
+        // a value of a written bucket is dropped
+        r.add(KEY, DAY + 10 * m + 59000, 100);
+        // a gap is skipped and the next bucket is filled from its start
+        r.add(KEY, DAY + 13 * m, 7);
+        r.write(KEY);
+        assertEquals(3, out.buckets.size());
+        assertEquals(DAY + 11 * m, (long) out.starts.get(1));
+        assertEquals(DAY + 11 * m, (long) out.froms.get(1));
+        assertEquals(1, out.buckets.get(1).count());
+        assertEquals(DAY + 13 * m, (long) out.starts.get(2));
+        assertEquals(DAY + 13 * m, (long) out.froms.get(2));
+        assertEquals(7, out.buckets.get(2).last(), 0);
+    }
+
+    @Test
+    public void larger_buckets_align_to_the_day() {
+        Written out = new Written();
+        CounterRollup.Rollup five = new CounterRollup.Rollup(TimeTypeEnum.FIVE_MIN, out);
+        CounterRollup.Rollup hour = new CounterRollup.Rollup(TimeTypeEnum.HOUR, out);
+        long m = DateUtil.MILLIS_PER_MINUTE;
+        five.add(KEY, DAY + 7 * m, 1);
+        five.add(KEY, DAY + 9 * m + 59999, 2);
+        five.add(KEY, DAY + 10 * m, 3);
+        hour.add(KEY, DAY + 59 * m, 1);
+        hour.add(KEY, DAY + 60 * m, 2);
+        assertEquals(2, out.buckets.size());
+        assertEquals(DAY + 5 * m, (long) out.starts.get(0));
+        assertEquals(2, out.buckets.get(0).count());
+        assertEquals(DAY, (long) out.starts.get(1));
+        assertEquals(1, out.buckets.get(1).count());
+    }
+
+    @Test
+    public void stats_of_a_bucket() {
+        RollupBucket b = new RollupBucket();
+        b.add(4);
+        b.add(-2);
+        b.add(7);
+        assertEquals(-2.0, ((DoubleValue) b.get("min")).value, 0);
+        assertEquals(7.0, ((DoubleValue) b.get("max")).value, 0);
+        assertEquals(9.0, ((DoubleValue) b.get("sum")).value, 0);
+        assertEquals(3.0, ((DoubleValue) b.get("count")).value, 0);
+        assertEquals(7.0, ((DoubleValue) b.get("last")).value, 0);
+        assertEquals(3.0, ((DoubleValue) b.get(null)).value, 0);
+    }
+}
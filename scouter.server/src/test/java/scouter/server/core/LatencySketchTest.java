@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.core;
+
+import org.junit.Test;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.util.DateUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LatencySketchTest {
+
+    private static final long M = DateUtil.MILLIS_PER_MINUTE;
+    private static final long T = DateUtil.yyyymmdd("20240101") + 10 * DateUtil.MILLIS_PER_HOUR;
+
+    private static class Written extends AbstractFunction2<LatencySketch.Sketch, LatencySketch.Minute, Object> {
+        final List<Long> times = new ArrayList<Long>();
+        final List<Long> counts = new ArrayList<Long>();
+
+        public Object apply(LatencySketch.Sketch s, LatencySketch.Minute m) {
+            times.add(m.time());
+            counts.add(m.histogram().getTotalCount());
+            return BoxedUnit.UNIT;
+        }
+    }
+
+    @Test
+    public void a_later_minute_pushes_out_the_previous_one() {
+        Written out = new Written();
+        LatencySketch.Sketch s = new LatencySketch.Sketch(1, 2, out);
+        s.add(T + 1000, 10);
+        s.add(T + M + 1000, 20);
+        s.add(T + M + 2000, 30);
+        // the current and the previous minutes are open
+        assertEquals(0, out.times.size());
+
+        s.add(T + 2 * M, 40);
+        assertEquals(1, out.times.size());
+        assertEquals(T, (long) out.times.get(0));
+        assertEquals(1, (long) out.counts.get(0));
+        assertEquals(T + M, s.prev().time());
+        assertEquals(2, s.prev().histogram().getTotalCount());
+        assertEquals(T + 2 * M, s.cur().time());
+
+        // a jump over several minutes pushes out the previous minute and keeps the current one open
+        s.add(T + 10 * M, 50);
+        assertEquals(2, out.times.size());
+        assertEquals(T + M, (long) out.times.get(1));
+        assertEquals(2, (long) out.counts.get(1));
+        assertEquals(T + 2 * M, s.prev().time());
+        s.add(T + 11 * M, 50);
+        assertEquals(3, out.times.size());
+        assertEquals(T + 2 * M, (long) out.times.get(2));
+        assertEquals(T + 10 * M, s.prev().time());
+    }
+
+    @Test
+    public void late_xlogs() {
+        Written out = new Written();
+        LatencySketch.Sketch s = new LatencySketch.Sketch(1, 2, out);
+        s.add(T + M, 10);
+        s.add(T + 3 * M, 10);
+        // the previous minute takes a late xlog
+        s.add(T + M + 5000, 10);
+        assertEquals(2, s.prev().histogram().getTotalCount());
+        // a late xlog between the open minutes replaces the previous minute which is written
+        s.add(T + 2 * M, 10);
+        assertEquals(1, out.times.size());
+        assertEquals(T + M, (long) out.times.get(0));
+        assertEquals(2, (long) out.counts.get(0));
+        assertEquals(T + 2 * M, s.prev().time());
+        // older than the open minutes or already written
+        s.add(T, 10);
+        s.add(T + M + 1, 10);
+        assertEquals(1, s.prev().histogram().getTotalCount());
+        assertEquals(1, s.cur().histogram().getTotalCount());
+        assertEquals(1, out.times.size());
+    }
+
+    @Test
+    public void open_minutes_are_closed_after_the_grace_time() {
+        Written out = new Written();
+        LatencySketch.Sketch s = new LatencySketch.Sketch(1, 2, out);
+        s.add(T, 10);
+        s.add(T + M, 10);
+        long end = T + 2 * M;
+        s.closeOld(end + LatencySketch.GRACE_TIME() - M - 1);
+        assertEquals(0, out.times.size());
+        s.closeOld(end + LatencySketch.GRACE_TIME() - M);
+        assertEquals(1, out.times.size());
+        assertNull(s.prev());
+        s.closeOld(end + LatencySketch.GRACE_TIME());
+        assertEquals(2, out.times.size());
+        assertNull(s.cur());
+        // the minutes closed are not opened again
+        s.add(T + M, 10);
+        assertNull(s.cur());
+    }
+}
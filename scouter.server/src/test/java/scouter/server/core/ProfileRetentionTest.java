@@ -0,0 +1,212 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.runtime.AbstractFunction3;
+import scala.runtime.BoxedUnit;
+import scouter.lang.pack.XLogPack;
+import scouter.lang.pack.XLogProfilePack;
+import scouter.server.Configure;
+import scouter.util.IntSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileRetentionTest {
+
+    private final Configure conf = Configure.getInstance();
+    private boolean enabled;
+    private int window;
+    private int maxMb;
+    private boolean orphan;
+    private int elapsed;
+    private boolean error;
+    private int rate;
+    private IntSet services;
+
+    private final Written written = new Written();
+    private ProfileRetention retention;
+
+    private static class Written extends AbstractFunction3<Object, Object, byte[], Object> {
+        final List<Long> txids = Collections.synchronizedList(new ArrayList<Long>());
+
+        public Object apply(Object time, Object txid, byte[] data) {
+            txids.add((Long) txid);
+            return BoxedUnit.UNIT;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        enabled = conf.profile_retention_enabled;
+        window = conf.profile_retention_window_ms;
+        maxMb = conf.profile_retention_max_mb;
+        orphan = conf.profile_retention_orphan_enabled;
+        elapsed = conf.profile_retention_elapsed_ms;
+        error = conf.profile_retention_error_enabled;
+        rate = conf.profile_retention_sampling_rate;
+        services = conf.profileRetentionServiceSet;
+
+        conf.profile_retention_enabled = true;
+        conf.profile_retention_window_ms = 10000;
+        conf.profile_retention_max_mb = 64;
+        conf.profile_retention_orphan_enabled = true;
+        conf.profile_retention_elapsed_ms = 1000;
+        conf.profile_retention_error_enabled = true;
+        conf.profile_retention_sampling_rate = 0;
+        conf.profileRetentionServiceSet = new IntSet();
+        conf.profileRetentionServiceSet.add(77);
+        retention = new ProfileRetention(conf, written);
+    }
+
+    @After
+    public void tearDown() {
+        conf.profile_retention_enabled = enabled;
+        conf.profile_retention_window_ms = window;
+        conf.profile_retention_max_mb = maxMb;
+        conf.profile_retention_orphan_enabled = orphan;
+        conf.profile_retention_elapsed_ms = elapsed;
+        conf.profile_retention_error_enabled = error;
+        conf.profile_retention_sampling_rate = rate;
+        conf.profileRetentionServiceSet = services;
+    }
+
+    private static XLogProfilePack block(long txid, long time) {
+        XLogProfilePack p = new XLogProfilePack();
+        p.txid = txid;
+        p.time = time;
+        p.profile = new byte[100];
+        return p;
+    }
+
+    private static XLogPack xlog(long txid, int elapsed, int error, int service) {
+        XLogPack x = new XLogPack();
+        x.txid = txid;
+        x.elapsed = elapsed;
+        x.error = error;
+        x.service = service;
+        x.profileCount = 2;
+        return x;
+    }
+
+    @Test
+    public void profiles_follow_the_decision_on_their_xlog() {
+        for (long txid = 1; txid <= 4; txid++) {
+            retention.add(block(txid, 1000));
+        }
+        assertEquals(0, written.txids.size());
+        assertEquals(4, retention.pendingCount());
+
+        XLogPack fast = xlog(1, 10, 0, 1);
+        XLogPack slow = xlog(2, 5000, 0, 1);
+        XLogPack failed = xlog(3, 10, 1, 1);
+        XLogPack listed = xlog(4, 10, 0, 77);
+        retention.add(fast);
+        retention.add(slow);
+        retention.add(failed);
+        retention.add(listed);
+        assertEquals(0, retention.pendingCount());
+        assertEquals(0, retention.pendingBytes().get());
+        assertEquals(java.util.Arrays.asList(2L, 3L, 4L), written.txids);
+        // the xlog of a dropped profile doesn't claim it has one
+        assertEquals(0, fast.profileCount);
+        assertEquals(2, slow.profileCount);
+        assertEquals(2, listed.profileCount);
+
+        // blocks coming after the xlog follow the decision
+        retention.add(block(1, 2000));
+        retention.add(block(2, 2000));
+        assertEquals(java.util.Arrays.asList(2L, 3L, 4L, 2L), written.txids);
+        assertEquals(0, retention.pendingCount());
+        assertEquals(4, retention.kept().get());
+        assertEquals(2, retention.dropped().get());
+    }
+
+    @Test
+    public void pending_profiles_time_out_as_orphans() {
+        retention.add(block(1, 1000));
+        retention.add(block(2, 5000));
+        retention.expire(1000 + 10000 - 1);
+        assertEquals(0, written.txids.size());
+        retention.expire(1000 + 10000);
+        assertEquals(java.util.Arrays.asList(1L), written.txids);
+        assertEquals(1, retention.pendingCount());
+
+        conf.profile_retention_orphan_enabled = false;
+        retention.expire(5000 + 10000);
+        assertEquals(1, written.txids.size());
+        assertEquals(0, retention.pendingCount());
+        assertEquals(0, retention.pendingBytes().get());
+        assertEquals(1, retention.dropped().get());
+
+        // everything waiting is written when the retention is turned off
+        retention.add(block(3, 20000));
+        conf.profile_retention_enabled = false;
+        retention.expire(20000);
+        assertEquals(java.util.Arrays.asList(1L, 3L), written.txids);
+        retention.add(block(4, 20000));
+        assertEquals(java.util.Arrays.asList(1L, 3L, 4L), written.txids);
+    }
+
+    @Test
+    public void oldest_blocks_are_orphaned_over_the_memory_limit() {
+        conf.profile_retention_max_mb = 0;
+        retention.add(block(1, 1000));
+        assertEquals(java.util.Arrays.asList(1L), written.txids);
+        assertEquals(0, retention.pendingBytes().get());
+    }
+
+    @Test
+    public void concurrent_xlogs_and_profiles() throws Exception {
+        final int threads = 4;
+        final int perThread = 5000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long base = t * 1000000L;
+            workers[t] = new Thread() {
+                public void run() {
+                    for (long i = 0; i < perThread; i++) {
+                        long txid = base + i;
+                        retention.add(block(txid, 1000));
+                        retention.add(xlog(txid, i % 2 == 0 ? 5000 : 10, 0, 1));
+                        retention.add(block(txid, 1001));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        assertEquals(0, retention.pendingCount());
+        assertEquals(0, retention.pendingBytes().get());
+        assertEquals(threads * perThread, written.txids.size());
+        assertEquals(threads * perThread, retention.kept().get());
+        assertEquals(threads * perThread, retention.dropped().get());
+        for (Long txid : written.txids) {
+            assertTrue(txid % 2 == 0);
+        }
+    }
+}
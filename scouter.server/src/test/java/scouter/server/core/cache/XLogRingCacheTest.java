@@ -0,0 +1,151 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.core.cache;
+
+import org.junit.Test;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.util.IntSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class XLogRingCacheTest {
+
+    /** a record of the length whose bytes are all the value */
+    private static byte[] record(int value, int length) {
+        byte[] b = new byte[length];
+        Arrays.fill(b, (byte) value);
+        return b;
+    }
+
+    private static List<Integer> read(XLogRingCache ring, IntSet objHashSet, long from, long to, int time) {
+        final List<Integer> values = new ArrayList<Integer>();
+        ring.read(objHashSet, from, to, time, new AbstractFunction2<byte[], Object, Object>() {
+            public Object apply(byte[] buf, Object len) {
+                values.add((int) buf[0]);
+                return BoxedUnit.UNIT;
+            }
+        });
+        return values;
+    }
+
+    @Test
+    public void read_filters_records() {
+        XLogRingCache ring = new XLogRingCache(16, 1024);
+        ring.put(1, 100, false, record(1, 10));
+        ring.put(2, 5, true, record(2, 10));
+        ring.put(1, 5, false, record(3, 10));
+        ring.put(2, 200, false, record(4, 10));
+        assertEquals(4, ring.getHead());
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), read(ring, null, 0, ring.getHead(), 0));
+        // the error xlog passes the elapsed filter
+        assertEquals(Arrays.asList(1, 2, 4), read(ring, null, 0, ring.getHead(), 50));
+        IntSet obj1 = new IntSet();
+        obj1.add(1);
+        assertEquals(Arrays.asList(1, 3), read(ring, obj1, 0, ring.getHead(), 0));
+        assertEquals(Arrays.asList(3, 4), read(ring, null, 2, ring.getHead(), 0));
+    }
+
+    @Test
+    public void wrapped_slots_and_data_are_dropped() {
+        XLogRingCache ring = new XLogRingCache(8, 1 << 20);
+        for (int i = 0; i < 20; i++) {
+            ring.put(1, 0, false, record(i, 10));
+        }
+        // only the last slotCount records are left
+        assertEquals(Arrays.asList(12, 13, 14, 15, 16, 17, 18, 19), read(ring, null, 0, ring.getHead(), 0));
+
+        // the data buffer holds fewer records than the slots
+        XLogRingCache small = new XLogRingCache(64, 100);
+        for (int i = 0; i < 20; i++) {
+            small.put(1, 0, false, record(i, 30));
+        }
+        assertEquals(Arrays.asList(17, 18, 19), read(small, null, 0, small.getHead(), 0));
+        // a record bigger than the buffer is not kept
+        small.put(1, 0, false, record(99, 101));
+        assertEquals(20, small.getHead());
+    }
+
+    @Test
+    public void positions_by_loop_and_index() {
+        XLogRingCache ring = new XLogRingCache(10, 1 << 20);
+        for (int i = 0; i < 25; i++) {
+            ring.put(1, 0, false, record(i, 4));
+        }
+        long end = ring.getHead();
+        assertEquals(2, ring.getLoop(end));
+        assertEquals(5, ring.getIndex(end));
+        assertEquals(22, ring.startOf(2, 2, end));
+        // a position older than the ring starts from the oldest record
+        assertEquals(15, ring.startOf(0, 3, end));
+        assertEquals(23, ring.startWithinCount(2, 2, 2, end));
+        assertEquals(22, ring.startWithinCount(2, 2, 100, end));
+        assertEquals(15, ring.startWithinCount(0, 0, 100, end));
+    }
+
+    @Test
+    public void readers_never_get_a_torn_record() throws Exception {
+        final XLogRingCache ring = new XLogRingCache(64, 4096);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<String> torn = new AtomicReference<String>();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread() {
+                public void run() {
+                    while (stop.get() == false) {
+                        ring.read(null, 0, ring.getHead(), 0, new AbstractFunction2<byte[], Object, Object>() {
+                            public Object apply(byte[] buf, Object len) {
+                                int n = (Integer) len;
+                                // the length of a record is derived from its value
+                                if (n != 8 + (buf[0] & 0x3f)) {
+                                    torn.set("length " + n + " value " + buf[0]);
+                                }
+                                for (int i = 1; i < n; i++) {
+                                    if (buf[i] != buf[0]) {
+                                        torn.set("byte " + i + " of " + n);
+                                    }
+                                }
+                                return BoxedUnit.UNIT;
+                            }
+                        });
+                    }
+                }
+            };
+            readers[r].start();
+        }
+        for (int i = 0; i < 500000; i++) {
+            int value = i & 0x7f;
+            ring.put(1, 0, false, record(value, 8 + (value & 0x3f)));
+        }
+        stop.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertNull(torn.get());
+        assertTrue(ring.getHead() == 500000);
+    }
+}
@@ -18,8 +18,13 @@
 
 package scouter.server.db;
 
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scouter.server.Configure;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -34,6 +39,22 @@ public class KeyValueStoreRWTest {
     private static final String vutKey2 = "testkey-02";
     private static final String vutValue2 = "testvalue-02";
 
+    @ClassRule
+    public static TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String dbDir;
+
+    @BeforeClass
+    public static void setUpClass() {
+        dbDir = Configure.getInstance().db_dir;
+        Configure.getInstance().db_dir = tmp.getRoot().getPath();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        Configure.getInstance().db_dir = dbDir;
+    }
+
     @Before
     public void setup() {
         KeyValueStoreRW.delete(vutDiv, vutKey1);
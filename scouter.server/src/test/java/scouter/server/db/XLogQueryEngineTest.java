@@ -0,0 +1,235 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db;
+
+import org.junit.After;
+import org.junit.Test;
+import scala.Function2;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.AbstractFunction3;
+import scala.runtime.AbstractFunction4;
+import scala.runtime.BoxedUnit;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.XLogPack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class XLogQueryEngineTest {
+    private static final long BASE = 1539100800000L;
+    /** 50 rows in a 500ms bucket */
+    private static final int ROWS = 2000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final List<long[]> calls = Collections.synchronizedList(new ArrayList<long[]>());
+    private final byte[][] data = new byte[ROWS][];
+
+    /** the first scan stops before the row of this index until resume is counted down */
+    private int pauseAt = -1;
+    private final CountDownLatch paused = new CountDownLatch(1);
+    private final CountDownLatch resume = new CountDownLatch(1);
+    /** the first scan holds before the row of this index until release is counted down */
+    private int holdAt = -1;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    public XLogQueryEngineTest() throws IOException {
+        for (int i = 0; i < ROWS; i++) {
+            XLogPack p = new XLogPack();
+            p.txid = i + 1;
+            p.endTime = time(i);
+            data[i] = new DataOutputX().writePack(p).toByteArray();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        resume.countDown();
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private static long time(int row) {
+        return BASE + row * 10L;
+    }
+
+    private XLogQueryEngine engine() {
+        return new XLogQueryEngine(new AbstractFunction4<String, Object, Object, Function2<Object, byte[], Object>, BoxedUnit>() {
+            public BoxedUnit apply(String date, Object from, Object to, Function2<Object, byte[], Object> handler) {
+                boolean first = calls.isEmpty();
+                calls.add(new long[]{(Long) from, (Long) to});
+                for (int i = 0; i < ROWS; i++) {
+                    if (first && i == pauseAt) {
+                        paused.countDown();
+                        try {
+                            resume.await();
+                        } catch (InterruptedException e) {
+                            return BoxedUnit.UNIT;
+                        }
+                    }
+                    if (first && i == holdAt) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            return BoxedUnit.UNIT;
+                        }
+                    }
+                    if (time(i) >= (Long) from && time(i) <= (Long) to) {
+                        handler.apply(time(i), data[i]);
+                    }
+                }
+                return BoxedUnit.UNIT;
+            }
+        }, executor);
+    }
+
+    private static XLogQuery<Long> query(long stime, long etime, int limit) {
+        return new XLogQuery<Long>("20181010", stime, etime, new AbstractFunction1<XLogPack, Object>() {
+            public Object apply(XLogPack x) {
+                return true;
+            }
+        }, new AbstractFunction3<Object, byte[], XLogPack, Long>() {
+            public Long apply(Object time, byte[] data, XLogPack x) {
+                return x.txid;
+            }
+        }, limit);
+    }
+
+    private static List<Long> expected(long stime, long etime, int limit) {
+        List<Long> txids = new ArrayList<Long>();
+        for (int i = 0; i < ROWS && txids.size() < limit; i++) {
+            if (time(i) >= stime && time(i) <= etime) {
+                txids.add(i + 1L);
+            }
+        }
+        return txids;
+    }
+
+    private static List<Long> drain(XLogQuery<Long> q) {
+        List<Long> txids = new ArrayList<Long>();
+        for (Long v = q.next(); v != null; v = q.next()) {
+            txids.add(v);
+        }
+        return txids;
+    }
+
+    private static Thread drainLater(final XLogQuery<Long> q, final List<Long> out) {
+        Thread t = new Thread() {
+            public void run() {
+                out.addAll(drain(q));
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void late_query_joins_only_a_scan_before_its_start() throws Exception {
+        pauseAt = 1000;
+        XLogQueryEngine engine = engine();
+        XLogQuery<Long> q1 = engine.execute(query(BASE, time(ROWS - 1), Integer.MAX_VALUE));
+        List<Long> r1 = new ArrayList<Long>();
+        Thread t1 = drainLater(q1, r1);
+        assertTrue(paused.await(5, TimeUnit.SECONDS));
+
+        // the scan is at row 1000, the rows of q2 from row 10 were passed already
+        XLogQuery<Long> q2 = engine.execute(query(time(10), time(ROWS - 1), 100));
+        XLogQuery<Long> q3 = engine.execute(query(time(1500), time(ROWS - 1), Integer.MAX_VALUE));
+        List<Long> r3 = new ArrayList<Long>();
+        Thread t3 = drainLater(q3, r3);
+        List<Long> r2 = drain(q2);
+        assertEquals(2, calls.size());
+        assertEquals(time(10), calls.get(1)[0]);
+
+        resume.countDown();
+        t1.join(10000);
+        t3.join(10000);
+        assertEquals(expected(BASE, time(ROWS - 1), Integer.MAX_VALUE), r1);
+        assertEquals(expected(time(10), time(ROWS - 1), 100), r2);
+        assertEquals(expected(time(1500), time(ROWS - 1), Integer.MAX_VALUE), r3);
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void limit_takes_the_earliest_rows() {
+        XLogQuery<Long> q = engine().execute(query(time(500), time(ROWS - 1), 10));
+        assertEquals(expected(time(500), time(ROWS - 1), 10), drain(q));
+    }
+
+    @Test
+    public void slow_consumer_is_detached_and_resumes_in_order() throws Exception {
+        pauseAt = 0;
+        XLogQueryEngine engine = engine();
+        XLogQuery<Long> slow = engine.execute(query(BASE, time(ROWS - 1), Integer.MAX_VALUE));
+        XLogQuery<Long> fast = engine.execute(query(BASE, time(ROWS - 1), Integer.MAX_VALUE));
+        assertTrue(paused.await(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.size());
+        List<Long> fastRows = new ArrayList<Long>();
+        Thread reader = drainLater(fast, fastRows);
+        resume.countDown();
+
+        // nobody takes the slow results while the fast query reads everything
+        reader.join(10000);
+        assertEquals(expected(BASE, time(ROWS - 1), Integer.MAX_VALUE), fastRows);
+        assertEquals(2, calls.size());
+        // the slow query took a buffer of rows and resumes from the bucket of the next one
+        long resumedFrom = calls.get(1)[0];
+        assertEquals(time(XLogQuery$.MODULE$.BUFFER_SIZE() / 50 * 50), resumedFrom);
+        assertEquals(expected(BASE, time(ROWS - 1), Integer.MAX_VALUE), drain(slow));
+    }
+
+    @Test
+    public void cancelled_query_stops_its_scan() {
+        XLogQuery<Long> q = engine().execute(query(BASE, time(ROWS - 1), Integer.MAX_VALUE));
+        assertEquals(1L, (long) q.next());
+        q.cancel();
+        assertEquals(null, q.next());
+    }
+
+    @Test(timeout = 10000)
+    public void queries_on_a_shared_scan_end_without_waiting_for_it() throws Exception {
+        pauseAt = 0;
+        holdAt = 1500;
+        XLogQueryEngine engine = engine();
+        XLogQuery<Long> all = engine.execute(query(BASE, time(ROWS - 1), Integer.MAX_VALUE));
+        XLogQuery<Long> early = engine.execute(query(BASE, time(500), Integer.MAX_VALUE));
+        XLogQuery<Long> limited = engine.execute(query(BASE, time(ROWS - 1), 10));
+        assertTrue(paused.await(5, TimeUnit.SECONDS));
+        List<Long> allRows = new ArrayList<Long>();
+        Thread reader = drainLater(all, allRows);
+        resume.countDown();
+
+        // the scan is held at row 1500 while both end
+        assertEquals(expected(BASE, time(500), Integer.MAX_VALUE), drain(early));
+        assertEquals(expected(BASE, time(ROWS - 1), 10), drain(limited));
+        assertTrue(reader.isAlive());
+
+        release.countDown();
+        reader.join(10000);
+        assertEquals(expected(BASE, time(ROWS - 1), Integer.MAX_VALUE), allRows);
+        assertEquals(1, calls.size());
+    }
+}
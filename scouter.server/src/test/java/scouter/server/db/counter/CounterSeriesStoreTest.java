@@ -0,0 +1,243 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.counter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.lang.value.DecimalValue;
+import scouter.lang.value.DoubleValue;
+import scouter.lang.value.FloatValue;
+import scouter.lang.value.MapValue;
+import scouter.lang.value.TextValue;
+import scouter.lang.value.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CounterSeriesStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static class Points extends AbstractFunction2<Object, Value, Object> {
+        final List<Long> times = new ArrayList<Long>();
+        final List<Value> values = new ArrayList<Value>();
+
+        public Object apply(Object time, Value value) {
+            times.add((Long) time);
+            values.add(value);
+            return BoxedUnit.UNIT;
+        }
+    }
+
+    private static final AbstractFunction1<String, Object> TAGS = new AbstractFunction1<String, Object>() {
+        public Object apply(String name) {
+            return "cpu".equals(name) ? 1 : "status".equals(name) ? 2 : -1;
+        }
+    };
+
+    private static final long CPU = CounterSeriesStore.key(10, 1);
+    private static final long STATUS = CounterSeriesStore.key(10, 2);
+
+    private static Points decode(SeriesBlock b) {
+        Points p = new Points();
+        SeriesBlock.decode(b.kind(), b.count(), b.out().toBytes(), Long.MIN_VALUE, Long.MAX_VALUE, p);
+        return p;
+    }
+
+    private static MapValue map(String name, Value value) {
+        MapValue m = new MapValue();
+        m.put(name, value);
+        return m;
+    }
+
+    private static Points read(String file, long key) {
+        Points p = new Points();
+        assertTrue(CounterSeriesStore.read(file, key, 0, Long.MAX_VALUE, p));
+        return p;
+    }
+
+    @Test
+    public void doubles_round_trip_bit_exact() {
+        double[] values = {Double.NaN, 0.0, -0.0, 0.0, 1.5, 1.5, 1.5, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, -123456.789, 0.1, 0.1, Double.NaN};
+        // equal times, small and negative delta of delta, and deltas too large for the short encodings
+        long[] times = {0, 0, 1, 2, 1000, 2000, 3000, 3001, 100000, 100000 + (1L << 40), (1L << 41), (1L << 62), (1L << 62) + 5,
+                (1L << 62) + 6, Long.MAX_VALUE};
+        SeriesBlock b = new SeriesBlock(SeriesBlock.KIND_DOUBLE());
+        for (int i = 0; i < values.length; i++) {
+            b.add(times[i], Double.doubleToLongBits(values[i]));
+        }
+        Points p = decode(b);
+        assertEquals(values.length, p.times.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(times[i], (long) p.times.get(i));
+            assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(((DoubleValue) p.values.get(i)).value));
+        }
+    }
+
+    @Test
+    public void decimals_and_floats_round_trip() {
+        long[] longs = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 7, 7, 8, -8};
+        SeriesBlock d = new SeriesBlock(SeriesBlock.KIND_DECIMAL());
+        for (int i = 0; i < longs.length; i++) {
+            d.add(i * 2000L, longs[i]);
+        }
+        Points p = decode(d);
+        for (int i = 0; i < longs.length; i++) {
+            assertEquals(longs[i], ((DecimalValue) p.values.get(i)).value);
+        }
+
+        float[] floats = {Float.NaN, -0.0f, 0.0f, 3.25f, 3.25f, Float.MAX_VALUE, -Float.MIN_VALUE};
+        SeriesBlock f = new SeriesBlock(SeriesBlock.KIND_FLOAT());
+        for (int i = 0; i < floats.length; i++) {
+            f.add(i * 2000L, SeriesBlock.toBits(new FloatValue(floats[i])));
+        }
+        p = decode(f);
+        for (int i = 0; i < floats.length; i++) {
+            assertEquals(Float.floatToIntBits(floats[i]), Float.floatToIntBits(((FloatValue) p.values.get(i)).value));
+        }
+    }
+
+    @Test
+    public void random_values_round_trip() {
+        Random r = new Random(1);
+        SeriesBlock b = new SeriesBlock(SeriesBlock.KIND_DOUBLE());
+        long[] times = new long[5000];
+        long[] bits = new long[times.length];
+        long time = 0;
+        for (int i = 0; i < times.length; i++) {
+            time += r.nextInt(4) == 0 ? r.nextInt(1 << 20) : 2000;
+            times[i] = time;
+            bits[i] = Double.doubleToLongBits(r.nextBoolean() ? Double.longBitsToDouble(r.nextLong()) : r.nextInt(100));
+            b.add(times[i], bits[i]);
+        }
+        Points p = decode(b);
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], (long) p.times.get(i));
+            assertEquals(bits[i], Double.doubleToLongBits(((DoubleValue) p.values.get(i)).value));
+        }
+    }
+
+    @Test
+    public void series_changes_block_on_a_kind_change() throws Exception {
+        String file = tmp.newFolder().getPath() + "/real";
+        CounterSeriesStore store = CounterSeriesStore.open(file);
+        store.add(10, 1000, map("cpu", new DecimalValue(1)), TAGS);
+        store.add(10, 2000, map("cpu", new DecimalValue(2)), TAGS);
+        store.add(10, 3000, map("cpu", new FloatValue(2.5f)), TAGS);
+        store.add(10, 4000, map("cpu", new DoubleValue(3.5)), TAGS);
+        store.add(10, 5000, map("cpu", new DecimalValue(4)), TAGS);
+
+        Points live = read(file, CPU);
+        store.close();
+        Points stored = read(file, CPU);
+        for (Points p : new Points[]{live, stored}) {
+            assertEquals(5, p.values.size());
+            assertEquals(2, ((DecimalValue) p.values.get(1)).value);
+            assertEquals(2.5f, ((FloatValue) p.values.get(2)).value, 0);
+            assertEquals(3.5, ((DoubleValue) p.values.get(3)).value, 0);
+            assertEquals(4, ((DecimalValue) p.values.get(4)).value);
+        }
+    }
+
+    @Test
+    public void late_points_are_merged_in_time_order() throws Exception {
+        String file = tmp.newFolder().getPath() + "/real";
+        CounterSeriesStore store = CounterSeriesStore.open(file);
+        List<Long> expected = new ArrayList<Long>();
+        // a full block is written, then a pending block follows
+        for (int i = 0; i < CounterSeriesStore.BLOCK_POINTS() + 10; i++) {
+            long time = 10000 + i * 2000L;
+            store.add(10, time, map("cpu", new DecimalValue(time)), TAGS);
+            expected.add(time);
+        }
+        // older than the pending block and the written block, and out of order among themselves
+        long[] late = {9000, 11000, 5000, 10000 + 300 * 2000L + 1, 3000};
+        for (long time : late) {
+            store.add(10, time, map("cpu", new DecimalValue(time)), TAGS);
+            expected.add(time);
+        }
+        java.util.Collections.sort(expected);
+
+        Points live = read(file, CPU);
+        assertEquals(expected, live.times);
+        store.close();
+        Points stored = read(file, CPU);
+        assertEquals(expected, stored.times);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals((long) expected.get(i), ((DecimalValue) stored.values.get(i)).value);
+        }
+
+        // a range before the written blocks still finds the late blocks
+        Points early = new Points();
+        assertTrue(CounterSeriesStore.read(file, CPU, 0, 9500, early));
+        assertEquals(java.util.Arrays.asList(3000L, 5000L, 9000L), early.times);
+    }
+
+    @Test
+    public void non_numeric_series_falls_back() throws Exception {
+        String file = tmp.newFolder().getPath() + "/real";
+        CounterSeriesStore store = CounterSeriesStore.open(file);
+        store.add(10, 1000, map("status", new DecimalValue(1)), TAGS);
+        store.add(10, 2000, map("status", new TextValue("up")), TAGS);
+        store.add(10, 2000, map("cpu", new DecimalValue(1)), TAGS);
+
+        assertFalse(CounterSeriesStore.read(file, STATUS, 0, Long.MAX_VALUE, new Points()));
+        assertEquals(1, read(file, CPU).times.size());
+        store.close();
+        Points none = new Points();
+        assertFalse(CounterSeriesStore.read(file, STATUS, 0, Long.MAX_VALUE, none));
+        assertTrue(none.times.isEmpty());
+        assertEquals(1, read(file, CPU).times.size());
+    }
+
+    @Test
+    public void dirty_only_with_something_to_flush() throws Exception {
+        String file = tmp.newFolder().getPath() + "/real";
+        CounterSeriesStore store = CounterSeriesStore.open(file);
+        try {
+            assertFalse(store.isDirty());
+            // a young pending block waits for more points
+            store.add(10, 1000, map("cpu", new DecimalValue(1)), TAGS);
+            assertFalse(store.isDirty());
+            for (int i = 1; i < CounterSeriesStore.BLOCK_POINTS(); i++) {
+                store.add(10, 1000 + i * 2000L, map("cpu", new DecimalValue(i)), TAGS);
+            }
+            // the full block is written and the heads are out of date
+            assertTrue(store.isDirty());
+            store.flush();
+            assertFalse(store.isDirty());
+            store.add(10, 1000, map("status", new TextValue("up")), TAGS);
+            assertTrue(store.isDirty());
+            store.flush();
+            assertFalse(store.isDirty());
+        } finally {
+            store.close();
+        }
+    }
+}
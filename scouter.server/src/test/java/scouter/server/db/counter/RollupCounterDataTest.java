@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.counter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scouter.lang.TimeTypeEnum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RollupCounterDataTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static RollupBucket bucket(double... values) {
+        RollupBucket b = new RollupBucket();
+        for (double v : values) {
+            b.add(v);
+        }
+        return b;
+    }
+
+    @Test
+    public void buckets_round_trip_without_losing_precision() throws Exception {
+        String file = tmp.getRoot().getPath() + "/rollup1m";
+        // not representable as a float
+        double big = (double) ((1L << 53) - 1);
+        double small = 0.1 + 0.2;
+
+        RollupCounterData writer = RollupCounterData.openForWrite(file);
+        long offset1 = writer.writeNew(TimeTypeEnum.ONE_MIN, 0, bucket(big, small));
+        writer.write(offset1, 1439, bucket(-big));
+        long offset2 = writer.writeNew(TimeTypeEnum.ONE_MIN, 600, bucket(1, 2, 3));
+        writer.close();
+
+        RollupCounterData reader = RollupCounterData.open(file);
+        try {
+            RollupBucket[] buckets = reader.getBuckets(offset1);
+            assertEquals(1440, buckets.length);
+            assertEquals(small, buckets[0].min(), 0);
+            assertEquals(big, buckets[0].max(), 0);
+            assertEquals(small, buckets[0].last(), 0);
+            assertEquals(big + small, buckets[0].sum(), 0);
+            assertEquals(2, buckets[0].count());
+            assertNull(buckets[1]);
+            assertEquals(-big, buckets[1439].last(), 0);
+
+            buckets = reader.getBuckets(offset2);
+            assertEquals(6, buckets[600].sum(), 0);
+            assertEquals(3, buckets[600].last(), 0);
+            assertNull(buckets[0]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void covered_from_keeps_the_earliest_time() throws Exception {
+        String file = tmp.getRoot().getPath() + "/rollup5m";
+        RollupCounterData writer = RollupCounterData.openForWrite(file);
+        assertEquals(Long.MAX_VALUE, writer.getCoveredFrom());
+        writer.cover(5000);
+        writer.writeNew(TimeTypeEnum.FIVE_MIN, 1, bucket(1));
+        writer.cover(9000);
+        writer.cover(3000);
+        writer.close();
+
+        RollupCounterData reader = RollupCounterData.open(file);
+        try {
+            assertEquals(3000, reader.getCoveredFrom());
+        } finally {
+            reader.close();
+        }
+
+        // reopened for write on the next start
+        writer = RollupCounterData.openForWrite(file);
+        writer.cover(4000);
+        assertEquals(3000, writer.getCoveredFrom());
+        writer.cover(1000);
+        writer.close();
+        reader = RollupCounterData.open(file);
+        try {
+            assertEquals(1000, reader.getCoveredFrom());
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedHashBlockTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void put_get_and_reopen() throws Exception {
+        String path = new File(tmp.getRoot(), "idx").getPath();
+        MappedHashBlock block = new MappedHashBlock(path, 1024 * 1024);
+        for (int i = 1; i <= 1000; i++) {
+            block.put(i, i * 10L);
+        }
+        block.put(7, 77L);
+        assertEquals(1000, block.getCount());
+        assertEquals(77L, block.get(7));
+        assertEquals(0L, block.get(5000));
+        block.close();
+
+        MappedHashBlock reopened = new MappedHashBlock(path, 1024);
+        assertEquals(1000, reopened.getCount());
+        assertEquals(77L, reopened.get(7));
+        assertEquals(9990L, reopened.get(999));
+        reopened.close();
+    }
+
+    @Test
+    public void readers_never_see_a_torn_bucket() throws Exception {
+        String path = new File(tmp.getRoot(), "torn").getPath();
+        final MappedHashBlock block = new MappedHashBlock(path, 1024);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<String> torn = new AtomicReference<String>();
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread() {
+                public void run() {
+                    try {
+                        while (stop.get() == false) {
+                            for (int k = 0; k < 16; k++) {
+                                long v = block.get(k);
+                                long b = v & 0xff;
+                                if (v != b * 0x0101010101L) {
+                                    torn.set("key=" + k + " value=" + Long.toHexString(v));
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        torn.set(e.toString());
+                    }
+                }
+            };
+            readers[r].start();
+        }
+        for (int i = 0; i < 200000; i++) {
+            long b = (i % 127) + 1;
+            block.put(i % 16, b * 0x0101010101L);
+        }
+        stop.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+        block.close();
+        assertNull(torn.get());
+    }
+}
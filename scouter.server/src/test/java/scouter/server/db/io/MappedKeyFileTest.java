@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedKeyFileTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] key(int i) {
+        return ("key-" + i).getBytes();
+    }
+
+    private static byte[] data(int i) {
+        byte[] b = new byte[1000];
+        Arrays.fill(b, (byte) i);
+        return b;
+    }
+
+    private void check(RealKeyFile file, List<Long> positions) {
+        for (int i = 0; i < positions.size(); i++) {
+            long pos = positions.get(i);
+            ITEM item = file.getRecord(pos);
+            assertArrayEquals(key(i), item.timeKey());
+            assertArrayEquals(data(i), item.dataPos());
+            assertEquals(i == 0 ? 0 : positions.get(i - 1).longValue(), item.prevPos());
+            assertArrayEquals(key(i), file.getTimeKey(pos));
+            assertEquals(i == 0 ? 0 : positions.get(i - 1).longValue(), file.getPrevPos(pos));
+        }
+    }
+
+    @Test
+    public void reads_across_grown_segments_and_after_reopen() {
+        String path = new File(tmp.getRoot(), "keys").getPath();
+        MappedKeyFile file = new MappedKeyFile(path);
+        List<Long> positions = new ArrayList<Long>();
+        long prev = 0;
+        int i = 0;
+        // read while growing so the segments are mapped one by one as they fill up
+        while (file.getLength() < 2L * MappedKeyFile$.MODULE$.SEGMENT_SIZE() + 1000) {
+            prev = file.append(prev, key(i), data(i));
+            positions.add(prev);
+            if (i % 4000 == 0) {
+                check(file, positions);
+            }
+            i++;
+        }
+        check(file, positions);
+        file.setDelete(positions.get(1), true);
+        assertTrue(file.isDeleted(positions.get(1)));
+        file.close();
+
+        MappedKeyFile reopened = new MappedKeyFile(path);
+        check(reopened, positions);
+        assertTrue(reopened.isDeleted(positions.get(1)));
+        reopened.close();
+    }
+}
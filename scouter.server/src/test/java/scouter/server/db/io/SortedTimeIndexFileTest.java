@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.io.DataInputX;
+import scouter.io.DataOutputX;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SortedTimeIndexFileTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long BASE = 1539100800000L;
+    private static final int BLOCK = SortedTimeIndexFile$.MODULE$.BLOCK_ENTRY_COUNT();
+
+    private final AbstractFunction1<Object, byte[]> reader = new AbstractFunction1<Object, byte[]>() {
+        public byte[] apply(Object pos) {
+            return DataOutputX.toBytes5((Long) pos);
+        }
+    };
+
+    private String path() {
+        return new File(tmp.getRoot(), "xlog_tim").getPath();
+    }
+
+    private static long pos(long time) {
+        return time - BASE + 1;
+    }
+
+    private List<Long> read(SortedTimeIndexFile index, long stime, long etime, boolean forward) {
+        final List<Long> times = new ArrayList<Long>();
+        AbstractFunction2<Object, byte[], Object> handler = new AbstractFunction2<Object, byte[], Object>() {
+            public Object apply(Object time, byte[] data) {
+                assertEquals(pos((Long) time), DataInputX.toLong5(data, 0));
+                times.add((Long) time);
+                return BoxedUnit.UNIT;
+            }
+        };
+        if (forward) {
+            index.read(stime, etime, handler, reader);
+        } else {
+            index.readFromEnd(stime, etime, handler, reader);
+        }
+        return times;
+    }
+
+    private long blockCount() {
+        return new File(path() + ".tblk").length() / SortedTimeIndexFile$.MODULE$.BLOCK_SIZE();
+    }
+
+    @Test
+    public void seals_only_full_blocks_and_on_close() {
+        SortedTimeIndexFile writer = new SortedTimeIndexFile(path());
+        for (int i = 0; i < BLOCK + 10; i++) {
+            writer.put(BASE + i, DataOutputX.toBytes5(pos(BASE + i)));
+        }
+        writer.flush();
+        writer.flush();
+        assertEquals(1, blockCount());
+
+        // the unsealed entries are read from the tail by another instance
+        SortedTimeIndexFile reader = new SortedTimeIndexFile(path());
+        assertEquals(BLOCK + 10, read(reader, BASE, BASE + 100000, true).size());
+        reader.close();
+        assertEquals(1, blockCount());
+
+        writer.close();
+        assertEquals(2, blockCount());
+        reader = new SortedTimeIndexFile(path());
+        assertEquals(BLOCK + 10, read(reader, BASE, BASE + 100000, true).size());
+        reader.close();
+    }
+
+    @Test
+    public void merges_out_of_order_blocks_and_tail() {
+        SortedTimeIndexFile writer = new SortedTimeIndexFile(path());
+        List<Long> expected = new ArrayList<Long>();
+        // later blocks have late entries older than the blocks before them
+        for (int i = 0; i < 3 * BLOCK + 100; i++) {
+            long time = BASE + 1000 + i * 10L;
+            if (i % 7 == 0) {
+                time = BASE + (i % 1000);
+            }
+            expected.add(time);
+            writer.put(time, DataOutputX.toBytes5(pos(time)));
+        }
+        writer.flush();
+        Collections.sort(expected);
+
+        SortedTimeIndexFile reader = new SortedTimeIndexFile(path());
+        assertEquals(expected, read(reader, 0, Long.MAX_VALUE, true));
+
+        List<Long> range = new ArrayList<Long>();
+        for (long t : expected) {
+            if (t >= BASE + 500 && t <= BASE + 5000) {
+                range.add(t);
+            }
+        }
+        assertEquals(range, read(reader, BASE + 500, BASE + 5000, true));
+        Collections.reverse(range);
+        assertEquals(range, read(reader, BASE + 500, BASE + 5000, false));
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void reopen_keeps_the_unsealed_entries() {
+        SortedTimeIndexFile writer = new SortedTimeIndexFile(path());
+        for (int i = 0; i < 10; i++) {
+            writer.put(BASE + i, DataOutputX.toBytes5(pos(BASE + i)));
+        }
+        // not closed, like a server stopped after the last flush
+        writer.flush();
+
+        SortedTimeIndexFile reopened = new SortedTimeIndexFile(path());
+        for (int i = 10; i < 20; i++) {
+            reopened.put(BASE + i, DataOutputX.toBytes5(pos(BASE + i)));
+        }
+        reopened.close();
+        assertEquals(1, blockCount());
+
+        SortedTimeIndexFile reader = new SortedTimeIndexFile(path());
+        assertEquals(20, read(reader, BASE, BASE + 100, true).size());
+        reader.close();
+    }
+
+    @Test
+    public void read_by_limit_count_pages_by_bucket_time() {
+        SortedTimeIndexFile writer = new SortedTimeIndexFile(path());
+        for (int i = 0; i < 100; i++) {
+            long time = BASE + i * 100L + 7;
+            writer.put(time, DataOutputX.toBytes5(pos(time)));
+        }
+        writer.close();
+
+        SortedTimeIndexFile index = new SortedTimeIndexFile(path());
+        final List<Long> buckets = new ArrayList<Long>();
+        final List<Long> positions = new ArrayList<Long>();
+        AbstractFunction2<Object, byte[], Object> handler = new AbstractFunction2<Object, byte[], Object>() {
+            public Object apply(Object time, byte[] data) {
+                buckets.add((Long) time);
+                positions.add(DataInputX.toLong5(data, 0));
+                return positions.size();
+            }
+        };
+        index.readByLimitCount(BASE, BASE + 100000, 0, 12, handler, reader);
+        assertEquals(12, positions.size());
+        assertEquals(BASE + 1000, (long) buckets.get(11));
+        assertEquals(pos(BASE + 1107), (long) positions.get(11));
+
+        // the next page starts from the bucket of the last entry
+        long lastBucket = buckets.get(11);
+        buckets.clear();
+        positions.clear();
+        index.readByLimitCount(BASE, BASE + 100000, lastBucket, 3, handler, reader);
+        assertEquals(pos(BASE + 1007), (long) positions.get(0));
+        assertEquals(3, positions.size());
+        index.close();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.io.zip;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlockCacheTest {
+
+    private Block block(String date, int blockNum, int size) {
+        Block b = new Block(date, new byte[size], 0, size, GZipCtr.BLOCK_MAX_SIZE);
+        b.blockNum = blockNum;
+        return b;
+    }
+
+    @Test
+    public void least_recently_used_block_is_evicted_by_bytes() {
+        BlockCache cache = new BlockCache(10, 3000);
+        cache.put(new BKey("20260101", 0), block("20260101", 0, 1000), 60000);
+        cache.put(new BKey("20260101", 1), block("20260101", 1, 1000), 60000);
+        cache.put(new BKey("20260101", 2), block("20260101", 2, 1000), 60000);
+        assertNotNull(cache.get(new BKey("20260101", 0)));
+        cache.put(new BKey("20260101", 3), block("20260101", 3, 1000), 60000);
+        assertNull(cache.get(new BKey("20260101", 1)));
+        assertTrue(cache.contains(new BKey("20260101", 0)));
+        assertTrue(cache.contains(new BKey("20260101", 3)));
+    }
+
+    @Test
+    public void block_larger_than_the_limit_is_kept_alone() {
+        BlockCache cache = new BlockCache(10, 100);
+        cache.put(new BKey("20260101", 0), block("20260101", 0, 50), 60000);
+        cache.put(new BKey("20260101", 1), block("20260101", 1, 500), 60000);
+        assertFalse(cache.contains(new BKey("20260101", 0)));
+        assertNotNull(cache.get(new BKey("20260101", 1)));
+    }
+
+    @Test
+    public void expired_block_and_closed_date_are_gone() {
+        BlockCache cache = new BlockCache(10, 1 << 20);
+        cache.put(new BKey("20260101", 0), block("20260101", 0, 10), -1);
+        cache.put(new BKey("20260102", 0), block("20260102", 0, 10), 60000);
+        cache.put(new BKey("20260102", 1), block("20260102", 1, 10), 60000);
+        assertNull(cache.get(new BKey("20260101", 0)));
+        cache.removeDate("20260102");
+        assertFalse(cache.contains(new BKey("20260102", 0)));
+        assertFalse(cache.contains(new BKey("20260102", 1)));
+    }
+}
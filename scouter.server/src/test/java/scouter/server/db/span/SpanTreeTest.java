@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.span;
+
+import org.junit.Test;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.SpanPack;
+import scouter.lang.pack.SpanTypes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpanTreeTest {
+
+    private SpanPack span(long txid, long caller, byte type, long timestamp) {
+        SpanPack p = new SpanPack();
+        p.gxid = 1;
+        p.txid = txid;
+        p.caller = caller;
+        p.spanType = type;
+        p.timestamp = timestamp;
+        return p;
+    }
+
+    private byte[] entry(long pos, SpanPack... spans) throws IOException {
+        return new DataOutputX().writeLong5(pos).write(SpanTree.toEntry(Arrays.asList(spans))).toByteArray();
+    }
+
+    private long[] txids(List<SpanNode> nodes) {
+        long[] ids = new long[nodes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = nodes.get(i).txid();
+        }
+        return ids;
+    }
+
+    @Test
+    public void profile_stops_at_boundary_spans() throws IOException {
+        List<byte[]> entries = new ArrayList<byte[]>();
+        // the index returns the latest entry first
+        entries.add(entry(200,
+                span(20, 11, SpanTypes.SERVER, 130),
+                span(21, 20, SpanTypes.UNKNOWN, 140)));
+        entries.add(entry(100,
+                span(10, 0, SpanTypes.SERVER, 100),
+                span(11, 10, SpanTypes.CLIENT, 120),
+                span(12, 10, SpanTypes.UNKNOWN, 110),
+                span(13, 10, SpanTypes.UNKNOWN, 110)));
+
+        SpanTree tree = SpanTree.assemble(entries);
+        assertEquals(6, tree.nodes().size());
+
+        List<SpanNode> root = tree.profileOf(10);
+        assertArrayEquals(new long[]{10, 12, 13, 11}, txids(root));
+        assertArrayEquals(new long[]{100}, tree.positions(root));
+
+        List<SpanNode> remote = tree.profileOf(20);
+        assertArrayEquals(new long[]{20, 21}, txids(remote));
+        assertArrayEquals(new long[]{200}, tree.positions(remote));
+
+        assertEquals(SpanTypes.SERVER, tree.get(20).spanType());
+        assertEquals(11, tree.get(20).caller());
+        assertTrue(tree.profileOf(11).isEmpty());
+    }
+
+    @Test
+    public void profile_of_a_deep_trace() throws IOException {
+        int depth = 50000;
+        SpanPack[] spans = new SpanPack[depth];
+        spans[0] = span(1, 0, SpanTypes.SERVER, 0);
+        for (int i = 1; i < depth; i++) {
+            spans[i] = span(i + 1, i, SpanTypes.UNKNOWN, i);
+        }
+        SpanTree tree = SpanTree.assemble(Arrays.asList(entry(0, spans)));
+        assertEquals(depth, tree.profileOf(1).size());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.xlog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.XLogPack;
+import scouter.server.Configure;
+import scouter.util.RoaringBitmap;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class XLogBitmapIndexTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long BASE = 1539100800000L;
+    private static final int BLOCK = XLogBitmapIndex$.MODULE$.TIME_BLOCK_ROWS();
+    private int cacheDays;
+
+    @Before
+    public void setUp() {
+        cacheDays = Configure.getInstance().xlog_bitmap_index_cache_days;
+    }
+
+    @After
+    public void tearDown() {
+        Configure.getInstance().xlog_bitmap_index_cache_days = cacheDays;
+    }
+
+    private String file(String name) {
+        return new File(tmp.getRoot(), name).getPath();
+    }
+
+    private static XLogPack pack(int i) {
+        XLogPack p = new XLogPack();
+        p.endTime = BASE + i;
+        p.service = i % 4;
+        p.objHash = 100 + i % 2;
+        p.error = i % 10 == 0 ? 1 : 0;
+        return p;
+    }
+
+    private static AbstractFunction1<Object, Object> is(final int key) {
+        return new AbstractFunction1<Object, Object>() {
+            public Object apply(Object k) {
+                return (Integer) k == key;
+            }
+        };
+    }
+
+    private static List<Long> rows(XLogBitmapIndex index, RoaringBitmap bitmap, long stime, long etime) {
+        final List<Long> positions = new ArrayList<Long>();
+        index.readRows(bitmap, stime, etime, new AbstractFunction2<Object, Object, Object>() {
+            public Object apply(Object time, Object pos) {
+                positions.add((Long) pos);
+                return BoxedUnit.UNIT;
+            }
+        });
+        return positions;
+    }
+
+    private void write(String file, int count) {
+        XLogBitmapIndex index = XLogBitmapIndex.open(file);
+        for (int i = 0; i < count; i++) {
+            index.add(pack(i), i);
+        }
+        index.close();
+    }
+
+    @Test
+    public void build_select_and_reload() {
+        String file = file("build");
+        XLogBitmapIndex index = XLogBitmapIndex.open(file);
+        for (int i = 0; i < 3 * BLOCK; i++) {
+            index.add(pack(i), i);
+        }
+        RoaringBitmap svc1 = index.get(XLogBitmapIndex$.MODULE$.SERVICE(), 1);
+        assertEquals(3 * BLOCK / 4, svc1.getCardinality());
+        RoaringBitmap errors = index.select(XLogBitmapIndex$.MODULE$.ERROR(), is(1));
+        RoaringBitmap obj = index.get(XLogBitmapIndex$.MODULE$.OBJ(), 100);
+        // errors are every 10th row, all of them have the even objHash
+        assertEquals(errors.getCardinality(), RoaringBitmap.and(errors, obj).getCardinality());
+        List<Long> before = rows(index, svc1, 0, Long.MAX_VALUE);
+        assertEquals(3 * BLOCK / 4, before.size());
+        index.close();
+
+        XLogBitmapIndex reloaded = XLogBitmapIndex.open(file);
+        RoaringBitmap again = reloaded.get(XLogBitmapIndex$.MODULE$.SERVICE(), 1);
+        assertEquals(before, rows(reloaded, again, 0, Long.MAX_VALUE));
+        reloaded.close();
+    }
+
+    @Test
+    public void time_range_skips_blocks_out_of_range() throws Exception {
+        String file = file("range");
+        write(file, 3 * BLOCK);
+
+        // move the rows of the first block into the range on disk, their block bounds keep them out
+        RandomAccessFile raf = new RandomAccessFile(file + XLogBitmapIndex$.MODULE$.POSTFIX_ROW(), "rw");
+        for (int row = 0; row < BLOCK; row++) {
+            raf.seek((long) row * XLogBitmapIndex$.MODULE$.ROW_SIZE());
+            raf.write(DataOutputX.toBytes(BASE + BLOCK + 10));
+        }
+        raf.close();
+
+        XLogBitmapIndex index = XLogBitmapIndex.open(file);
+        RoaringBitmap all = index.select(XLogBitmapIndex$.MODULE$.SERVICE(), new AbstractFunction1<Object, Object>() {
+            public Object apply(Object k) {
+                return true;
+            }
+        });
+        List<Long> positions = rows(index, all, BASE + BLOCK, BASE + BLOCK + 99);
+        assertEquals(100, positions.size());
+        assertEquals(BLOCK, (long) positions.get(0));
+        assertEquals(BLOCK + 99, (long) positions.get(99));
+
+        // a late row added after reopening widens the bounds of its block
+        index.add(pack(0), 5);
+        RoaringBitmap svc0 = index.get(XLogBitmapIndex$.MODULE$.SERVICE(), 0);
+        List<Long> late = rows(index, svc0, BASE, BASE);
+        assertEquals(1, late.size());
+        assertEquals(5L, (long) late.get(0));
+        index.close();
+    }
+
+    @Test
+    public void searched_days_stay_cached() {
+        Configure.getInstance().xlog_bitmap_index_cache_days = 1;
+        String day1 = file("day1");
+        String day2 = file("day2");
+        write(day1, 10);
+        write(day2, 10);
+
+        XLogBitmapIndex first = XLogBitmapIndex.openForRead(day1);
+        first.close();
+        XLogBitmapIndex second = XLogBitmapIndex.openForRead(day1);
+        second.close();
+        assertSame(first, second);
+
+        // a second day pushes the first one out
+        XLogBitmapIndex.openForRead(day2).close();
+        XLogBitmapIndex third = XLogBitmapIndex.openForRead(day1);
+        third.close();
+        assertNotSame(first, third);
+        assertEquals(10, third.get(XLogBitmapIndex$.MODULE$.OBJ(), 100).getCardinality()
+                + third.get(XLogBitmapIndex$.MODULE$.OBJ(), 101).getCardinality());
+
+        Configure.getInstance().xlog_bitmap_index_cache_days = 0;
+        XLogBitmapIndex.openForRead(day1).close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.xlog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.lang.pack.XLogPack;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class XLogColumnStoreTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long BASE = 1539100800000L;
+    private static final int BLOCK = XLogColumnStore$.MODULE$.BLOCK_ROWS();
+
+    private String file() {
+        return new File(tmp.getRoot(), "xlog").getPath();
+    }
+
+    private static XLogPack pack(long txid, long endTime) {
+        XLogPack p = new XLogPack();
+        p.txid = txid;
+        p.endTime = endTime;
+        p.objHash = (int) (txid % 3);
+        p.elapsed = (int) txid;
+        return p;
+    }
+
+    private static List<Long> txids(String file, long stime, long etime) {
+        final List<Long> txids = new ArrayList<Long>();
+        XLogColumnStore.read(file, stime, etime, new AbstractFunction1<XLogColumnBlock, Object>() {
+            public Object apply(XLogColumnBlock b) {
+                for (int i = 0; i < b.count(); i++) {
+                    txids.add(b.txid()[i]);
+                }
+                return BoxedUnit.UNIT;
+            }
+        });
+        return txids;
+    }
+
+    @Test
+    public void read_has_written_and_live_rows_once() {
+        XLogColumnStore store = XLogColumnStore.open(file());
+        for (int i = 0; i < 2 * BLOCK + 10; i++) {
+            store.add(pack(i, BASE + i), i * 100L);
+        }
+        assertEquals(2 * BLOCK + 10, new HashSet<Long>(txids(file(), 0, Long.MAX_VALUE)).size());
+        assertEquals(2 * BLOCK + 10, txids(file(), 0, Long.MAX_VALUE).size());
+        store.flush();
+        assertEquals(2 * BLOCK + 10, txids(file(), 0, Long.MAX_VALUE).size());
+        // blocks out of the range are skipped
+        assertEquals(BLOCK + 10, txids(file(), BASE + BLOCK + 5, Long.MAX_VALUE).size());
+        store.close();
+
+        store = XLogColumnStore.open(file());
+        store.add(pack(-1, BASE), 0);
+        assertEquals(2 * BLOCK + 11, txids(file(), 0, Long.MAX_VALUE).size());
+        store.close();
+    }
+
+    @Test
+    public void read_during_flushes_neither_misses_nor_repeats_rows() throws Exception {
+        final XLogColumnStore store = XLogColumnStore.open(file());
+        final AtomicLong added = new AtomicLong();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<String> error = new AtomicReference<String>();
+        Thread writer = new Thread() {
+            public void run() {
+                while (stop.get() == false && added.get() < 20000) {
+                    long txid = added.get();
+                    store.add(pack(txid, BASE + txid), txid);
+                    added.incrementAndGet();
+                    if (txid % 37 == 0) {
+                        store.flush();
+                    }
+                }
+            }
+        };
+        writer.start();
+        try {
+            while (writer.isAlive() && error.get() == null) {
+                long before = added.get();
+                List<Long> rows = txids(file(), 0, Long.MAX_VALUE);
+                Set<Long> unique = new HashSet<Long>(rows);
+                if (unique.size() != rows.size()) {
+                    error.set("repeated rows at " + before);
+                }
+                for (long t = 0; t < before; t++) {
+                    if (unique.contains(t) == false) {
+                        error.set("missed " + t + " of " + before);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+            store.close();
+        }
+        assertNull(error.get());
+    }
+
+    @Test
+    public void read_rows_in_time_order_and_stop() {
+        XLogColumnStore store = XLogColumnStore.open(file());
+        List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < 3 * BLOCK + 10; i++) {
+            // every 5th row arrives late with an old time
+            long time = i % 5 == 0 ? BASE + i / 2 : BASE + i;
+            store.add(pack(i, time), time);
+            if (i % 3 == 0) {
+                expected.add(time);
+            }
+        }
+        java.util.Collections.sort(expected);
+
+        AbstractFunction2<XLogColumnBlock, Object, Object> filter = new AbstractFunction2<XLogColumnBlock, Object, Object>() {
+            public Object apply(XLogColumnBlock b, Object i) {
+                return b.txid()[(Integer) i] % 3 == 0;
+            }
+        };
+        final List<Long> times = new ArrayList<Long>();
+        XLogColumnStore.readRows(file(), 0, Long.MAX_VALUE, filter, new AbstractFunction2<Object, Object, Object>() {
+            public Object apply(Object time, Object pos) {
+                assertEquals(time, pos);
+                times.add((Long) time);
+                return true;
+            }
+        });
+        assertEquals(expected, times);
+
+        times.clear();
+        XLogColumnStore.readRows(file(), BASE + 100, Long.MAX_VALUE, filter, new AbstractFunction2<Object, Object, Object>() {
+            public Object apply(Object time, Object pos) {
+                times.add((Long) time);
+                return times.size() < 10;
+            }
+        });
+        assertEquals(10, times.size());
+        assertTrue(times.get(0) >= BASE + 100);
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i - 1) <= times.get(i));
+        }
+        store.close();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.db.xlog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scouter.util.ConcurrentRequestQueue;
+import scouter.util.FileUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XLogGroupCommitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConcurrentRequestQueue<Integer> queue(int count) {
+        ConcurrentRequestQueue<Integer> queue = new ConcurrentRequestQueue<Integer>(1024);
+        for (int i = 0; i < count; i++) {
+            queue.put(i);
+        }
+        return queue;
+    }
+
+    @Test
+    public void collect_takes_up_to_max_count_in_order() {
+        ConcurrentRequestQueue<Integer> queue = queue(10);
+        XLogGroupCommit<Integer> commit = new XLogGroupCommit<Integer>(queue);
+        List<Integer> batch = new ArrayList<Integer>();
+
+        assertEquals(4, commit.collect(batch, 4, 0, 10));
+        assertEquals(Arrays.asList(0, 1, 2, 3), batch);
+        batch.clear();
+        assertEquals(4, commit.collect(batch, 4, 0, 10));
+        assertEquals(Arrays.asList(4, 5, 6, 7), batch);
+        batch.clear();
+        assertEquals(2, commit.collect(batch, 4, 0, 10));
+        assertEquals(Arrays.asList(8, 9), batch);
+    }
+
+    @Test
+    public void collect_returns_nothing_after_the_poll_time() {
+        XLogGroupCommit<Integer> commit = new XLogGroupCommit<Integer>(queue(0));
+        List<Integer> batch = new ArrayList<Integer>();
+        long start = System.currentTimeMillis();
+        assertEquals(0, commit.collect(batch, 4, 1000, 50));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void collect_lingers_for_late_items() throws InterruptedException {
+        final ConcurrentRequestQueue<Integer> queue = queue(1);
+        XLogGroupCommit<Integer> commit = new XLogGroupCommit<Integer>(queue);
+        Thread producer = new Thread() {
+            public void run() {
+                for (int i = 1; i < 3; i++) {
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                    }
+                    queue.put(i);
+                }
+            }
+        };
+        producer.start();
+        List<Integer> batch = new ArrayList<Integer>();
+        assertEquals(3, commit.collect(batch, 3, 5000, 10));
+        assertEquals(Arrays.asList(0, 1, 2), batch);
+        producer.join();
+    }
+
+    @Test
+    public void collect_stops_lingering_after_max_wait() {
+        XLogGroupCommit<Integer> commit = new XLogGroupCommit<Integer>(queue(2));
+        List<Integer> batch = new ArrayList<Integer>();
+        long start = System.currentTimeMillis();
+        assertEquals(2, commit.collect(batch, 100, 100, 10));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 90);
+        assertTrue(elapsed < 2000);
+    }
+
+    @Test
+    public void drain_takes_everything_left() {
+        XLogGroupCommit<Integer> commit = new XLogGroupCommit<Integer>(queue(7));
+        List<Integer> batch = new ArrayList<Integer>();
+        int total = 0;
+        int n;
+        while ((n = commit.drain(batch, 3)) > 0) {
+            total += n;
+        }
+        assertEquals(7, total);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6), batch);
+        assertEquals(0, commit.drain(batch, 3));
+    }
+
+    @Test
+    public void flush_is_due_on_force_interval_or_bytes() {
+        assertTrue(XLogGroupCommit.flushDue(true, 1000, 1000, 0, 500, 1024));
+        assertFalse(XLogGroupCommit.flushDue(false, 1499, 1000, 1023, 500, 1024));
+        assertTrue(XLogGroupCommit.flushDue(false, 1500, 1000, 0, 500, 1024));
+        assertTrue(XLogGroupCommit.flushDue(false, 1000, 1000, 1024, 500, 1024));
+    }
+
+    @Test
+    public void writeBatch_locations_are_read_back() throws Exception {
+        File dir = folder.newFolder();
+        String file = new File(dir, "xlog").getPath();
+        Properties properties = new Properties();
+        properties.put("compress_xlog_enabled", "false");
+        FileUtil.writeProperties(new File(file + ".service.conf"), properties);
+
+        XLogDataWriter writer = new XLogDataWriter("20181018", file);
+        List<byte[]> records = new ArrayList<byte[]>();
+        for (int i = 0; i < 50; i++) {
+            byte[] record = new byte[1 + i * 7];
+            Arrays.fill(record, (byte) i);
+            records.add(record);
+        }
+        long single = writer.write(new byte[]{9, 9, 9});
+        long[] location = new long[records.size()];
+        int written = writer.writeBatch(records, location);
+        writer.flush();
+
+        int expected = 0;
+        for (byte[] record : records) {
+            expected += 2 + record.length;
+        }
+        assertEquals(expected, written);
+
+        XLogDataReader reader = new XLogDataReader("20181018", file);
+        assertArrayEquals(new byte[]{9, 9, 9}, reader.read(single));
+        for (int i = 0; i < records.size(); i++) {
+            assertArrayEquals(records.get(i), reader.read(location[i]));
+        }
+        reader.close();
+        writer.close();
+    }
+}
@@ -24,7 +24,12 @@ import org.junit.Test;
 import scouter.server.Configure;
 import scouter.server.http.model.InfluxSingleLine;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * @author Gun Lee (gunlee01@gmail.com) on 2018. 7. 24.
@@ -94,4 +99,26 @@ public class TelegrafInputHandlerTest {
         Thread.sleep(300000);
     }
 
-}
\ No newline at end of file
+    private static InputStream body(String lines) {
+        return new ByteArrayInputStream(lines.getBytes());
+    }
+
+    @Test
+    public void readBody_reads_the_whole_body_in_the_limits() throws IOException {
+        String lines = "cpu usage_user=1\ncpu usage_user=2\ncpu usage_user=3";
+        assertArrayEquals(lines.getBytes(), TelegrafInputHandler.readBody(body(lines), lines.length(), 1024, 3));
+        assertArrayEquals(lines.getBytes(), TelegrafInputHandler.readBody(body(lines), -1, 1024, 3));
+        assertArrayEquals(lines.getBytes(), TelegrafInputHandler.readBody(body(lines), -1, lines.length(), 3));
+        assertArrayEquals(new byte[0], TelegrafInputHandler.readBody(body(""), 0, 1024, 3));
+    }
+
+    @Test
+    public void readBody_stops_over_the_limits() throws IOException {
+        String lines = "cpu usage_user=1\ncpu usage_user=2\ncpu usage_user=3\n";
+        assertNull(TelegrafInputHandler.readBody(body(lines), -1, 1024, 2));
+        assertNull(TelegrafInputHandler.readBody(body(lines), -1, lines.length() - 1, 3));
+        //a wrong content length doesn't let more than maxBytes in
+        assertNull(TelegrafInputHandler.readBody(body(lines), 4, lines.length() - 1, 3));
+    }
+
+}
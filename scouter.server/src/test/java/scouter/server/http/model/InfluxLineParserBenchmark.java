@@ -0,0 +1,384 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.http.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import scouter.lang.value.DecimalValue;
+import scouter.lang.value.FloatValue;
+import scouter.lang.value.NumberValue;
+import scouter.server.Configure;
+import scouter.server.ScouterTgMtConfig;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * one op = a telegraf request body of 500 lines, a third of them of a measurement without a config.
+ * legacy is the previous path, readLine + toLineStringKey + InfluxSingleLine.of per line.
+ * run with main() from the test classpath.
+ */
+@State(Scope.Thread)
+public class InfluxLineParserBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Configure conf;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        conf = Configure.getInstance();
+        conf.telegrafInputConfigMap.put("cpu", config("cpu", "usage_user", "usage_system", "usage_idle"));
+        conf.telegrafInputConfigMap.put("mem", config("mem", "used", "free", "available_percent"));
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            String host = "host" + (i / 15) + ".example.com";
+            switch (i % 3) {
+                case 0:
+                    sb.append("cpu,cpu=cpu").append(i % 5).append(",host=").append(host)
+                            .append(" usage_user=18.315842078960518,usage_iowait=0,usage_irq=0,usage_softirq=0")
+                            .append(",usage_guest=0,usage_system=7.8210894552723635,usage_idle=73.86306846576711")
+                            .append(",usage_nice=0,usage_steal=0,usage_guest_nice=0 1532269780000000000\n");
+                    break;
+                case 1:
+                    sb.append("mem,host=").append(host).append(",region=seoul")
+                            .append(" used=11656097792i,free=1467994112i,cached=0i,buffered=0i,wired=2481405952i")
+                            .append(",slab=0i,available_percent=32.152581214904785,total=17179869184i,available=5523771392i")
+                            .append(",active=8165543936i,inactive=4055777280i,used_percent=67.84741878509521 1532269780000000000\n");
+                    break;
+                default:
+                    sb.append("disk,device=sda").append(i % 4).append(",fstype=ext4,host=").append(host).append(",mode=rw,path=/data")
+                            .append(" free=40960000i,inodes_free=1200i,inodes_total=2400i,inodes_used=1200i")
+                            .append(",total=81920000i,used=40960000i,used_percent=50 1532269780000000000\n");
+                    break;
+            }
+        }
+        body = sb.toString().getBytes(UTF8);
+    }
+
+    private static ScouterTgMtConfig config(String measurement, String... fields) {
+        ScouterTgMtConfig tConfig = new ScouterTgMtConfig(measurement);
+        Map<String, CounterProtocol> mapping = new HashMap<String, CounterProtocol>();
+        for (String field : fields) {
+            mapping.put(field, new CounterProtocol("tg-" + measurement + "-" + field));
+        }
+        tConfig.setCounterMapping(mapping);
+        tConfig.setObjFamilyBase("HOST-METRIC");
+        tConfig.setObjTypeBase("HOST-METRIC");
+        tConfig.setObjNameBase("HOST-METRIC");
+        return tConfig;
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) {
+        InfluxLineParser parser = new InfluxLineParser(conf, 0);
+        parser.parse(body, 0, body.length, 1000);
+        for (InfluxSingleLine line : parser.getLines()) {
+            bh.consume(line);
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), UTF8));
+        Map<String, String> uniqueLineString = new LinkedHashMap<String, String>();
+        String lineString;
+        while ((lineString = reader.readLine()) != null) {
+            uniqueLineString.put(toLineStringKey(lineString), lineString);
+        }
+        for (String line : uniqueLineString.values()) {
+            bh.consume(of(line, conf, 0));
+        }
+    }
+
+    // the previous InfluxSingleLine parser
+
+    private static void addNumField(ScouterTgMtConfig tConfig, Map.Entry<String, String> field, Map<CounterProtocol, NumberValue> numberFields) {
+        CounterProtocol counterProtocol = tConfig.getCounterProtocol(field.getKey());
+        if (counterProtocol == null) {
+            return;
+        }
+
+        String valueStr = field.getValue();
+        char lastChar = valueStr.charAt(valueStr.length() - 1);
+
+        if (lastChar == 'i') { //long
+            long value = Long.parseLong(valueStr.substring(0, valueStr.length() - 1));
+            numberFields.put(counterProtocol, new DecimalValue(value));
+        } else if (lastChar >= '0' && lastChar <= '9') { //float
+            numberFields.put(counterProtocol, new FloatValue(Float.parseFloat(valueStr)));
+        } else {
+            //skip - boolean or string
+            return;
+        }
+    }
+
+    private static String toLineStringKey(String lineString) {
+        char[] chars = lineString.toCharArray();
+        char sink = '\0';
+        int mode = 0; //0: measurement, 1: tags
+
+        StringBuilder lineKey = new StringBuilder(80);
+        for (int pos = 0; pos < lineString.length(); pos++) {
+            char c = chars[pos];
+            if (mode == 0) { //measurement, tags
+                if (sink == '\\') {
+                    lineKey.append(c);
+                    sink = '\0';
+
+                } else {
+                    switch (c) {
+                        case '\\':
+                            sink = '\\';
+                            break;
+                        case ' ':
+                            lineKey.append(' ');
+                            mode++;
+                            break;
+                        default:
+                            lineKey.append(c);
+                            break;
+                    }
+                }
+
+            } else if (mode == 1) { //fields
+                if (sink == '\\') {
+                    lineKey.append(c);
+                    sink = '\0';
+
+                } else {
+                    switch (c) {
+                        case '\\':
+                            sink = '\\';
+                            break;
+                        case ' ':
+                            mode++;
+                            break;
+                        case '=':
+                            mode++;
+                            break;
+                        case ',':
+                            mode++;
+                            break;
+                        default:
+                            lineKey.append(c);
+                            break;
+                    }
+                }
+            } else {
+                break;
+            }
+
+        }
+
+        return lineKey.toString();
+    }
+
+    private static InfluxSingleLine of(String lineStr, Configure configure, long receivedTime) {
+        char[] chars = lineStr.toCharArray();
+        char sink = '\0';
+        int mode = 0; //0: measurement, 1: tags, 2: fields, 3: timestamp
+
+        StringBuilder measurementSb = new StringBuilder();
+
+        StringBuilder tagKeySb = new StringBuilder();
+        StringBuilder tagValueSb = new StringBuilder();
+        boolean tagKeyMode = true; //if false then tag value mode
+        Map<String, String> tags = new HashMap<String, String>();
+
+        StringBuilder fieldKeySb = new StringBuilder();
+        StringBuilder fieldValueSb = new StringBuilder();
+        boolean fieldKeyMode = true; //if false then field value mode
+        Map<String, String> fields = new HashMap<String, String>();
+
+        StringBuilder timestampSb = new StringBuilder();
+
+        for (int pos = 0; pos < lineStr.length(); pos++) {
+            char c = chars[pos];
+            if (mode == 0) { //measurement
+                if (sink == '\\') {
+                    measurementSb.append(c);
+                    sink = '\0';
+
+                } else {
+                    switch (c) {
+                        case '\\':
+                            sink = '\\';
+                            break;
+                        case ',':
+                            mode++;
+                            break;
+                        default:
+                            measurementSb.append(c);
+                            break;
+                    }
+                }
+
+            } else if (mode == 1) { //tags
+                if (sink == '\\') {
+                    if (tagKeyMode) {
+                        tagKeySb.append(c);
+                    } else {
+                        tagValueSb.append(c);
+                    }
+                    sink = '\0';
+
+                } else {
+                    switch (c) {
+                        case '\\':
+                            sink = '\\';
+                            break;
+                        case ' ':
+                            mode++;
+                            if (tagKeySb.length() > 0) {
+                                tags.put(tagKeySb.toString(), tagValueSb.toString());
+                            }
+                            break;
+                        case '=':
+                            tagKeyMode = false;
+                            break;
+                        case ',':
+                            tagKeyMode = true;
+                            tags.put(tagKeySb.toString(), tagValueSb.toString());
+                            tagKeySb = new StringBuilder();
+                            tagValueSb = new StringBuilder();
+                            break;
+                        default:
+                            if (tagKeyMode) {
+                                tagKeySb.append(c);
+                            } else {
+                                tagValueSb.append(c);
+                            }
+                            break;
+                    }
+                }
+
+            } else if (mode == 2) { //fields
+                if (sink == '\\') {
+                    if (fieldKeyMode) {
+                        fieldKeySb.append(c);
+                    } else {
+                        fieldValueSb.append(c);
+                    }
+                    sink = '\0';
+
+                } else {
+                    switch (c) {
+                        case '\\':
+                            if (sink != '"') {
+                                sink = '\\';
+                            }
+                            break;
+                        case '"':
+                            if (sink == '"') {
+                                sink = '\0';
+                            } else {
+                                sink = '"';
+                            }
+                            break;
+                        case ' ':
+                            if (sink != '"') {
+                                mode++;
+                                if (fieldKeySb.length() > 0) {
+                                    fields.put(fieldKeySb.toString(), fieldValueSb.toString());
+                                }
+                            }
+                            break;
+                        case '=':
+                            if (sink != '"') {
+                                fieldKeyMode = false;
+                            }
+                            break;
+                        case ',':
+                            if (sink != '"') {
+                                fieldKeyMode = true;
+                                fields.put(fieldKeySb.toString(), fieldValueSb.toString());
+                                fieldKeySb = new StringBuilder();
+                                fieldValueSb = new StringBuilder();
+                            }
+                            break;
+                        default:
+                            if (sink != '"') {
+                                if (fieldKeyMode) {
+                                    fieldKeySb.append(c);
+                                } else {
+                                    fieldValueSb.append(c);
+                                }
+                            }
+                            break;
+                    }
+                }
+
+            } else if (mode == 3) { // timestamp
+                timestampSb.append(c);
+            }
+        }
+
+        String measurement = measurementSb.toString();
+        ScouterTgMtConfig tConfig = configure.telegrafInputConfigMap.get(measurement);
+
+        if (tConfig == null) {
+            return null;
+        }
+        if (!tConfig.isEnabled()) {
+            return null;
+        }
+        if (!tConfig.isValidConfig()) {
+            return null;
+        }
+        if (!tConfig.isTagFilterMatching(tags)) {
+            return null;
+        }
+
+        try {
+            //line protocol timestamp is nano second -> divide 1000,000 -> to millis
+            Map<CounterProtocol, NumberValue> numberFields = new HashMap<CounterProtocol, NumberValue>();
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                addNumField(tConfig, field, numberFields);
+            }
+            return new InfluxSingleLine(tConfig, measurement, tags, numberFields, receivedTime, Long.parseLong(timestampSb.toString()) / 1000000, tConfig.isDebugEnabled());
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(InfluxLineParserBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
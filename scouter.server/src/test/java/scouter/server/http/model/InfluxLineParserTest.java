@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package scouter.server.http.model;
+
+import org.junit.Test;
+import scouter.lang.value.NumberValue;
+import scouter.server.Configure;
+import scouter.server.ScouterTgMtConfig;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InfluxLineParserTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * the tg config is put in place before every parse, the config thread may renew the map.
+     */
+    private static Configure configure() {
+        ScouterTgMtConfig tConfig = new ScouterTgMtConfig("tgparse");
+        Map<String, CounterProtocol> mapping = new HashMap<String, CounterProtocol>();
+        mapping.put("used", new CounterProtocol("tg-parse-used"));
+        mapping.put("pct", new CounterProtocol("tg-parse-pct"));
+        tConfig.setCounterMapping(mapping);
+        tConfig.setObjFamilyBase("TG-PARSE");
+        tConfig.setObjTypeBase("TG-PARSE");
+        tConfig.setObjNameBase("TG-PARSE");
+
+        Configure conf = Configure.getInstance();
+        conf.telegrafInputConfigMap.put("tgparse", tConfig);
+        return conf;
+    }
+
+    private static float parseFloat(String s) {
+        byte[] b = s.getBytes(UTF8);
+        return InfluxLineParser.parseFloat(b, 0, b.length);
+    }
+
+    private static long parseLong(String s) {
+        byte[] b = s.getBytes(UTF8);
+        return InfluxLineParser.parseLong(b, 0, b.length);
+    }
+
+    private List<InfluxSingleLine> parse(String body) {
+        byte[] b = body.getBytes(UTF8);
+        InfluxLineParser parser = new InfluxLineParser(configure(), 1000L);
+        assertTrue(parser.parse(b, 0, b.length, 1000));
+        return new ArrayList<InfluxSingleLine>(parser.getLines());
+    }
+
+    private static NumberValue value(InfluxSingleLine line, String counter) {
+        for (Map.Entry<CounterProtocol, NumberValue> field : line.getNumberFields().entrySet()) {
+            if (field.getKey().getName().equals(counter)) {
+                return field.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void parseFloat_is_same_as_Float_parseFloat() {
+        String[] cases = {"0", "-0", "0.0", "18.315842078960518", "32.152581214904785", "1e5", "1.5E-3", "-2.5e+10", ".5", "5.",
+                "123456789012345678901234", "0.000000000000000000000000000000000000000001", "3.4028236e38", "1e-50",
+                "16777217", "0.1", "+7", "1.00000017881393432617187499", "1.000000178813934326171875"};
+        for (String s : cases) {
+            assertEquals(s, Float.floatToIntBits(Float.parseFloat(s)), Float.floatToIntBits(parseFloat(s)));
+        }
+
+        Random r = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            String s;
+            switch (i % 4) {
+                case 0:
+                    s = Double.toString(r.nextDouble() * 100);
+                    break;
+                case 1:
+                    s = Double.toString(r.nextGaussian() * Math.pow(10, r.nextInt(30) - 15));
+                    break;
+                case 2:
+                    s = Float.toString(Float.intBitsToFloat(r.nextInt() & 0x7f7fffff));
+                    break;
+                default:
+                    s = Long.toString(r.nextLong() >>> r.nextInt(64));
+                    break;
+            }
+            assertEquals(s, Float.floatToIntBits(Float.parseFloat(s)), Float.floatToIntBits(parseFloat(s)));
+        }
+    }
+
+    @Test
+    public void parseLong_is_same_as_Long_parseLong() {
+        String[] cases = {"0", "-1", "+12", "9223372036854775807", "-9223372036854775808", "11656097792"};
+        for (String s : cases) {
+            assertEquals(Long.parseLong(s), parseLong(s));
+        }
+        String[] invalid = {"", "-", "9223372036854775808", "-9223372036854775809", "1.5", "12a"};
+        for (String s : invalid) {
+            try {
+                parseLong(s);
+                fail(s);
+            } catch (NumberFormatException e) {
+            }
+        }
+    }
+
+    @Test
+    public void parse_takes_the_latest_of_the_same_line_key() {
+        List<InfluxSingleLine> lines = parse(
+                "# comment\r\n" +
+                "tgparse,host=h1 used=1i,pct=10.5 1532269780000000000\r\n" +
+                "unknown,host=h1 used=1i 1532269780000000000\n" +
+                "\n" +
+                "tgparse,host=h2 used=2i,pct=20.5 1532269780000000000\n" +
+                "tgparse,host=h1 used=3i,pct=30.5 1532269790000000000");
+
+        assertEquals(2, lines.size());
+        assertEquals("h1", lines.get(0).getHost());
+        assertEquals(3L, value(lines.get(0), "tg-parse-used").longValue());
+        assertEquals(30.5f, value(lines.get(0), "tg-parse-pct").floatValue(), 0);
+        assertEquals(1532269790000L, lines.get(0).getTimestampOrigin());
+        assertEquals(1000L, lines.get(0).getReceivedTime());
+        assertEquals("h2", lines.get(1).getHost());
+        assertEquals(2L, value(lines.get(1), "tg-parse-used").longValue());
+    }
+
+    @Test
+    public void parse_escaped_names_and_quoted_strings() {
+        List<InfluxSingleLine> lines = parse(
+                "tgparse,host=my\\ host\\,1,os=linux msg=\"a, b=c \\\" d\",used=7i,flag=true,pct=1e2 1532269780000000000\n" +
+                "tgparse used=8i 1532269780000000000\n");
+
+        assertEquals(2, lines.size());
+        assertEquals("my host,1", lines.get(0).getHost());
+        assertEquals("linux", lines.get(0).getTags().get("os"));
+        assertEquals(2, lines.get(0).getNumberFields().size());
+        assertEquals(7L, value(lines.get(0), "tg-parse-used").longValue());
+        assertEquals(100f, value(lines.get(0), "tg-parse-pct").floatValue(), 0);
+        assertEquals("unknown", lines.get(1).getHost());
+        assertEquals(8L, value(lines.get(1), "tg-parse-used").longValue());
+    }
+
+    @Test
+    public void parse_drops_invalid_lines() {
+        assertTrue(parse("tgparse,host=h1 used=1x2i 1532269780000000000\n" +
+                "tgparse,host=h1 used=1i\n" +
+                "tgparse,host=h1 used 1532269780000000000\n").isEmpty());
+        assertNull(InfluxSingleLine.of("tgparse,host=h1", configure(), 0));
+    }
+
+    @Test
+    public void parse_rejects_too_many_lines() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 11; i++) {
+            body.append("tgparse,host=h").append(i).append(" used=1i 1532269780000000000\n");
+        }
+        byte[] b = body.toString().getBytes(UTF8);
+        InfluxLineParser parser = new InfluxLineParser(configure(), 0);
+        assertFalse(parser.parse(b, 0, b.length, 10));
+        assertTrue(parser.getLines().isEmpty());
+        assertTrue(parser.parse(b, 0, b.length, 11));
+        assertEquals(11, parser.getLines().size());
+    }
+}
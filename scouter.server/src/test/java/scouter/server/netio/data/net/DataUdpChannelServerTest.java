@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.netio.data.net;
+
+import org.junit.Test;
+import scala.runtime.AbstractFunction2;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataUdpChannelServerTest {
+
+    private static final DataUdpChannelServer$ server = DataUdpChannelServer$.MODULE$;
+
+    @Test
+    public void pool_allocates_up_to_max_and_reuses_released_buffers() {
+        DataUdpChannelServer.BufferPool pool = new DataUdpChannelServer.BufferPool(64, 2);
+        ByteBuffer b1 = pool.take();
+        ByteBuffer b2 = pool.take();
+        assertNotNull(b1);
+        assertNotNull(b2);
+        assertNull(pool.take());
+        assertEquals(2, pool.allocated().get());
+
+        b1.put((byte) 1).flip();
+        pool.release(b1);
+        assertEquals(1, pool.size());
+        ByteBuffer b3 = pool.take();
+        assertSame(b1, b3);
+        assertEquals(0, b3.position());
+        assertEquals(64, b3.limit());
+        assertNull(pool.take());
+        assertEquals(2, pool.allocated().get());
+    }
+
+    private static class Sink extends AbstractFunction2<ByteBuffer, InetAddress, Object> {
+        final List<ByteBuffer> buffers = Collections.synchronizedList(new ArrayList<ByteBuffer>());
+        volatile boolean accept = true;
+
+        public Object apply(ByteBuffer buffer, InetAddress addr) {
+            if (accept) {
+                buffers.add(buffer);
+            }
+            return accept;
+        }
+    }
+
+    private static class DataSink extends AbstractFunction2<byte[], InetAddress, Object> {
+        final List<byte[]> data = Collections.synchronizedList(new ArrayList<byte[]>());
+
+        public Object apply(byte[] bytes, InetAddress addr) {
+            data.add(bytes);
+            return true;
+        }
+    }
+
+    private static void waitFor(AtomicLong counter, long count) throws InterruptedException {
+        long until = System.currentTimeMillis() + 5000;
+        while (counter.get() < count && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, counter.get());
+    }
+
+    @Test
+    public void receive_into_pooled_buffers_and_copy_when_exhausted() throws Exception {
+        final DatagramChannel channel = server.open("127.0.0.1", 0, null);
+        final int port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        final DataUdpChannelServer.BufferPool pool = new DataUdpChannelServer.BufferPool(64, 2);
+        final DataUdpChannelServer.Receiver r = new DataUdpChannelServer.Receiver(0);
+        final Sink sink = new Sink();
+        final DataSink copies = new DataSink();
+        Thread t = new Thread() {
+            public void run() {
+                server.recv(r, channel, pool, sink, copies);
+            }
+        };
+        t.start();
+
+        DatagramSocket socket = new DatagramSocket();
+        try {
+            for (int i = 1; i <= 3; i++) {
+                socket.send(new DatagramPacket(new byte[]{(byte) i, (byte) i}, 2, InetAddress.getByName("127.0.0.1"), port));
+                waitFor(r.recv(), i);
+            }
+            // two datagrams are held in the pooled buffers and the third one is copied out
+            assertEquals(2, sink.buffers.size());
+            assertEquals(1, sink.buffers.get(0).get(0));
+            assertEquals(2, sink.buffers.get(0).limit());
+            assertEquals(2, sink.buffers.get(1).get(0));
+            assertEquals(1, copies.data.size());
+            assertEquals(3, copies.data.get(0)[0]);
+            assertEquals(2, copies.data.get(0).length);
+
+            // the receiver waits on its own buffer, so a released buffer is taken for the datagram after next
+            pool.release(sink.buffers.remove(0));
+            socket.send(new DatagramPacket(new byte[]{4}, 1, InetAddress.getByName("127.0.0.1"), port));
+            waitFor(r.recv(), 4);
+            assertEquals(2, copies.data.size());
+
+            // a rejected buffer is dropped and goes back to the pool
+            sink.accept = false;
+            socket.send(new DatagramPacket(new byte[]{5}, 1, InetAddress.getByName("127.0.0.1"), port));
+            waitFor(r.drop(), 1);
+            assertEquals(5, r.recv().get());
+            assertEquals(1, sink.buffers.size());
+
+            // and is reused for the next datagram without another allocation
+            sink.accept = true;
+            socket.send(new DatagramPacket(new byte[]{6}, 1, InetAddress.getByName("127.0.0.1"), port));
+            waitFor(r.recv(), 6);
+            assertEquals(2, sink.buffers.size());
+            assertEquals(6, sink.buffers.get(1).get(0));
+            assertEquals(2, copies.data.size());
+            assertEquals(2, pool.allocated().get());
+        } finally {
+            socket.close();
+            channel.close();
+        }
+        // recv returns once the channel is closed
+        t.join(5000);
+        assertTrue(t.isAlive() == false);
+    }
+
+    @Test
+    public void channels_share_a_port_with_reuse_port() throws Exception {
+        SocketOption<Boolean> reusePort = server.reusePortOption();
+        if (reusePort == null) {
+            return;
+        }
+        DatagramChannel c1 = server.open("127.0.0.1", 0, reusePort);
+        int port = ((InetSocketAddress) c1.getLocalAddress()).getPort();
+        DatagramChannel c2 = server.open("127.0.0.1", port, reusePort);
+        try {
+            assertEquals(port, ((InetSocketAddress) c2.getLocalAddress()).getPort());
+        } finally {
+            c1.close();
+            c2.close();
+        }
+    }
+}
@@ -18,7 +18,11 @@
 
 package scouter.server.netio.service.handle;
 
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import scouter.io.DataInputX;
 import scouter.io.DataOutputX;
 import scouter.lang.pack.MapPack;
@@ -26,6 +30,7 @@ import scouter.lang.pack.Pack;
 import scouter.lang.value.TextValue;
 import scouter.lang.value.Value;
 import scouter.net.TcpFlag;
+import scouter.server.Configure;
 import scouter.test.support.function.Reader;
 
 import java.io.EOFException;
@@ -44,6 +49,22 @@ public class KeyValueStoreServiceTest {
     private static final String vutKey2 = "testkey-02";
     private static final String vutValue2 = "testvalue-02";
 
+    @ClassRule
+    public static TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String dbDir;
+
+    @BeforeClass
+    public static void setUpClass() {
+        dbDir = Configure.getInstance().db_dir;
+        Configure.getInstance().db_dir = tmp.getRoot().getPath();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        Configure.getInstance().db_dir = dbDir;
+    }
+
     KeyValueStoreService sut = new KeyValueStoreService();
 
     private DataInputX toDataInputXFromPack(Pack pack) {
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.netio.service.handle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.runtime.AbstractFunction2;
+import scala.runtime.BoxedUnit;
+import scouter.io.DataInputX;
+import scouter.io.DataOutputX;
+import scouter.lang.pack.MapPack;
+import scouter.lang.value.ListValue;
+import scouter.net.TcpFlag;
+import scouter.server.Configure;
+import scouter.server.core.LatencySketch;
+import scouter.server.db.LatencySketchRD;
+import scouter.server.db.LatencySketchWR;
+import scouter.util.DateUtil;
+import scouter.util.HashUtil;
+import scouter.util.LogLinearHistogram;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencySketchServiceTest {
+
+    private static final long M = DateUtil.MILLIS_PER_MINUTE;
+    private static final String OBJ_TYPE = "latency-test";
+    private static final int OBJ_TYPE_HASH = HashUtil.hash(OBJ_TYPE);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private String dbDir;
+
+    @Before
+    public void setUp() {
+        dbDir = Configure.getInstance().db_dir;
+        Configure.getInstance().db_dir = tmp.getRoot().getPath();
+    }
+
+    @After
+    public void tearDown() {
+        Configure.getInstance().db_dir = dbDir;
+    }
+
+    private static byte[] histogram(long elapsed, int count) throws IOException {
+        LogLinearHistogram h = new LogLinearHistogram(LatencySketch.SUB_BITS(), LatencySketch.MAX_ELAPSED());
+        for (int i = 0; i < count; i++) {
+            h.record(elapsed);
+        }
+        return h.toBytes();
+    }
+
+    private static void write(int service, long time, long elapsed, int count) throws IOException {
+        LatencySketchWR.add(DateUtil.yyyymmdd(time), OBJ_TYPE_HASH, service, time, histogram(elapsed, count));
+    }
+
+    /** wait for the writer thread */
+    private static void waitWritten(int service, long stime, long etime, int minutes) throws InterruptedException {
+        final int[] count = new int[1];
+        long until = System.currentTimeMillis() + 5000;
+        do {
+            Thread.sleep(20);
+            count[0] = 0;
+            LatencySketchRD.read(OBJ_TYPE_HASH, service, stime, etime, new AbstractFunction2<Object, LogLinearHistogram, Object>() {
+                public Object apply(Object time, LogLinearHistogram h) {
+                    count[0]++;
+                    return BoxedUnit.UNIT;
+                }
+            });
+        } while (count[0] < minutes && System.currentTimeMillis() < until);
+        assertEquals(minutes, count[0]);
+    }
+
+    private static MapPack percentile(int service, long stime, long etime, int interval) throws IOException {
+        MapPack param = new MapPack();
+        param.put("objType", OBJ_TYPE);
+        param.put("service", service);
+        param.put("stime", stime);
+        param.put("etime", etime);
+        param.put("interval", interval);
+        DataOutputX out = new DataOutputX();
+        new LatencySketchService().getServiceLatencyPercentile(new DataInputX(new DataOutputX().writePack(param).toByteArray()), out, true);
+        DataInputX in = new DataInputX(out.toByteArray());
+        assertEquals(TcpFlag.HasNEXT, in.readByte());
+        return (MapPack) in.readPack();
+    }
+
+    private static void assertNear(long expected, long actual) {
+        // about 3% of relative error
+        assertEquals(expected, actual, expected * 0.04);
+    }
+
+    @Test
+    public void written_minutes_are_merged_by_interval() throws Exception {
+        long t = DateUtil.yyyymmdd("20240101") + 10 * DateUtil.MILLIS_PER_HOUR;
+        long nextDay = DateUtil.yyyymmdd("20240102");
+        write(1, t, 10, 100);
+        write(1, t + M, 100, 100);
+        write(1, t + 2 * M, 1000, 100);
+        write(1, nextDay, 2000, 50);
+        waitWritten(1, t, nextDay + M, 4);
+
+        MapPack r = percentile(1, t, t + 3 * M - 1, 2);
+        ListValue time = r.getList("time");
+        ListValue count = r.getList("count");
+        assertEquals(2, time.size());
+        assertEquals(t, time.getLong(0));
+        assertEquals(t + 2 * M, time.getLong(1));
+        assertEquals(200, count.getLong(0));
+        assertEquals(100, count.getLong(1));
+        assertNear(100, r.getList("p90").getLong(0));
+        assertNear(1000, r.getList("p50").getLong(1));
+        assertEquals(300, r.getLong("total_count"));
+        assertNear(100, r.getLong("total_p50"));
+
+        // minutes before the range are skipped
+        r = percentile(1, t + M, t + 3 * M - 1, 1);
+        assertEquals(2, r.getList("time").size());
+        assertEquals(200, r.getLong("total_count"));
+
+        // a range over two days
+        r = percentile(1, t, nextDay + M - 1, 1);
+        assertEquals(4, r.getList("time").size());
+        assertEquals(nextDay, r.getList("time").getLong(3));
+        assertEquals(350, r.getLong("total_count"));
+    }
+
+    @Test
+    public void open_minutes_follow_the_written_ones() throws Exception {
+        long now = System.currentTimeMillis();
+        long minute = now - now % M;
+        write(2, minute - 2 * M, 10, 5);
+        waitWritten(2, minute - 2 * M, minute, 1);
+        LatencySketch.add(OBJ_TYPE_HASH, 2, minute + 1, 50);
+        LatencySketch.add(OBJ_TYPE_HASH, 2, minute + 2, 50);
+
+        MapPack r = percentile(2, minute - 5 * M, minute + M, 1);
+        ListValue time = r.getList("time");
+        assertEquals(2, time.size());
+        assertEquals(minute - 2 * M, time.getLong(0));
+        assertEquals(minute, time.getLong(1));
+        assertEquals(2, r.getList("count").getLong(1));
+        assertEquals(7, r.getLong("total_count"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2015 the original author or authors. 
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); 
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ */
+
+package scouter.server.plugin.alert;
+
+import org.junit.Test;
+import scouter.lang.CounterKey;
+import scouter.lang.TimeTypeEnum;
+
+import static org.junit.Assert.assertEquals;
+
+public class RealCounterTest {
+
+    private RealCounter counter(int historySize, long now, float... values) {
+        RealCounter c = new RealCounter(new CounterKey(1, "TPS", TimeTypeEnum.REALTIME));
+        c.historySize(historySize);
+        // one value per second, the last one added half a second ago
+        for (int i = 0; i < values.length; i++) {
+            c.addValueHistory(values[i], now - 500 - (values.length - 1 - i) * 1000L);
+        }
+        return c;
+    }
+
+    @Test
+    public void window_queries_over_the_history() {
+        long now = System.currentTimeMillis();
+        RealCounter c = counter(10, now, 1, 2, 3, 4, 5, 6);
+
+        assertEquals(6, c.getHistorySize());
+        assertEquals(2, c.getHistoryCountInSec(2));
+        assertEquals(6, c.getHistoryCountInSec(60));
+        assertEquals(2, c.getOverCount(5, 60));
+        assertEquals(5.0f, c.getLatestAvg(3), 0.0001f);
+        // values added between 4 and 2 seconds ago
+        assertEquals(3.5f, c.getAvg(4, 2), 0.0001f);
+        assertEquals(6.0f, c.getLatestMax(60), 0.0001f);
+        assertEquals(0f, c.getAvg(100, 10), 0.0001f);
+    }
+
+    @Test
+    public void keeps_only_the_newest_values() {
+        long now = System.currentTimeMillis();
+        RealCounter c = counter(4, now, 10, 20, 1, 2, 3, 4);
+        assertEquals(4, c.getHistorySize());
+        assertEquals(2.5f, c.getLatestAvg(60), 0.0001f);
+        assertEquals(4.0f, c.getLatestMax(60), 0.0001f);
+
+        c.historySize(2);
+        assertEquals(2, c.getHistorySize());
+        assertEquals(3.5f, c.getLatestAvg(60), 0.0001f);
+
+        c.historySize(8);
+        c.addValueHistory(5.5f, now - 100);
+        assertEquals(3, c.getHistorySize());
+        assertEquals(12.5f / 3, c.getLatestAvg(60), 0.0001f);
+        assertEquals(1, c.getOverCount(5, 60));
+    }
+}
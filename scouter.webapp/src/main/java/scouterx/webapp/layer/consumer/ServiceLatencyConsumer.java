@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package scouterx.webapp.layer.consumer;
+
+import scouter.lang.constants.ParamConstant;
+import scouter.lang.pack.MapPack;
+import scouter.lang.pack.Pack;
+import scouter.net.RequestCmd;
+import scouterx.webapp.framework.client.net.TcpProxy;
+import scouterx.webapp.model.ServiceLatencyData;
+import scouterx.webapp.request.ServiceLatencyRequest;
+
+/**
+ * latency percentiles of a service kept by the collector server
+ */
+public class ServiceLatencyConsumer {
+
+    public ServiceLatencyData retrieveServiceLatency(ServiceLatencyRequest request) {
+        MapPack param = new MapPack();
+        param.put(ParamConstant.OBJ_TYPE, request.getObjType());
+        param.put(ParamConstant.XLOG_SERVICE, request.getServiceHash());
+        param.put(ParamConstant.STIME, request.getStartTimeMillis());
+        param.put(ParamConstant.ETIME, request.getEndTimeMillis());
+        param.put("interval", request.getIntervalMinutes());
+
+        Pack pack;
+        try (TcpProxy tcpProxy = TcpProxy.getTcpProxy(request.getServer())) {
+            pack = tcpProxy.getSingle(RequestCmd.SERVICE_LATENCY_PERCENTILE, param);
+        }
+
+        return ServiceLatencyData.of((MapPack) pack);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package scouterx.webapp.layer.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import scouterx.webapp.layer.service.ServiceLatencyService;
+import scouterx.webapp.model.ServiceLatencyData;
+import scouterx.webapp.request.ServiceLatencyRequest;
+import scouterx.webapp.view.CommonResultView;
+
+import javax.inject.Singleton;
+import javax.validation.Valid;
+import javax.ws.rs.BeanParam;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/v1/latency")
+@Api("Latency")
+@Singleton
+@Produces(MediaType.APPLICATION_JSON)
+public class ServiceLatencyController {
+
+    private final ServiceLatencyService serviceLatencyService = new ServiceLatencyService();
+
+    private final String NOTE_retrieveServiceLatencyByType =
+            "* retrieve p50, p90, p99 and p99.9 elapsed time of a service over all objects of the object type within given duration.\n" +
+            "  * the collector server keeps them only when xlog_latency_sketch_enabled is on.\n" +
+            "  * uri pattern : /latency/service/ofType/{objType}/{serviceHash}?startTimeMillis={startTimeMillis}&endTimeMillis={endTimeMillis}&intervalMinutes={intervalMinutes}&serverId={serverId}\n" +
+            "  * uri pattern : /latency/service/ofType/{objType}/{serviceHash}?startYmdHm={startYmdHm}&endYmdHm={endYmdHm}&intervalMinutes={intervalMinutes}&serverId={serverId}";
+
+    /**
+     * retrieve percentiles of elapsed time (1min precision by default) of a service over all objects of the object type.
+     * uri pattern : /latency/service/ofType/{objType}/{serviceHash}?startTimeMillis={startTimeMillis}&endTimeMillis={endTimeMillis}&intervalMinutes={intervalMinutes}&serverId={serverId}
+     * uri pattern : /latency/service/ofType/{objType}/{serviceHash}?startYmdHm={startYmdHm}&endYmdHm={endYmdHm}&intervalMinutes={intervalMinutes}&serverId={serverId}
+     *
+     * @param request @see {@link ServiceLatencyRequest}
+     * @return
+     */
+    @GET
+    @Path("/service/ofType/{objType}/{serviceHash}")
+    @ApiOperation(value="retrieveServiceLatencyByType", notes = NOTE_retrieveServiceLatencyByType)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public CommonResultView<ServiceLatencyData> retrieveServiceLatencyByType(@BeanParam @Valid ServiceLatencyRequest request) {
+        request.validate();
+        return CommonResultView.success(serviceLatencyService.retrieveServiceLatency(request));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package scouterx.webapp.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import scouter.lang.pack.MapPack;
+import scouter.lang.value.ListValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * latency percentiles of a service over all objects of an object type, computed on the collector server
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+@Builder
+public class ServiceLatencyData {
+
+    private long totalCount;
+    private long p50;
+    private long p90;
+    private long p99;
+    private long p999;
+
+    private List<Point> points;
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    @Builder
+    public static class Point {
+        private long time;
+        private long count;
+        private long p50;
+        private long p90;
+        private long p99;
+        private long p999;
+    }
+
+    public static ServiceLatencyData of(MapPack mapPack) {
+        List<Point> points = new ArrayList<>();
+        ListValue timeLv = mapPack.getList("time");
+        if (timeLv != null) {
+            ListValue countLv = mapPack.getList("count");
+            ListValue p50Lv = mapPack.getList("p50");
+            ListValue p90Lv = mapPack.getList("p90");
+            ListValue p99Lv = mapPack.getList("p99");
+            ListValue p999Lv = mapPack.getList("p999");
+            for (int i = 0; i < timeLv.size(); i++) {
+                points.add(Point.builder()
+                        .time(timeLv.getLong(i))
+                        .count(countLv.getLong(i))
+                        .p50(p50Lv.getLong(i))
+                        .p90(p90Lv.getLong(i))
+                        .p99(p99Lv.getLong(i))
+                        .p999(p999Lv.getLong(i))
+                        .build());
+            }
+        }
+
+        return ServiceLatencyData.builder()
+                .totalCount(mapPack.getLong("total_count"))
+                .p50(mapPack.getLong("total_p50"))
+                .p90(mapPack.getLong("total_p90"))
+                .p99(mapPack.getLong("total_p99"))
+                .p999(mapPack.getLong("total_p999"))
+                .points(points)
+                .build();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2015 the original author or authors.
+ *  @https://github.com/scouter-project/scouter
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package scouterx.webapp.request;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+
+/**
+ * time range of {@link SummaryRequest}, the service and the minutes merged into a point
+ */
+@Getter
+@Setter
+@ToString(callSuper = true)
+public class ServiceLatencyRequest extends SummaryRequest {
+    @PathParam("objType")
+    private String objType;
+
+    @PathParam("serviceHash")
+    private int serviceHash;
+
+    @QueryParam("intervalMinutes")
+    private int intervalMinutes;
+}